@@ -0,0 +1,995 @@
+/**
+ * CDCLSolver.java - a small conflict-driven clause-learning SAT engine.
+ *
+ * The engine follows the MiniSat design: two watched literals per
+ * clause, first-UIP conflict analysis with local clause minimization,
+ * VSIDS branching with phase saving, optionally kept to a prefix of the
+ * variables that the others depend on, Luby restarts and periodic
+ * deletion of learned clauses ranked by literal block distance (LBD)
+ * and activity.
+ *
+ * Internally a DIMACS variable v is represented by the literal codes
+ * 2v (positive) and 2v+1 (negative), so that the negation of a literal
+ * code is lit ^ 1.
+ */
+
+import java.util.*;
+
+public class CDCLSolver implements SolverBackend {
+
+    // Values of a variable or literal
+    private static final byte UNDEF = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = -1;
+
+    // Returned by search when interrupt() was called
+    private static final int INTERRUPTED = 2;
+
+    // Number of conflicts in one unit of the Luby restart sequence, by
+    // default
+    private static final int RESTART_UNIT = 100;
+    // Decay factors for variable and clause activities; the first is the
+    // default of a configurable one
+    private static final double VAR_DECAY = 0.95;
+    private static final double CLAUSE_DECAY = 0.999;
+
+    /**
+     * A clause of the engine.  The first two literals are the watched
+     * ones; for a clause that is the reason of an assignment, lits[0] is
+     * the implied literal.
+     */
+    private static final class Clause {
+        int[] lits;
+        boolean learnt;
+        boolean deleted;
+        int lbd;
+        double activity;
+
+        Clause(int[] lits, boolean learnt) {
+            this.lits = lits;
+            this.learnt = learnt;
+        }
+    }
+
+    // numVars: the number of variables the engine knows about
+    private int numVars;
+    // ok: false once the clause set is known to be unsatisfiable
+    private boolean ok = true;
+
+    // Problem and learned clauses
+    private ArrayList<Clause> clauses = new ArrayList<Clause>();
+    private ArrayList<Clause> learnts = new ArrayList<Clause>();
+    // watches[lit]: the clauses watching lit, visited when lit becomes false
+    private Clause[][] watches = new Clause[2][];
+    private int[] watchSize = new int[2];
+
+    // Assignment state, indexed by variable
+    private byte[] assigns = new byte[1];
+    private int[] level = new int[1];
+    private Clause[] reason = new Clause[1];
+    private boolean[] polarity = new boolean[1];
+    private boolean[] seen = new boolean[1];
+
+    // The trail of assigned literals and the start of each decision level
+    private int[] trail = new int[1];
+    private int trailSize;
+    private int[] trailLim = new int[1];
+    private int numLevels;
+    private int qhead;
+
+    // VSIDS activities and the binary heap of unassigned variables
+    private double[] activity = new double[1];
+    private double varInc = 1.0;
+    private double clauseInc = 1.0;
+    private int[] heap = new int[1];
+    private int heapSize;
+    private int[] heapIndex = new int[1];
+    // decisionVars: the variables 1..decisionVars are the only ones in the
+    // heap, or all are if 0
+    private int decisionVars;
+
+    // Learned clause management
+    private double maxLearnts;
+    private int[] levelStamp = new int[1];
+    private int stamp;
+    private int[] toClear = new int[1];
+    // simplifiedAt: the number of root assignments when the clauses
+    // satisfied at the root were last removed
+    private int simplifiedAt;
+    // simplifyAfter: the propagation count from which removing them again
+    // is worth its cost
+    private long simplifyAfter;
+
+    // assumptions: literal codes assumed by the current call to solve(),
+    // the first numAssumptions entries
+    private int[] assumptions = new int[0];
+    private int numAssumptions;
+    // failed: the first numFailed entries are the assumptions the last
+    // unsatisfiable call to solve() found refuted, as DIMACS literals
+    private int[] failed = new int[1];
+    private int numFailed;
+    // model: the model found by the last satisfiable call to solve(),
+    // overwritten by the next one
+    private int[] model;
+    // learnt: the buffer conflict analysis writes the learned clause to
+    private int[] learnt = new int[1];
+    // scratch: the buffer a clause is simplified in before it is stored
+    private int[] scratch = new int[8];
+
+    // metrics: where the work of each solve is reported
+    private SolverMetrics metrics = SolverMetrics.getDefault();
+    // interrupted: set by interrupt() to stop the current or next search
+    private volatile boolean interrupted;
+
+    // Statistics
+    private long decisions;
+    private long propagations;
+    private long conflicts;
+
+    // The heuristics: the conflicts in one unit of the Luby restart
+    // sequence, the decay factor of variable activities, and whether
+    // variables are tried true before their phase is saved
+    private final int restartUnit;
+    private final double varDecay;
+    private final boolean positivePhase;
+
+    /**
+     * Construct an engine with the default heuristics.
+     */
+    public CDCLSolver() {
+        this(RESTART_UNIT, VAR_DECAY, false);
+    }
+
+    /**
+     * Construct an engine with other heuristics, so that configurations
+     * suited to different games can be raced in a PortfolioSolver.
+     *
+     * @param restartUnit:   the number of conflicts in one unit of the
+     *                       Luby restart sequence, 100 by default
+     * @param varDecay:      the decay factor of variable activities, below
+     *                       1, 0.95 by default; lower values focus the
+     *                       search on recent conflicts
+     * @param positivePhase: whether variables are tried true rather than
+     *                       false until their phase is saved
+     */
+    public CDCLSolver(int restartUnit, double varDecay, boolean positivePhase) {
+        if (restartUnit <= 0 || varDecay <= 0 || varDecay >= 1)
+            throw new IllegalArgumentException("Bad heuristics: restart unit " + restartUnit
+                + ", decay " + varDecay);
+        this.restartUnit = restartUnit;
+        this.varDecay = varDecay;
+        this.positivePhase = positivePhase;
+    }
+
+    /**
+     * Forget all clauses and variables, returning the engine to the state
+     * of a freshly constructed one.
+     */
+    public void reset() {
+        numVars = 0;
+        ok = true;
+        numAssumptions = 0;
+        numFailed = 0;
+        model = null;
+        clauses.clear();
+        learnts.clear();
+        watches = new Clause[2][];
+        watchSize = new int[2];
+        assigns = new byte[1];
+        level = new int[1];
+        reason = new Clause[1];
+        polarity = new boolean[1];
+        seen = new boolean[1];
+        trail = new int[1];
+        trailSize = 0;
+        trailLim = new int[1];
+        numLevels = 0;
+        qhead = 0;
+        activity = new double[1];
+        varInc = 1.0;
+        clauseInc = 1.0;
+        heap = new int[1];
+        heapSize = 0;
+        heapIndex = new int[1];
+        decisionVars = 0;
+        levelStamp = new int[1];
+        simplifiedAt = 0;
+        simplifyAfter = 0;
+    }
+
+    public SolverBackend newSession() {
+        CDCLSolver session = new CDCLSolver(restartUnit, varDecay, positivePhase);
+        session.metrics = metrics;
+        return session;
+    }
+
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Ask the search in progress to stop.  The search checks for this
+     * before every decision and after every conflict.
+     */
+    public void interrupt() {
+        interrupted = true;
+    }
+
+    public void clearInterrupt() {
+        interrupted = false;
+    }
+
+    /**
+     * Make room for variables 1..n.
+     *
+     * @param n: the largest variable number that will be used
+     */
+    public void ensureVars(int n) {
+        if (n <= numVars)
+            return;
+        if (n < assigns.length) {
+            initVars(n);
+            return;
+        }
+        // Grow by half at least, as reload() adds the variables one by one
+        int size = Math.max(n + 1, assigns.length + (assigns.length >> 1));
+        assigns = Arrays.copyOf(assigns, size);
+        level = Arrays.copyOf(level, size);
+        reason = Arrays.copyOf(reason, size);
+        polarity = Arrays.copyOf(polarity, size);
+        seen = Arrays.copyOf(seen, size);
+        activity = Arrays.copyOf(activity, size);
+        heapIndex = Arrays.copyOf(heapIndex, size);
+        heap = Arrays.copyOf(heap, size);
+        trail = Arrays.copyOf(trail, size);
+        trailLim = Arrays.copyOf(trailLim, Math.max(size, trailLim.length));
+        levelStamp = Arrays.copyOf(levelStamp, Math.max(size, levelStamp.length));
+        watches = Arrays.copyOf(watches, 2 * size);
+        watchSize = Arrays.copyOf(watchSize, 2 * size);
+        initVars(n);
+    }
+
+    private void initVars(int n) {
+        for (int v = numVars + 1; v <= n; v++) {
+            heapIndex[v] = -1;
+            polarity[v] = positivePhase;
+            if (isDecision(v))
+                heapInsert(v);
+        }
+        numVars = n;
+    }
+
+    /**
+     * Keep the branching heap to variables 1..n; the others are left to
+     * propagation and only decided if it does not assign them.
+     *
+     * @param n: the largest decision variable, or 0 for all variables
+     */
+    public void setDecisionVars(int n) {
+        decisionVars = n;
+        heapSize = 0;
+        for (int v = 1; v <= numVars; v++)
+            heapIndex[v] = -1;
+        for (int v = 1; v <= numVars; v++)
+            if (isDecision(v) && assigns[v] == UNDEF)
+                heapInsert(v);
+    }
+
+    private boolean isDecision(int v) {
+        return decisionVars == 0 || v <= decisionVars;
+    }
+
+    /**
+     * Add a clause of DIMACS literals.  The engine must be at decision
+     * level 0, which is always the case between calls to solve().
+     *
+     * @param clause: the clause, an array of non-zero DIMACS literals
+     */
+    public void addClause(int[] clause) {
+        if (ok)
+            ok = insertClause(clause, false);
+    }
+
+    /**
+     * Add a clause that follows from the clauses, as a learned clause
+     * that reduceLearnts() may delete again.  Its LBD is not known, so it
+     * is taken to be its length.
+     *
+     * @param clause: the clause, an array of non-zero DIMACS literals
+     */
+    public void addLearntClause(int[] clause) {
+        if (ok)
+            ok = insertClause(clause, true);
+    }
+
+    /**
+     * @return the learned clauses kept and the literals assigned at the
+     *         root, as DIMACS clauses; like addClause, only between calls
+     *         to solve()
+     */
+    public int[][] getLearntClauses() {
+        int[][] result = new int[trailSize + learnts.size()][];
+        int n = 0;
+        for (int k = 0; k < trailSize; k++)
+            result[n++] = new int[] { toDimacs(trail[k]) };
+        for (Clause c : learnts) {
+            int[] clause = new int[c.lits.length];
+            for (int k = 0; k < clause.length; k++)
+                clause[k] = toDimacs(c.lits[k]);
+            result[n++] = clause;
+        }
+        return result;
+    }
+
+    /**
+     * @return false once the clauses are known to be unsatisfiable
+     *         regardless of assumptions
+     */
+    public boolean isOkay() {
+        return ok;
+    }
+
+    private boolean insertClause(int[] clause, boolean learnt) {
+        int maxVar = 0;
+        for (int literal : clause)
+            maxVar = Math.max(maxVar, Math.abs(literal));
+        ensureVars(maxVar);
+
+        // Drop false and duplicate literals, detect satisfied clauses and
+        // tautologies
+        if (scratch.length < clause.length)
+            scratch = new int[2 * clause.length];
+        int[] lits = scratch;
+        int n = 0;
+        for (int literal : clause) {
+            int lit = toLit(literal);
+            byte value = value(lit);
+            if (value == TRUE)
+                return true;
+            if (value == FALSE)
+                continue;
+            boolean duplicate = false;
+            for (int k = 0; k < n; k++) {
+                if (lits[k] == lit)
+                    duplicate = true;
+                else if (lits[k] == (lit ^ 1))
+                    return true;
+            }
+            if (!duplicate)
+                lits[n++] = lit;
+        }
+
+        if (n == 0)
+            return false;
+        if (n == 1) {
+            enqueue(lits[0], null);
+            return propagate() == null;
+        }
+        Clause c = new Clause(Arrays.copyOf(lits, n), learnt);
+        if (learnt) {
+            c.lbd = n;
+            learnts.add(c);
+        }
+        else
+            clauses.add(c);
+        attach(c);
+        return true;
+    }
+
+    /**
+     * Decide satisfiability of the clauses added so far under the given
+     * assumptions.  Learned clauses are consequences of the clauses alone,
+     * so they are kept for later calls whatever the assumptions were.
+     *
+     * @param assumptions: DIMACS literals assumed true for this call
+     * @return true if the clauses have a model, false otherwise
+     */
+    public boolean solve(int... assumptions) {
+        numFailed = 0;
+        if (!ok)
+            return false;
+        int maxVar = 0;
+        for (int literal : assumptions)
+            maxVar = Math.max(maxVar, Math.abs(literal));
+        ensureVars(maxVar);
+        if (this.assumptions.length < assumptions.length)
+            this.assumptions = new int[assumptions.length];
+        for (int k = 0; k < assumptions.length; k++)
+            this.assumptions[k] = toLit(assumptions[k]);
+        numAssumptions = assumptions.length;
+        // Each assumption takes a decision level even when already true, so
+        // repeated or implied ones take levels beyond one per variable
+        if (trailLim.length < numVars + numAssumptions + 1) {
+            trailLim = Arrays.copyOf(trailLim, numVars + numAssumptions + 1);
+            levelStamp = Arrays.copyOf(levelStamp, numVars + numAssumptions + 1);
+        }
+        maxLearnts = Math.max(clauses.size() / 3.0, 1000);
+        simplify();
+        long decisionsBefore = decisions;
+        long conflictsBefore = conflicts;
+        long propagationsBefore = propagations;
+        int restarts = 0;
+        int status;
+        do {
+            int budget = luby(restarts++) * restartUnit;
+            status = search(budget);
+        } while (status == 0);
+        metrics.recordSearch(decisions - decisionsBefore, conflicts - conflictsBefore,
+            propagations - propagationsBefore);
+        if (status == INTERRUPTED) {
+            cancelUntil(0);
+            interrupted = false;
+            throw new SolverInterruptedException();
+        }
+        boolean result = status > 0;
+        if (result) {
+            if (model == null || model.length != numVars + 1)
+                model = new int[numVars + 1];
+            for (int v = 1; v <= numVars; v++)
+                model[v] = assigns[v] == TRUE ? SATSolver.TRUE : SATSolver.FALSE;
+        }
+        cancelUntil(0);
+        return result;
+    }
+
+    /**
+     * @return the model of the last satisfiable solve, in an array that
+     *         the next one overwrites
+     */
+    public int[] getModel() {
+        return model;
+    }
+
+    /**
+     * @return the assumptions the last unsatisfiable solve found refuted:
+     *         the one it found false and those of the decisions that
+     *         implied its negation
+     */
+    public int[] getFailedAssumptions() {
+        return Arrays.copyOf(failed, numFailed);
+    }
+
+    /**
+     * @return the number of decisions made since the engine was created
+     */
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * @return the number of literals propagated since the engine was created
+     */
+    public long getPropagations() {
+        return propagations;
+    }
+
+    /**
+     * @return the number of conflicts found since the engine was created
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return the heuristics of the engine, e.g. cdcl(100, 0.95, -)
+     */
+    public String toString() {
+        return "cdcl(" + restartUnit + ", " + varDecay + ", " + (positivePhase ? "+" : "-") + ")";
+    }
+
+    /**
+     * Search for a model until one is found, the clauses are refuted or
+     * the conflict budget of this restart is used up.
+     *
+     * @param budget: the number of conflicts allowed before restarting
+     * @return 1 if satisfiable, -1 if unsatisfiable (possibly only under
+     *         the assumptions), 0 on restart, INTERRUPTED if interrupted
+     */
+    private int search(int budget) {
+        int conflictCount = 0;
+        if (learnt.length < numVars + 1)
+            learnt = new int[numVars + 1];
+        while (true) {
+            if (interrupted)
+                return INTERRUPTED;
+            Clause confl = propagate();
+            if (confl != null) {
+                conflicts++;
+                conflictCount++;
+                if (numLevels == 0) {
+                    ok = false;
+                    return -1;
+                }
+                int size = analyze(confl, learnt);
+                int backLevel = size == 1 ? 0 : level[learnt[1] >> 1];
+                cancelUntil(backLevel);
+                if (size == 1)
+                    enqueue(learnt[0], null);
+                else {
+                    Clause c = new Clause(Arrays.copyOf(learnt, size), true);
+                    c.lbd = computeLbd(c.lits);
+                    learnts.add(c);
+                    attach(c);
+                    bumpClause(c);
+                    enqueue(learnt[0], c);
+                }
+                varInc /= varDecay;
+                clauseInc /= CLAUSE_DECAY;
+            }
+            else {
+                if (conflictCount >= budget) {
+                    cancelUntil(0);
+                    return 0;
+                }
+                if (learnts.size() - trailSize >= maxLearnts) {
+                    reduceLearnts();
+                    maxLearnts *= 1.1;
+                }
+                // Assumptions are decided first, one per decision level
+                int next = -1;
+                while (numLevels < numAssumptions) {
+                    int p = assumptions[numLevels];
+                    if (value(p) == TRUE)
+                        newDecisionLevel();
+                    else if (value(p) == FALSE) {
+                        analyzeFinal(p);
+                        return -1;
+                    }
+                    else {
+                        next = p;
+                        break;
+                    }
+                }
+                if (next < 0)
+                    next = pickBranchLit();
+                if (next < 0)
+                    return 1;
+                decisions++;
+                newDecisionLevel();
+                enqueue(next, null);
+            }
+        }
+    }
+
+    /**
+     * Propagate all enqueued assignments.
+     *
+     * @return the conflicting clause, or null if there is no conflict
+     */
+    private Clause propagate() {
+        Clause confl = null;
+        while (qhead < trailSize) {
+            int p = trail[qhead++];
+            int falseLit = p ^ 1;
+            Clause[] ws = watches[falseLit];
+            int n = watchSize[falseLit];
+            int i = 0;
+            int j = 0;
+            propagations++;
+            while (i < n) {
+                Clause c = ws[i++];
+                int[] lits = c.lits;
+                if (lits[0] == falseLit) {
+                    lits[0] = lits[1];
+                    lits[1] = falseLit;
+                }
+                int first = lits[0];
+                if (value(first) == TRUE) {
+                    ws[j++] = c;
+                    continue;
+                }
+                // Look for a new literal to watch
+                boolean found = false;
+                for (int k = 2; k < lits.length; k++) {
+                    if (value(lits[k]) != FALSE) {
+                        lits[1] = lits[k];
+                        lits[k] = falseLit;
+                        watch(lits[1], c);
+                        found = true;
+                        break;
+                    }
+                }
+                if (found)
+                    continue;
+                ws[j++] = c;
+                if (value(first) == FALSE) {
+                    confl = c;
+                    qhead = trailSize;
+                    while (i < n)
+                        ws[j++] = ws[i++];
+                }
+                else
+                    enqueue(first, c);
+            }
+            watchSize[falseLit] = j;
+        }
+        return confl;
+    }
+
+    /**
+     * Find the assumptions that imply the negation of the assumption p,
+     * walking the implication graph back from it to the decisions.  Below
+     * numAssumptions every decision is an assumption.
+     *
+     * @param p: the literal code of an assumption found false
+     */
+    private void analyzeFinal(int p) {
+        if (failed.length < numAssumptions)
+            failed = new int[numAssumptions];
+        numFailed = 0;
+        failed[numFailed++] = toDimacs(p);
+        if (numLevels == 0 || level[p >> 1] == 0)
+            return;
+        seen[p >> 1] = true;
+        for (int i = trailSize - 1; i >= trailLim[0]; i--) {
+            int v = trail[i] >> 1;
+            if (!seen[v])
+                continue;
+            Clause c = reason[v];
+            if (c == null)
+                failed[numFailed++] = toDimacs(trail[i]);
+            else
+                for (int k = 1; k < c.lits.length; k++)
+                    if (level[c.lits[k] >> 1] > 0)
+                        seen[c.lits[k] >> 1] = true;
+            seen[v] = false;
+        }
+    }
+
+    /**
+     * First-UIP conflict analysis.  The learned clause is written to out
+     * with the asserting literal first and a literal of the backjump
+     * level second.
+     *
+     * @param confl: the conflicting clause
+     * @param out:   buffer receiving the learned clause
+     * @return the size of the learned clause
+     */
+    private int analyze(Clause confl, int[] out) {
+        int pathCount = 0;
+        int p = -1;
+        int size = 1;
+        int index = trailSize - 1;
+        do {
+            if (confl.learnt)
+                bumpClause(confl);
+            int[] lits = confl.lits;
+            for (int k = (p == -1 ? 0 : 1); k < lits.length; k++) {
+                int q = lits[k];
+                int v = q >> 1;
+                if (!seen[v] && level[v] > 0) {
+                    bumpVar(v);
+                    seen[v] = true;
+                    if (level[v] >= numLevels)
+                        pathCount++;
+                    else
+                        out[size++] = q;
+                }
+            }
+            while (!seen[trail[index] >> 1])
+                index--;
+            p = trail[index--];
+            confl = reason[p >> 1];
+            seen[p >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        out[0] = p ^ 1;
+
+        // Local minimization: drop literals implied by other literals of
+        // the learned clause
+        if (toClear.length < size)
+            toClear = new int[out.length];
+        System.arraycopy(out, 1, toClear, 0, size - 1);
+        int kept = 1;
+        for (int k = 1; k < size; k++) {
+            Clause r = reason[out[k] >> 1];
+            boolean redundant = r != null;
+            if (r != null)
+                for (int m = 1; m < r.lits.length; m++) {
+                    int v = r.lits[m] >> 1;
+                    if (!seen[v] && level[v] > 0) {
+                        redundant = false;
+                        break;
+                    }
+                }
+            if (!redundant)
+                out[kept++] = out[k];
+        }
+        for (int k = 0; k < size - 1; k++)
+            seen[toClear[k] >> 1] = false;
+        size = kept;
+
+        // Move a literal of the highest remaining level to position 1
+        if (size > 1) {
+            int max = 1;
+            for (int k = 2; k < size; k++)
+                if (level[out[k] >> 1] > level[out[max] >> 1])
+                    max = k;
+            int tmp = out[1];
+            out[1] = out[max];
+            out[max] = tmp;
+        }
+        return size;
+    }
+
+    /**
+     * Delete about half of the learned clauses, keeping glue clauses
+     * (LBD 2 or less), clauses that are reasons of current assignments and
+     * the most active of the rest.
+     */
+    private void reduceLearnts() {
+        Collections.sort(learnts, new Comparator<Clause>() {
+            public int compare(Clause a, Clause b) {
+                if (a.lbd != b.lbd)
+                    return b.lbd - a.lbd;
+                return Double.compare(a.activity, b.activity);
+            }
+        });
+        int target = learnts.size() / 2;
+        int removed = 0;
+        ArrayList<Clause> kept = new ArrayList<Clause>();
+        for (Clause c : learnts) {
+            if (removed < target && c.lbd > 2 && !locked(c)) {
+                c.deleted = true;
+                removed++;
+            }
+            else
+                kept.add(c);
+        }
+        learnts = kept;
+        purgeWatches();
+    }
+
+    /**
+     * Remove the clauses satisfied at the root, such as the clauses
+     * guarded by a selector variable that has been disabled, which would
+     * otherwise be visited by every propagation.  As in MiniSat, this is
+     * only done when the root assignment has grown and there has been
+     * about as much propagation as the removal costs since the last time.
+     */
+    private void simplify() {
+        if (numLevels > 0 || qhead < trailSize || trailSize == simplifiedAt || propagations < simplifyAfter)
+            return;
+        long literals = removeSatisfied(clauses) + removeSatisfied(learnts);
+        purgeWatches();
+        simplifiedAt = trailSize;
+        simplifyAfter = propagations + literals;
+    }
+
+    /**
+     * Mark the clauses of the list satisfied at the root deleted and drop
+     * them from the list.
+     *
+     * @return the number of literals of the clauses kept
+     */
+    private long removeSatisfied(ArrayList<Clause> list) {
+        long literals = 0;
+        int j = 0;
+        for (int i = 0; i < list.size(); i++) {
+            Clause c = list.get(i);
+            boolean satisfied = false;
+            for (int lit : c.lits)
+                if (value(lit) == TRUE) {
+                    satisfied = true;
+                    break;
+                }
+            if (satisfied)
+                c.deleted = true;
+            else {
+                list.set(j++, c);
+                literals += c.lits.length;
+            }
+        }
+        list.subList(j, list.size()).clear();
+        return literals;
+    }
+
+    /**
+     * Strip deleted clauses from the watch lists.
+     */
+    private void purgeWatches() {
+        for (int lit = 2; lit < watches.length; lit++) {
+            Clause[] ws = watches[lit];
+            int j = 0;
+            for (int i = 0; i < watchSize[lit]; i++)
+                if (!ws[i].deleted)
+                    ws[j++] = ws[i];
+            for (int i = j; i < watchSize[lit]; i++)
+                ws[i] = null;
+            watchSize[lit] = j;
+        }
+    }
+
+    private boolean locked(Clause c) {
+        int v = c.lits[0] >> 1;
+        return reason[v] == c && value(c.lits[0]) == TRUE;
+    }
+
+    private int computeLbd(int[] lits) {
+        stamp++;
+        int lbd = 0;
+        for (int lit : lits) {
+            int l = level[lit >> 1];
+            if (levelStamp[l] != stamp) {
+                levelStamp[l] = stamp;
+                lbd++;
+            }
+        }
+        return lbd;
+    }
+
+    /**
+     * Pick the unassigned decision variable of highest activity, using its
+     * saved phase, or once they are all assigned any variable propagation
+     * left unassigned.  Variables no clause watches are skipped: every
+     * clause holding one is satisfied, since propagation would otherwise
+     * have moved a watch to it, so the model may take either value.  This
+     * is what becomes of variables the preprocessor eliminated.
+     *
+     * @return the decision literal, or -1 if all variables are assigned
+     */
+    private int pickBranchLit() {
+        while (heapSize > 0) {
+            int v = heapRemoveMax();
+            if (assigns[v] == UNDEF)
+                return 2 * v + (polarity[v] ? 0 : 1);
+        }
+        if (decisionVars > 0)
+            for (int v = decisionVars + 1; v <= numVars; v++)
+                if (assigns[v] == UNDEF && watchSize[2 * v] + watchSize[2 * v + 1] > 0)
+                    return 2 * v + (polarity[v] ? 0 : 1);
+        return -1;
+    }
+
+    private void newDecisionLevel() {
+        trailLim[numLevels++] = trailSize;
+    }
+
+    /**
+     * Undo all assignments above the given decision level.
+     *
+     * @param target: the decision level to return to
+     */
+    private void cancelUntil(int target) {
+        if (numLevels <= target)
+            return;
+        for (int k = trailSize - 1; k >= trailLim[target]; k--) {
+            int lit = trail[k];
+            int v = lit >> 1;
+            assigns[v] = UNDEF;
+            reason[v] = null;
+            polarity[v] = (lit & 1) == 0;
+            if (heapIndex[v] < 0 && isDecision(v))
+                heapInsert(v);
+        }
+        trailSize = trailLim[target];
+        qhead = trailSize;
+        numLevels = target;
+    }
+
+    private void enqueue(int lit, Clause from) {
+        int v = lit >> 1;
+        assigns[v] = (lit & 1) == 0 ? TRUE : FALSE;
+        level[v] = numLevels;
+        reason[v] = from;
+        trail[trailSize++] = lit;
+    }
+
+    private void attach(Clause c) {
+        watch(c.lits[0], c);
+        watch(c.lits[1], c);
+    }
+
+    private void watch(int lit, Clause c) {
+        Clause[] ws = watches[lit];
+        if (ws == null)
+            ws = watches[lit] = new Clause[4];
+        else if (watchSize[lit] == ws.length)
+            ws = watches[lit] = Arrays.copyOf(ws, 2 * ws.length);
+        ws[watchSize[lit]++] = c;
+    }
+
+    private byte value(int lit) {
+        byte v = assigns[lit >> 1];
+        return (lit & 1) == 0 ? v : (byte) -v;
+    }
+
+    private static int toLit(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+
+    private static int toDimacs(int lit) {
+        return (lit & 1) == 0 ? lit >> 1 : -(lit >> 1);
+    }
+
+    private void bumpVar(int v) {
+        if ((activity[v] += varInc) > 1e100) {
+            for (int u = 1; u <= numVars; u++)
+                activity[u] *= 1e-100;
+            varInc *= 1e-100;
+        }
+        if (heapIndex[v] >= 0)
+            heapUp(heapIndex[v]);
+    }
+
+    private void bumpClause(Clause c) {
+        if ((c.activity += clauseInc) > 1e20) {
+            for (Clause d : learnts)
+                d.activity *= 1e-20;
+            clauseInc *= 1e-20;
+        }
+    }
+
+    /**
+     * The Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ...
+     *
+     * @param i: the index in the sequence, starting from 0
+     * @return the i-th element of the sequence
+     */
+    private static int luby(int i) {
+        int size = 1;
+        int seq = 0;
+        while (size < i + 1) {
+            seq++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            seq--;
+            i = i % size;
+        }
+        return 1 << seq;
+    }
+
+    // Binary max-heap of variables ordered by activity
+
+    private void heapInsert(int v) {
+        heapIndex[v] = heapSize;
+        heap[heapSize++] = v;
+        heapUp(heapIndex[v]);
+    }
+
+    private int heapRemoveMax() {
+        int top = heap[0];
+        heapIndex[top] = -1;
+        int last = heap[--heapSize];
+        if (heapSize > 0) {
+            heap[0] = last;
+            heapIndex[last] = 0;
+            heapDown(0);
+        }
+        return top;
+    }
+
+    private void heapUp(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (activity[heap[parent]] >= activity[v])
+                break;
+            heap[i] = heap[parent];
+            heapIndex[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        heapIndex[v] = i;
+    }
+
+    private void heapDown(int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]])
+                child++;
+            if (activity[heap[child]] <= activity[v])
+                break;
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        heapIndex[v] = i;
+    }
+}
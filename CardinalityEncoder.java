@@ -0,0 +1,223 @@
+/**
+ * CardinalityEncoder.java - CNF encodings of "at most one of these
+ * literals is true" and "exactly k of these literals are true".
+ *
+ * The pairwise encoding needs no new variables but n(n-1)/2 clauses, so
+ * it only suits short lists.  The sequential (ladder) and commander
+ * encodings use O(n) clauses and auxiliary variables.  Every auxiliary
+ * variable is defined as the disjunction of the literals it stands for
+ * (both directions are encoded), so it is a function of the original
+ * variables: the encodings keep unit propagation as strong as the
+ * pairwise one and leave model counts unchanged.  The same holds for the
+ * sequential counter encoding "exactly k".
+ */
+
+public class CardinalityEncoder {
+
+    /**
+     * The encodings of an at-most-one constraint.
+     */
+    public enum Encoding {
+        // PAIRWISE: a binary clause for each pair of literals
+        PAIRWISE,
+        // SEQUENTIAL: s_i <=> (x_1 v .. v x_i), forbidding x_i when s_i-1
+        SEQUENTIAL,
+        // COMMANDER: groups under commanders c <=> (x v ..), at most one
+        // commander true
+        COMMANDER,
+        // AUTO: PAIRWISE for at most AUTO_PAIRWISE literals, SEQUENTIAL above
+        AUTO
+    }
+
+    /**
+     * Where the clauses of an encoding go.
+     */
+    public interface ClauseSink {
+        void addClause(int[] clause);
+    }
+
+    // AUTO_PAIRWISE: the longest list AUTO encodes pairwise.  Binary
+    // clauses propagate cheaply, while the auxiliary chains roughly double
+    // the assignments per solve, so on the in-process engine pairwise
+    // solves faster at any table or category size a game reaches; past
+    // this length its quadratic clause count is the larger cost
+    public static final int AUTO_PAIRWISE = 32;
+    // GROUP_SIZE: the number of literals under one commander
+    private static final int GROUP_SIZE = 3;
+
+    private final ClauseSink sink;
+    // nextVar: the next auxiliary variable
+    private int nextVar;
+
+    /**
+     * @param sink:    receives the clauses
+     * @param maxVar:  the largest variable in use; auxiliary variables are
+     *                 numbered from maxVar + 1
+     */
+    public CardinalityEncoder(ClauseSink sink, int maxVar) {
+        this.sink = sink;
+        this.nextVar = maxVar + 1;
+    }
+
+    /**
+     * @return the largest variable in use, auxiliary ones included
+     */
+    public int getMaxVar() {
+        return nextVar - 1;
+    }
+
+    /**
+     * Encode that at most one of the literals is true.
+     *
+     * @param literals: the literals, of distinct variables
+     * @param encoding: the encoding to use
+     */
+    public void atMostOne(int[] literals, Encoding encoding) {
+        if (encoding == Encoding.AUTO)
+            encoding = literals.length <= AUTO_PAIRWISE ? Encoding.PAIRWISE : Encoding.SEQUENTIAL;
+        switch (encoding) {
+        case PAIRWISE:
+            pairwise(literals);
+            break;
+        case SEQUENTIAL:
+            sequential(literals);
+            break;
+        default:
+            commander(literals);
+            break;
+        }
+    }
+
+    /**
+     * Encode that exactly one of the literals is true.
+     *
+     * @param literals: the literals, of distinct variables
+     * @param encoding: the encoding of the at-most-one part
+     */
+    public void exactlyOne(int[] literals, Encoding encoding) {
+        sink.addClause(literals.clone());
+        atMostOne(literals, encoding);
+    }
+
+    /**
+     * Encode that exactly k of the literals are true with a sequential
+     * counter: c_i,j <=> (c_i-1,j v (c_i-1,j-1 ^ x_i)), so that c_i,j
+     * holds iff at least j of x_1..x_i do, for j up to k; x_i is forbidden
+     * once c_i-1,k holds, and c_n,k must hold.  This takes about nk new
+     * variables and four times as many clauses.
+     *
+     * @param literals: the literals, of distinct variables
+     * @param k:        the number of them that are true
+     */
+    public void exactly(int[] literals, int k) {
+        int n = literals.length;
+        if (k < 0 || k > n)
+            throw new IllegalArgumentException("Cannot make " + k + " of " + n + " literals true");
+        if (k == 0) {
+            for (int literal : literals)
+                sink.addClause(new int[] { -literal });
+            return;
+        }
+        if (k == n) {
+            for (int literal : literals)
+                sink.addClause(new int[] { literal });
+            return;
+        }
+        // previous[j]: c_i-1,j, with previous[0] standing for true and 0
+        // for a count that cannot be reached yet
+        int[] previous = new int[k + 1];
+        int[] counts = new int[k + 1];
+        for (int i = 0; i < n; i++) {
+            int x = literals[i];
+            if (previous[k] != 0)
+                sink.addClause(new int[] { -previous[k], -x });
+            for (int j = 1; j <= Math.min(i + 1, k); j++) {
+                int a = previous[j];
+                int b = previous[j - 1];
+                if (i == 0) {
+                    // c_1,1 is x_1 itself
+                    counts[j] = x;
+                    continue;
+                }
+                int c = nextVar++;
+                counts[j] = c;
+                if (a != 0)
+                    sink.addClause(new int[] { -a, c });
+                if (j == 1)
+                    sink.addClause(new int[] { -x, c });
+                else
+                    sink.addClause(new int[] { -b, -x, c });
+                if (a == 0)
+                    sink.addClause(new int[] { -c, x });
+                else
+                    sink.addClause(new int[] { -c, a, x });
+                if (j > 1)
+                    sink.addClause(a == 0 ? new int[] { -c, b } : new int[] { -c, a, b });
+            }
+            int[] t = previous;
+            previous = counts;
+            counts = t;
+        }
+        sink.addClause(new int[] { previous[k] });
+    }
+
+    private void pairwise(int[] x) {
+        for (int i = 0; i < x.length; i++)
+            for (int j = i + 1; j < x.length; j++)
+                sink.addClause(new int[] { -x[i], -x[j] });
+    }
+
+    /**
+     * s_1 is x_1 itself, and s_i for 1 < i < n is a new variable with
+     * s_i <=> s_i-1 v x_i; x_i is forbidden once s_i-1 holds.
+     */
+    private void sequential(int[] x) {
+        int n = x.length;
+        if (n <= 2) {
+            pairwise(x);
+            return;
+        }
+        int previous = x[0];
+        for (int i = 1; i < n; i++) {
+            sink.addClause(new int[] { -previous, -x[i] });
+            if (i == n - 1)
+                break;
+            int s = nextVar++;
+            sink.addClause(new int[] { -previous, s });
+            sink.addClause(new int[] { -x[i], s });
+            sink.addClause(new int[] { -s, previous, x[i] });
+            previous = s;
+        }
+    }
+
+    /**
+     * Split the literals into groups of GROUP_SIZE, encode each group
+     * pairwise, give it a commander c <=> (x v ..) and encode at most one
+     * commander the same way, down to a single group.
+     */
+    private void commander(int[] x) {
+        if (x.length <= GROUP_SIZE + 1) {
+            pairwise(x);
+            return;
+        }
+        int numGroups = (x.length + GROUP_SIZE - 1) / GROUP_SIZE;
+        int[] commanders = new int[numGroups];
+        for (int g = 0; g < numGroups; g++) {
+            int from = g * GROUP_SIZE;
+            int to = Math.min(from + GROUP_SIZE, x.length);
+            int[] group = new int[to - from];
+            System.arraycopy(x, from, group, 0, group.length);
+            pairwise(group);
+            int c = nextVar++;
+            commanders[g] = c;
+            int[] definition = new int[group.length + 1];
+            definition[0] = -c;
+            for (int k = 0; k < group.length; k++) {
+                sink.addClause(new int[] { -group[k], c });
+                definition[k + 1] = group[k];
+            }
+            sink.addClause(definition);
+        }
+        commander(commanders);
+    }
+}
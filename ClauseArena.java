@@ -0,0 +1,309 @@
+/**
+ * ClauseArena.java - compact storage for the permanent clauses of a
+ * SATSolver.
+ *
+ * All literals live in one flat int array; clause i occupies
+ * lits[start[i]] .. lits[start[i + 1] - 1], sorted.  For each literal an
+ * occurrence list records the clauses containing it.  Clauses are
+ * normalized on insertion, and a clause is not stored if it is a
+ * tautology or is subsumed by (which includes duplicating) a clause
+ * already stored.
+ *
+ * An arena can be frozen and then shared as the base of any number of
+ * overlay arenas.  An overlay sees the base clauses first (indexes
+ * 0 .. base.size() - 1) followed by its own, and stores only its own;
+ * the base is never written to again.
+ */
+
+import java.util.*;
+
+public class ClauseArena {
+
+    // base: the frozen arena this one extends, or null
+    private ClauseArena base;
+    // baseSize: the number of clauses of the base
+    private int baseSize;
+    // frozen: true once the arena may be shared and must not change
+    private boolean frozen;
+
+    // lits: the literals of all clauses, clause after clause
+    private int[] lits = new int[1024];
+    private int numLits;
+    // start[i]: the offset of clause i in lits; start[numClauses] == numLits
+    private int[] start = new int[257];
+    private int numClauses;
+
+    // occurrences[code]: the clauses containing the literal with that code
+    private int[][] occurrences = new int[2][];
+    private int[] occurrenceSize = new int[2];
+
+    // mark[code] == stamp for the literals of the clause being inserted
+    private int[] mark = new int[2];
+    private int stamp;
+    private int[] buffer = new int[16];
+
+    // Counts of clauses not stored
+    private long tautologies;
+    private long subsumed;
+
+    /**
+     * Construct an empty arena.
+     */
+    public ClauseArena() {
+    }
+
+    /**
+     * Construct an overlay on a frozen arena.
+     *
+     * @param base: the frozen arena whose clauses come first
+     */
+    public ClauseArena(ClauseArena base) {
+        if (!base.frozen)
+            throw new IllegalArgumentException("The base arena must be frozen");
+        this.base = base;
+        this.baseSize = base.size();
+        this.start = new int[17];
+        this.lits = new int[64];
+    }
+
+    /**
+     * Make the arena immutable so that it can be shared as a base.
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Insert a clause unless it is a tautology or subsumed by a clause
+     * already stored.  The given array is not retained.
+     *
+     * @param clause: the clause, an array of non-zero DIMACS literals
+     * @return true if the clause was stored
+     */
+    public boolean add(int[] clause) {
+        if (frozen)
+            throw new IllegalStateException("The arena is frozen");
+        // Normalize: sort, drop duplicate literals, detect tautologies
+        if (buffer.length < clause.length)
+            buffer = new int[2 * clause.length];
+        int n = 0;
+        for (int literal : clause) {
+            if (literal == 0)
+                throw new IllegalArgumentException("0 is not a literal: " + Arrays.toString(clause));
+            buffer[n++] = literal;
+        }
+        Arrays.sort(buffer, 0, n);
+        int size = 0;
+        for (int k = 0; k < n; k++)
+            if (size == 0 || buffer[size - 1] != buffer[k])
+                buffer[size++] = buffer[k];
+        for (int k = 0; k < size; k++)
+            if (Arrays.binarySearch(buffer, 0, size, -buffer[k]) >= 0) {
+                tautologies++;
+                return false;
+            }
+
+        if (isSubsumed(buffer, size)) {
+            subsumed++;
+            return false;
+        }
+
+        // Append
+        if (numLits + size > lits.length)
+            lits = Arrays.copyOf(lits, Math.max(2 * lits.length, numLits + size));
+        if (numClauses + 2 > start.length)
+            start = Arrays.copyOf(start, 2 * start.length);
+        System.arraycopy(buffer, 0, lits, numLits, size);
+        for (int k = 0; k < size; k++)
+            addOccurrence(buffer[k], baseSize + numClauses);
+        numLits += size;
+        start[++numClauses] = numLits;
+        return true;
+    }
+
+    /**
+     * Remove the clauses stored last, keeping the given number.  Clauses
+     * not stored because they were subsumed by a removed clause are not
+     * restored, so only clauses added after the arena had the given size
+     * should depend on the removed ones.
+     *
+     * @param size: the number of clauses to keep, at least the size of the
+     *              base
+     */
+    public void truncate(int size) {
+        if (frozen)
+            throw new IllegalStateException("The arena is frozen");
+        if (size < baseSize || size > size())
+            throw new IllegalArgumentException("Cannot truncate " + size() + " clauses to " + size);
+        // Each clause is the last entry of its literals' occurrence lists
+        while (baseSize + numClauses > size) {
+            numClauses--;
+            for (int p = start[numClauses]; p < start[numClauses + 1]; p++)
+                occurrenceSize[code(lits[p])]--;
+        }
+        numLits = start[numClauses];
+    }
+
+    /**
+     * @return the number of clauses stored, including those of the base
+     */
+    public int size() {
+        return baseSize + numClauses;
+    }
+
+    /**
+     * @param i: the index of a clause
+     * @return the number of literals of the clause
+     */
+    public int length(int i) {
+        if (i < baseSize)
+            return base.length(i);
+        i -= baseSize;
+        return start[i + 1] - start[i];
+    }
+
+    /**
+     * @param i: the index of a clause
+     * @param k: the position of a literal in the clause
+     * @return the literal
+     */
+    public int literal(int i, int k) {
+        if (i < baseSize)
+            return base.literal(i, k);
+        return lits[start[i - baseSize] + k];
+    }
+
+    /**
+     * @param i: the index of a clause
+     * @return a copy of the clause
+     */
+    public int[] get(int i) {
+        if (i < baseSize)
+            return base.get(i);
+        i -= baseSize;
+        return Arrays.copyOfRange(lits, start[i], start[i + 1]);
+    }
+
+    /**
+     * @return the number of literals of all clauses stored, including
+     *         those of the base
+     */
+    public int numLiterals() {
+        return (base == null ? 0 : base.numLiterals()) + numLits;
+    }
+
+    /**
+     * @return the number of literals stored by this arena itself, not
+     *         counting the base
+     */
+    public int numOwnLiterals() {
+        return numLits;
+    }
+
+    /**
+     * @param literal: a DIMACS literal
+     * @return the number of stored clauses containing the literal
+     */
+    public int occurrenceCount(int literal) {
+        int code = code(literal);
+        int count = code < occurrenceSize.length ? occurrenceSize[code] : 0;
+        return base == null ? count : base.occurrenceCount(literal) + count;
+    }
+
+    /**
+     * @param literal: a DIMACS literal
+     * @param k:       a position in the literal's occurrence list
+     * @return the index of the k-th clause containing the literal
+     */
+    public int occurrence(int literal, int k) {
+        if (base != null) {
+            int inBase = base.occurrenceCount(literal);
+            if (k < inBase)
+                return base.occurrence(literal, k);
+            k -= inBase;
+        }
+        return occurrences[code(literal)][k];
+    }
+
+    /**
+     * @return the number of tautologies not stored
+     */
+    public long getTautologies() {
+        return tautologies;
+    }
+
+    /**
+     * @return the number of duplicate or subsumed clauses not stored
+     */
+    public long getSubsumed() {
+        return subsumed;
+    }
+
+    /**
+     * Remove all clauses, detaching the arena from its base.
+     */
+    public void clear() {
+        if (frozen)
+            throw new IllegalStateException("The arena is frozen");
+        base = null;
+        baseSize = 0;
+        numLits = 0;
+        numClauses = 0;
+        Arrays.fill(occurrenceSize, 0);
+    }
+
+    /**
+     * Check whether a stored clause is a subset of the given sorted clause.
+     * Such a clause has its first (smallest) literal in the given clause,
+     * so only the occurrence lists of the clause's own literals are
+     * visited, and each candidate is checked only from its first literal.
+     */
+    private boolean isSubsumed(int[] clause, int size) {
+        stamp++;
+        for (int k = 0; k < size; k++) {
+            int code = code(clause[k]);
+            if (code >= mark.length)
+                mark = Arrays.copyOf(mark, 2 * code + 2);
+            mark[code] = stamp;
+        }
+        for (int k = 0; k < size; k++) {
+            int count = occurrenceCount(clause[k]);
+            for (int m = 0; m < count; m++) {
+                int i = occurrence(clause[k], m);
+                int length = length(i);
+                if (literal(i, 0) != clause[k] || length > size)
+                    continue;
+                boolean subset = true;
+                for (int p = 1; p < length && subset; p++) {
+                    int c = code(literal(i, p));
+                    subset = c < mark.length && mark[c] == stamp;
+                }
+                if (subset)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private void addOccurrence(int literal, int clause) {
+        int code = code(literal);
+        if (code >= occurrences.length) {
+            occurrences = Arrays.copyOf(occurrences, 2 * code + 2);
+            occurrenceSize = Arrays.copyOf(occurrenceSize, 2 * code + 2);
+        }
+        int[] occ = occurrences[code];
+        if (occ == null)
+            occ = occurrences[code] = new int[4];
+        else if (occurrenceSize[code] == occ.length)
+            occ = occurrences[code] = Arrays.copyOf(occ, 2 * occ.length);
+        occ[occurrenceSize[code]++] = clause;
+    }
+
+    private static int code(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+}
@@ -2,10 +2,13 @@
 /**
  * ClueReasoner.java - project skeleton for a propositional reasoner
  * for the game of Clue.  Unimplemented portions have the comment "TO
- * BE IMPLEMENTED AS AN EXERCISE".  The reasoner does not include
- * knowledge of how many cards each player holds.  See
+ * BE IMPLEMENTED AS AN EXERCISE".  The reasoner includes knowledge of
+ * how many cards each player holds, when the GameVariant gives it.  See
  * http://cs.gettysburg.edu/~tneller/nsf/clue/ for details.
  *
+ * The players and cards are those of a GameVariant, by default the
+ * standard game.
+ *
  * @author Todd Neller
  * @version 1.0
  *
@@ -32,9 +35,33 @@ Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class ClueReasoner {
 
+    // NONE: the id of an absent refuter or card shown, for the methods
+    // taking player and card ids
+    public static final int NONE = -1;
+    // ROOMS: the index of the rooms among the categories; a suggestion is
+    // made in the room the suggester is in
+    private static final int ROOMS = 2;
+
+    /**
+     * Told about each cell of the notepad as it becomes settled, whether
+     * by the clauses of a hand, suggestion or accusation or by a query.
+     * Listeners are called on the thread that changed the knowledge,
+     * while it holds the reasoner, so they should return quickly.
+     */
+    public interface DeductionListener {
+        /**
+         * @param player: the name of the place, a player or the case file
+         * @param card:   the name of the card
+         * @param value:  SATSolver.TRUE if the card is known to be in the
+         *                place, SATSolver.FALSE if known not to be
+         */
+        void onDeduction(String player, String card, int value);
+    }
+
     // numPlayers: The number of players
     private int numPlayers;
     // playerNum: the index of the player in the players array
@@ -43,89 +70,226 @@ public class ClueReasoner {
     private int numCards;
     // the SATSolver used to reason
     private SATSolver solver;
+    // variant: the players and cards of the game
+    private GameVariant variant;
     // caseFile: the String representing the Case File
-    private String caseFile = "cf";
+    private String caseFile = GameVariant.CASE_FILE;
     // players: an array of Strings representing the players in their turn order
-    private String[] players = { "sc", "mu", "wh", "gr", "pe", "pl" };
+    private String[] players;
     // suspects: an array of Strings representing the suspects
-    private String[] suspects = { "mu", "pl", "gr", "pe", "sc", "wh" };
+    private String[] suspects;
     // weapons: an array of Strings representing the weapons
-    private String[] weapons = { "kn", "ca", "re", "ro", "pi", "wr" };
+    private String[] weapons;
     // rooms: an array of Strings representing the rooms
-    private String[] rooms = { "ha", "lo", "di", "ki", "ba", "co", "bi", "li", "st" };
-    // cards: an array of Strings representing all suspects, weapons, and rooms
+    private String[] rooms;
+    // categories: the cards of each category, suspects, weapons and rooms first
+    private String[][] categories;
+    // cards: an array of Strings representing all cards, category after category
     private String[] cards;
+    // categoryOf[c]: the category of card c
+    private int[] categoryOf;
+    // version: the knowledge base version, incremented with every clause added
+    private long version;
+    // cache: the cells already derived, indexed by getPairNum - 1
+    private DeductionCache cache;
+    // listeners: told about each cell settled
+    private List<DeductionListener> listeners = new CopyOnWriteArrayList<DeductionListener>();
+    // numFacts: the number of root literals of the solver already settled
+    private int numFacts;
+    // pending: the first numPending entries are cells propagated true
+    // while the knowledge base was not yet known to be satisfiable
+    private int[] pending = new int[16];
+    private int numPending;
+    // playerIds, cardIds: the id of each name, the case file being player
+    // numPlayers
+    private HashMap<String, Integer> playerIds = new HashMap<String, Integer>();
+    private HashMap<String, Integer> cardIds = new HashMap<String, Integer>();
+    // buffer: the clauses of the event being noted, each followed by 0,
+    // added to the solver at once; bufferSize entries hold numBuffered
+    // clauses
+    private int[] buffer = new int[64];
+    private int bufferSize;
+    private int numBuffered;
+    // triple: the cards of a three-card suggestion or accusation
+    private int[] triple = new int[3];
+    // events: the events noted, for explain, event e starting at
+    // eventStart[e]: its GameRecord code, its player, two more ints (the
+    // refuter and card shown of a suggestion, 1 or 0 for a correct or
+    // wrong accusation), its number of cards, the cards, its number of
+    // literals and its clauses, each followed by 0
+    private int[] events = new int[256];
+    private int eventsSize;
+    private int[] eventStart = new int[16];
+    private int numEvents;
+    // given: the clauses of a snapshot the reasoner was restored from,
+    // which explain takes as given
+    private int[][] given = new int[0][];
+    // explainer: the general knowledge, the given clauses and the clauses
+    // of the first numExplained events, those of event e guarded by the
+    // selector firstSelector + e; built by the first call to explain
+    private SATSolver explainer;
+    private int firstSelector;
+    private int numExplained;
+    // explanations[cell]: the events found to force the value
+    // explainedAs[cell] of the cell, or null
+    private int[][] explanations;
+    private int[] explainedAs;
+    // baseKnowledge: the general knowledge about each variant played so
+    // far, shared by all reasoners of the variant
+    private static Map<GameVariant, SATSolver> baseKnowledge = new HashMap<GameVariant, SATSolver>();
 
     /**
      * Constructing Clue Reasoners by initializing the card categories and the
-     * SATSolver with general knowledge about the game
+     * SATSolver with general knowledge about the game.  The general knowledge
+     * is compiled once and shared by all reasoners; each reasoner only
+     * stores the clauses of its own game.
      * 
      */
 
     public ClueReasoner() {
+        this(GameVariant.STANDARD);
+    }
+
+    /**
+     * Constructing a Clue Reasoner like ClueReasoner(), answering queries
+     * that need search with the given backend
+     * 
+     * @param backend: the SolverBackend used to reason, e.g. a ZchaffSolver
+     */
+    public ClueReasoner(SolverBackend backend) {
+        this(GameVariant.STANDARD, backend);
+    }
+
+    /**
+     * Constructing a Clue Reasoner like ClueReasoner() for a variant of the
+     * game
+     * 
+     * @param variant: the players and cards of the game
+     */
+    public ClueReasoner(GameVariant variant) {
+        this(variant, new SATSolver(getBaseKnowledge(variant)));
+    }
+
+    /**
+     * Constructing a Clue Reasoner for a variant of the game, answering
+     * queries that need search with the given backend
+     * 
+     * @param variant: the players and cards of the game
+     * @param backend: the SolverBackend used to reason, e.g. a ZchaffSolver
+     */
+    public ClueReasoner(GameVariant variant, SolverBackend backend) {
+        this(variant, new SATSolver(getBaseKnowledge(variant), backend));
+    }
+
+    /**
+     * Constructing a Clue Reasoner by initializing the card categories,
+     * reasoning with the given solver as it is
+     * 
+     * @param variant: the players and cards of the game
+     * @param solver:  the SATSolver used to reason
+     */
+    private ClueReasoner(GameVariant variant, SATSolver solver) {
+        this.variant = variant;
+        players = variant.getPlayers();
         numPlayers = players.length;
 
         // Initialize card info
-        cards = new String[suspects.length + weapons.length + rooms.length];
+        categories = variant.getCategories();
+        suspects = categories[0];
+        weapons = categories[1];
+        rooms = categories[ROOMS];
+        cards = variant.getCards();
+        numCards = cards.length;
+        categoryOf = new int[numCards];
         int i = 0;
-        // Suspects cards
-        for (String card : suspects)
-            cards[i++] = card;
-        // Weapons cards
-        for (String card : weapons)
-            cards[i++] = card;
-        // Rooms cards
-        for (String card : rooms)
-            cards[i++] = card;
-
-        numCards = i;
+        for (int k = 0; k < categories.length; k++)
+            for (int j = 0; j < categories[k].length; j++)
+                categoryOf[i++] = k;
+        for (int p = 0; p < numPlayers; p++)
+            playerIds.put(players[p], p);
+        playerIds.put(caseFile, numPlayers);
+        for (int c = 0; c < numCards; c++)
+            cardIds.put(cards[c], c);
 
         // Initialize solver
-        solver = new SATSolver();
-        // Populating the solver with general caluses that expresses general knowledge
-        // about the game
-        addInitialClauses();
+        this.solver = solver;
+        cache = new DeductionCache(numCards * (numPlayers + 1));
     }
 
     /**
+     * Compile the general knowledge about a variant of the game into a
+     * frozen SATSolver the first time it is needed.  Reasoners of the
+     * variant reason over SATSolver overlays of it.
      * 
-     * We look at every element of the array of cards to find an element with a
-     * matching String and we return the index of such value.
-     * We treat the case file as a special type of player with an index one greater
-     * than the last player.
-     * Each such index represents a different possible place a card can be. If the
-     * caller passes an invalid player String as a parameter, the return value is
-     * -1.
-     * 
-     * @param player: the name of the Player
-     * @return the index number of the player represented by the given input
+     * @param variant: the players and cards of the game
+     * @return the frozen SATSolver holding the general clauses
      */
-    private int getPlayerNum(String player) {
-        if (player.equals(caseFile))
-            return numPlayers;
-        for (int i = 0; i < numPlayers; i++)
-            if (player.equals(players[i]))
-                return i;
-        System.out.println("Illegal player: " + player);
-        return -1;
+    public static synchronized SATSolver getBaseKnowledge(GameVariant variant) {
+        SATSolver knowledge = baseKnowledge.get(variant);
+        if (knowledge == null) {
+            // Populating the solver with general caluses that expresses general
+            // knowledge about the game
+            ClueReasoner builder = new ClueReasoner(variant, new SATSolver());
+            builder.addInitialClauses();
+            knowledge = builder.solver.freeze();
+            baseKnowledge.put(variant, knowledge);
+        }
+        return knowledge;
     }
 
     /**
-     * We look at every element of the array of cards to find an element with a
-     * matching String and we return the index of such value.
-     * Each such index represents a different possible place a card can be. If the
-     * caller passes an invalid card String as a parameter, the return value is
-     * -1.
-     * 
-     * @param card: the name of the card
-     * @return the index number of the card represented by the given input
+     * Resolve a player name to the id the methods taking ids expect: its
+     * index in getPlayers(), or getPlayers().length for the case file.
+     * Callers on a hot path resolve their names once, up front.
+     *
+     * @param player: the name of a player or of the case file
+     * @return the id of the player
+     * @throws IllegalArgumentException if there is no such player
+     */
+    public int getPlayerId(String player) {
+        Integer id = playerIds.get(player);
+        if (id == null)
+            throw new IllegalArgumentException("Unknown player: " + player);
+        return id;
+    }
+
+    /**
+     * Resolve a card name to the id the methods taking ids expect: its
+     * index in getCards().
+     *
+     * @param card: the name of a card
+     * @return the id of the card
+     * @throws IllegalArgumentException if there is no such card
      */
-    private int getCardNum(String card) {
-        for (int i = 0; i < numCards; i++)
-            if (card.equals(cards[i]))
-                return i;
-        System.out.println("Illegal card: " + card);
-        return -1;
+    public int getCardId(String card) {
+        Integer id = cardIds.get(card);
+        if (id == null)
+            throw new IllegalArgumentException("Unknown card: " + card);
+        return id;
+    }
+
+    /**
+     * @return the player id of the case file
+     */
+    public int getCaseFileId() {
+        return numPlayers;
+    }
+
+    private int[] getCardIds(String[] names) {
+        int[] ids = new int[names.length];
+        for (int k = 0; k < names.length; k++)
+            ids[k] = getCardId(names[k]);
+        return ids;
+    }
+
+    private void checkPlayer(int player, boolean caseFileAllowed) {
+        if (player < 0 || player > numPlayers || (player == numPlayers && !caseFileAllowed))
+            throw new IllegalArgumentException("Bad player id: " + player);
+    }
+
+    private void checkCard(int card) {
+        if (card < 0 || card >= numCards)
+            throw new IllegalArgumentException("Bad card id: " + card);
     }
 
     /**
@@ -141,7 +305,7 @@ public class ClueReasoner {
      * @return the assigned integer for the DIMACS CNF of the atomic statement
      */
     private int getPairNum(String player, String card) {
-        return getPairNum(getPlayerNum(player), getCardNum(card));
+        return getPairNum(getPlayerId(player), getCardId(card));
     }
 
     /**
@@ -160,6 +324,123 @@ public class ClueReasoner {
         return playerNum * numCards + cardNum + 1;
     }
 
+    /**
+     * Add a clause to the knowledge base, starting a new knowledge base
+     * version so that cells known to be undecided get tested again.
+     * 
+     * @param clause: the clause, an array of DIMACS literals
+     */
+    private void addClause(int[] clause) {
+        solver.addClause(clause);
+        version++;
+    }
+
+    /**
+     * Append a literal to the clause being buffered.
+     */
+    private void emit(int literal) {
+        if (bufferSize == buffer.length)
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        buffer[bufferSize++] = literal;
+    }
+
+    /**
+     * End the clause being buffered.
+     */
+    private void endClause() {
+        emit(0);
+        numBuffered++;
+    }
+
+    /**
+     * Add the buffered clauses to the knowledge base in one batch, as
+     * addClause would one by one.
+     */
+    private void flushClauses() {
+        solver.addClauses(buffer, bufferSize);
+        version += numBuffered;
+        bufferSize = 0;
+        numBuffered = 0;
+    }
+
+    /**
+     * Keep an event and the clauses buffered for it, for explain.
+     */
+    private void logEvent(int code, int player, int a, int b, int[] eventCards) {
+        int size = eventsSize + 6 + eventCards.length + bufferSize;
+        if (size > events.length)
+            events = Arrays.copyOf(events, Math.max(size, 2 * events.length));
+        if (numEvents == eventStart.length)
+            eventStart = Arrays.copyOf(eventStart, 2 * numEvents);
+        eventStart[numEvents++] = eventsSize;
+        events[eventsSize++] = code;
+        events[eventsSize++] = player;
+        events[eventsSize++] = a;
+        events[eventsSize++] = b;
+        events[eventsSize++] = eventCards.length;
+        System.arraycopy(eventCards, 0, events, eventsSize, eventCards.length);
+        eventsSize += eventCards.length;
+        events[eventsSize++] = bufferSize;
+        System.arraycopy(buffer, 0, events, eventsSize, bufferSize);
+        eventsSize += bufferSize;
+    }
+
+    /**
+     * Record the result of testing a cell at the current version, telling
+     * the listeners if that settled it.
+     *
+     * @param cell:   the index of the cell, getPairNum - 1
+     * @param result: the query result
+     */
+    private void record(int cell, int result) {
+        if (cache.record(cell, result, version) && !listeners.isEmpty()) {
+            String card = cards[cell % numCards];
+            String place = cell / numCards < numPlayers ? players[cell / numCards] : caseFile;
+            for (DeductionListener listener : listeners)
+                listener.onDeduction(place, card, result);
+        }
+    }
+
+    /**
+     * Settle the cells decided by propagating the clauses added since the
+     * last call, without testing any other cell and without searching.  A
+     * cell propagated false is settled at once.  A cell propagated true
+     * is only settled once the clauses are known to be satisfiable, as
+     * query would answer FALSE otherwise; until then it is kept pending
+     * (see settlePending).
+     */
+    private void settlePropagated() {
+        int numCells = numCards * (numPlayers + 1);
+        for (int n = solver.getNumRootLiterals(); numFacts < n; numFacts++) {
+            int literal = solver.getRootLiteral(numFacts);
+            int cell = Math.abs(literal) - 1;
+            if (cell >= numCells || cache.isSettled(cell))
+                continue;
+            if (literal < 0)
+                record(cell, SATSolver.FALSE);
+            else {
+                if (numPending == pending.length)
+                    pending = Arrays.copyOf(pending, 2 * numPending);
+                pending[numPending++] = cell;
+            }
+        }
+        settlePending();
+    }
+
+    /**
+     * Settle the cells propagated true once a query or notepad has found
+     * the knowledge base satisfiable.  If it never is, they stay pending,
+     * and query answers FALSE for them as for every cell.
+     */
+    private void settlePending() {
+        if (numPending == 0 || !solver.isKnownConsistent())
+            return;
+        for (int i = 0; i < numPending; i++)
+            if (!cache.isSettled(pending[i]))
+                record(pending[i], SATSolver.TRUE);
+        numPending = 0;
+    }
+
     /**
      * Adding the general knowledge about the game whichis known by all players
      * before the start of the game:
@@ -167,103 +448,57 @@ public class ClueReasoner {
      * 2) If a card is in on eplace, it cannot be in another place
      * 3) At leaset on ecard of each categoriy is in the case file
      * 4) No two cards in each category is in the case file
+     * 5) Each player holds the number of cards of their hand size
+     * The "at most one" constraints 2) and 4) are encoded as the variant
+     * says; long ones get auxiliary variables numbered after the largest
+     * variable in use, as do the counters of 5).
      */
-    public void addInitialClauses() {
+    public synchronized void addInitialClauses() {
+        CardinalityEncoder encoder = new CardinalityEncoder(new CardinalityEncoder.ClauseSink() {
+            public void addClause(int[] clause) {
+                ClueReasoner.this.addClause(clause);
+            }
+        }, Math.max(solver.getMaxVar(), numCards * (numPlayers + 1)));
+        CardinalityEncoder.Encoding encoding = variant.getEncoding();
 
-        // Each card is in at least one place (including case file).
-        // Assuming every card exists everywhere
+        // Each card is in exactly one place (including case file).
+        int[] places = new int[numPlayers + 1];
         for (int c = 0; c < numCards; c++) {
-            int[] clause = new int[numPlayers + 1];
             for (int p = 0; p <= numPlayers; p++)
-                clause[p] = getPairNum(p, c);
-            solver.addClause(clause);
-        }
-
-        // If a card is one place, it cannot be in another place.
-        for (int p = 0; p <= numPlayers; p++) {
-            int[] clause = new int[2];
-            for (int c = 0; c < numCards; c++) {
-                for (int q = 0; q <= numPlayers; q++) {
-                    // c1 = card is one place
-                    // c2 = the card is in other place
-                    // If a card is one place, it cannot be in another place = (c1 => ~c2) equal ~c1
-                    // v ~c2
-
-                    if (q != p) {
-                        clause[0] = -getPairNum(p, c);
-                        clause[1] = -getPairNum(q, c);
-                        solver.addClause(clause);
-                    }
-                }
-            }
-        }
-        // At least one card of each category is in the case file. That is we add clause
-        // for each categories: weaons, suspect, rooms
-        // For each category
-        // For case file player 'cf', for all card c, there is ('cf',c)
-        // Weapon
-        int[] clause = new int[weapons.length];
-        for (int c = 0; c < weapons.length; c++) {
-            clause[c] = getPairNum("cf", weapons[c]); // cf is case file player
-        }
-        solver.addClause(clause);
-
-        // Suspect
-        clause = new int[suspects.length];
-        for (int c = 0; c < suspects.length; c++) {
-            clause[c] = getPairNum("cf", suspects[c]); // cf is case file player
+                places[p] = getPairNum(p, c);
+            encoder.exactlyOne(places, encoding);
         }
-        solver.addClause(clause);
 
-        // Room
-        clause = new int[rooms.length];
-        for (int c = 0; c < rooms.length; c++) {
-            clause[c] = getPairNum("cf", rooms[c]); // cf is case file player
+        // Exactly one card of each category is in the case file.
+        for (String[] category : categories) {
+            int[] inCaseFile = new int[category.length];
+            for (int c = 0; c < category.length; c++)
+                inCaseFile[c] = getPairNum(caseFile, category[c]);
+            encoder.exactlyOne(inCaseFile, encoding);
         }
-        solver.addClause(clause);
 
-        // No two cards in each category can both be in the case file.
-        // c1 = the card is in case file
-        // c2 = another card is in the case file
-        // That is, for each categories, c1 => ~c2 equal ~c1 v ~c2
-
-        // Weapons
-        for (String cardInCaseFile : weapons) {
-            clause = new int[2];
-            for (String cardNotInCaseFile : weapons) {
-                // 2 cards must be different
-                if (!cardInCaseFile.equals(cardNotInCaseFile)) {
-                    clause[0] = -getPairNum("cf", cardInCaseFile);
-                    clause[1] = -getPairNum("cf", cardNotInCaseFile);
-                    solver.addClause(clause);
-                }
-            }
-        }
-        // Suspects
-        for (String cardInCaseFile : suspects) {
-            clause = new int[2];
-            for (String cardNotInCaseFile : suspects) {
-                // 2 cards must be different
-                if (!cardInCaseFile.equals(cardNotInCaseFile)) {
-                    clause[0] = -getPairNum("cf", cardInCaseFile);
-                    clause[1] = -getPairNum("cf", cardNotInCaseFile);
-                    solver.addClause(clause);
-                }
-            }
-        }
-        // Rooms
-        for (String cardInCaseFile : rooms) {
-            clause = new int[2];
-            for (String cardNotInCaseFile : rooms) {
-                // 2 cards must be different
-                if (!cardInCaseFile.equals(cardNotInCaseFile)) {
-                    clause[0] = -getPairNum("cf", cardInCaseFile);
-                    clause[1] = -getPairNum("cf", cardNotInCaseFile);
-                    solver.addClause(clause);
-                }
+        // Each player holds exactly as many cards as they were dealt.
+        int[] handSizes = variant.getHandSizes();
+        if (handSizes != null) {
+            int[] held = new int[numCards];
+            for (int p = 0; p < numPlayers; p++) {
+                for (int c = 0; c < numCards; c++)
+                    held[c] = getPairNum(p, c);
+                encoder.exactly(held, handSizes[p]);
             }
+            // The counters run over the cards in order, so models are
+            // counted card by card, the place of each card decided in one
+            // step and the running counts telling apart the cases left
+            int[][] order = new int[numCards][numPlayers + 1];
+            for (int c = 0; c < numCards; c++)
+                for (int p = 0; p <= numPlayers; p++)
+                    order[c][p] = getPairNum(p, c);
+            solver.setBranchOrder(order);
         }
 
+        // Auxiliary variables follow from the cells by propagation
+        if (encoder.getMaxVar() > numCards * (numPlayers + 1))
+            solver.setDecisionVars(numCards * (numPlayers + 1));
     }
 
     /**
@@ -275,20 +510,37 @@ public class ClueReasoner {
      * 
      * @param player: the name of player who possess the hand
      * @param cards:  an array of the cards in the given player's hand
+     * @throws IllegalArgumentException if a name is unknown
      */
-    public void hand(String player, String[] cards) {
-        playerNum = getPlayerNum(player);
-        String[] playerCards = cards;
-        int[] clause = new int[1];
-        for (String card : playerCards) {
+    public synchronized void hand(String player, String[] cards) {
+        hand(getPlayerId(player), getCardIds(cards));
+    }
+
+    /**
+     * Note a hand as for hand(player, cards), by the ids getPlayerId and
+     * getCardId give the names.
+     * 
+     * @param player: the id of the player who possess the hand
+     * @param cards:  the ids of the cards in the player's hand
+     */
+    public synchronized void hand(int player, int[] cards) {
+        long start = System.nanoTime();
+        checkPlayer(player, false);
+        for (int card : cards)
+            checkCard(card);
+        playerNum = player;
+        for (int card : cards) {
             // Adding to the KB that the card is not in the Case File
-            clause[0] = -getPairNum("cf", card);
-            solver.addClause(clause);
+            emit(-getPairNum(numPlayers, card));
+            endClause();
             // Adding to the KB that the card is within possession of the player
-            clause[0] = getPairNum(player, card);
-            solver.addClause(clause);
+            emit(getPairNum(player, card));
+            endClause();
         }
-
+        logEvent(GameRecord.HAND, player, NONE, NONE, cards);
+        flushClauses();
+        settlePropagated();
+        getMetrics().recordLatency(SolverMetrics.Operation.HAND, System.nanoTime() - start);
     }
 
     /**
@@ -308,15 +560,82 @@ public class ClueReasoner {
      * @param refuter:   The name of the player who refute the suggestion
      * @param cardShown: The name of the card of which the refuter used as evidence
      *                   to disproof the suggestion
+     * @throws IllegalArgumentException if a name is unknown
      */
-    public void suggest(String suggester, String card1, String card2,
+    public synchronized void suggest(String suggester, String card1, String card2,
             String card3, String refuter, String cardShown) {
-        int suggesterNum = getPlayerNum(suggester);
-        int refuterNum = 0;
-        if (refuter != null) {
-            refuterNum = getPlayerNum(refuter);
-        }
+        suggest(suggester, new String[] { card1, card2, card3 }, refuter, cardShown);
+    }
+
+    /**
+     * Note a suggestion as for suggest(suggester, card1, card2, card3,
+     * refuter, cardShown), in a variant whose suggestions name one card
+     * of each of its categories.
+     * 
+     * @param suggester: The name of the player who made the suggestion
+     * @param suggested: The names of the suggested cards
+     * @param refuter:   The name of the player who refute the suggestion
+     * @param cardShown: The name of the card of which the refuter used as evidence
+     *                   to disproof the suggestion
+     * @throws IllegalArgumentException if a name is unknown
+     */
+    public synchronized void suggest(String suggester, String[] suggested, String refuter,
+            String cardShown) {
+        suggest(getPlayerId(suggester), getCardIds(suggested),
+            refuter == null ? NONE : getPlayerId(refuter),
+            cardShown == null ? NONE : getCardId(cardShown));
+    }
+
+    /**
+     * Note a suggestion as for suggest(suggester, card1, card2, card3,
+     * refuter, cardShown), by the ids getPlayerId and getCardId give the
+     * names.  Nothing is allocated for it but the clauses the solver keeps.
+     * 
+     * @param suggester: The id of the player who made the suggestion
+     * @param card1:     The id of suggested murderer
+     * @param card2:     The id of suggested murder weapon
+     * @param card3:     The id of the suggested room where the murder took place
+     * @param refuter:   The id of the player who refute the suggestion, or NONE
+     * @param cardShown: The id of the card shown, or NONE
+     */
+    public synchronized void suggest(int suggester, int card1, int card2, int card3,
+            int refuter, int cardShown) {
+        triple[0] = card1;
+        triple[1] = card2;
+        triple[2] = card3;
+        suggest(suggester, triple, refuter, cardShown);
+    }
 
+    /**
+     * Note a suggestion as for suggest(suggester, suggested, refuter,
+     * cardShown), by the ids getPlayerId and getCardId give the names.
+     * 
+     * @param suggester: The id of the player who made the suggestion
+     * @param suggested: The ids of the suggested cards
+     * @param refuter:   The id of the player who refute the suggestion, or NONE
+     * @param cardShown: The id of the card shown, or NONE
+     */
+    public synchronized void suggest(int suggester, int[] suggested, int refuter,
+            int cardShown) {
+        long start = System.nanoTime();
+        checkPlayer(suggester, false);
+        for (int card : suggested)
+            checkCard(card);
+        if (refuter != NONE)
+            checkPlayer(refuter, false);
+        if (cardShown != NONE)
+            checkCard(cardShown);
+        addSuggestion(suggester, suggested, refuter, cardShown);
+        logEvent(GameRecord.SUGGEST, suggester, refuter, cardShown, suggested);
+        flushClauses();
+        settlePropagated();
+        getMetrics().recordLatency(SolverMetrics.Operation.SUGGEST, System.nanoTime() - start);
+    }
+
+    /**
+     * Buffer the clauses of a suggestion, as for suggest.
+     */
+    private void addSuggestion(int suggester, int[] suggested, int refuter, int cardShown) {
         // Case 1: There is no refuter.
         // Then no OTHER Player besides the suggester and the case file can have card
         // 1,2,3
@@ -324,16 +643,13 @@ public class ClueReasoner {
         // For all player other than the suggester p and the casefile, for all card
         // 1,2,3,
         // [~(p,c1), ~(p,c2), ~(p,c3)]
-        if (refuter == null) {
-            for (String player : players) {
-                int[] clause = new int[1];
-                if (!player.equals(suggester)) {
-                    clause[0] = -getPairNum(player, card1);
-                    solver.addClause(clause);
-                    clause[0] = -getPairNum(player, card2);
-                    solver.addClause(clause);
-                    clause[0] = -getPairNum(player, card3);
-                    solver.addClause(clause);
+        if (refuter == NONE) {
+            for (int p = 0; p < numPlayers; p++) {
+                if (p != suggester) {
+                    for (int card : suggested) {
+                        emit(-getPairNum(p, card));
+                        endClause();
+                    }
                 }
             }
         }
@@ -343,50 +659,42 @@ public class ClueReasoner {
         // The refuter r has the cardShown, [(r,cardSAhown)]
         // The casefile cf doesnt have the cardShown, [~('cf',cardSAhown)]
 
-        if (refuter != null) {
+        else {
 
             // The between players dont have card 1,2,3
             // For all players between suggester and refuter p, for cards c1,2,3, [~(p,c)]
-            int i = ++suggesterNum % numPlayers;
-            int[] clause = new int[1];
-            while (i != refuterNum) {
-                clause[0] = -getPairNum(players[i], card1);
-                solver.addClause(clause);
-                clause[0] = -getPairNum(players[i], card2);
-                solver.addClause(clause);
-                clause[0] = -getPairNum(players[i], card3);
-                solver.addClause(clause);
-                i = ++i % numPlayers;
+            int i = (suggester + 1) % numPlayers;
+            while (i != refuter) {
+                for (int card : suggested) {
+                    emit(-getPairNum(i, card));
+                    endClause();
+                }
+                i = (i + 1) % numPlayers;
             }
-            ;
 
             // If the card is shown.
             // Card shown != null. The refuter has the card. The case file player doesn't
             // have the card
             // The refuter r has the cardShown, [(r,cardSAhown)]
             // The casefile cf doesnt have the cardShown, [~('cf',cardSAhown)]
-            if (cardShown != null) {
+            if (cardShown != NONE) {
                 // Then the refuter has the card
-                clause = new int[1];
-                clause[0] = getPairNum(refuter, cardShown);
-                solver.addClause(clause);
+                emit(getPairNum(refuter, cardShown));
+                endClause();
                 // The case file doesn't have the card
-                clause[0] = -getPairNum("cf", cardShown);
-                solver.addClause(clause);
+                emit(-getPairNum(numPlayers, cardShown));
+                endClause();
             }
 
             // If the card is not shown
             // Card shown == null. The refuter has one of the card1,2,3
             // The refuter r, for all card1,2,3, [(r,c1),(r,c2),(r,c3)]
-            if (cardShown == null) {
-                clause = new int[3];
-                clause[0] = getPairNum(refuter, card1);
-                clause[1] = getPairNum(refuter, card2);
-                clause[2] = getPairNum(refuter, card3);
-                solver.addClause(clause);
+            else {
+                for (int card : suggested)
+                    emit(getPairNum(refuter, card));
+                endClause();
             }
         }
-
     }
 
     /**
@@ -402,31 +710,79 @@ public class ClueReasoner {
      * @param card2:     The name of the accused murder weapon
      * @param card3:     The name of the accused room where the murder took place
      * @param isCorrect: Whether the accusation is correct
+     * @throws IllegalArgumentException if a name is unknown
      */
-    public void accuse(String accuser, String card1, String card2,
+    public synchronized void accuse(String accuser, String card1, String card2,
             String card3, boolean isCorrect) {
+        accuse(accuser, new String[] { card1, card2, card3 }, isCorrect);
+    }
+
+    /**
+     * Note an accusation as for accuse(accuser, card1, card2, card3,
+     * isCorrect), in a variant whose accusations name one card of each of
+     * its categories.
+     * 
+     * @param accuser:   The name of the player who made the accusation
+     * @param accused:   The names of the accused cards
+     * @param isCorrect: Whether the accusation is correct
+     * @throws IllegalArgumentException if a name is unknown
+     */
+    public synchronized void accuse(String accuser, String[] accused, boolean isCorrect) {
+        accuse(getPlayerId(accuser), getCardIds(accused), isCorrect);
+    }
+
+    /**
+     * Note an accusation as for accuse(accuser, card1, card2, card3,
+     * isCorrect), by the ids getPlayerId and getCardId give the names.
+     * 
+     * @param accuser:   The id of the player who made the accusation
+     * @param card1:     The id of the accused murderer
+     * @param card2:     The id of the accused murder weapon
+     * @param card3:     The id of the accused room where the murder took place
+     * @param isCorrect: Whether the accusation is correct
+     */
+    public synchronized void accuse(int accuser, int card1, int card2, int card3,
+            boolean isCorrect) {
+        triple[0] = card1;
+        triple[1] = card2;
+        triple[2] = card3;
+        accuse(accuser, triple, isCorrect);
+    }
+
+    /**
+     * Note an accusation as for accuse(accuser, accused, isCorrect), by the
+     * ids getPlayerId and getCardId give the names.
+     * 
+     * @param accuser:   The id of the player who made the accusation
+     * @param accused:   The ids of the accused cards
+     * @param isCorrect: Whether the accusation is correct
+     */
+    public synchronized void accuse(int accuser, int[] accused, boolean isCorrect) {
+        long start = System.nanoTime();
+        checkPlayer(accuser, false);
+        for (int card : accused)
+            checkCard(card);
         // If the accusation is correct
         // isCorrect. Then the case file player has card1,2,3,
         // [('cf',c1)], [('cf',c2)], [('cf',c3)]
         if (isCorrect) {
-            int[] clause = new int[1];
-            clause[0] = getPairNum("cf", card1);
-            solver.addClause(clause);
-            clause[0] = getPairNum("cf", card2);
-            solver.addClause(clause);
-            clause[0] = getPairNum("cf", card3);
-            solver.addClause(clause);
+            for (int card : accused) {
+                emit(getPairNum(numPlayers, card));
+                endClause();
+            }
         }
         // The accusation is not correct
         // isNotCorrect. Then the case file player doesnt have card1,2,3,
         // [~('cf',c1), ~('cf',c2), ~('cf',c3)]
         else {
-            int[] clause = new int[3];
-            clause[0] = -getPairNum("cf", card1);
-            clause[0] = -getPairNum("cf", card2);
-            clause[0] = -getPairNum("cf", card3);
-            solver.addClause(clause);
+            for (int card : accused)
+                emit(-getPairNum(numPlayers, card));
+            endClause();
         }
+        logEvent(GameRecord.ACCUSE, accuser, isCorrect ? 1 : 0, NONE, accused);
+        flushClauses();
+        settlePropagated();
+        getMetrics().recordLatency(SolverMetrics.Operation.ACCUSE, System.nanoTime() - start);
     }
 
     /**
@@ -437,41 +793,792 @@ public class ClueReasoner {
      * @param player: The name of the player
      * @param card:   The set of hand of the player
      * @return SATSolver integer
+     * @throws IllegalArgumentException if a name is unknown
+     */
+    public synchronized int query(String player, String card) {
+        return query(getPlayerId(player), getCardId(card));
+    }
+
+    /**
+     * Query a cell as query(player, card) does, by the ids getPlayerId and
+     * getCardId give the names.  Answers from the deduction cache allocate
+     * nothing.
+     * 
+     * @param player: The id of the player, getCaseFileId() for the case file
+     * @param card:   The id of the card
+     * @return SATSolver integer
+     */
+    public synchronized int query(int player, int card) {
+        long start = System.nanoTime();
+        checkPlayer(player, true);
+        checkCard(card);
+        int literal = getPairNum(player, card);
+        int result = cache.lookup(literal - 1, version);
+        boolean hit = result != DeductionCache.MISS;
+        if (!hit) {
+            result = solver.testLiteral(literal);
+            record(literal - 1, result);
+            settlePending();
+        }
+        SolverMetrics metrics = getMetrics();
+        metrics.recordCacheLookups(hit ? 1 : 0, hit ? 0 : 1);
+        metrics.recordLatency(SolverMetrics.Operation.QUERY, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Explain why a cell is settled: find a set of the events noted that
+     * forces its value and from which no event can be left out.  Each
+     * event's clauses are guarded by a selector variable in a knowledge
+     * base of their own, kept alongside the reasoner's, and the events of
+     * the core the backend reports when it refutes the other value are
+     * then dropped one at a time while the rest still refute it.  Every
+     * refutation narrows the core to the one reported, so that minimising
+     * costs a solve per event of the core, not per event of the game.  An
+     * explanation stays valid as more events are noted, so it is found
+     * once per cell.  A backend that reports no cores, such as zchaff,
+     * costs a solve per event noted instead.
+     * 
+     * Events noted before the snapshot a reasoner was restored from are
+     * not known to it; their clauses are taken as given.
+     * 
+     * @param player: The name of the player or of the case file
+     * @param card:   The name of the card
+     * @return the events, in the order they were noted, each as a line of
+     *         the text form of a game log (see GameLogReader), e.g.
+     *         "suggest sc pe pi di pe -"; null if the cell is not settled
+     * @throws IllegalArgumentException if a name is unknown
+     */
+    public synchronized String[] explain(String player, String card) {
+        return explain(getPlayerId(player), getCardId(card));
+    }
+
+    /**
+     * Explain a cell as explain(player, card) does, by the ids
+     * getPlayerId and getCardId give the names.
+     * 
+     * @param player: The id of the player, getCaseFileId() for the case file
+     * @param card:   The id of the card
+     * @return the events forcing the value of the cell, or null if it is
+     *         not settled
+     */
+    public synchronized String[] explain(int player, int card) {
+        long start = System.nanoTime();
+        int value = query(player, card);
+        String[] result = null;
+        if (value != SATSolver.UNKNOWN) {
+            int literal = getPairNum(player, card);
+            if (explanations == null) {
+                explanations = new int[cache.getNumCells()][];
+                explainedAs = new int[cache.getNumCells()];
+            }
+            if (explanations[literal - 1] == null || explainedAs[literal - 1] != value) {
+                explanations[literal - 1] = findExplanation(value == SATSolver.TRUE ? -literal : literal);
+                explainedAs[literal - 1] = value;
+            }
+            result = describe(explanations[literal - 1]);
+        }
+        getMetrics().recordLatency(SolverMetrics.Operation.EXPLAIN, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * @param refuted: a literal the events refute
+     * @return the indexes of a minimal set of events refuting it, in
+     *         increasing order
+     */
+    private int[] findExplanation(int refuted) {
+        explainer();
+        int[] core = new int[numEvents];
+        for (int e = 0; e < numEvents; e++)
+            core[e] = firstSelector + e;
+        core = refute(core, core.length, refuted);
+        if (core == null)
+            throw new IllegalStateException("The events do not refute " + refuted);
+        // Drop the events the others do without, the latest first; the
+        // events found needed stay in every core reported after
+        int[] rest = new int[core.length];
+        int needed = 0;
+        while (needed < core.length) {
+            int k = core.length - 1 - needed;
+            System.arraycopy(core, 0, rest, 0, k);
+            System.arraycopy(core, k + 1, rest, k, needed);
+            int[] smaller = refute(rest, core.length - 1, refuted);
+            if (smaller == null)
+                needed++;
+            else
+                core = smaller;
+        }
+        for (int i = 0; i < core.length; i++)
+            core[i] -= firstSelector;
+        return core;
+    }
+
+    /**
+     * Solve the explaining knowledge base with the first n selectors of
+     * the given array and the given literal assumed.
+     * 
+     * @return the selectors of the core the backend reported, sorted, or
+     *         null if the assumptions are satisfiable
+     */
+    private int[] refute(int[] selectors, int n, int refuted) {
+        // The literal goes last, so that the backend refutes it from the
+        // events rather than the events from it
+        int[] assumptions = Arrays.copyOf(selectors, n + 1);
+        assumptions[n] = refuted;
+        if (explainer.solve(assumptions))
+            return null;
+        int[] failed = explainer.getFailedAssumptions();
+        int size = 0;
+        for (int literal : failed)
+            if (literal >= firstSelector)
+                failed[size++] = literal;
+        failed = Arrays.copyOf(failed, size);
+        Arrays.sort(failed);
+        return failed;
+    }
+
+    /**
+     * @return the explaining knowledge base, holding the clauses of every
+     *         event noted
+     */
+    private SATSolver explainer() {
+        if (explainer == null) {
+            explainer = new SATSolver(getBaseKnowledge(variant), solver.getBackend().newSession());
+            explainer.setMetrics(getMetrics());
+            for (int[] clause : given)
+                explainer.addClause(clause);
+            firstSelector = explainer.getMaxVar() + 1;
+        }
+        for (; numExplained < numEvents; numExplained++) {
+            // Guard each clause with the selector, ahead of its 0
+            int i = eventStart[numExplained] + 4;
+            i += 1 + events[i];
+            int end = i + 1 + events[i];
+            int size = 0;
+            int[] guarded = new int[2 * (end - i)];
+            for (i++; i < end; i++) {
+                if (events[i] == 0)
+                    guarded[size++] = -(firstSelector + numExplained);
+                guarded[size++] = events[i];
+            }
+            explainer.addClauses(guarded, size);
+        }
+        return explainer;
+    }
+
+    /**
+     * @param indexes: indexes of events noted
+     * @return the events as lines of the text form of a game log
+     */
+    private String[] describe(int[] indexes) {
+        String[] lines = new String[indexes.length];
+        for (int k = 0; k < indexes.length; k++) {
+            int i = eventStart[indexes[k]];
+            int code = events[i];
+            StringBuilder line = new StringBuilder(code == GameRecord.HAND ? "hand"
+                : code == GameRecord.SUGGEST ? "suggest" : "accuse");
+            line.append(' ').append(players[events[i + 1]]);
+            for (int c = 0; c < events[i + 4]; c++)
+                line.append(' ').append(cards[events[i + 5 + c]]);
+            if (code == GameRecord.SUGGEST)
+                line.append(' ').append(events[i + 2] == NONE ? "-" : players[events[i + 2]])
+                    .append(' ').append(events[i + 3] == NONE ? "-" : cards[events[i + 3]]);
+            else if (code == GameRecord.ACCUSE)
+                line.append(' ').append(events[i + 2] != 0);
+            lines[k] = line.toString();
+        }
+        return lines;
+    }
+
+    /**
+     * Query a cell like query(player, card) on another thread, so that the
+     * caller is never blocked by the solver.
+     * 
+     * @param player: The name of the player
+     * @param card:   The name of the card
+     * @return a future of the query result
      */
-    public int query(String player, String card) {
-        return solver.testLiteral(getPairNum(player, card));
+    public SolverTask<Integer> queryAsync(String player, String card) {
+        return queryAsync(player, card, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Query a cell like query(player, card) on another thread, giving up
+     * when the deadline passes.  The query runs holding the lock of this
+     * reasoner, against the knowledge at that time.  Cancelling the future
+     * stops the search; a stopped query completes with SATSolver.TIMEOUT,
+     * and one the backend failed to answer with SATSolver.ERROR.
+     * 
+     * @param player:  The name of the player
+     * @param card:    The name of the card
+     * @param timeout: the time allowed from now, or 0 for no deadline
+     * @param unit:    the unit of timeout
+     * @return a future of the query result
+     */
+    public SolverTask<Integer> queryAsync(final String player, final String card, long timeout,
+            TimeUnit unit) {
+        return SolverTask.submit(solver, this, new SolverTask.Body<Integer>() {
+            public Integer run() {
+                return query(player, card);
+            }
+
+            public Integer stopped(int code) {
+                return code;
+            }
+        }, timeout, unit);
     }
 
     /**
      * Converting the return codes of SATSOLVER into simple String
      * 
      * @param returnCode:
-     * @return
+     * @return "Y", "n" or "-", or "?" for a query stopped by its deadline
+     *         and "!" for one that failed
      */
     public String queryString(int returnCode) {
         if (returnCode == SATSolver.TRUE)
             return "Y";
         else if (returnCode == SATSolver.FALSE)
             return "n";
+        else if (returnCode == SATSolver.TIMEOUT)
+            return "?";
+        else if (returnCode == SATSolver.ERROR)
+            return "!";
         else
             return "-";
     }
 
+    /**
+     * Compute the "detective notepad" in one backbone computation over the
+     * card/place literals not yet in the deduction cache, instead of
+     * testing each cell separately.
+     * 
+     * @return a matrix indexed by card and then by place (the players in
+     *         turn order followed by the case file) holding the queryString
+     *         of each cell: "Y", "n" or "-"
+     */
+    public synchronized String[][] notepad() {
+        return notepad(null);
+    }
+
+    /**
+     * Compute the "detective notepad" like notepad(), with the cells not
+     * yet in the deduction cache split among the given number of threads,
+     * each querying its own copy of the knowledge base.
+     * 
+     * @param threads: the number of threads
+     * @return the notepad matrix, as for notepad()
+     */
+    public synchronized String[][] notepadParallel(int threads) {
+        return notepad(QueryExecutor.forThreads(threads));
+    }
+
+    /**
+     * Compute the "detective notepad" like notepad() on another thread.
+     * 
+     * @return a future of the notepad matrix
+     */
+    public SolverTask<String[][]> notepadAsync() {
+        return notepadAsync(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compute the "detective notepad" like notepad() on another thread,
+     * giving up when the deadline passes.  The computation runs holding
+     * the lock of this reasoner.  If it is stopped, the cells derived so
+     * far are kept (and cached) and the others read "?", or "!" if the
+     * backend failed.
+     * 
+     * @param timeout: the time allowed from now, or 0 for no deadline
+     * @param unit:    the unit of timeout
+     * @return a future of the notepad matrix
+     */
+    public SolverTask<String[][]> notepadAsync(long timeout, TimeUnit unit) {
+        final int[] results = new int[numCards * (numPlayers + 1)];
+        Arrays.fill(results, DeductionCache.MISS);
+        return SolverTask.submit(solver, this, new SolverTask.Body<String[][]>() {
+            public String[][] run() {
+                long start = System.nanoTime();
+                deriveCells(results, null);
+                getMetrics().recordLatency(SolverMetrics.Operation.NOTEPAD, System.nanoTime() - start);
+                return toNotepad(results, SATSolver.UNKNOWN);
+            }
+
+            public String[][] stopped(int code) {
+                return toNotepad(results, code);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * @param executor: the executor to run the backbone computation on, or
+     *                  null to run it on this thread
+     * @return the notepad matrix, as for notepad()
+     */
+    private String[][] notepad(QueryExecutor executor) {
+        long start = System.nanoTime();
+        int[] results = new int[numCards * (numPlayers + 1)];
+        deriveCells(results, executor);
+        getMetrics().recordLatency(SolverMetrics.Operation.NOTEPAD, System.nanoTime() - start);
+        return toNotepad(results, SATSolver.UNKNOWN);
+    }
+
+    /**
+     * Find the query result of every cell, from the deduction cache or in
+     * one backbone computation over the cells it misses.  If the
+     * computation is interrupted, the cells derived so far are still
+     * written and cached, and the others are left as DeductionCache.MISS.
+     * 
+     * @param results:  receives the query result of each cell
+     * @param executor: the executor to run the backbone computation on, or
+     *                  null to run it on this thread
+     */
+    private void deriveCells(int[] results, QueryExecutor executor) {
+        // Only cells neither settled nor known open at this version are
+        // handed to the solver
+        int[] vars = new int[results.length];
+        int numVars = 0;
+        for (int cell = 0; cell < results.length; cell++) {
+            results[cell] = cache.lookup(cell, version);
+            if (results[cell] == DeductionCache.MISS)
+                vars[numVars++] = cell + 1;
+        }
+        getMetrics().recordCacheLookups(results.length - numVars, numVars);
+        if (numVars == 0)
+            return;
+        vars = Arrays.copyOf(vars, numVars);
+        int[] derived = new int[numVars];
+        Arrays.fill(derived, DeductionCache.MISS);
+        try {
+            if (executor == null)
+                solver.computeBackbone(vars, derived);
+            else
+                derived = executor.computeBackbone(solver, vars);
+        }
+        finally {
+            for (int i = 0; i < numVars; i++) {
+                if (derived[i] == DeductionCache.MISS)
+                    continue;
+                results[vars[i] - 1] = derived[i];
+                record(vars[i] - 1, derived[i]);
+            }
+            settlePending();
+        }
+    }
+
+    /**
+     * @param results: the query result of each cell
+     * @param missing: the result to show for cells left as
+     *                 DeductionCache.MISS
+     * @return the notepad matrix, as for notepad()
+     */
+    private String[][] toNotepad(int[] results, int missing) {
+        String[][] notepad = new String[numCards][numPlayers + 1];
+        for (int c = 0; c < numCards; c++)
+            for (int p = 0; p <= numPlayers; p++) {
+                int result = results[getPairNum(p, c) - 1];
+                notepad[c][p] = queryString(result == DeductionCache.MISS ? missing : result);
+            }
+        return notepad;
+    }
+
+    /**
+     * Compute the probability of each cell of the notepad, counting every
+     * deal consistent with what is known as equally likely.  The counts
+     * are exact; components of the knowledge base already counted after an
+     * earlier suggestion are not counted again, so this is cheap enough to
+     * run after every suggestion.  When the variant fixes the hand sizes
+     * the first count of a game grows quickly with the number of players,
+     * since the cards held so far by each player must be kept apart; it
+     * takes under a tenth of a second for the standard six players once
+     * the JVM is warm, far longer for eight.
+     * 
+     * @return a matrix indexed by card and then by place (the players in
+     *         turn order followed by the case file) holding the probability
+     *         that the card is in the place; every entry is NaN if the
+     *         knowledge is inconsistent
+     */
+    public synchronized double[][] probabilities() {
+        int[] vars = new int[numCards * (numPlayers + 1)];
+        for (int cell = 0; cell < vars.length; cell++)
+            vars[cell] = cell + 1;
+        double[] marginals = solver.marginals(vars);
+        double[][] probabilities = new double[numCards][numPlayers + 1];
+        for (int c = 0; c < numCards; c++)
+            for (int p = 0; p <= numPlayers; p++)
+                probabilities[c][p] = marginals[getPairNum(p, c) - 1];
+        return probabilities;
+    }
+
+    /**
+     * Rank the suggestions a player could make by the information about
+     * the case file they are expected to give, using all available
+     * processors.  See recommendSuggestion(player, room, threads).
+     * 
+     * @param player: the name of the player making the suggestion
+     * @param room:   the room the player is in, or null to rank the
+     *                suggestions in every room
+     * @return the suggestions, best first
+     * @throws IllegalArgumentException if the player is unknown or the
+     *         case file, or the room is not a room
+     */
+    public synchronized Suggestion[] recommendSuggestion(String player, String room) {
+        return recommendSuggestion(player, room, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Rank the suggestions a player could make by the information about
+     * the case file they are expected to give.  For each suggestion, every
+     * way it could be answered (each refuter and, when the player is the
+     * one whose hand is known, each card shown) is added to the knowledge
+     * base in a what-if scope, and the case-file uncertainty left is found;
+     * see Suggestion.  The outcomes are weighted by their probability,
+     * estimated from the cell probabilities assuming the cells of
+     * different cards independent; outcomes the knowledge base rules out
+     * get no weight.  The suggestions are split among the given number of
+     * threads, each working on its own copy of the knowledge base.
+     * 
+     * @param player:  the name of the player making the suggestion
+     * @param room:    the room the player is in, or null to rank the
+     *                 suggestions in every room
+     * @param threads: the number of threads
+     * @return the suggestions, best first
+     * @throws IllegalArgumentException if the player is unknown or the
+     *         case file, or the room is not a room
+     */
+    public synchronized Suggestion[] recommendSuggestion(final String player, String room, int threads) {
+        long start = System.nanoTime();
+        final int suggesterNum = getPlayerId(player);
+        if (suggesterNum == numPlayers)
+            throw new IllegalArgumentException("The case file makes no suggestions");
+        if (room != null && !Arrays.asList(rooms).contains(room))
+            throw new IllegalArgumentException("Not a room: " + room);
+        String[] suggestedRooms = room == null ? rooms : new String[] { room };
+        final double[][] probabilities = probabilities();
+        final double uncertainty = caseFileUncertainty(solver);
+
+        // Every combination of one card per category, the room varying
+        // slowest and the last category fastest
+        List<QueryExecutor.Job<Suggestion>> jobs = new ArrayList<QueryExecutor.Job<Suggestion>>();
+        int[] choice = new int[categories.length];
+        for (String r : suggestedRooms) {
+            Arrays.fill(choice, 0);
+            while (true) {
+                final String[] suggested = new String[categories.length];
+                for (int k = 0; k < categories.length; k++)
+                    suggested[k] = k == ROOMS ? r : categories[k][choice[k]];
+                jobs.add(new QueryExecutor.Job<Suggestion>() {
+                    public Suggestion run(SATSolver worker) {
+                        double gain = 0;
+                        if (!Double.isNaN(uncertainty))
+                            gain = uncertainty - expectedUncertainty(worker, suggesterNum, suggested,
+                                probabilities);
+                        return new Suggestion(suggested, gain);
+                    }
+                });
+                int k = categories.length - 1;
+                while (k >= 0 && (k == ROOMS || ++choice[k] == categories[k].length)) {
+                    choice[k] = 0;
+                    k--;
+                }
+                if (k < 0)
+                    break;
+            }
+        }
+        Suggestion[] ranking = QueryExecutor.forThreads(threads).runAll(solver, jobs).toArray(new Suggestion[0]);
+        // A stable sort keeps equally good suggestions in card order
+        Arrays.sort(ranking, new Comparator<Suggestion>() {
+            public int compare(Suggestion x, Suggestion y) {
+                return Double.compare(y.getExpectedGain(), x.getExpectedGain());
+            }
+        });
+        getMetrics().recordLatency(SolverMetrics.Operation.RECOMMEND, System.nanoTime() - start);
+        return ranking;
+    }
+
+    /**
+     * Find the case-file uncertainty expected after a suggestion, trying
+     * each of its outcomes in a scope of the given solver.
+     * 
+     * @param worker:        a copy of the knowledge base, left unchanged
+     * @param suggesterNum:  the index of the suggesting player
+     * @param suggested:     the names of the suggested cards
+     * @param probabilities: the cell probabilities, as from probabilities()
+     * @return the expected uncertainty, in bits
+     */
+    private double expectedUncertainty(SATSolver worker, int suggesterNum, String[] suggested,
+            double[][] probabilities) {
+        ClueReasoner whatIf = new ClueReasoner(variant, worker);
+        boolean seesCard = suggesterNum == playerNum;
+        int[] cardNums = getCardIds(suggested);
+        double[] holds = new double[suggested.length];
+        double expected = 0;
+        double weight = 0;
+        // unrefuted: the probability that no player asked so far refutes
+        double unrefuted = 1;
+        for (int i = (suggesterNum + 1) % numPlayers; i != suggesterNum; i = (i + 1) % numPlayers) {
+            double lacksAll = 1;
+            double held = 0;
+            for (int k = 0; k < suggested.length; k++) {
+                holds[k] = probabilities[cardNums[k]][i];
+                lacksAll *= 1 - holds[k];
+                held += holds[k];
+            }
+            double refutes = unrefuted * (1 - lacksAll);
+            unrefuted *= lacksAll;
+            if (refutes <= 0)
+                continue;
+            for (int k = 0; k < suggested.length; k++) {
+                // Without the card shown, the refuter is the whole outcome
+                double p = seesCard ? refutes * holds[k] / held : refutes;
+                if (p <= 0)
+                    continue;
+                double u = outcomeUncertainty(whatIf, suggesterNum, cardNums, i,
+                    seesCard ? cardNums[k] : NONE);
+                if (!Double.isNaN(u)) {
+                    expected += p * u;
+                    weight += p;
+                }
+                if (!seesCard)
+                    break;
+            }
+        }
+        if (unrefuted > 0) {
+            double u = outcomeUncertainty(whatIf, suggesterNum, cardNums, NONE, NONE);
+            if (!Double.isNaN(u)) {
+                expected += unrefuted * u;
+                weight += unrefuted;
+            }
+        }
+        return weight > 0 ? expected / weight : caseFileUncertainty(worker);
+    }
+
+    /**
+     * @param whatIf: a reasoner on a worker's copy of the knowledge base,
+     *                left unchanged
+     * @return the case-file uncertainty after the given outcome of a
+     *         suggestion, or NaN if the outcome is impossible
+     */
+    private double outcomeUncertainty(ClueReasoner whatIf, int suggester, int[] suggested,
+            int refuter, int cardShown) {
+        whatIf.solver.push();
+        try {
+            whatIf.addSuggestion(suggester, suggested, refuter, cardShown);
+            whatIf.flushClauses();
+            return caseFileUncertainty(whatIf.solver);
+        }
+        finally {
+            whatIf.solver.pop();
+        }
+    }
+
+    /**
+     * @param solver: a knowledge base of this game
+     * @return the case-file uncertainty, the sum over the categories of
+     *         log2 of the number of cards of the category that may be in
+     *         the case file, or NaN if the knowledge base is inconsistent
+     */
+    private double caseFileUncertainty(SATSolver solver) {
+        if (!solver.solve())
+            return Double.NaN;
+        int[] vars = new int[numCards];
+        for (int c = 0; c < numCards; c++)
+            vars[c] = getPairNum(numPlayers, c);
+        int[] results = solver.computeBackbone(vars);
+        int[] possible = new int[categories.length];
+        for (int c = 0; c < numCards; c++)
+            if (results[c] != SATSolver.FALSE)
+                possible[categoryOf[c]]++;
+        double uncertainty = 0;
+        for (int n : possible)
+            uncertainty += Math.log(n) / Math.log(2);
+        return uncertainty;
+    }
+
+    /**
+     * Capture the state of this reasoner: its variant and perspective, the
+     * clauses of its game, what its backend has learned from them and the
+     * cells already derived.  See ReasonerSnapshot for writing it to a
+     * file.
+     *
+     * @return the snapshot
+     */
+    public synchronized ReasonerSnapshot snapshot() {
+        ClauseArena arena = solver.getClauses();
+        int first = getBaseKnowledge(variant).getClauses().size();
+        int[][] clauses = new int[arena.size() - first][];
+        for (int i = first; i < arena.size(); i++)
+            clauses[i - first] = arena.get(i);
+        int numCells = cache.getNumCells();
+        int[] deductions = new int[numCells];
+        long[] settledAt = new long[numCells];
+        long[] openAt = new long[numCells];
+        for (int cell = 0; cell < numCells; cell++) {
+            deductions[cell] = cache.getValue(cell);
+            settledAt[cell] = cache.getSettledAt(cell);
+            openAt[cell] = cache.getOpenAt(cell);
+        }
+        return new ReasonerSnapshot(variant, playerNum, version, clauses, solver.getLearntClauses(),
+            deductions, settledAt, openAt);
+    }
+
+    /**
+     * Restore a reasoner from a snapshot, answering queries that need
+     * search with the in-process engine.
+     *
+     * @param snapshot: the state of a reasoner
+     * @return a reasoner in that state
+     */
+    public static ClueReasoner restore(ReasonerSnapshot snapshot) {
+        return restore(snapshot, new CDCLSolver());
+    }
+
+    /**
+     * Restore a reasoner from a snapshot.  The clauses of the game are
+     * added to the shared general knowledge of the variant as they were
+     * originally, without being simplified again (see
+     * SATSolver.addClausesAsIs), the learned clauses are handed to the
+     * backend when it is loaded, and the deduction cache is restored at
+     * the same knowledge base version, so that no cell derived before has
+     * to be derived again.
+     *
+     * @param snapshot: the state of a reasoner
+     * @param backend:  the SolverBackend used to reason
+     * @return a reasoner in that state
+     */
+    public static ClueReasoner restore(ReasonerSnapshot snapshot, SolverBackend backend) {
+        ClueReasoner reasoner = new ClueReasoner(snapshot.getVariant(), backend);
+        if (snapshot.getNumCells() != reasoner.cache.getNumCells())
+            throw new IllegalArgumentException("The snapshot has " + snapshot.getNumCells()
+                + " cells, its variant " + reasoner.cache.getNumCells());
+        // Simplifying the clauses again would repeat the work of the game
+        reasoner.solver.addClausesAsIs(snapshot.getClauses());
+        reasoner.given = snapshot.getClauses();
+        reasoner.solver.addLearntClauses(snapshot.getLearntClauses());
+        reasoner.playerNum = snapshot.getPlayerNum();
+        reasoner.version = snapshot.getVersion();
+        for (int cell = 0; cell < snapshot.getNumCells(); cell++) {
+            int value = snapshot.getDeduction(cell);
+            if (value != SATSolver.UNKNOWN)
+                reasoner.cache.record(cell, value, snapshot.getSettledAt(cell));
+            if (snapshot.getOpenAt(cell) >= 0)
+                reasoner.cache.record(cell, SATSolver.UNKNOWN, snapshot.getOpenAt(cell));
+        }
+        return reasoner;
+    }
+
+    /**
+     * @return the names of the players, in turn order
+     */
+    public String[] getPlayers() {
+        return players.clone();
+    }
+
+    /**
+     * @return the players and cards of the game
+     */
+    public GameVariant getVariant() {
+        return variant;
+    }
+
+    public String[] getSuspects() {
+        return suspects.clone();
+    }
+
+    public String[] getWeapons() {
+        return weapons.clone();
+    }
+
+    public String[] getRooms() {
+        return rooms.clone();
+    }
+
+    /**
+     * @return the names of the cards: the suspects, the weapons, the rooms
+     *         and any further categories, in the order of the rows of the
+     *         notepad
+     */
+    public String[] getCards() {
+        return cards.clone();
+    }
+
+    /**
+     * @return the name of the case file, as a place for query
+     */
+    public String getCaseFile() {
+        return caseFile;
+    }
+
+    /**
+     * @return the cache of cells already derived by query, notepad and
+     *         propagation of the clauses of each move
+     */
+    public DeductionCache getDeductionCache() {
+        return cache;
+    }
+
+    /**
+     * @return the metrics this reasoner and its solver report to
+     */
+    public SolverMetrics getMetrics() {
+        return solver.getMetrics();
+    }
+
+    /**
+     * Report the work of this reasoner to the given metrics instead of the
+     * shared default ones, e.g. to measure one game on its own.
+     * 
+     * @param metrics: the metrics to report to
+     */
+    public synchronized void setMetrics(SolverMetrics metrics) {
+        solver.setMetrics(metrics);
+        if (explainer != null)
+            explainer.setMetrics(metrics);
+    }
+
+    /**
+     * Tell a listener about every cell settled from now on.  Cells settled
+     * by hand, suggest and accuse are found from the consequences of the
+     * new clauses alone, without a search, so a listener sees each
+     * deduction as it is made without the notepad being polled.  A cell
+     * propagated true is reported once the knowledge base is known to be
+     * satisfiable: at once if a query has found it so since the last
+     * clause was added, otherwise with the next query or notepad.  A cell
+     * only a search can decide is reported when query or notepad first
+     * settles it.
+     * 
+     * @param listener: the listener
+     */
+    public void addDeductionListener(DeductionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener: a listener added by addDeductionListener
+     */
+    public void removeDeductionListener(DeductionListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Print out the "detective notepad" indicating the current state of the
      * propositional knowledge about the locations of cards
      */
-    public void printNotepad() {
+    public synchronized void printNotepad() {
+        long start = System.nanoTime();
         PrintStream out = System.out;
+        String[][] notepad = notepad();
         for (String player : players)
             out.print("\t" + player);
         out.println("\t" + caseFile);
-        for (String card : cards) {
-            out.print(card + "\t");
-            for (String player : players)
-                out.print(queryString(query(player, card)) + "\t");
-            out.println(queryString(query(caseFile, card)));
+        for (int c = 0; c < numCards; c++) {
+            out.print(cards[c] + "\t");
+            for (int p = 0; p < numPlayers; p++)
+                out.print(notepad[c][p] + "\t");
+            out.println(notepad[c][numPlayers]);
         }
+        getMetrics().recordLatency(SolverMetrics.Operation.PRINT_NOTEPAD, System.nanoTime() - start);
     }
 
     /**
@@ -0,0 +1,132 @@
+/**
+ * DeductionCache.java - remembers what a ClueReasoner has already derived
+ * about each card/place cell.
+ *
+ * Knowledge only grows: suggest, hand and accuse add clauses but never
+ * remove them.  A cell found TRUE or FALSE therefore stays settled for the
+ * rest of the game.  A cell found satisfiable both ways is only known to
+ * be open at the knowledge base version it was tested at, and must be
+ * tested again once a clause has been added.
+ */
+
+import java.util.*;
+
+public class DeductionCache {
+
+    // Returned by lookup when the cell has to be tested
+    public static final int MISS = Integer.MIN_VALUE;
+
+    // value: SATSolver.TRUE or SATSolver.FALSE for settled cells, else UNKNOWN
+    private int[] value;
+    // settledAt: the knowledge base version at which each cell was settled
+    private long[] settledAt;
+    // openAt: the version at which each cell was known satisfiable both
+    // ways, or -1
+    private long[] openAt;
+    // numSettled: the number of settled cells
+    private int numSettled;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param numCells: the number of cells, one per card/place pair
+     */
+    public DeductionCache(int numCells) {
+        value = new int[numCells];
+        settledAt = new long[numCells];
+        openAt = new long[numCells];
+        Arrays.fill(openAt, -1);
+    }
+
+    /**
+     * Look up a cell.
+     *
+     * @param cell:    the index of the cell
+     * @param version: the current knowledge base version
+     * @return SATSolver.TRUE, FALSE or UNKNOWN if the answer is known at
+     *         this version, MISS otherwise
+     */
+    public int lookup(int cell, long version) {
+        if (value[cell] != SATSolver.UNKNOWN || openAt[cell] == version) {
+            hits++;
+            return value[cell];
+        }
+        misses++;
+        return MISS;
+    }
+
+    /**
+     * Record the result of testing a cell.  Other results, such as
+     * SATSolver.TIMEOUT, say nothing about the cell and are ignored.
+     *
+     * @param cell:    the index of the cell
+     * @param result:  SATSolver.TRUE, FALSE or UNKNOWN
+     * @param version: the knowledge base version the cell was tested at
+     * @return whether this settled the cell
+     */
+    public boolean record(int cell, int result, long version) {
+        if (result != SATSolver.TRUE && result != SATSolver.FALSE && result != SATSolver.UNKNOWN)
+            return false;
+        if (result == SATSolver.UNKNOWN)
+            openAt[cell] = version;
+        else if (value[cell] == SATSolver.UNKNOWN) {
+            value[cell] = result;
+            settledAt[cell] = version;
+            numSettled++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param cell: the index of the cell
+     * @return whether the cell is settled
+     */
+    public boolean isSettled(int cell) {
+        return value[cell] != SATSolver.UNKNOWN;
+    }
+
+    /**
+     * @param cell: the index of a settled cell
+     * @return the knowledge base version at which it was settled
+     */
+    public long getSettledAt(int cell) {
+        return settledAt[cell];
+    }
+
+    /**
+     * Look up a cell without counting a hit or a miss.
+     *
+     * @param cell: the index of the cell
+     * @return SATSolver.TRUE or FALSE if the cell is settled, else UNKNOWN
+     */
+    public int getValue(int cell) {
+        return value[cell];
+    }
+
+    /**
+     * @param cell: the index of the cell
+     * @return the last version at which the cell was known satisfiable
+     *         both ways, or -1
+     */
+    public long getOpenAt(int cell) {
+        return openAt[cell];
+    }
+
+    public int getNumCells() {
+        return value.length;
+    }
+
+    public int getNumSettled() {
+        return numSettled;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+}
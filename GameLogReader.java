@@ -0,0 +1,360 @@
+/**
+ * GameLogReader.java - reads recorded games from an event log, one game at
+ * a time.
+ *
+ * A log is text or binary; the reader tells them apart by the binary
+ * magic number.  The text form has one event per line, with the names
+ * used by ClueReasoner and "-" for an absent refuter or card shown:
+ *
+ *   # comment
+ *   game 17
+ *   hand sc wh li st
+ *   suggest sc sc ro lo mu sc
+ *   suggest mu pe pi di pe -
+ *   accuse sc pe pi bi true
+ *   end
+ *
+ * The binary form (see GameLogWriter) starts with the bytes "CLG1" and
+ * holds the same events with players and cards as one-byte indexes.
+ *
+ * Lines are scanned as bytes in a reused buffer and names are matched
+ * against the name tables byte by byte, so reading allocates nothing per
+ * event; each game costs one int array, its GameRecord.
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+public class GameLogReader implements Closeable {
+
+    // MAGIC: the first bytes of a binary log
+    static final byte[] MAGIC = { 'C', 'L', 'G', '1' };
+    // Record codes of the binary form; events use the GameRecord codes
+    static final int BINARY_GAME = 0x10;
+    static final int BINARY_END = 0x11;
+    // BINARY_NONE: the byte of an absent refuter or card shown
+    static final int BINARY_NONE = 0xFF;
+
+    private static final byte[] GAME = bytes("game");
+    private static final byte[] HAND = bytes("hand");
+    private static final byte[] SUGGEST = bytes("suggest");
+    private static final byte[] ACCUSE = bytes("accuse");
+    private static final byte[] END = bytes("end");
+    private static final byte[] TRUE = bytes("true");
+    private static final byte[] FALSE = bytes("false");
+    private static final byte[] ABSENT = bytes("-");
+
+    private final InputStream in;
+    private final boolean binary;
+    private final byte[][] players;
+    private final byte[][] cards;
+
+    // The current line of a text log and the bounds of its tokens
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int[] tokenStart = new int[16];
+    private int[] tokenEnd = new int[16];
+    private int numTokens;
+    private long lineNumber;
+
+    // The events of the game being read
+    private int[] events = new int[256];
+    private int length;
+    private int numEvents;
+
+    /**
+     * Construct a reader of a log using the names of a standard
+     * ClueReasoner.
+     *
+     * @param in: the log
+     */
+    public GameLogReader(InputStream in) throws IOException {
+        this(in, new ClueReasoner());
+    }
+
+    private GameLogReader(InputStream in, ClueReasoner names) throws IOException {
+        this(in, names.getPlayers(), names.getCards());
+    }
+
+    /**
+     * @param in:      the log
+     * @param players: the player names, in turn order
+     * @param cards:   the card names
+     */
+    public GameLogReader(InputStream in, String[] players, String[] cards) throws IOException {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 1 << 16);
+        this.players = encode(players);
+        this.cards = encode(cards);
+        this.in.mark(MAGIC.length);
+        byte[] head = new byte[MAGIC.length];
+        int n = 0;
+        while (n < head.length) {
+            int read = this.in.read(head, n, head.length - n);
+            if (read < 0)
+                break;
+            n += read;
+        }
+        binary = n == MAGIC.length && Arrays.equals(head, MAGIC);
+        if (!binary)
+            this.in.reset();
+    }
+
+    /**
+     * @return whether the log is in the binary form
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Read the next game.
+     *
+     * @return the game, or null at the end of the log
+     * @throws IOException if the log cannot be read or is malformed
+     */
+    public GameRecord next() throws IOException {
+        return binary ? nextBinary() : nextText();
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private GameRecord nextText() throws IOException {
+        long id = -1;
+        length = 0;
+        numEvents = 0;
+        while (readLine()) {
+            if (numTokens == 0)
+                continue;
+            if (is(0, GAME)) {
+                if (id >= 0)
+                    throw error("game " + id + " has no end");
+                expectTokens(2);
+                id = number(1);
+            }
+            else if (id < 0)
+                throw error("event outside a game");
+            else if (is(0, END))
+                return finish(id);
+            else if (is(0, HAND)) {
+                if (numTokens < 2)
+                    throw error("hand without a player");
+                int n = numTokens - 2;
+                reserve(3 + n);
+                events[length++] = GameRecord.HAND;
+                events[length++] = name(1, players, false);
+                events[length++] = n;
+                for (int k = 0; k < n; k++)
+                    events[length++] = name(2 + k, cards, false);
+                numEvents++;
+            }
+            else if (is(0, SUGGEST)) {
+                expectTokens(7);
+                reserve(7);
+                events[length++] = GameRecord.SUGGEST;
+                events[length++] = name(1, players, false);
+                for (int k = 2; k <= 4; k++)
+                    events[length++] = name(k, cards, false);
+                events[length++] = name(5, players, true);
+                events[length++] = name(6, cards, true);
+                numEvents++;
+            }
+            else if (is(0, ACCUSE)) {
+                expectTokens(6);
+                reserve(6);
+                events[length++] = GameRecord.ACCUSE;
+                events[length++] = name(1, players, false);
+                for (int k = 2; k <= 4; k++)
+                    events[length++] = name(k, cards, false);
+                if (is(5, TRUE))
+                    events[length++] = 1;
+                else if (is(5, FALSE))
+                    events[length++] = 0;
+                else
+                    throw error("expected true or false");
+                numEvents++;
+            }
+            else
+                throw error("unknown event");
+        }
+        // The last game may end with the log
+        return id < 0 ? null : finish(id);
+    }
+
+    private GameRecord nextBinary() throws IOException {
+        int code = in.read();
+        if (code < 0)
+            return null;
+        if (code != BINARY_GAME)
+            throw new IOException("Expected a game record, found code " + code);
+        long id = 0;
+        for (int k = 0; k < 8; k++)
+            id = id << 8 | readByte();
+        length = 0;
+        numEvents = 0;
+        while (true) {
+            code = readByte();
+            switch (code) {
+            case BINARY_END:
+                return finish(id);
+            case GameRecord.HAND:
+                int player = index(readByte(), players, false);
+                int n = readByte();
+                reserve(3 + n);
+                events[length++] = GameRecord.HAND;
+                events[length++] = player;
+                events[length++] = n;
+                for (int k = 0; k < n; k++)
+                    events[length++] = index(readByte(), cards, false);
+                break;
+            case GameRecord.SUGGEST:
+                reserve(7);
+                events[length++] = GameRecord.SUGGEST;
+                events[length++] = index(readByte(), players, false);
+                for (int k = 0; k < 3; k++)
+                    events[length++] = index(readByte(), cards, false);
+                events[length++] = index(readByte(), players, true);
+                events[length++] = index(readByte(), cards, true);
+                break;
+            case GameRecord.ACCUSE:
+                reserve(6);
+                events[length++] = GameRecord.ACCUSE;
+                events[length++] = index(readByte(), players, false);
+                for (int k = 0; k < 3; k++)
+                    events[length++] = index(readByte(), cards, false);
+                events[length++] = readByte() != 0 ? 1 : 0;
+                break;
+            default:
+                throw new IOException("Bad event code " + code + " in game " + id);
+            }
+            numEvents++;
+        }
+    }
+
+    private GameRecord finish(long id) {
+        return new GameRecord(id, Arrays.copyOf(events, length), numEvents);
+    }
+
+    /**
+     * Read the next line of a text log into the line buffer and find its
+     * tokens, ignoring any comment.
+     *
+     * @return false at the end of the log
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        int b = in.read();
+        if (b < 0)
+            return false;
+        while (b >= 0 && b != '\n') {
+            if (lineLength == line.length)
+                line = Arrays.copyOf(line, 2 * line.length);
+            line[lineLength++] = (byte) b;
+            b = in.read();
+        }
+        lineNumber++;
+        numTokens = 0;
+        int i = 0;
+        while (i < lineLength) {
+            byte c = line[i];
+            if (c == '#')
+                break;
+            if (c == ' ' || c == '\t' || c == '\r') {
+                i++;
+                continue;
+            }
+            if (numTokens == tokenStart.length) {
+                tokenStart = Arrays.copyOf(tokenStart, 2 * numTokens);
+                tokenEnd = Arrays.copyOf(tokenEnd, 2 * numTokens);
+            }
+            tokenStart[numTokens] = i;
+            while (i < lineLength && line[i] != ' ' && line[i] != '\t' && line[i] != '\r' && line[i] != '#')
+                i++;
+            tokenEnd[numTokens++] = i;
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the token equals the given bytes
+     */
+    private boolean is(int token, byte[] word) {
+        int start = tokenStart[token];
+        if (tokenEnd[token] - start != word.length)
+            return false;
+        for (int k = 0; k < word.length; k++)
+            if (line[start + k] != word[k])
+                return false;
+        return true;
+    }
+
+    /**
+     * @return the index of the name the token holds
+     */
+    private int name(int token, byte[][] names, boolean absentAllowed) throws IOException {
+        if (absentAllowed && is(token, ABSENT))
+            return GameRecord.NONE;
+        for (int i = 0; i < names.length; i++)
+            if (is(token, names[i]))
+                return i;
+        throw error("unknown name in field " + (token + 1));
+    }
+
+    private long number(int token) throws IOException {
+        long value = 0;
+        if (tokenEnd[token] - tokenStart[token] > 18)
+            throw error("number too long");
+        for (int i = tokenStart[token]; i < tokenEnd[token]; i++) {
+            if (line[i] < '0' || line[i] > '9')
+                throw error("expected a number");
+            value = 10 * value + line[i] - '0';
+        }
+        return value;
+    }
+
+    private void expectTokens(int n) throws IOException {
+        if (numTokens != n)
+            throw error("expected " + n + " fields, found " + numTokens);
+    }
+
+    private IOException error(String message) {
+        return new IOException("Line " + lineNumber + ": " + message + ": "
+            + new String(line, 0, lineLength, StandardCharsets.UTF_8).trim());
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0)
+            throw new EOFException("The log ends inside a game");
+        return b;
+    }
+
+    /**
+     * @return the index a byte of a binary log stands for
+     */
+    private static int index(int b, byte[][] names, boolean absentAllowed) throws IOException {
+        if (absentAllowed && b == BINARY_NONE)
+            return GameRecord.NONE;
+        if (b >= names.length)
+            throw new IOException("Bad name index " + b);
+        return b;
+    }
+
+    private void reserve(int n) {
+        if (length + n > events.length)
+            events = Arrays.copyOf(events, Math.max(2 * events.length, length + n));
+    }
+
+    private static byte[][] encode(String[] names) {
+        byte[][] encoded = new byte[names.length][];
+        for (int i = 0; i < names.length; i++)
+            encoded[i] = bytes(names[i]);
+        return encoded;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
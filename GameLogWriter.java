@@ -0,0 +1,115 @@
+/**
+ * GameLogWriter.java - writes recorded games as an event log that
+ * GameLogReader reads back, in the text or the binary form.
+ *
+ * The binary form is the magic number "CLG1" followed by the games.  A
+ * game is the byte 0x10 and its number as 8 bytes, most significant
+ * first, then its events, then the byte 0x11.  An event is its
+ * GameRecord code followed by one byte per player or card index (0xFF for
+ * an absent refuter or card shown); a hand has its number of cards before
+ * the cards, and an accusation ends with 1 if correct and 0 if not.
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+
+public class GameLogWriter implements Closeable, Flushable {
+
+    private final OutputStream out;
+    private final boolean binary;
+    private final String[] players;
+    private final String[] cards;
+
+    /**
+     * Construct a writer of a log using the names of a standard
+     * ClueReasoner.
+     *
+     * @param out:    where to write the log
+     * @param binary: whether to write the binary form
+     */
+    public GameLogWriter(OutputStream out, boolean binary) throws IOException {
+        this(out, binary, new ClueReasoner());
+    }
+
+    private GameLogWriter(OutputStream out, boolean binary, ClueReasoner names) throws IOException {
+        this(out, binary, names.getPlayers(), names.getCards());
+    }
+
+    /**
+     * @param out:     where to write the log
+     * @param binary:  whether to write the binary form
+     * @param players: the player names, in turn order
+     * @param cards:   the card names
+     */
+    public GameLogWriter(OutputStream out, boolean binary, String[] players, String[] cards)
+            throws IOException {
+        if (binary && (players.length >= GameLogReader.BINARY_NONE || cards.length >= GameLogReader.BINARY_NONE))
+            throw new IllegalArgumentException("Too many names for the binary form");
+        this.out = out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out, 1 << 16);
+        this.binary = binary;
+        this.players = players;
+        this.cards = cards;
+        if (binary)
+            this.out.write(GameLogReader.MAGIC);
+    }
+
+    /**
+     * Write a game.
+     *
+     * @param game: the game, using the name tables of this writer
+     */
+    public void write(GameRecord game) throws IOException {
+        int[] events = game.getEvents();
+        if (binary) {
+            out.write(GameLogReader.BINARY_GAME);
+            for (int k = 56; k >= 0; k -= 8)
+                out.write((int) (game.getId() >>> k));
+        }
+        else
+            text("game " + game.getId() + "\n");
+        int i = 0;
+        while (i < events.length) {
+            int code = events[i];
+            int length = code == GameRecord.HAND ? 3 + events[i + 2] : code == GameRecord.SUGGEST ? 7 : 6;
+            if (binary) {
+                for (int k = 0; k < length; k++)
+                    out.write(events[i + k] == GameRecord.NONE ? GameLogReader.BINARY_NONE : events[i + k]);
+            }
+            else if (code == GameRecord.HAND) {
+                StringBuilder s = new StringBuilder("hand ").append(players[events[i + 1]]);
+                for (int k = 0; k < events[i + 2]; k++)
+                    s.append(' ').append(cards[events[i + 3 + k]]);
+                text(s.append('\n').toString());
+            }
+            else if (code == GameRecord.SUGGEST)
+                text("suggest " + players[events[i + 1]] + " " + cards[events[i + 2]] + " "
+                    + cards[events[i + 3]] + " " + cards[events[i + 4]] + " "
+                    + name(players, events[i + 5]) + " " + name(cards, events[i + 6]) + "\n");
+            else
+                text("accuse " + players[events[i + 1]] + " " + cards[events[i + 2]] + " "
+                    + cards[events[i + 3]] + " " + cards[events[i + 4]] + " "
+                    + (events[i + 5] != 0) + "\n");
+            i += length;
+        }
+        if (binary)
+            out.write(GameLogReader.BINARY_END);
+        else
+            text("end\n");
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void text(String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String name(String[] names, int index) {
+        return index == GameRecord.NONE ? "-" : names[index];
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * GameRecord.java - the events of one recorded game, in a compact form
+ * ready to be replayed on a ClueReasoner.
+ *
+ * The events are stored in one int array, each event as its code followed
+ * by its arguments, with players and cards given by their index in the
+ * name tables of the log the game was read from (see GameLogReader):
+ *
+ *   HAND    player n card_1 .. card_n
+ *   SUGGEST suggester card1 card2 card3 refuter cardShown
+ *   ACCUSE  accuser card1 card2 card3 isCorrect
+ *
+ * An absent refuter or card shown is NONE; isCorrect is 1 or 0.
+ */
+
+import java.util.*;
+
+public class GameRecord {
+
+    public static final int HAND = 1;
+    public static final int SUGGEST = 2;
+    public static final int ACCUSE = 3;
+    // NONE: the index of an absent refuter or card shown
+    public static final int NONE = -1;
+
+    private final long id;
+    private final int[] events;
+    private final int numEvents;
+
+    /**
+     * @param id:        the game's number in its log
+     * @param events:    the encoded events, filling the array, which the
+     *                   record takes over
+     * @param numEvents: the number of events
+     */
+    public GameRecord(long id, int[] events, int numEvents) {
+        this.id = id;
+        this.events = events;
+        this.numEvents = numEvents;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the number of events
+     */
+    public int getNumEvents() {
+        return numEvents;
+    }
+
+    /**
+     * @return a copy of the encoded events
+     */
+    public int[] getEvents() {
+        return events.clone();
+    }
+
+    /**
+     * Play the events on a reasoner.  The names of the log are resolved to
+     * the reasoner's ids once, and the events noted by id.
+     *
+     * @param reasoner: the reasoner, normally new
+     * @param players:  the player names of the log
+     * @param cards:    the card names of the log
+     * @throws IllegalArgumentException if the reasoner lacks a name of the
+     *                                  log
+     */
+    public void replay(ClueReasoner reasoner, String[] players, String[] cards) {
+        int[] playerIds = new int[players.length];
+        for (int k = 0; k < players.length; k++)
+            playerIds[k] = reasoner.getPlayerId(players[k]);
+        int[] cardIds = new int[cards.length];
+        for (int k = 0; k < cards.length; k++)
+            cardIds[k] = reasoner.getCardId(cards[k]);
+        int i = 0;
+        while (i < events.length) {
+            switch (events[i]) {
+            case HAND:
+                int[] hand = new int[events[i + 2]];
+                for (int k = 0; k < hand.length; k++)
+                    hand[k] = cardIds[events[i + 3 + k]];
+                reasoner.hand(playerIds[events[i + 1]], hand);
+                i += 3 + hand.length;
+                break;
+            case SUGGEST:
+                reasoner.suggest(playerIds[events[i + 1]], cardIds[events[i + 2]], cardIds[events[i + 3]],
+                    cardIds[events[i + 4]], idOf(playerIds, events[i + 5]), idOf(cardIds, events[i + 6]));
+                i += 7;
+                break;
+            case ACCUSE:
+                reasoner.accuse(playerIds[events[i + 1]], cardIds[events[i + 2]], cardIds[events[i + 3]],
+                    cardIds[events[i + 4]], events[i + 5] != 0);
+                i += 6;
+                break;
+            default:
+                throw new IllegalStateException("Bad event code " + events[i] + " in game " + id);
+            }
+        }
+    }
+
+    public String toString() {
+        return "game " + id + " (" + numEvents + " events) " + Arrays.toString(events);
+    }
+
+    private static int idOf(int[] ids, int index) {
+        return index == NONE ? ClueReasoner.NONE : ids[index];
+    }
+}
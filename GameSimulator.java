@@ -0,0 +1,462 @@
+/**
+ * GameSimulator.java - plays complete games of Clue between reasoners, to
+ * measure the solver at scale.
+ *
+ * Each game deals the cards of a GameVariant at random: one of each
+ * category to the case file and the rest round-robin to the players.  Every seat
+ * is driven by its own ClueReasoner, which knows its own hand and, of
+ * every suggestion, the refuter and, only when it suggested, the card
+ * shown.  On its turn a seat accuses as soon as its notepad shows the
+ * case file, so every accusation is correct and ends the game;
+ * otherwise it suggests cards it cannot rule out of the case file (see
+ * Strategy) and the first player after it holding one of them shows one
+ * at random.
+ *
+ * Games run in parallel on a fork-join pool.  Game i draws everything
+ * from a generator seeded with the run's seed and i, so a run gives the
+ * same games whatever its parallelism.  The seats of a game report to
+ * SolverMetrics of their own, from which the game's solves and solve time
+ * are read; its memory is the bytes allocated by the thread playing it.
+ *
+ *   java GameSimulator [-games n] [-threads n] [-seed s] [-strategy random|gain]
+ *                      [-players n -deck suspects,weapons,rooms[,...]]
+ *                      [-encoding pairwise|sequential|commander|auto]
+ *                      [-maxTurns n] [-log file] [-binary] [-v]
+ *
+ * plays the games, of the standard game or of a variant of the given
+ * size (see GameVariant.generate), reports on standard output, and can
+ * write the games as seen by the first seat to a log for ReplayEngine.
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class GameSimulator {
+
+    /**
+     * How a seat picks its suggestion.
+     */
+    public enum Strategy {
+        // RANDOM: a random suspect and weapon not ruled out of the case file
+        RANDOM,
+        // GAIN: the best suggestion of ClueReasoner.recommendSuggestion
+        GAIN
+    }
+
+    // SEED_MIX: an odd constant spreading game numbers over the seeds
+    private static final long SEED_MIX = 0x9E3779B97F4A7C15L;
+
+    private final GameVariant variant;
+    private final int threads;
+    private final long seed;
+    private Strategy strategy = Strategy.RANDOM;
+    private int maxTurns = 1000;
+    private boolean recording;
+
+    /**
+     * Construct a simulator of the standard game.
+     *
+     * @param threads: the parallelism of the fork-join pool
+     * @param seed:    the seed from which every game is drawn
+     */
+    public GameSimulator(int threads, long seed) {
+        this(GameVariant.STANDARD, threads, seed);
+    }
+
+    /**
+     * @param variant: the players and cards of the games
+     * @param threads: the parallelism of the fork-join pool
+     * @param seed:    the seed from which every game is drawn
+     */
+    public GameSimulator(GameVariant variant, int threads, long seed) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.variant = variant;
+        this.threads = threads;
+        this.seed = seed;
+    }
+
+    public GameVariant getVariant() {
+        return variant;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public int getMaxTurns() {
+        return maxTurns;
+    }
+
+    /**
+     * @param maxTurns: the number of turns after which a game is stopped
+     *                  unfinished
+     */
+    public void setMaxTurns(int maxTurns) {
+        if (maxTurns < 1)
+            throw new IllegalArgumentException("maxTurns must be positive: " + maxTurns);
+        this.maxTurns = maxTurns;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * @param recording: whether to keep each game as seen by the first seat
+     *                   (see SimulationReport.Game.getRecord()); only games
+     *                   of suspects, weapons and rooms can be recorded
+     */
+    public void setRecording(boolean recording) {
+        if (recording && variant.getNumCategories() != 3)
+            throw new IllegalStateException("Games with further categories cannot be recorded");
+        this.recording = recording;
+    }
+
+    /**
+     * Play games 0 .. numGames - 1.
+     *
+     * @param numGames: the number of games
+     * @return the summaries of the games
+     */
+    public SimulationReport simulate(int numGames) {
+        long start = System.nanoTime();
+        SimulationReport.Game[] games = new SimulationReport.Game[numGames];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Games(games, 0, numGames));
+        }
+        finally {
+            pool.shutdown();
+        }
+        return new SimulationReport(games, threads, System.nanoTime() - start);
+    }
+
+    /**
+     * Plays a range of games, splitting it in halves down to single games.
+     */
+    private class Games extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SimulationReport.Game[] games;
+        private final int from;
+        private final int to;
+
+        Games(SimulationReport.Game[] games, int from, int to) {
+            this.games = games;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from == 1) {
+                games[from] = play(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Games(games, from, middle), new Games(games, middle, to));
+        }
+    }
+
+    /**
+     * Play one game.
+     *
+     * @param number: the game's number, which with the seed determines it
+     * @return the summary of the game
+     */
+    public SimulationReport.Game play(long number) {
+        long start = System.nanoTime();
+        long allocatedAtStart = allocatedBytes();
+        Random random = new Random(seed ^ (number + 1) * SEED_MIX);
+        SolverMetrics metrics = new SolverMetrics();
+
+        String[] players = variant.getPlayers();
+        String[] cards = variant.getCards();
+        int numPlayers = players.length;
+        int numCategories = variant.getNumCategories();
+        // offset[k]: the number of the first card of category k;
+        // offset[numCategories] is the number of cards
+        int[] offset = new int[numCategories + 1];
+        String[][] categories = variant.getCategories();
+        for (int k = 0; k < numCategories; k++)
+            offset[k + 1] = offset[k] + categories[k].length;
+
+        // Deal: owner[c] is the seat holding card c, or numPlayers for the
+        // case file
+        int[] owner = new int[cards.length];
+        int[] rest = new int[cards.length - numCategories];
+        int numRest = 0;
+        for (int k = 0; k < numCategories; k++) {
+            int solution = offset[k] + random.nextInt(categories[k].length);
+            owner[solution] = numPlayers;
+            for (int c = offset[k]; c < offset[k + 1]; c++)
+                if (c != solution)
+                    rest[numRest++] = c;
+        }
+        for (int i = numRest - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = rest[i];
+            rest[i] = rest[j];
+            rest[j] = t;
+        }
+        for (int i = 0; i < numRest; i++)
+            owner[rest[i]] = i % numPlayers;
+
+        ClueReasoner[] seats = new ClueReasoner[numPlayers];
+        for (int s = 0; s < numPlayers; s++) {
+            seats[s] = new ClueReasoner(variant);
+            seats[s].setMetrics(metrics);
+            seats[s].hand(s, hand(owner, s));
+        }
+
+        int[] events = recording ? new int[64] : null;
+        int numEvents = 0;
+        int length = 0;
+        if (recording) {
+            int[] hand = hand(owner, 0);
+            events = append(events, length, GameRecord.HAND, 0, hand.length);
+            events = append(events, length + 3, hand);
+            length += 3 + hand.length;
+            numEvents++;
+        }
+
+        int winner = -1;
+        int turns = 0;
+        while (turns < maxTurns) {
+            int s = turns % numPlayers;
+            turns++;
+            String[][] notepad = seats[s].notepad();
+            int[] known = solved(notepad, numPlayers, offset);
+            if (known != null) {
+                seats[s].accuse(s, known, true);
+                if (recording) {
+                    events = append(events, length, GameRecord.ACCUSE, s, known[0], known[1], known[2], 1);
+                    length += 6;
+                    numEvents++;
+                }
+                winner = s;
+                break;
+            }
+
+            int[] suggested = choose(seats[s], players[s], cards, notepad, random, numPlayers, offset);
+            // The first player after the suggester holding a suggested card
+            // refutes, showing one of them at random
+            int refuter = GameRecord.NONE;
+            int shown = GameRecord.NONE;
+            for (int k = 1; k < numPlayers && refuter == GameRecord.NONE; k++) {
+                int p = (s + k) % numPlayers;
+                int held = 0;
+                for (int c : suggested)
+                    if (owner[c] == p && random.nextInt(++held) == 0)
+                        shown = c;
+                if (held > 0)
+                    refuter = p;
+            }
+            // The seats number players and cards as the variant does
+            for (int t = 0; t < numPlayers; t++)
+                seats[t].suggest(s, suggested, refuter, t == s ? shown : ClueReasoner.NONE);
+            if (recording) {
+                events = append(events, length, GameRecord.SUGGEST, s, suggested[0], suggested[1],
+                    suggested[2], refuter, s == 0 ? shown : GameRecord.NONE);
+                length += 7;
+                numEvents++;
+            }
+        }
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        long allocatedAtEnd = allocatedBytes();
+        GameRecord record = recording ? new GameRecord(number, Arrays.copyOf(events, length), numEvents)
+            : null;
+        return new SimulationReport.Game(number, winner, turns, snapshot.getSolves(),
+            snapshot.latency(SolverMetrics.Operation.SOLVE).getTotalNanos(), System.nanoTime() - start,
+            allocatedAtStart < 0 ? -1 : allocatedAtEnd - allocatedAtStart, record);
+    }
+
+    /**
+     * Pick a suggestion for a seat: a random room, being where the player
+     * happens to be, and a card of each other category chosen by the
+     * strategy.
+     *
+     * @param offset: the number of the first card of each category
+     * @return the card numbers of the suggested cards, in category order
+     */
+    private int[] choose(ClueReasoner seat, String player, String[] cards, String[][] notepad,
+            Random random, int numPlayers, int[] offset) {
+        int[] suggested = new int[offset.length - 1];
+        suggested[2] = offset[2] + random.nextInt(offset[3] - offset[2]);
+        if (strategy == Strategy.GAIN) {
+            // One thread: the games already keep the pool busy
+            Suggestion best = seat.recommendSuggestion(player, cards[suggested[2]], 1)[0];
+            String[] names = best.getCards();
+            for (int k = 0; k < suggested.length; k++)
+                suggested[k] = indexOf(cards, names[k]);
+            return suggested;
+        }
+        for (int k = 0; k < suggested.length; k++)
+            if (k != 2)
+                suggested[k] = pickOpen(notepad, numPlayers, offset[k], offset[k + 1], random);
+        return suggested;
+    }
+
+    /**
+     * @return a random card among from .. to - 1 not ruled out of the case
+     *         file, or any of them if all are
+     */
+    private static int pickOpen(String[][] notepad, int numPlayers, int from, int to, Random random) {
+        int picked = from + random.nextInt(to - from);
+        int open = 0;
+        for (int c = from; c < to; c++)
+            if (!notepad[c][numPlayers].equals("n") && random.nextInt(++open) == 0)
+                picked = c;
+        return picked;
+    }
+
+    /**
+     * @param offset: the number of the first card of each category
+     * @return the case file, a card of each category, if the notepad shows
+     *         it, or null
+     */
+    private static int[] solved(String[][] notepad, int numPlayers, int[] offset) {
+        int[] known = new int[offset.length - 1];
+        for (int k = 0; k < known.length; k++) {
+            known[k] = -1;
+            for (int c = offset[k]; c < offset[k + 1]; c++)
+                if (notepad[c][numPlayers].equals("Y"))
+                    known[k] = c;
+            if (known[k] < 0)
+                return null;
+        }
+        return known;
+    }
+
+    private static int[] hand(int[] owner, int seat) {
+        int size = 0;
+        for (int o : owner)
+            if (o == seat)
+                size++;
+        int[] hand = new int[size];
+        size = 0;
+        for (int c = 0; c < owner.length; c++)
+            if (owner[c] == seat)
+                hand[size++] = c;
+        return hand;
+    }
+
+    private static int indexOf(String[] table, String name) {
+        for (int i = 0; i < table.length; i++)
+            if (table[i].equals(name))
+                return i;
+        throw new IllegalArgumentException("Unknown name: " + name);
+    }
+
+    /**
+     * Copy values into an event array at the given length, growing it as
+     * needed.
+     */
+    private static int[] append(int[] events, int length, int... values) {
+        if (length + values.length > events.length)
+            events = Arrays.copyOf(events, Math.max(2 * events.length, length + values.length));
+        System.arraycopy(values, 0, events, length, values.length);
+        return events;
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread, or -1 if
+     *         the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+            return -1;
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int games = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        Strategy strategy = Strategy.RANDOM;
+        int maxTurns = 1000;
+        String logName = null;
+        boolean binary = false;
+        boolean verbose = false;
+        int numPlayers = 0;
+        int[] deck = null;
+        CardinalityEncoder.Encoding encoding = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-games") && i + 1 < args.length)
+                games = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-seed") && i + 1 < args.length)
+                seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-strategy") && i + 1 < args.length)
+                strategy = Strategy.valueOf(args[++i].toUpperCase());
+            else if (args[i].equals("-maxTurns") && i + 1 < args.length)
+                maxTurns = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-players") && i + 1 < args.length)
+                numPlayers = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-deck") && i + 1 < args.length) {
+                String[] sizes = args[++i].split(",");
+                deck = new int[sizes.length];
+                for (int k = 0; k < sizes.length; k++)
+                    deck[k] = Integer.parseInt(sizes[k]);
+            }
+            else if (args[i].equals("-encoding") && i + 1 < args.length)
+                encoding = CardinalityEncoder.Encoding.valueOf(args[++i].toUpperCase());
+            else if (args[i].equals("-log") && i + 1 < args.length)
+                logName = args[++i];
+            else if (args[i].equals("-binary"))
+                binary = true;
+            else if (args[i].equals("-v"))
+                verbose = true;
+            else
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+        }
+
+        GameVariant variant = GameVariant.STANDARD;
+        if (numPlayers > 0 || deck != null)
+            variant = GameVariant.generate(numPlayers > 0 ? numPlayers : variant.getNumPlayers(),
+                deck != null ? deck : new int[] { 6, 6, 9 });
+        if (encoding != null)
+            variant = variant.withEncoding(encoding);
+        GameSimulator simulator = new GameSimulator(variant, threads, seed);
+        simulator.setStrategy(strategy);
+        simulator.setMaxTurns(maxTurns);
+        simulator.setRecording(logName != null);
+        SimulationReport report = simulator.simulate(games);
+        if (verbose)
+            for (SimulationReport.Game game : report.getGames())
+                System.out.println(game);
+        System.out.print(report);
+
+        if (logName != null) {
+            GameLogWriter log = new GameLogWriter(new FileOutputStream(logName), binary,
+                variant.getPlayers(), variant.getCards());
+            try {
+                for (SimulationReport.Game game : report.getGames())
+                    log.write(game.getRecord());
+            }
+            finally {
+                log.close();
+            }
+        }
+    }
+}
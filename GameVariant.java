@@ -0,0 +1,239 @@
+/**
+ * GameVariant.java - the players and cards of a game of Clue.
+ *
+ * A variant has any number of players and any number of card
+ * categories, at least the suspects, the weapons and the rooms, in that
+ * order; the case file holds one card of each category, and a suggestion
+ * names one card of each.  Card names must be distinct across all
+ * categories, and player names must be distinct and differ from the name
+ * of the case file (they may equal card names, as in the standard game).
+ * The variant also chooses how its "at most one" constraints are encoded
+ * (see CardinalityEncoder); the default suits both the standard game and
+ * large decks and tables.
+ *
+ * The cards not in the case file are dealt one at a time in turn order,
+ * starting with the first player, so when they do not divide evenly the
+ * first players hold one card more.  The hand sizes of a variant follow
+ * from that unless given, and can be left unknown.
+ *
+ * Variants are immutable, and equal variants share their compiled
+ * general knowledge (see ClueReasoner).
+ */
+
+import java.util.*;
+
+public class GameVariant {
+
+    // STANDARD: the game of the original reasoner
+    public static final GameVariant STANDARD = new GameVariant(
+        new String[] { "sc", "mu", "wh", "gr", "pe", "pl" },
+        new String[][] {
+            { "mu", "pl", "gr", "pe", "sc", "wh" },
+            { "kn", "ca", "re", "ro", "pi", "wr" },
+            { "ha", "lo", "di", "ki", "ba", "co", "bi", "li", "st" }
+        });
+
+    // CASE_FILE: the name of the case file, as a place
+    public static final String CASE_FILE = "cf";
+
+    private final String[] players;
+    private final String[][] categories;
+    private final CardinalityEncoder.Encoding encoding;
+    // handSizes: the number of cards of each player, or null if unknown
+    private final int[] handSizes;
+
+    /**
+     * @param players:    the player names, in turn order
+     * @param categories: the card names of each category: the suspects,
+     *                    the weapons, the rooms and any further categories
+     */
+    public GameVariant(String[] players, String[][] categories) {
+        this(players, categories, CardinalityEncoder.Encoding.AUTO);
+    }
+
+    /**
+     * @param players:    the player names, in turn order
+     * @param categories: the card names of each category: the suspects,
+     *                    the weapons, the rooms and any further categories
+     * @param encoding:   the encoding of the "at most one" constraints
+     */
+    public GameVariant(String[] players, String[][] categories, CardinalityEncoder.Encoding encoding) {
+        this(players, categories, encoding, dealtHandSizes(players.length, categories));
+    }
+
+    /**
+     * @param players:    the player names, in turn order
+     * @param categories: the card names of each category: the suspects,
+     *                    the weapons, the rooms and any further categories
+     * @param encoding:   the encoding of the "at most one" constraints
+     * @param handSizes:  the number of cards of each player, adding up to
+     *                    the cards outside the case file, or null if unknown
+     */
+    public GameVariant(String[] players, String[][] categories, CardinalityEncoder.Encoding encoding,
+            int[] handSizes) {
+        if (players.length < 2)
+            throw new IllegalArgumentException("A game needs at least 2 players");
+        if (categories.length < 3)
+            throw new IllegalArgumentException("A game needs suspects, weapons and rooms");
+        Set<String> names = new HashSet<String>();
+        for (String player : players)
+            if (player.equals(CASE_FILE) || !names.add(player))
+                throw new IllegalArgumentException("Duplicate player: " + player);
+        names.clear();
+        for (String[] category : categories) {
+            if (category.length == 0)
+                throw new IllegalArgumentException("Empty category");
+            for (String card : category)
+                if (!names.add(card))
+                    throw new IllegalArgumentException("Duplicate card: " + card);
+        }
+        this.players = players.clone();
+        this.categories = new String[categories.length][];
+        for (int k = 0; k < categories.length; k++)
+            this.categories[k] = categories[k].clone();
+        this.encoding = encoding;
+        if (handSizes != null) {
+            int dealt = 0;
+            for (int size : handSizes) {
+                if (size < 0)
+                    throw new IllegalArgumentException("Negative hand size: " + size);
+                dealt += size;
+            }
+            if (handSizes.length != players.length || dealt != getNumCards() - categories.length)
+                throw new IllegalArgumentException("Hand sizes " + Arrays.toString(handSizes)
+                    + " do not deal " + (getNumCards() - categories.length) + " cards to "
+                    + players.length + " players");
+        }
+        this.handSizes = handSizes == null ? null : handSizes.clone();
+    }
+
+    /**
+     * @return the hand sizes of a deal in turn order from the first player
+     */
+    private static int[] dealtHandSizes(int numPlayers, String[][] categories) {
+        if (numPlayers == 0)
+            return null;
+        int dealt = -categories.length;
+        for (String[] category : categories)
+            dealt += category.length;
+        int[] handSizes = new int[numPlayers];
+        for (int p = 0; p < numPlayers; p++)
+            handSizes[p] = dealt / numPlayers + (p < dealt % numPlayers ? 1 : 0);
+        return handSizes;
+    }
+
+    /**
+     * Make a variant of the given size with generated names: players p1,
+     * p2, ..; suspects s1, s2, ..; weapons w1, ..; rooms r1, ..; and the
+     * cards of further categories x4_1, .., x5_1, ...
+     *
+     * @param numPlayers:    the number of players
+     * @param categorySizes: the number of cards of each category
+     * @return the variant
+     */
+    public static GameVariant generate(int numPlayers, int... categorySizes) {
+        String[] players = new String[numPlayers];
+        for (int i = 0; i < numPlayers; i++)
+            players[i] = "p" + (i + 1);
+        String[][] categories = new String[categorySizes.length][];
+        for (int k = 0; k < categorySizes.length; k++) {
+            String prefix = k < 3 ? "swr".substring(k, k + 1) : "x" + (k + 1) + "_";
+            categories[k] = new String[categorySizes[k]];
+            for (int i = 0; i < categorySizes[k]; i++)
+                categories[k][i] = prefix + (i + 1);
+        }
+        return new GameVariant(players, categories);
+    }
+
+    /**
+     * @param encoding: an encoding of the "at most one" constraints
+     * @return this variant with the given encoding
+     */
+    public GameVariant withEncoding(CardinalityEncoder.Encoding encoding) {
+        return new GameVariant(players, categories, encoding, handSizes);
+    }
+
+    /**
+     * @param handSizes: the number of cards of each player, or null if
+     *                   unknown
+     * @return this variant with the given hand sizes
+     */
+    public GameVariant withHandSizes(int[] handSizes) {
+        return new GameVariant(players, categories, encoding, handSizes);
+    }
+
+    /**
+     * @return the player names, in turn order
+     */
+    public String[] getPlayers() {
+        return players.clone();
+    }
+
+    public int getNumPlayers() {
+        return players.length;
+    }
+
+    /**
+     * @return the card names of each category
+     */
+    public String[][] getCategories() {
+        String[][] copy = new String[categories.length][];
+        for (int k = 0; k < categories.length; k++)
+            copy[k] = categories[k].clone();
+        return copy;
+    }
+
+    public int getNumCategories() {
+        return categories.length;
+    }
+
+    /**
+     * @return the names of all cards, category after category
+     */
+    public String[] getCards() {
+        String[] cards = new String[getNumCards()];
+        int i = 0;
+        for (String[] category : categories)
+            for (String card : category)
+                cards[i++] = card;
+        return cards;
+    }
+
+    public int getNumCards() {
+        int numCards = 0;
+        for (String[] category : categories)
+            numCards += category.length;
+        return numCards;
+    }
+
+    public CardinalityEncoder.Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return the number of cards of each player, in turn order, or null
+     *         if unknown
+     */
+    public int[] getHandSizes() {
+        return handSizes == null ? null : handSizes.clone();
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof GameVariant))
+            return false;
+        GameVariant v = (GameVariant) o;
+        return Arrays.equals(players, v.players) && Arrays.deepEquals(categories, v.categories)
+            && encoding == v.encoding && Arrays.equals(handSizes, v.handSizes);
+    }
+
+    public int hashCode() {
+        return 31 * (31 * (31 * Arrays.hashCode(players) + Arrays.deepHashCode(categories))
+            + encoding.hashCode()) + Arrays.hashCode(handSizes);
+    }
+
+    public String toString() {
+        return String.format("%d players, %d categories, %d cards, %s, hands %s", players.length,
+            categories.length, getNumCards(), encoding,
+            handSizes == null ? "unknown" : Arrays.toString(handSizes));
+    }
+}
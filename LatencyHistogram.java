@@ -0,0 +1,110 @@
+/**
+ * LatencyHistogram.java - a histogram of durations that any number of
+ * threads can record into concurrently.
+ *
+ * Durations are counted in power-of-two buckets of nanoseconds: bucket b
+ * holds durations d with 2^(b-1) <= d < 2^b (bucket 0 holds 0).  Quantiles
+ * are therefore estimated within a factor of two, which is enough to tell
+ * a 50 microsecond query from a 5 millisecond one.
+ */
+
+import java.util.concurrent.atomic.*;
+
+public class LatencyHistogram {
+
+    // The number of buckets; bucket 63 holds every duration from 2^62 ns up
+    public static final int NUM_BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos: a duration in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        buckets.incrementAndGet(bucket(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+            max = maxNanos.get();
+    }
+
+    /**
+     * @param nanos: a duration in nanoseconds
+     * @return the index of the bucket counting that duration
+     */
+    public static int bucket(long nanos) {
+        return Math.min(64 - Long.numberOfLeadingZeros(nanos), NUM_BUCKETS - 1);
+    }
+
+    /**
+     * @param bucket: the index of a bucket
+     * @return the largest duration counted by the bucket, in nanoseconds
+     */
+    public static long upperBound(int bucket) {
+        return bucket >= NUM_BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * @return the counts of the buckets; concurrent recording may make them
+     *         differ slightly from getCount()
+     */
+    public long[] getBuckets() {
+        long[] counts = new long[NUM_BUCKETS];
+        for (int b = 0; b < NUM_BUCKETS; b++)
+            counts[b] = buckets.get(b);
+        return counts;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Estimate a quantile of the durations from bucket counts.
+     *
+     * @param counts:   the bucket counts, as from getBuckets()
+     * @param quantile: the quantile, between 0 and 1
+     * @return the upper bound of the bucket holding the quantile, or 0 if
+     *         nothing was recorded
+     */
+    public static long quantile(long[] counts, double quantile) {
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank && seen > 0)
+                return upperBound(b);
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    /**
+     * Forget all recorded durations.
+     */
+    public void reset() {
+        for (int b = 0; b < NUM_BUCKETS; b++)
+            buckets.set(b, 0);
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+}
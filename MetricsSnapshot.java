@@ -0,0 +1,299 @@
+/**
+ * MetricsSnapshot.java - the values of a SolverMetrics at one moment.
+ *
+ * A snapshot is immutable, so it can be logged, compared with a later
+ * snapshot or handed to JMX clients, which see it as composite data.
+ * Counters keep growing until SolverMetrics.reset(); the activity of one
+ * period is the difference of two snapshots.
+ */
+
+public class MetricsSnapshot {
+
+    /**
+     * The latency distribution of one kind of operation.
+     */
+    public static class Latency {
+        private final String operation;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] buckets;
+
+        Latency(String operation, LatencyHistogram histogram) {
+            this.operation = operation;
+            this.buckets = histogram.getBuckets();
+            this.count = histogram.getCount();
+            this.totalNanos = histogram.getTotalNanos();
+            this.maxNanos = histogram.getMaxNanos();
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * @return the estimated median, in nanoseconds
+         */
+        public long getP50Nanos() {
+            return Math.min(LatencyHistogram.quantile(buckets, 0.50), maxNanos);
+        }
+
+        /**
+         * @return the estimated 90th percentile, in nanoseconds
+         */
+        public long getP90Nanos() {
+            return Math.min(LatencyHistogram.quantile(buckets, 0.90), maxNanos);
+        }
+
+        /**
+         * @return the estimated 99th percentile, in nanoseconds
+         */
+        public long getP99Nanos() {
+            return Math.min(LatencyHistogram.quantile(buckets, 0.99), maxNanos);
+        }
+
+        /**
+         * @return the bucket counts, as for LatencyHistogram.getBuckets()
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        public String toString() {
+            return String.format("%-13s n=%d mean=%.1fus p50<=%.1fus p99<=%.1fus max=%.1fus",
+                operation, count, getMeanNanos() / 1e3, getP50Nanos() / 1e3,
+                getP99Nanos() / 1e3, maxNanos / 1e3);
+        }
+    }
+
+    private final long solves;
+    private final long testLiterals;
+    private final long testLiteralSolves;
+    private final long[] answers;
+    private final long searches;
+    private final long decisions;
+    private final long conflicts;
+    private final long propagations;
+    private final long processSpawns;
+    private final long processSpawnNanos;
+    private final long cnfWrites;
+    private final long cnfWriteNanos;
+    private final long cnfBytes;
+    private final long errors;
+    private final long timeouts;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final Latency[] latencies;
+
+    MetricsSnapshot(long solves, long testLiterals, long testLiteralSolves, long[] answers,
+            long searches, long decisions, long conflicts, long propagations,
+            long processSpawns, long processSpawnNanos, long cnfWrites, long cnfWriteNanos,
+            long cnfBytes, long errors, long timeouts, long cacheHits, long cacheMisses,
+            Latency[] latencies) {
+        this.solves = solves;
+        this.testLiterals = testLiterals;
+        this.testLiteralSolves = testLiteralSolves;
+        this.answers = answers;
+        this.searches = searches;
+        this.decisions = decisions;
+        this.conflicts = conflicts;
+        this.propagations = propagations;
+        this.processSpawns = processSpawns;
+        this.processSpawnNanos = processSpawnNanos;
+        this.cnfWrites = cnfWrites;
+        this.cnfWriteNanos = cnfWriteNanos;
+        this.cnfBytes = cnfBytes;
+        this.errors = errors;
+        this.timeouts = timeouts;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.latencies = latencies;
+    }
+
+    /**
+     * @return the number of satisfiability checks run by backends
+     */
+    public long getSolves() {
+        return solves;
+    }
+
+    /**
+     * @return the number of SATSolver.testLiteral calls
+     */
+    public long getTestLiterals() {
+        return testLiterals;
+    }
+
+    /**
+     * @return the number of backend solves run on behalf of testLiteral
+     */
+    public long getTestLiteralSolves() {
+        return testLiteralSolves;
+    }
+
+    public double getSolvesPerTestLiteral() {
+        return testLiterals == 0 ? 0 : (double) testLiteralSolves / testLiterals;
+    }
+
+    /**
+     * @return the number of literals answered by unit propagation
+     */
+    public long getPropagationAnswers() {
+        return answers[SATSolver.QueryPath.PROPAGATION.ordinal()];
+    }
+
+    /**
+     * @return the number of literals answered by failed-literal probing
+     */
+    public long getProbingAnswers() {
+        return answers[SATSolver.QueryPath.PROBING.ordinal()];
+    }
+
+    /**
+     * @return the number of literals answered by a backend
+     */
+    public long getSearchAnswers() {
+        return answers[SATSolver.QueryPath.SEARCH.ordinal()];
+    }
+
+    /**
+     * @return the number of solves run by the in-process CDCLSolver, which
+     *         reports decisions, conflicts and propagations
+     */
+    public long getSearches() {
+        return searches;
+    }
+
+    public long getDecisions() {
+        return decisions;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public long getPropagations() {
+        return propagations;
+    }
+
+    public double getDecisionsPerSearch() {
+        return searches == 0 ? 0 : (double) decisions / searches;
+    }
+
+    public double getConflictsPerSearch() {
+        return searches == 0 ? 0 : (double) conflicts / searches;
+    }
+
+    public double getPropagationsPerSearch() {
+        return searches == 0 ? 0 : (double) propagations / searches;
+    }
+
+    /**
+     * @return the number of external solver processes started
+     */
+    public long getProcessSpawns() {
+        return processSpawns;
+    }
+
+    /**
+     * @return the time spent starting external solver processes
+     */
+    public long getProcessSpawnNanos() {
+        return processSpawnNanos;
+    }
+
+    /**
+     * @return the number of CNF texts written for external solvers
+     */
+    public long getCnfWrites() {
+        return cnfWrites;
+    }
+
+    public long getCnfWriteNanos() {
+        return cnfWriteNanos;
+    }
+
+    public long getCnfBytes() {
+        return cnfBytes;
+    }
+
+    /**
+     * @return the number of solves that failed, e.g. because an external
+     *         solver could not be run
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the number of asynchronous operations stopped by their
+     *         deadline
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public double getCacheHitRate() {
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double) cacheHits / lookups;
+    }
+
+    /**
+     * @return the latency distribution of each kind of operation, in the
+     *         order of SolverMetrics.Operation
+     */
+    public Latency[] getLatencies() {
+        return latencies.clone();
+    }
+
+    /**
+     * @param operation: a kind of operation
+     * @return its latency distribution
+     */
+    public Latency latency(SolverMetrics.Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("solves=%d testLiterals=%d solves/testLiteral=%.2f%n",
+            solves, testLiterals, getSolvesPerTestLiteral()));
+        s.append(String.format("answers: propagation=%d probing=%d search=%d%n",
+            getPropagationAnswers(), getProbingAnswers(), getSearchAnswers()));
+        s.append(String.format("per search: decisions=%.1f conflicts=%.1f propagations=%.1f%n",
+            getDecisionsPerSearch(), getConflictsPerSearch(), getPropagationsPerSearch()));
+        s.append(String.format("processes=%d spawn=%.1fms cnf=%d writes %d bytes %.1fms%n",
+            processSpawns, processSpawnNanos / 1e6, cnfWrites, cnfBytes, cnfWriteNanos / 1e6));
+        s.append(String.format("errors=%d timeouts=%d%n", errors, timeouts));
+        s.append(String.format("cache: hits=%d misses=%d rate=%.3f%n",
+            cacheHits, cacheMisses, getCacheHitRate()));
+        for (Latency latency : latencies)
+            if (latency.getCount() > 0)
+                s.append(latency).append(String.format("%n"));
+        return s.toString();
+    }
+}
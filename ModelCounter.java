@@ -0,0 +1,765 @@
+/**
+ * ModelCounter.java - an exact model counter (#SAT) for the clauses of a
+ * SATSolver.
+ *
+ * The counter is a DPLL search in the style of sharpSAT: after each
+ * decision and its unit propagation, the clauses not yet satisfied are
+ * split into connected components (sets of clauses sharing variables),
+ * which are counted separately and multiplied.  Every component is cached
+ * under its residual clauses, named compactly: a clause none of whose
+ * variables is assigned is left whole, so it is implied by the set of
+ * variables of the component, and only the clauses the assignment has
+ * shortened are spelled out.  A key is then the size of the frontier
+ * between the decided and the open variables rather than of the whole
+ * residual, and the residual of a branch is looked up whole before it is
+ * split; most branches end in a hit without being searched for
+ * components.  The occurrences of the clauses are kept per literal, so
+ * that an assignment visits only the clauses it satisfies or shortens.
+ * The cache
+ * is kept from one call to the next: the clauses that changed in between
+ * only invalidate the components holding all of their variables, so that
+ * recounting after a few clauses were added mostly hits the cache.
+ *
+ * The cached components form a graph, each component pointing to the
+ * components of its branches.  Marginals are computed from this graph
+ * in one pass, without counting again: the share of the models of a
+ * component that go through each branch is passed down to the
+ * subcomponents of the branch, and credited to the literals fixed in it.
+ *
+ * The counter branches on the variable occurring in most unsatisfied
+ * clauses, unless given a branching order.  An order matters for chains
+ * such as the sequential counters of CardinalityEncoder: deciding their
+ * inputs from one end leaves a residual chain that depends only on the
+ * running counts, so equal counts hit the cache.  The order is made of
+ * groups of variables decided in one step, one branch setting each
+ * variable true and those before it false, and one setting them all
+ * false; only what is left after the whole group is looked up, so the
+ * states half way through a group, which hardly recur, cost no lookup.
+ */
+
+import java.math.*;
+import java.util.*;
+
+public class ModelCounter {
+
+    // Largest number of cached components, and largest total length of
+    // their keys; the cache is cleared beyond either
+    private static final int MAX_CACHE = 1 << 20;
+    private static final int MAX_CACHE_LITERALS = 1 << 24;
+
+    // MAX_CHANGED: the most changed clauses a call invalidates cached
+    // components by; beyond it the cache is cleared
+    private static final int MAX_CHANGED = 64;
+
+    /**
+     * A cache key: the variables of a component, as a bit set, and the
+     * residuals of the shortened clauses of the component, each sorted, in
+     * the order of the clauses they are left of, separated by zeros.  The
+     * clauses left whole are those of the clauses being counted whose
+     * variables all lie in the set, so the key determines the residual
+     * clauses, and equal keys have equal counts, as long as the clauses
+     * being counted do not change (see invalidate).  Ordering by clause
+     * rather than by content is much cheaper, at the price of missing the
+     * odd residual set reached through other clauses.
+     */
+    private static final class Key {
+        final long[] vars;
+        final int[] lits;
+        final int hash;
+
+        Key(long[] vars, int[] lits) {
+            this.vars = vars;
+            this.lits = lits;
+            this.hash = 31 * Arrays.hashCode(vars) + Arrays.hashCode(lits);
+        }
+
+        /**
+         * @return the number of ints the key holds
+         */
+        int size() {
+            return 2 * vars.length + lits.length;
+        }
+
+        /**
+         * @return whether every variable of the clause is in the key's set
+         */
+        boolean covers(int[] clause) {
+            for (int literal : clause) {
+                int v = Math.abs(literal);
+                if (v >> 6 >= vars.length || (vars[v >> 6] & 1L << v) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return hash == key.hash && Arrays.equals(vars, key.vars) && Arrays.equals(lits, key.lits);
+        }
+    }
+
+    /**
+     * A counted component.  Branch b < n of a group of n variables decided
+     * sets the bth variable true and the ones before it false, and branch
+     * n sets them all false; a branch lists the literals fixed by the
+     * decisions and their propagation, the subcomponents left and the
+     * variables left free.  A branch ending in a conflict has no models
+     * and null lists.
+     */
+    private static final class Node {
+        // id: increases with the order in which nodes are completed, so a
+        // node's subcomponents have smaller ids
+        int id;
+        BigInteger count;
+        BigInteger[] branchCount;
+        int[][] fixed;
+        Node[][] children;
+        int[][] free;
+
+        Node(int branches) {
+            branchCount = new BigInteger[branches];
+            fixed = new int[branches][];
+            children = new Node[branches][];
+            free = new int[branches][];
+        }
+        // Per marginals() call: the share of the models going through the
+        // node, and the call the share belongs to
+        double mass;
+        int visited;
+    }
+
+    // cache: the components already counted
+    private HashMap<Key, Node> cache = new HashMap<Key, Node>();
+    // cacheLiterals: the total size of the cached keys
+    private long cacheLiterals;
+    // loaded: the clauses of the previous call, which the cached keys
+    // refer to
+    private int[][] loaded;
+    private int nextId;
+    private int call;
+    // groups: the branching order; rank[v] is the position of the group
+    // of variable v in it, or Integer.MAX_VALUE if it is not in it
+    private int[][] groups = new int[0][];
+    private int[] rank = new int[0];
+    private long hits;
+    private long misses;
+
+    // The clauses being counted and, for each literal code (see code),
+    // the clauses it occurs in
+    private int numVars;
+    private int[][] clauses;
+    private int[][] occurrences;
+    private int[] occurrenceSize;
+    // numTrue[i]: the number of true literals of clause i
+    private int[] numTrue;
+    // touchMark[i] == touchStamp for the clauses already collected as
+    // shortened
+    private int[] touchMark;
+    private int touchStamp;
+
+    // The current assignment: value[v] is 1, -1 or 0 (unassigned)
+    private byte[] value;
+    private int[] trail;
+    private int trailSize;
+
+    // Marks for component search; a variable or clause is marked when its
+    // entry equals stamp
+    private int[] varMark;
+    private int[] clauseMark;
+    private int stamp;
+
+    /**
+     * Branch on the given groups of variables first, in the given order,
+     * deciding the variables of a group in one step; the others are chosen
+     * one at a time by how many unsatisfied clauses they occur in.
+     *
+     * @param groups: groups of distinct variables, each variable in one
+     *                group at most, or an empty array for none
+     */
+    public void setBranchOrder(int[][] groups) {
+        int max = 0;
+        for (int[] group : groups)
+            for (int v : group)
+                max = Math.max(max, v);
+        this.groups = groups;
+        rank = new int[max + 1];
+        Arrays.fill(rank, Integer.MAX_VALUE);
+        for (int k = 0; k < groups.length; k++)
+            for (int v : groups[k])
+                rank[v] = k;
+    }
+
+    /**
+     * Count the models of the clauses over variables 1..numVars.
+     * Variables occurring in no clause are free and double the count.
+     *
+     * @param clauses: the clauses
+     * @param numVars: the number of variables
+     * @return the number of models
+     */
+    public BigInteger count(ClauseArena clauses, int numVars) {
+        if (!load(clauses, numVars))
+            return BigInteger.ZERO;
+        BigInteger total = BigInteger.ONE;
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        ArrayList<Integer> free = new ArrayList<Integer>();
+        split(unassigned(allVars()), shortened(new int[0], 0), nodes, free);
+        for (Node node : nodes)
+            total = total.multiply(node.count);
+        return total.shiftLeft(free.size());
+    }
+
+    /**
+     * Find for each of the given variables the fraction of the models in
+     * which it is true.
+     *
+     * @param clauses: the clauses
+     * @param numVars: the number of variables
+     * @param vars:    the variables, each between 1 and numVars
+     * @return the marginal of each variable, or NaN for all of them if the
+     *         clauses have no model
+     */
+    public double[] marginals(ClauseArena clauses, int numVars, int[] vars) {
+        double[] marginals = new double[vars.length];
+        double[] positive = new double[numVars + 1];
+        if (!load(clauses, numVars)) {
+            Arrays.fill(marginals, Double.NaN);
+            return marginals;
+        }
+
+        // Variables fixed at the root, free variables and root components
+        for (int k = 0; k < trailSize; k++)
+            if (trail[k] > 0)
+                positive[trail[k]] = 1;
+        ArrayList<Node> roots = new ArrayList<Node>();
+        ArrayList<Integer> free = new ArrayList<Integer>();
+        split(unassigned(allVars()), shortened(new int[0], 0), roots, free);
+        for (int v : free)
+            positive[v] = 0.5;
+        for (Node root : roots)
+            if (root.count.signum() == 0) {
+                Arrays.fill(marginals, Double.NaN);
+                return marginals;
+            }
+
+        // Pass the share of models down the graph, parents first
+        call++;
+        ArrayList<Node> reached = new ArrayList<Node>();
+        for (Node root : roots) {
+            if (root.visited != call) {
+                root.visited = call;
+                root.mass = 0;
+                reached.add(root);
+            }
+            root.mass += 1;
+        }
+        for (int r = 0; r < reached.size(); r++) {
+            Node node = reached.get(r);
+            for (int b = 0; b < node.children.length; b++) {
+                if (node.children[b] == null)
+                    continue;
+                for (Node child : node.children[b])
+                    if (child.visited != call) {
+                        child.visited = call;
+                        child.mass = 0;
+                        reached.add(child);
+                    }
+            }
+        }
+        Collections.sort(reached, new Comparator<Node>() {
+            public int compare(Node x, Node y) {
+                return y.id - x.id;
+            }
+        });
+        for (Node node : reached) {
+            double count = node.count.doubleValue();
+            for (int b = 0; b < node.children.length; b++) {
+                if (node.children[b] == null)
+                    continue;
+                double mass = node.mass * (node.branchCount[b].doubleValue() / count);
+                for (int literal : node.fixed[b])
+                    if (literal > 0)
+                        positive[literal] += mass;
+                for (int v : node.free[b])
+                    positive[v] += mass / 2;
+                for (Node child : node.children[b])
+                    child.mass += mass;
+            }
+        }
+
+        for (int k = 0; k < vars.length; k++)
+            marginals[k] = Math.min(positive[vars[k]], 1.0);
+        return marginals;
+    }
+
+    /**
+     * @return the number of components whose count was found in the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of components that had to be counted
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of components cached
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Load clauses and propagate their unit clauses.
+     *
+     * @return false if propagation found a conflict
+     */
+    private boolean load(ClauseArena arena, int numVars) {
+        this.numVars = numVars;
+        int n = arena.size();
+        clauses = new int[n][];
+        occurrences = new int[2 * numVars + 2][];
+        occurrenceSize = new int[2 * numVars + 2];
+        value = new byte[numVars + 1];
+        trail = new int[numVars + 1];
+        trailSize = 0;
+        varMark = new int[numVars + 1];
+        clauseMark = new int[n];
+        numTrue = new int[n];
+        touchMark = new int[n];
+        stamp = 0;
+        touchStamp = 0;
+        if (cache.size() > MAX_CACHE)
+            clearCache();
+        for (int i = 0; i < n; i++) {
+            int[] clause = arena.get(i);
+            clauses[i] = clause;
+            for (int literal : clause) {
+                int v = Math.abs(literal);
+                if (v > numVars)
+                    throw new IllegalArgumentException("Variable " + v + " exceeds " + numVars);
+                int code = code(literal);
+                int[] occ = occurrences[code];
+                if (occ == null)
+                    occ = occurrences[code] = new int[4];
+                else if (occurrenceSize[code] == occ.length)
+                    occ = occurrences[code] = Arrays.copyOf(occ, 2 * occ.length);
+                occ[occurrenceSize[code]++] = i;
+            }
+        }
+        invalidate();
+        loaded = clauses;
+        for (int i = 0; i < n; i++) {
+            if (clauses[i].length == 1 && !assign(clauses[i][0]))
+                return false;
+            if (clauses[i].length == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Split unassigned variables, which share no unsatisfied clause with
+     * other unassigned variables, into components and count each.
+     *
+     * @param vars:      the variables, in increasing order
+     * @param shortened: the shortened clauses of the variables, in
+     *                   increasing order
+     * @param nodes:     receives the counted components, stopping after
+     *                   one without models
+     * @param free:      receives the variables in no unsatisfied clause
+     */
+    private void split(int[] vars, int[] shortened, ArrayList<Node> nodes, ArrayList<Integer> free) {
+        int first = stamp + 1;
+        int[] numActive = new int[vars.length];
+        int[][] components = components(vars, numActive);
+        for (int c = 0; c < components.length; c++) {
+            int[] component = components[c];
+            if (numActive[c] == 0) {
+                free.add(component[0]);
+                continue;
+            }
+            // The shortened clauses of the component carry its mark
+            int[] own = shortened;
+            if (components.length > 1) {
+                own = new int[shortened.length];
+                int n = 0;
+                for (int i : shortened)
+                    if (clauseMark[i] == first + c)
+                        own[n++] = i;
+                own = Arrays.copyOf(own, n);
+            }
+            Node node = countComponent(component, own, key(component, own));
+            nodes.add(node);
+            if (node.count.signum() == 0)
+                return;
+        }
+    }
+
+    /**
+     * Count the models of one connected component.
+     *
+     * @param vars:      the variables of the component, in increasing
+     *                   order
+     * @param shortened: the shortened clauses of the component, in
+     *                   increasing order
+     * @param key:       the key of the component
+     */
+    private Node countComponent(int[] vars, int[] shortened, Key key) {
+        Node node = cache.get(key);
+        if (node != null) {
+            hits++;
+            return node;
+        }
+        misses++;
+
+        // Branch on the variables of the component in the first group of
+        // the branching order, else on the variable occurring in most
+        // unsatisfied clauses
+        int first = Integer.MAX_VALUE;
+        for (int v : vars)
+            if (v < rank.length && rank[v] < first)
+                first = rank[v];
+        int[] decided;
+        if (first != Integer.MAX_VALUE) {
+            decided = new int[groups[first].length];
+            int n = 0;
+            for (int v : groups[first])
+                if (Arrays.binarySearch(vars, v) >= 0)
+                    decided[n++] = v;
+            decided = Arrays.copyOf(decided, n);
+        }
+        else {
+            int branch = 0;
+            int best = -1;
+            for (int v : vars) {
+                int occurring = 0;
+                for (int code = 2 * v; code <= 2 * v + 1; code++)
+                    for (int k = 0; k < occurrenceSize[code]; k++)
+                        if (!isSatisfied(occurrences[code][k]))
+                            occurring++;
+                if (occurring > best) {
+                    best = occurring;
+                    branch = v;
+                }
+            }
+            decided = new int[] { branch };
+        }
+        node = new Node(decided.length + 1);
+        node.count = BigInteger.ZERO;
+        ArrayList<Node> children = new ArrayList<Node>();
+        ArrayList<Integer> free = new ArrayList<Integer>();
+        int mark = trailSize;
+        // consistent: whether the variables before the bth can all be false
+        boolean consistent = true;
+        for (int b = 0; b <= decided.length; b++) {
+            node.branchCount[b] = BigInteger.ZERO;
+            if (!consistent)
+                continue;
+            int before = trailSize;
+            if (b == decided.length || assign(decided[b])) {
+                children.clear();
+                free.clear();
+                // What is left of the component is most often one
+                // component again, found in the cache under the key of
+                // the whole residual; it is split only when it is not
+                int[] left = unassigned(vars);
+                int[] residual = shortened(shortened, mark);
+                Node whole = left.length == 0 ? null : cache.get(key(left, residual));
+                if (whole != null) {
+                    hits++;
+                    children.add(whole);
+                }
+                else
+                    split(left, residual, children, free);
+                BigInteger count = BigInteger.ONE;
+                for (Node child : children)
+                    count = count.multiply(child.count);
+                count = count.shiftLeft(free.size());
+                node.branchCount[b] = count;
+                node.count = node.count.add(count);
+                if (count.signum() > 0) {
+                    node.fixed[b] = Arrays.copyOfRange(trail, mark, trailSize);
+                    node.children[b] = children.toArray(new Node[children.size()]);
+                    node.free[b] = new int[free.size()];
+                    for (int k = 0; k < free.size(); k++)
+                        node.free[b][k] = free.get(k);
+                }
+            }
+            undo(before);
+            if (b < decided.length && !assign(-decided[b]))
+                consistent = false;
+        }
+        undo(mark);
+        node.id = nextId++;
+        // The nodes already counted stay reachable from those above them,
+        // so clearing the cache in the middle of a count only loses hits
+        if (cacheLiterals + key.size() > MAX_CACHE_LITERALS)
+            clearCache();
+        cache.put(key, node);
+        cacheLiterals += key.size();
+        return node;
+    }
+
+    /**
+     * Split unassigned variables into the connected components of the
+     * unsatisfied clauses.  A variable in no unsatisfied clause is a
+     * component of its own.  Components are found in the order of their
+     * smallest variables.
+     *
+     * @param vars:      the variables, in increasing order
+     * @param numActive: receives the number of unsatisfied clauses of
+     *                   each component
+     * @return the variables of each component, in increasing order; the
+     *         variables and unsatisfied clauses of the cth component are
+     *         marked with the stamp before the call plus c + 1
+     */
+    private int[][] components(int[] vars, int[] numActive) {
+        // Each component gets its own mark, from first on
+        int first = stamp + 1;
+        int[] queue = new int[vars.length];
+        for (int start : vars) {
+            if (varMark[start] >= first)
+                continue;
+            int mark = ++stamp;
+            int head = 0;
+            int tail = 0;
+            int n = 0;
+            queue[tail++] = start;
+            varMark[start] = mark;
+            // A component found to hold every variable needs no more
+            // search: most branches leave one component
+            while (head < tail && (tail < vars.length || n == 0)) {
+                int v = queue[head++];
+                for (int code = 2 * v; code <= 2 * v + 1; code++)
+                    for (int k = 0; k < occurrenceSize[code]; k++) {
+                        int i = occurrences[code][k];
+                        if (clauseMark[i] == mark || isSatisfied(i))
+                            continue;
+                        clauseMark[i] = mark;
+                        n++;
+                        for (int literal : clauses[i]) {
+                            int u = Math.abs(literal);
+                            if (value[u] == 0 && varMark[u] != mark) {
+                                varMark[u] = mark;
+                                queue[tail++] = u;
+                            }
+                        }
+                    }
+            }
+            numActive[mark - first] = n;
+        }
+        // Deal the variables out to their components in increasing order
+        int[] sizes = new int[stamp + 1 - first];
+        for (int v : vars)
+            sizes[varMark[v] - first]++;
+        int[][] components = new int[sizes.length][];
+        for (int c = 0; c < sizes.length; c++)
+            components[c] = new int[sizes[c]];
+        Arrays.fill(sizes, 0);
+        for (int v : vars) {
+            int c = varMark[v] - first;
+            components[c][sizes[c]++] = v;
+        }
+        return components;
+    }
+
+    /**
+     * Build the cache key of a component from its variables and the
+     * unassigned literals of its shortened clauses.
+     *
+     * @param vars:      the variables, in increasing order
+     * @param shortened: the shortened clauses, in increasing order
+     */
+    private Key key(int[] vars, int[] shortened) {
+        long[] set = new long[(vars[vars.length - 1] >> 6) + 1];
+        for (int v : vars)
+            set[v >> 6] |= 1L << v;
+        int length = 0;
+        for (int i : shortened)
+            length += clauses[i].length + 1;
+        int[] lits = new int[length];
+        int pos = 0;
+        // The clauses are sorted, and so are their residuals
+        for (int i : shortened) {
+            for (int literal : clauses[i])
+                if (value[Math.abs(literal)] == 0)
+                    lits[pos++] = literal;
+            pos++;
+        }
+        return new Key(set, pos == length ? lits : Arrays.copyOf(lits, pos));
+    }
+
+    /**
+     * Find the shortened clauses left after the assignments from a trail
+     * position on: the unsatisfied ones of the given clauses and of those
+     * the assignments made false literals of.
+     *
+     * @param shortened: the shortened clauses before the assignments, in
+     *                   increasing order
+     * @param mark:      the trail position
+     * @return the shortened clauses, in increasing order
+     */
+    private int[] shortened(int[] shortened, int mark) {
+        int touch = ++touchStamp;
+        int[] result = new int[16];
+        int n = 0;
+        for (int i : shortened)
+            if (!isSatisfied(i)) {
+                touchMark[i] = touch;
+                if (n == result.length)
+                    result = Arrays.copyOf(result, 2 * n);
+                result[n++] = i;
+            }
+        int kept = n;
+        for (int k = mark; k < trailSize; k++) {
+            int code = code(-trail[k]);
+            for (int j = 0; j < occurrenceSize[code]; j++) {
+                int i = occurrences[code][j];
+                if (touchMark[i] == touch || isSatisfied(i))
+                    continue;
+                touchMark[i] = touch;
+                if (n == result.length)
+                    result = Arrays.copyOf(result, 2 * n);
+                result[n++] = i;
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        if (n > kept)
+            Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Drop the cached components that the clauses changed since the
+     * previous call could make wrong: those with every variable of an added
+     * or removed clause, whose residual would have gained or lost it whole.
+     * The clauses are compared up to the first difference, as clauses are
+     * only added or, by SATSolver.pop, removed last.
+     */
+    private void invalidate() {
+        if (loaded == null || cache.isEmpty())
+            return;
+        int same = 0;
+        while (same < loaded.length && same < clauses.length && Arrays.equals(loaded[same], clauses[same]))
+            same++;
+        int numChanged = loaded.length - same + clauses.length - same;
+        if (numChanged == 0)
+            return;
+        if (numChanged > MAX_CHANGED) {
+            clearCache();
+            return;
+        }
+        int[][] changed = new int[numChanged][];
+        int n = 0;
+        for (int i = same; i < loaded.length; i++)
+            changed[n++] = loaded[i];
+        for (int i = same; i < clauses.length; i++)
+            changed[n++] = clauses[i];
+        Iterator<Key> keys = cache.keySet().iterator();
+        while (keys.hasNext()) {
+            Key key = keys.next();
+            for (int[] clause : changed)
+                if (key.covers(clause)) {
+                    keys.remove();
+                    cacheLiterals -= key.size();
+                    break;
+                }
+        }
+    }
+
+    private void clearCache() {
+        cache.clear();
+        cacheLiterals = 0;
+    }
+
+    /**
+     * Assign a literal and propagate the unit clauses that follow.
+     *
+     * @return false on conflict; the assignments made stay on the trail
+     */
+    private boolean assign(int literal) {
+        int v = Math.abs(literal);
+        if (value[v] != 0)
+            return value[v] == (literal > 0 ? 1 : -1);
+        int head = trailSize;
+        set(literal);
+        while (head < trailSize) {
+            // Only the clauses the literal is false in can become unit
+            int code = code(-trail[head++]);
+            for (int k = 0; k < occurrenceSize[code]; k++) {
+                int i = occurrences[code][k];
+                if (isSatisfied(i))
+                    continue;
+                int unassigned = 0;
+                int last = 0;
+                for (int lit : clauses[i])
+                    if (value[Math.abs(lit)] == 0) {
+                        unassigned++;
+                        last = lit;
+                    }
+                if (unassigned == 0)
+                    return false;
+                if (unassigned == 1)
+                    set(last);
+            }
+        }
+        return true;
+    }
+
+    private void set(int literal) {
+        int v = Math.abs(literal);
+        value[v] = (byte) (literal > 0 ? 1 : -1);
+        trail[trailSize++] = literal;
+        int code = code(literal);
+        for (int k = 0; k < occurrenceSize[code]; k++)
+            numTrue[occurrences[code][k]]++;
+    }
+
+    private void undo(int mark) {
+        while (trailSize > mark) {
+            int literal = trail[--trailSize];
+            value[Math.abs(literal)] = 0;
+            int code = code(literal);
+            for (int k = 0; k < occurrenceSize[code]; k++)
+                numTrue[occurrences[code][k]]--;
+        }
+    }
+
+    private boolean isSatisfied(int i) {
+        return numTrue[i] > 0;
+    }
+
+    private static int code(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+
+    private int[] allVars() {
+        int[] vars = new int[numVars];
+        for (int v = 1; v <= numVars; v++)
+            vars[v - 1] = v;
+        return vars;
+    }
+
+    /**
+     * @return the variables of the given ones that are unassigned
+     */
+    private int[] unassigned(int[] vars) {
+        int n = 0;
+        int[] result = new int[vars.length];
+        for (int v : vars)
+            if (value[v] == 0)
+                result[n++] = v;
+        return n == vars.length ? result : Arrays.copyOf(result, n);
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * NotepadRecordWriter.java - a ReplayEngine.Sink writing the notepad of
+ * each replayed game as one JSON record per line:
+ *
+ *   {"game":17,"events":29,"consistent":true,"caseFile":["pe","pi"],
+ *    "notepad":{"mu":"nnnnn-n",...}}
+ *
+ * (on one line).  Each notepad row is a card, with one character per
+ * place: the players in turn order, then the case file, as in
+ * ClueReasoner.notepad().  caseFile lists the cards known to be in the
+ * case file.  A game whose records contradict each other is not
+ * consistent, and its notepad is all "n".  A game that
+ * could not be replayed gives {"game":17,"error":"..."}.
+ */
+
+import java.io.*;
+
+public class NotepadRecordWriter implements ReplayEngine.Sink, Closeable, Flushable {
+
+    private final Writer out;
+    private final String[] cards;
+    // Reused for every record
+    private final StringBuilder record = new StringBuilder(512);
+
+    /**
+     * @param out:   where to write the records
+     * @param cards: the card names, in the order of the notepad rows
+     */
+    public NotepadRecordWriter(Writer out, String[] cards) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+        this.cards = cards.clone();
+    }
+
+    public void accept(GameRecord game, String[][] notepad) throws IOException {
+        record.setLength(0);
+        record.append("{\"game\":").append(game.getId());
+        record.append(",\"events\":").append(game.getNumEvents());
+        record.append(",\"consistent\":").append(isConsistent(notepad));
+        record.append(",\"caseFile\":[");
+        boolean first = true;
+        for (int c = 0; c < notepad.length; c++)
+            if (notepad[c][notepad[c].length - 1].equals("Y")) {
+                if (!first)
+                    record.append(',');
+                record.append('"').append(cards[c]).append('"');
+                first = false;
+            }
+        record.append("],\"notepad\":{");
+        for (int c = 0; c < notepad.length; c++) {
+            if (c > 0)
+                record.append(',');
+            record.append('"').append(cards[c]).append("\":\"");
+            for (String cell : notepad[c])
+                record.append(cell);
+            record.append('"');
+        }
+        record.append("}}\n");
+        out.append(record);
+    }
+
+    /**
+     * @return false if some card is in no place, which only an
+     *         inconsistent knowledge base allows
+     */
+    private static boolean isConsistent(String[][] notepad) {
+        for (String[] row : notepad) {
+            boolean somewhere = false;
+            for (String cell : row)
+                somewhere |= !cell.equals("n");
+            if (!somewhere)
+                return false;
+        }
+        return true;
+    }
+
+    public void failed(GameRecord game, RuntimeException error) throws IOException {
+        record.setLength(0);
+        record.append("{\"game\":").append(game.getId()).append(",\"error\":\"");
+        String message = String.valueOf(error);
+        for (int i = 0; i < message.length(); i++) {
+            char ch = message.charAt(i);
+            if (ch == '"' || ch == '\\')
+                record.append('\\').append(ch);
+            else if (ch < ' ')
+                record.append(String.format("\\u%04x", (int) ch));
+            else
+                record.append(ch);
+        }
+        record.append("\"}\n");
+        out.append(record);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,393 @@
+/**
+ * PerspectiveReasoner.java - what each player of a game of Clue can
+ * deduce, from one knowledge base shared by all of them.
+ *
+ * Most of what a player knows is public: the general knowledge of the
+ * variant, which players could not refute each suggestion and which
+ * player did, and whether each accusation was correct.  The only private
+ * knowledge is a player's own hand and the cards shown to it, and these
+ * are facts about single cells.  The public clauses are therefore kept
+ * once, in a SATSolver over the shared general knowledge, and a player's
+ * private facts are passed to the backend as assumptions while that
+ * player's cells are tested, without adding a clause.  What the backend
+ * learns from the public clauses serves every player, and so do the cells
+ * the observer has settled.
+ * Each player keeps its own DeductionCache, except that players with no
+ * private facts share the observer's.
+ *
+ * The answers for a player are those of a ClueReasoner given the
+ * player's hand and, of each suggestion, the card shown only when the
+ * player suggested.  A caller that does not know an opponent's hand can
+ * still ask what the opponent deduces from the public history, which is
+ * a lower bound on what it knows; a null player stands for an observer
+ * who knows nothing else.
+ */
+
+import java.util.*;
+
+public class PerspectiveReasoner {
+
+    // numPlayers: the number of players
+    private final int numPlayers;
+    // numCards: the number of cards
+    private final int numCards;
+    // variant: the players and cards of the game
+    private final GameVariant variant;
+    // players: the names of the players in turn order
+    private final String[] players;
+    // cards: the names of the cards, category after category
+    private final String[] cards;
+    // solver: the general knowledge and the public clauses of the game
+    private final SATSolver solver;
+    // version: the number of public clauses added
+    private long version;
+    // facts[s]: the private facts of player s, DIMACS literals of cells
+    private int[][] facts;
+    // numFacts[s]: the number of private facts of player s
+    private int[] numFacts;
+    // caches[s]: the cells player s has derived, the observer's last
+    private DeductionCache[] caches;
+    // playerIds, cardIds: the index of each name
+    private final Map<String, Integer> playerIds = new HashMap<String, Integer>();
+    private final Map<String, Integer> cardIds = new HashMap<String, Integer>();
+
+    /**
+     * Construct a reasoner for the standard game.
+     */
+    public PerspectiveReasoner() {
+        this(GameVariant.STANDARD);
+    }
+
+    /**
+     * @param variant: the players and cards of the game
+     */
+    public PerspectiveReasoner(GameVariant variant) {
+        this(variant, new SATSolver(ClueReasoner.getBaseKnowledge(variant)));
+    }
+
+    /**
+     * @param variant: the players and cards of the game
+     * @param backend: the SolverBackend used to reason, e.g. a ZchaffSolver
+     */
+    public PerspectiveReasoner(GameVariant variant, SolverBackend backend) {
+        this(variant, new SATSolver(ClueReasoner.getBaseKnowledge(variant), backend));
+    }
+
+    private PerspectiveReasoner(GameVariant variant, SATSolver solver) {
+        this.variant = variant;
+        this.solver = solver;
+        players = variant.getPlayers();
+        cards = variant.getCards();
+        numPlayers = players.length;
+        numCards = cards.length;
+        facts = new int[numPlayers][2 * numCards];
+        numFacts = new int[numPlayers];
+        caches = new DeductionCache[numPlayers + 1];
+        for (int s = 0; s <= numPlayers; s++)
+            caches[s] = new DeductionCache(numCards * (numPlayers + 1));
+        for (int p = 0; p < numPlayers; p++)
+            playerIds.put(players[p], p);
+        for (int c = 0; c < numCards; c++)
+            cardIds.put(cards[c], c);
+    }
+
+    /**
+     * Note the hand dealt to a player, known only to that player.
+     *
+     * @param player: the name of the player
+     * @param cards:  the cards in the player's hand
+     */
+    public synchronized void hand(String player, String[] cards) {
+        long start = System.nanoTime();
+        int s = getPlayerNum(player);
+        for (String card : cards) {
+            addFact(s, -getPairNum(numPlayers, getCardNum(card)));
+            addFact(s, getPairNum(s, getCardNum(card)));
+        }
+        getMetrics().recordLatency(SolverMetrics.Operation.HAND, System.nanoTime() - start);
+    }
+
+    /**
+     * Note a suggestion as for suggest(suggester, suggested, refuter,
+     * cardShown), in the standard game.
+     *
+     * @param suggester: the name of the player who made the suggestion
+     * @param card1:     the name of the suggested murderer
+     * @param card2:     the name of the suggested murder weapon
+     * @param card3:     the name of the suggested room
+     * @param refuter:   the name of the player who refuted it, or null
+     * @param cardShown: the card shown to the suggester, or null if it is
+     *                   not known
+     */
+    public synchronized void suggest(String suggester, String card1, String card2, String card3,
+            String refuter, String cardShown) {
+        suggest(suggester, new String[] { card1, card2, card3 }, refuter, cardShown);
+    }
+
+    /**
+     * Note a suggestion.  Everyone learns that the players between the
+     * suggester and the refuter hold none of the cards, and that the
+     * refuter holds one of them, or, if no one refuted, that no other
+     * player holds any.  Only the suggester learns the card shown.
+     *
+     * @param suggester: the name of the player who made the suggestion
+     * @param suggested: the names of the suggested cards
+     * @param refuter:   the name of the player who refuted it, or null
+     * @param cardShown: the card shown to the suggester, or null if it is
+     *                   not known
+     */
+    public synchronized void suggest(String suggester, String[] suggested, String refuter,
+            String cardShown) {
+        long start = System.nanoTime();
+        int s = getPlayerNum(suggester);
+        int r = refuter == null ? s : getPlayerNum(refuter);
+        for (int p = (s + 1) % numPlayers; p != r; p = (p + 1) % numPlayers)
+            for (String card : suggested)
+                addClause(new int[] { -getPairNum(p, getCardNum(card)) });
+        if (refuter != null) {
+            int[] clause = new int[suggested.length];
+            for (int k = 0; k < suggested.length; k++)
+                clause[k] = getPairNum(r, getCardNum(suggested[k]));
+            addClause(clause);
+            if (cardShown != null) {
+                addFact(s, getPairNum(r, getCardNum(cardShown)));
+                addFact(s, -getPairNum(numPlayers, getCardNum(cardShown)));
+            }
+        }
+        getMetrics().recordLatency(SolverMetrics.Operation.SUGGEST, System.nanoTime() - start);
+    }
+
+    /**
+     * Note an accusation as for accuse(accuser, accused, isCorrect), in the
+     * standard game.
+     *
+     * @param accuser:   the name of the player who made the accusation
+     * @param card1:     the name of the accused murderer
+     * @param card2:     the name of the accused murder weapon
+     * @param card3:     the name of the accused room
+     * @param isCorrect: whether the accusation is correct
+     */
+    public synchronized void accuse(String accuser, String card1, String card2, String card3,
+            boolean isCorrect) {
+        accuse(accuser, new String[] { card1, card2, card3 }, isCorrect);
+    }
+
+    /**
+     * Note an accusation, whose outcome everyone learns.
+     *
+     * @param accuser:   the name of the player who made the accusation
+     * @param accused:   the names of the accused cards
+     * @param isCorrect: whether the accusation is correct
+     */
+    public synchronized void accuse(String accuser, String[] accused, boolean isCorrect) {
+        long start = System.nanoTime();
+        getPlayerNum(accuser);
+        if (isCorrect) {
+            for (String card : accused)
+                addClause(new int[] { getPairNum(numPlayers, getCardNum(card)) });
+        }
+        else {
+            int[] clause = new int[accused.length];
+            for (int k = 0; k < accused.length; k++)
+                clause[k] = -getPairNum(numPlayers, getCardNum(accused[k]));
+            addClause(clause);
+        }
+        getMetrics().recordLatency(SolverMetrics.Operation.ACCUSE, System.nanoTime() - start);
+    }
+
+    /**
+     * Test what a player knows about a cell.
+     *
+     * @param viewer: the name of the player whose knowledge is used, or
+     *                null for the public knowledge alone
+     * @param player: the name of the place, a player or the case file
+     * @param card:   the name of the card
+     * @return SATSolver.TRUE if the viewer can deduce the card is in the
+     *         place, FALSE if it can deduce it is not, UNKNOWN otherwise
+     */
+    public synchronized int query(String viewer, String player, String card) {
+        long start = System.nanoTime();
+        int v = getViewerNum(viewer);
+        int cell = getPairNum(getPlaceNum(player), getCardNum(card)) - 1;
+        int result = caches[v].lookup(cell, getVersion(v));
+        boolean hit = result != DeductionCache.MISS;
+        if (!hit) {
+            result = solver.testLiteral(cell + 1, getAssumptions(v));
+            caches[v].record(cell, result, getVersion(v));
+        }
+        SolverMetrics metrics = getMetrics();
+        metrics.recordCacheLookups(hit ? 1 : 0, hit ? 0 : 1);
+        metrics.recordLatency(SolverMetrics.Operation.QUERY, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Compute the notepad of a player, in one backbone computation over the
+     * cells not in its deduction cache.
+     *
+     * @param viewer: the name of the player whose knowledge is used, or
+     *                null for the public knowledge alone
+     * @return a matrix indexed by card and then by place (the players in
+     *         turn order followed by the case file) holding "Y", "n" or
+     *         "-" for each cell, as ClueReasoner.notepad()
+     */
+    public synchronized String[][] notepad(String viewer) {
+        long start = System.nanoTime();
+        int v = getViewerNum(viewer);
+        long at = getVersion(v);
+        int[] results = new int[numCards * (numPlayers + 1)];
+        int[] vars = new int[results.length];
+        int numVars = 0;
+        for (int cell = 0; cell < results.length; cell++) {
+            results[cell] = caches[v].lookup(cell, at);
+            if (results[cell] == DeductionCache.MISS)
+                vars[numVars++] = cell + 1;
+        }
+        getMetrics().recordCacheLookups(results.length - numVars, numVars);
+        if (numVars > 0) {
+            vars = Arrays.copyOf(vars, numVars);
+            int[] derived = new int[numVars];
+            solver.computeBackbone(vars, derived, getAssumptions(v));
+            for (int i = 0; i < numVars; i++) {
+                results[vars[i] - 1] = derived[i];
+                caches[v].record(vars[i] - 1, derived[i], at);
+            }
+        }
+        String[][] notepad = new String[numCards][numPlayers + 1];
+        for (int c = 0; c < numCards; c++)
+            for (int p = 0; p <= numPlayers; p++) {
+                int result = results[getPairNum(p, c) - 1];
+                notepad[c][p] = result == SATSolver.TRUE ? "Y" : result == SATSolver.FALSE ? "n" : "-";
+            }
+        getMetrics().recordLatency(SolverMetrics.Operation.NOTEPAD, System.nanoTime() - start);
+        return notepad;
+    }
+
+    /**
+     * @return the literals a viewer's cells are tested under: its private
+     *         facts, along with the cells the viewer or the observer has
+     *         settled, which follow from what the viewer knows and spare
+     *         the backend deriving them again.  The observer has no
+     *         private facts and tests at the root, so what it derives is
+     *         kept there for every player.
+     */
+    private int[] getAssumptions(int v) {
+        if (v == numPlayers)
+            return new int[0];
+        DeductionCache observed = caches[numPlayers];
+        int[] assumptions = Arrays.copyOf(facts[v], numFacts[v] + observed.getNumCells());
+        int n = numFacts[v];
+        for (int cell = 0; cell < observed.getNumCells(); cell++) {
+            int value = caches[v].isSettled(cell) ? caches[v].getValue(cell) : observed.getValue(cell);
+            if (value != SATSolver.UNKNOWN)
+                assumptions[n++] = value == SATSolver.TRUE ? cell + 1 : -cell - 1;
+        }
+        return Arrays.copyOf(assumptions, n);
+    }
+
+    /**
+     * @return the version of a viewer's knowledge: it grows with every
+     *         public clause and every private fact of the viewer
+     */
+    private long getVersion(int v) {
+        return v == numPlayers ? version : version + numFacts[v];
+    }
+
+    private void addClause(int[] clause) {
+        solver.addClause(clause);
+        version++;
+    }
+
+    private void addFact(int s, int literal) {
+        for (int k = 0; k < numFacts[s]; k++)
+            if (facts[s][k] == literal)
+                return;
+        if (numFacts[s] == facts[s].length)
+            facts[s] = Arrays.copyOf(facts[s], 2 * facts[s].length);
+        facts[s][numFacts[s]++] = literal;
+    }
+
+    /**
+     * @param viewer: the name of a player, or null for the observer
+     * @return the index of the player, or numPlayers for the observer and
+     *         for a player with no private facts, who knows just as much
+     */
+    private int getViewerNum(String viewer) {
+        if (viewer == null)
+            return numPlayers;
+        int v = getPlayerNum(viewer);
+        return numFacts[v] == 0 ? numPlayers : v;
+    }
+
+    /**
+     * @param player: the name of a player
+     * @return the index of the player in turn order
+     * @throws IllegalArgumentException if there is no such player
+     */
+    private int getPlayerNum(String player) {
+        Integer id = playerIds.get(player);
+        if (id == null)
+            throw new IllegalArgumentException("Illegal player: " + player);
+        return id;
+    }
+
+    /**
+     * @param place: the name of a player or of the case file
+     * @return the index of the place, numPlayers for the case file
+     */
+    private int getPlaceNum(String place) {
+        return place.equals(GameVariant.CASE_FILE) ? numPlayers : getPlayerNum(place);
+    }
+
+    /**
+     * @param card: the name of a card
+     * @return the index of the card
+     * @throws IllegalArgumentException if there is no such card
+     */
+    private int getCardNum(String card) {
+        Integer id = cardIds.get(card);
+        if (id == null)
+            throw new IllegalArgumentException("Illegal card: " + card);
+        return id;
+    }
+
+    /**
+     * @return the variable of the cell of a place and a card, numbered as
+     *         by ClueReasoner
+     */
+    private int getPairNum(int placeNum, int cardNum) {
+        return placeNum * numCards + cardNum + 1;
+    }
+
+    /**
+     * @param viewer: the name of a player, or null for the observer
+     * @return the cache of the cells the player has derived, the
+     *         observer's while the player has no private facts
+     */
+    public DeductionCache getDeductionCache(String viewer) {
+        return caches[getViewerNum(viewer)];
+    }
+
+    public GameVariant getVariant() {
+        return variant;
+    }
+
+    public String[] getPlayers() {
+        return players.clone();
+    }
+
+    /**
+     * @return the metrics this reasoner and its solver report to
+     */
+    public SolverMetrics getMetrics() {
+        return solver.getMetrics();
+    }
+
+    /**
+     * @param metrics: the metrics to report to instead of the shared
+     *                 default ones
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        solver.setMetrics(metrics);
+    }
+}
@@ -0,0 +1,381 @@
+/**
+ * PortfolioSolver.java - a backend racing several backends, or several
+ * configurations of one, on the same clauses, each solve being answered
+ * by the first of them to finish.
+ *
+ * Every member is a full session holding all the clauses.  A solve first
+ * runs the member that has won the most races alone, on the calling
+ * thread, so that the many queries it answers within its head start cost
+ * no thread handoff.  Once the head start is over the other members are
+ * started on threads of their own, and the first answer wins: the others
+ * are interrupted and waited for, so that every session is idle again
+ * when solve returns.  Wins are counted per member and shared with the
+ * sessions made by newSession(), so the configuration that wins most
+ * often on the games actually played comes to lead them all.  A member
+ * that keeps failing, such as zchaff on a host it does not run on, is
+ * left out of later races.
+ *
+ * The members are best given one core each: a portfolio of more members
+ * than there are cores races them at the expense of each other.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class PortfolioSolver implements SolverBackend {
+
+    // The time the leading member runs alone, by default
+    private static final long HEAD_START = TimeUnit.MILLISECONDS.toNanos(1);
+    // Consecutive failures after which a member is left out of races
+    private static final int MAX_FAILURES = 3;
+
+    // racers: the threads running the members other than the leader
+    private static final ExecutorService racers = Executors.newCachedThreadPool(SolverTask.daemonThreads("portfolio-racer"));
+    // timer: the thread starting races once the head start is over
+    private static final ScheduledThreadPoolExecutor timer = newTimer();
+
+    /**
+     * One solve: the leader running on the calling thread, and the other
+     * members once they are started.
+     */
+    private class Race implements Runnable {
+        final int[] assumptions;
+        final int leader;
+        // running: the members whose solve has not returned
+        int running;
+        // launched: whether the other members were started
+        boolean launched;
+        // winner: the first member to answer, or -1
+        int winner = -1;
+        boolean answer;
+        // failure: the first failure of a member, or null
+        RuntimeException failure;
+
+        Race(int[] assumptions, int leader) {
+            this.assumptions = assumptions;
+            this.leader = leader;
+        }
+
+        /**
+         * End the head start.
+         */
+        public void run() {
+            launch();
+        }
+
+        /**
+         * Start the members other than the leader, unless a member has
+         * answered already.
+         */
+        synchronized void launch() {
+            if (launched || winner >= 0 || stopped)
+                return;
+            launched = true;
+            for (int i = 0; i < members.length; i++)
+                if (i != leader && failures[i] < MAX_FAILURES) {
+                    final int member = i;
+                    running++;
+                    racers.execute(new Runnable() {
+                        public void run() {
+                            runMember(member);
+                        }
+                    });
+                }
+        }
+
+        void runMember(int i) {
+            try {
+                boolean result = members[i].solve(assumptions);
+                won(i, result);
+            }
+            catch (SolverInterruptedException e) {
+                // Lost the race, or the portfolio was interrupted
+            }
+            catch (RuntimeException e) {
+                failed(i, e);
+            }
+            finally {
+                synchronized (this) {
+                    running--;
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized void won(int i, boolean result) {
+            failures[i] = 0;
+            if (winner >= 0)
+                return;
+            winner = i;
+            answer = result;
+            for (int j = 0; j < members.length; j++)
+                if (j != i)
+                    members[j].interrupt();
+        }
+
+        synchronized void failed(int i, RuntimeException e) {
+            failures[i]++;
+            if (failure == null)
+                failure = e;
+        }
+
+        /**
+         * Wait for a member to answer, starting the others at once if the
+         * leader returned without an answer, then for the losers to stop.
+         */
+        synchronized void finish() {
+            boolean interrupted = false;
+            if (winner < 0)
+                launch();
+            while (running > 0) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    // members: the sessions raced
+    private final SolverBackend[] members;
+    // wins[i]: the races member i won, shared with the sessions made by
+    // newSession()
+    private final AtomicLongArray wins;
+    // failures[i]: the consecutive solves member i failed
+    private final int[] failures;
+    // headStart: the time the leader runs alone, in nanoseconds
+    private long headStart = HEAD_START;
+    // winner: the member that answered the last solve
+    private int winner;
+    // stopped: set by interrupt() to stop the current or next solve
+    private volatile boolean stopped;
+
+    /**
+     * Construct a portfolio of three configurations of CDCLSolver: the
+     * default one, one restarting more often and focusing harder on
+     * recent conflicts, and one trying variables true first.  zchaff is
+     * not raced by default, as a binary built for another host would fail
+     * and cost a process start in every session before being left out;
+     * give a ZchaffSolver to PortfolioSolver(members) to race it.
+     */
+    public PortfolioSolver() {
+        this(defaultMembers());
+    }
+
+    /**
+     * Construct a portfolio racing the given backends.  The first one
+     * leads until another has won more races.
+     *
+     * @param members: empty sessions of the backends, at least one
+     */
+    public PortfolioSolver(SolverBackend... members) {
+        this(members.clone(), new AtomicLongArray(members.length));
+        if (members.length == 0)
+            throw new IllegalArgumentException("A portfolio needs a member");
+    }
+
+    private PortfolioSolver(SolverBackend[] members, AtomicLongArray wins) {
+        this.members = members;
+        this.wins = wins;
+        this.failures = new int[members.length];
+    }
+
+    private static SolverBackend[] defaultMembers() {
+        ArrayList<SolverBackend> members = new ArrayList<SolverBackend>();
+        members.add(new CDCLSolver());
+        members.add(new CDCLSolver(30, 0.85, false));
+        members.add(new CDCLSolver(100, 0.95, true));
+        return members.toArray(new SolverBackend[0]);
+    }
+
+    /**
+     * Set how long the leading member runs alone before the others are
+     * started.  Longer head starts spare the cores on easy queries,
+     * shorter ones cut the latency of hard ones.
+     *
+     * @param time: the head start, 0 to race every solve from the start
+     * @param unit: the unit of time
+     */
+    public void setHeadStart(long time, TimeUnit unit) {
+        headStart = unit.toNanos(time);
+    }
+
+    /**
+     * @return the description of each member, as its toString()
+     */
+    public String[] getConfigurations() {
+        String[] names = new String[members.length];
+        for (int i = 0; i < members.length; i++)
+            names[i] = members[i].toString();
+        return names;
+    }
+
+    /**
+     * @return the races each member won, in this session and those made
+     *         with it by newSession(); solves the leader finished within
+     *         its head start are not races
+     */
+    public long[] getWins() {
+        long[] result = new long[members.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = wins.get(i);
+        return result;
+    }
+
+    /**
+     * @return the index of the member that answered the last solve
+     */
+    public int getLastWinner() {
+        return winner;
+    }
+
+    public void addClause(int[] clause) {
+        for (SolverBackend member: members)
+            member.addClause(clause);
+    }
+
+    public void addLearntClause(int[] clause) {
+        for (SolverBackend member: members)
+            member.addLearntClause(clause);
+    }
+
+    /**
+     * Race the members on the assumptions.
+     *
+     * @throws SolverInterruptedException if interrupt() stopped the solve
+     * @throws SolverException if every member failed
+     */
+    public boolean solve(int... assumptions) {
+        if (stopped) {
+            stopped = false;
+            clearMembers();
+            throw new SolverInterruptedException();
+        }
+        Race race = new Race(assumptions.clone(), leader());
+        race.running = 1;
+        ScheduledFuture<?> start = null;
+        if (members.length > 1)
+            start = timer.schedule(race, headStart, TimeUnit.NANOSECONDS);
+        race.runMember(race.leader);
+        if (start != null)
+            start.cancel(false);
+        race.finish();
+        clearMembers();
+        if (race.winner < 0) {
+            if (stopped || race.failure == null) {
+                stopped = false;
+                throw new SolverInterruptedException();
+            }
+            throw race.failure;
+        }
+        if (race.launched)
+            wins.incrementAndGet(race.winner);
+        winner = race.winner;
+        return race.answer;
+    }
+
+    /**
+     * Stop the race in progress, interrupting every member.
+     */
+    public void interrupt() {
+        stopped = true;
+        for (SolverBackend member: members)
+            member.interrupt();
+    }
+
+    public void clearInterrupt() {
+        stopped = false;
+        clearMembers();
+    }
+
+    /**
+     * @return the model found by the member that answered the last solve
+     */
+    public int[] getModel() {
+        return members[winner].getModel();
+    }
+
+    /**
+     * @return the failed assumptions found by the member that answered
+     *         the last solve
+     */
+    public int[] getFailedAssumptions() {
+        return members[winner].getFailedAssumptions();
+    }
+
+    public void setDecisionVars(int n) {
+        for (SolverBackend member: members)
+            member.setDecisionVars(n);
+    }
+
+    /**
+     * @return what the member that answered the last solve has learned
+     */
+    public int[][] getLearntClauses() {
+        return members[winner].getLearntClauses();
+    }
+
+    public void reset() {
+        for (SolverBackend member: members)
+            member.reset();
+        winner = 0;
+    }
+
+    /**
+     * @return a portfolio of new sessions of the members, sharing the
+     *         counts of wins with this one
+     */
+    public SolverBackend newSession() {
+        SolverBackend[] sessions = new SolverBackend[members.length];
+        for (int i = 0; i < members.length; i++)
+            sessions[i] = members[i].newSession();
+        PortfolioSolver session = new PortfolioSolver(sessions, wins);
+        session.headStart = headStart;
+        return session;
+    }
+
+    /**
+     * Report the statistics of every member, winners and losers alike, to
+     * the given metrics.
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        for (SolverBackend member: members)
+            member.setMetrics(metrics);
+    }
+
+    /**
+     * @return the configurations raced, e.g. portfolio[cdcl(100, 0.95, -), zchaff(./zchaff)]
+     */
+    public String toString() {
+        return "portfolio" + Arrays.toString(getConfigurations());
+    }
+
+    /**
+     * @return the member with the most wins that is not failing, the
+     *         first one if they all are
+     */
+    private int leader() {
+        int best = -1;
+        for (int i = 0; i < members.length; i++)
+            if (failures[i] < MAX_FAILURES && (best < 0 || wins.get(i) > wins.get(best)))
+                best = i;
+        return best < 0 ? 0 : best;
+    }
+
+    private void clearMembers() {
+        for (SolverBackend member: members)
+            member.clearInterrupt();
+    }
+
+    private static ScheduledThreadPoolExecutor newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, SolverTask.daemonThreads("portfolio-timer"));
+        // Most head starts are cancelled; do not keep them queued
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
@@ -0,0 +1,708 @@
+/**
+ * Preprocessor.java - a simplified copy of the permanent clauses of a
+ * SATSolver, which is what its backend is loaded with.
+ *
+ * Clauses are simplified as they are added, against the clauses already
+ * kept:
+ *
+ *   - literals fixed at the root are applied: satisfied clauses are
+ *     deleted and false literals removed, and a clause left with one
+ *     literal fixes it in turn;
+ *   - a clause subsumed by a kept clause is not kept (forward
+ *     subsumption), and kept clauses the new one subsumes are deleted
+ *     (backward subsumption);
+ *   - self-subsuming resolution removes a literal l from a clause C when
+ *     another clause is (-l v D) with D a subset of C, both for the new
+ *     clause and for the kept clauses it strengthens.
+ *
+ * Bounded variable elimination is run on request (see eliminate) over
+ * the variables that are never queried, such as the auxiliary variables
+ * of CardinalityEncoder: a variable is resolved away when that leaves no
+ * more clauses than it removes.  The clauses removed are remembered, and
+ * restored as soon as the variable is used again.  Failed literals are
+ * found by the UnitPropagator of the solver and come in as unit clauses.
+ *
+ * Every step keeps the clauses equivalent, except elimination, which
+ * keeps them equivalent on the variables left.  The clauses produced are
+ * logged, so that an incremental backend loaded with getClauses() can be
+ * given just those produced since.
+ */
+
+import java.util.*;
+
+public class Preprocessor {
+
+    // MAX_OCCURRENCES: variables occurring in more clauses of either sign
+    // are not eliminated
+    private static final int MAX_OCCURRENCES = 10;
+    // MAX_RESOLVENT: resolvents longer than this stop an elimination
+    private static final int MAX_RESOLVENT = 16;
+
+    // clauses: the clauses kept, each sorted, or null once deleted
+    private ArrayList<int[]> clauses = new ArrayList<int[]>();
+    private int numLive;
+    // occurrences[code]: the clauses a literal was added to; entries of
+    // deleted clauses are dropped when next visited
+    private int[][] occurrences = new int[2][];
+    private int[] occurrenceSize = new int[2];
+    // value[v]: the value fixed for v at the root, SATSolver.TRUE, FALSE
+    // or UNKNOWN
+    private byte[] value = new byte[1];
+    // units: the literals fixed at the root, in order
+    private int[] units = new int[8];
+    private int numUnits;
+    private boolean inconsistent;
+    // eliminated[v]: the clauses removed with v if v is eliminated, or null
+    private int[][][] eliminated = new int[1][][];
+    private int numEliminatedVars;
+    // kept[v]: true once v was used after being eliminated, so that it
+    // is not eliminated again
+    private boolean[] kept = new boolean[1];
+    // touched: the variables whose clauses changed since the last
+    // elimination, the candidates for the next
+    private boolean[] touched = new boolean[1];
+    private int[] touchedList = new int[8];
+    private int numTouched;
+
+    // produced: the clauses and units kept since clearProduced, which a
+    // backend loaded before has not seen
+    private ArrayList<int[]> produced = new ArrayList<int[]>();
+    // numRemoved: the clauses deleted other than for being satisfied at
+    // the root, which a backend also does
+    private long numRemoved;
+
+    // simplifying: false while keep adds clauses as they are
+    private boolean simplifying = true;
+    // queue: clauses waiting to be simplified and kept
+    private ArrayDeque<int[]> queue = new ArrayDeque<int[]>();
+    // silent: the queued clauses that only lack literals false at the
+    // root, which a backend holding the units needs not be given
+    private Set<int[]> silent = Collections.newSetFromMap(new IdentityHashMap<int[], Boolean>());
+    // sorted, scratch: buffers a clause is normalized in
+    private int[] sorted = new int[8];
+    private int[] scratch = new int[8];
+    // mark[code] == stamp for the literals of the clause being checked
+    private int[] mark = new int[2];
+    private int stamp;
+
+    private long subsumed;
+    private long strengthened;
+    private long numEliminated;
+
+    /**
+     * @return an independent copy of this preprocessor
+     */
+    public Preprocessor copy() {
+        Preprocessor copy = new Preprocessor();
+        copy.clauses = new ArrayList<int[]>(clauses);
+        copy.numLive = numLive;
+        copy.occurrences = new int[occurrences.length][];
+        for (int code = 0; code < occurrences.length; code++)
+            if (occurrences[code] != null)
+                copy.occurrences[code] = occurrences[code].clone();
+        copy.occurrenceSize = occurrenceSize.clone();
+        copy.value = value.clone();
+        copy.units = units.clone();
+        copy.numUnits = numUnits;
+        copy.inconsistent = inconsistent;
+        copy.eliminated = eliminated.clone();
+        copy.numEliminatedVars = numEliminatedVars;
+        copy.kept = kept.clone();
+        copy.touched = touched.clone();
+        copy.touchedList = touchedList.clone();
+        copy.numTouched = numTouched;
+        copy.produced = new ArrayList<int[]>(produced);
+        copy.numRemoved = numRemoved;
+        copy.mark = new int[mark.length];
+        copy.subsumed = subsumed;
+        copy.strengthened = strengthened;
+        copy.numEliminated = numEliminated;
+        return copy;
+    }
+
+    /**
+     * Add a clause, simplifying it and the clauses kept against each
+     * other.  Eliminated variables of the clause are restored first.
+     *
+     * @param clause: the clause, an array of non-zero DIMACS literals
+     */
+    public void add(int[] clause) {
+        restore(clause);
+        queue.add(clause);
+        drain();
+    }
+
+    /**
+     * Keep a clause as it is, applying only the literals fixed at the root:
+     * it is neither checked for subsumption nor strengthened, and the kept
+     * clauses are not simplified against it.  For clauses that were
+     * simplified once already, such as those of a restored snapshot, that
+     * work is mostly repeated for nothing; the clauses stay equivalent,
+     * only fewer are removed.  The clauses a unit shortens are kept as
+     * they are too.
+     *
+     * @param clause: the clause, an array of non-zero DIMACS literals
+     */
+    public void keep(int[] clause) {
+        restore(clause);
+        simplifying = false;
+        queue.add(clause);
+        drain();
+        simplifying = true;
+    }
+
+    /**
+     * Insert the queued clauses, and those their insertion queues.
+     */
+    private void drain() {
+        while (!queue.isEmpty() && !inconsistent) {
+            int[] clause = queue.poll();
+            insert(clause, !silent.remove(clause));
+        }
+        queue.clear();
+        silent.clear();
+    }
+
+    /**
+     * Restore the eliminated variables of the given literals, with the
+     * clauses removed along with them.  Such variables are never
+     * eliminated again.
+     *
+     * @param literals: DIMACS literals about to be used
+     */
+    public void restore(int[] literals) {
+        if (numEliminatedVars == 0)
+            return;
+        for (int literal : literals) {
+            int v = Math.abs(literal);
+            if (!isEliminated(v))
+                continue;
+            int[][] removed = eliminated[v];
+            eliminated[v] = null;
+            numEliminatedVars--;
+            kept[v] = true;
+            for (int[] clause : removed)
+                add(clause);
+        }
+    }
+
+    /**
+     * @param var: a variable
+     * @return whether the variable is eliminated
+     */
+    public boolean isEliminated(int var) {
+        return var < eliminated.length && eliminated[var] != null;
+    }
+
+    public boolean hasEliminated() {
+        return numEliminatedVars > 0;
+    }
+
+    /**
+     * Eliminate the variables above decisionVars whose clauses changed
+     * since the last call, when resolving them away leaves no more
+     * clauses than it removes.
+     *
+     * @param decisionVars: the variables that may be queried, 1..n, or 0
+     *                      for all, in which case nothing is eliminated
+     */
+    public void eliminate(int decisionVars) {
+        if (decisionVars == 0 || inconsistent) {
+            clearTouched();
+            return;
+        }
+        // Eliminating a variable touches its neighbours, so run until no
+        // candidate is left
+        while (numTouched > 0) {
+            int[] candidates = Arrays.copyOf(touchedList, numTouched);
+            clearTouched();
+            for (int v : candidates)
+                if (v > decisionVars && !kept[v] && value[v] == SATSolver.UNKNOWN
+                        && !isEliminated(v))
+                    tryEliminate(v);
+        }
+    }
+
+    /**
+     * @return the clauses kept and the units, as DIMACS clauses; an empty
+     *         clause if they are unsatisfiable
+     */
+    public ArrayList<int[]> getClauses() {
+        ArrayList<int[]> result = new ArrayList<int[]>(numUnits + numLive + 1);
+        if (inconsistent)
+            result.add(new int[0]);
+        for (int k = 0; k < numUnits; k++)
+            result.add(new int[] { units[k] });
+        for (int[] clause : clauses)
+            if (clause != null)
+                result.add(clause);
+        return result;
+    }
+
+    /**
+     * @return the number of clauses and units logged as produced
+     */
+    public int getNumProduced() {
+        return produced.size();
+    }
+
+    /**
+     * @param i: an index below getNumProduced()
+     * @return the i-th clause produced since clearProduced, as a DIMACS
+     *         clause
+     */
+    public int[] getProduced(int i) {
+        return produced.get(i);
+    }
+
+    /**
+     * Empty the log of clauses produced, once no backend needs it.
+     */
+    public void clearProduced() {
+        produced.clear();
+    }
+
+    /**
+     * @return the number of clauses deleted for any reason but being
+     *         satisfied at the root, which a backend holding them is still
+     *         burdened with
+     */
+    public long getNumRemoved() {
+        return numRemoved;
+    }
+
+    /**
+     * @return whether eliminate has variables left to try
+     */
+    public boolean hasCandidates() {
+        return numTouched > 0;
+    }
+
+    /**
+     * @return the number of clauses kept, not counting units
+     */
+    public int size() {
+        return numLive;
+    }
+
+    public int getNumUnits() {
+        return numUnits;
+    }
+
+    public int getNumEliminated() {
+        return numEliminatedVars;
+    }
+
+    /**
+     * @return the number of clauses found subsumed, new or kept
+     */
+    public long getSubsumed() {
+        return subsumed;
+    }
+
+    /**
+     * @return the number of literals removed by self-subsuming resolution
+     */
+    public long getStrengthened() {
+        return strengthened;
+    }
+
+    public boolean isInconsistent() {
+        return inconsistent;
+    }
+
+    /**
+     * Simplify one clause and keep it, then simplify the kept clauses
+     * against it.
+     *
+     * @param announce: whether to queue the clause kept for the backend
+     */
+    private void insert(int[] clause, boolean announce) {
+        int n = normalize(clause);
+        if (n < 0)
+            return;
+        if (n == 1) {
+            fix(scratch[0]);
+            return;
+        }
+        int[] c = Arrays.copyOf(scratch, n);
+        // Forward: drop the clause if subsumed, remove the literals that
+        // self-subsuming resolution with a kept clause removes
+        boolean changed = simplifying;
+        while (changed && c.length > 1) {
+            changed = false;
+            for (int k = 0; k < c.length && !changed; k++) {
+                if (isSubsumedBy(c, c[k])) {
+                    subsumed++;
+                    return;
+                }
+                if (canRemove(c, k)) {
+                    c = without(c, k);
+                    strengthened++;
+                    changed = true;
+                }
+            }
+        }
+        if (c.length == 0) {
+            inconsistent = true;
+            produced.add(c);
+            return;
+        }
+        if (c.length == 1) {
+            fix(c[0]);
+            return;
+        }
+        int index = clauses.size();
+        clauses.add(c);
+        numLive++;
+        for (int literal : c) {
+            addOccurrence(literal, index);
+            touch(Math.abs(literal));
+        }
+        if (announce || c.length < clause.length)
+            produced.add(c);
+        if (!simplifying)
+            return;
+
+        // Backward: delete the kept clauses the new one subsumes, and
+        // strengthen those it removes a literal from
+        setMarks(c);
+        int rarest = c[0];
+        for (int literal : c)
+            if (occurrenceSize[code(literal)] < occurrenceSize[code(rarest)])
+                rarest = literal;
+        int size = liveCount(rarest);
+        int[] occ = occurrences[code(rarest)];
+        for (int k = 0; k < size; k++) {
+            int i = occ[k];
+            if (i != index && clauses.get(i).length > c.length && containsMarked(clauses.get(i), c.length, 0)) {
+                delete(i, false);
+                subsumed++;
+            }
+        }
+        for (int literal : c) {
+            size = liveCount(-literal);
+            occ = occurrences[code(-literal)];
+            for (int k = 0; k < size; k++) {
+                int i = occ[k];
+                int[] d = clauses.get(i);
+                if (d == null || d.length < c.length)
+                    continue;
+                // d holds -literal; it loses it if it holds the rest of c
+                if (containsMarked(d, c.length - 1, -literal)) {
+                    delete(i, false);
+                    strengthened++;
+                    queue.add(without(d, Arrays.binarySearch(d, -literal)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Sort a clause into scratch, dropping duplicate and false literals.
+     *
+     * @return the number of literals left, or -1 if the clause is a
+     *         tautology or satisfied
+     */
+    private int normalize(int[] clause) {
+        if (sorted.length < clause.length) {
+            sorted = new int[2 * clause.length];
+            scratch = new int[2 * clause.length];
+        }
+        System.arraycopy(clause, 0, sorted, 0, clause.length);
+        Arrays.sort(sorted, 0, clause.length);
+        int n = 0;
+        for (int k = 0; k < clause.length; k++) {
+            int literal = sorted[k];
+            ensureVars(Math.abs(literal));
+            int v = litValue(literal);
+            if (v == SATSolver.TRUE)
+                return -1;
+            if (v == SATSolver.FALSE || (n > 0 && scratch[n - 1] == literal))
+                continue;
+            if (Arrays.binarySearch(sorted, 0, clause.length, -literal) >= 0)
+                return -1;
+            scratch[n++] = literal;
+        }
+        return n;
+    }
+
+    /**
+     * @return whether a kept clause holding the literal is a subset of c
+     */
+    private boolean isSubsumedBy(int[] c, int literal) {
+        setMarks(c);
+        int size = liveCount(literal);
+        int[] occ = occurrences[code(literal)];
+        for (int k = 0; k < size; k++) {
+            int[] d = clauses.get(occ[k]);
+            if (d.length <= c.length && allMarked(d))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a kept clause (-c[k] v D) has D a subset of c, so
+     *         that c[k] can be removed from c
+     */
+    private boolean canRemove(int[] c, int k) {
+        setMarks(c);
+        int size = liveCount(-c[k]);
+        int[] occ = occurrences[code(-c[k])];
+        for (int j = 0; j < size; j++) {
+            int[] d = clauses.get(occ[j]);
+            if (d.length > c.length)
+                continue;
+            boolean subset = true;
+            for (int literal : d)
+                if (literal != -c[k] && !isMarked(literal)) {
+                    subset = false;
+                    break;
+                }
+            if (subset)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fix a literal at the root: delete the clauses it satisfies and
+     * queue the others it occurs in negated without it.
+     */
+    private void fix(int literal) {
+        int v = Math.abs(literal);
+        ensureVars(v);
+        if (litValue(literal) == SATSolver.TRUE)
+            return;
+        if (litValue(literal) == SATSolver.FALSE) {
+            inconsistent = true;
+            produced.add(new int[0]);
+            return;
+        }
+        value[v] = (byte) (literal > 0 ? SATSolver.TRUE : SATSolver.FALSE);
+        if (numUnits == units.length)
+            units = Arrays.copyOf(units, 2 * units.length);
+        units[numUnits++] = literal;
+        produced.add(new int[] { literal });
+        int size = liveCount(literal);
+        int[] occ = occurrences[code(literal)];
+        for (int k = 0; k < size; k++)
+            delete(occ[k], true);
+        size = liveCount(-literal);
+        occ = occurrences[code(-literal)];
+        for (int k = 0; k < size; k++) {
+            int[] d = clauses.get(occ[k]);
+            delete(occ[k], true);
+            int[] shorter = without(d, Arrays.binarySearch(d, -literal));
+            silent.add(shorter);
+            queue.add(shorter);
+        }
+    }
+
+    /**
+     * Resolve a variable away if that leaves no more clauses than it
+     * removes, none longer than MAX_RESOLVENT.
+     */
+    private void tryEliminate(int v) {
+        int[] pos = liveOccurrences(v);
+        int[] neg = liveOccurrences(-v);
+        if (pos.length + neg.length == 0 || pos.length > MAX_OCCURRENCES
+                || neg.length > MAX_OCCURRENCES)
+            return;
+        ArrayList<int[]> resolvents = new ArrayList<int[]>();
+        for (int p : pos)
+            for (int n : neg) {
+                int[] resolvent = resolve(clauses.get(p), clauses.get(n), v);
+                if (resolvent == null)
+                    continue;
+                if (resolvent.length > MAX_RESOLVENT
+                        || resolvents.size() == pos.length + neg.length)
+                    return;
+                resolvents.add(resolvent);
+            }
+        int[][] removed = new int[pos.length + neg.length][];
+        int k = 0;
+        for (int i : pos) {
+            removed[k++] = clauses.get(i);
+            delete(i, false);
+        }
+        for (int i : neg) {
+            removed[k++] = clauses.get(i);
+            delete(i, false);
+        }
+        eliminated[v] = removed;
+        numEliminatedVars++;
+        numEliminated++;
+        for (int[] resolvent : resolvents) {
+            queue.add(resolvent);
+            drain();
+        }
+    }
+
+    /**
+     * @return the resolvent of p, which holds v, and n, which holds -v, or
+     *         null if it is a tautology
+     */
+    private int[] resolve(int[] p, int[] n, int v) {
+        int[] r = new int[p.length + n.length - 2];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < p.length || j < n.length) {
+            int literal;
+            if (j == n.length || (i < p.length && p[i] < n[j]))
+                literal = p[i++];
+            else if (i == p.length || n[j] < p[i])
+                literal = n[j++];
+            else {
+                literal = p[i++];
+                j++;
+            }
+            if (literal == v || literal == -v)
+                continue;
+            if (size > 0 && r[size - 1] == literal)
+                continue;
+            if (Arrays.binarySearch(p, -literal) >= 0 || Arrays.binarySearch(n, -literal) >= 0)
+                return null;
+            if (size == r.length)
+                r = Arrays.copyOf(r, size + 1);
+            r[size++] = literal;
+        }
+        return Arrays.copyOf(r, size);
+    }
+
+    /**
+     * Delete a kept clause, marking its variables as candidates for
+     * elimination.
+     *
+     * @param satisfied: whether the clause is satisfied at the root
+     */
+    private void delete(int i, boolean satisfied) {
+        int[] d = clauses.get(i);
+        clauses.set(i, null);
+        numLive--;
+        if (!satisfied)
+            numRemoved++;
+        for (int literal : d)
+            touch(Math.abs(literal));
+    }
+
+    /**
+     * Make a variable a candidate for the next elimination.
+     */
+    private void touch(int v) {
+        if (!touched[v]) {
+            touched[v] = true;
+            if (numTouched == touchedList.length)
+                touchedList = Arrays.copyOf(touchedList, 2 * touchedList.length);
+            touchedList[numTouched++] = v;
+        }
+    }
+
+    private void clearTouched() {
+        for (int k = 0; k < numTouched; k++)
+            touched[touchedList[k]] = false;
+        numTouched = 0;
+    }
+
+    /**
+     * Drop the deleted clauses from the occurrence list of a literal.
+     * Deleting clauses leaves the list as it is, so the caller can go
+     * through it while deleting.
+     *
+     * @return the number of clauses left, whose indexes start
+     *         occurrences[code(literal)]
+     */
+    private int liveCount(int literal) {
+        int code = code(literal);
+        if (code >= occurrences.length || occurrences[code] == null)
+            return 0;
+        int[] occ = occurrences[code];
+        int n = 0;
+        for (int k = 0; k < occurrenceSize[code]; k++)
+            if (clauses.get(occ[k]) != null)
+                occ[n++] = occ[k];
+        occurrenceSize[code] = n;
+        return n;
+    }
+
+    /**
+     * @return a copy of the indexes of the clauses holding a literal
+     */
+    private int[] liveOccurrences(int literal) {
+        int n = liveCount(literal);
+        return n == 0 ? new int[0] : Arrays.copyOf(occurrences[code(literal)], n);
+    }
+
+    private void addOccurrence(int literal, int clause) {
+        int code = code(literal);
+        int[] occ = occurrences[code];
+        if (occ == null)
+            occ = occurrences[code] = new int[4];
+        else if (occurrenceSize[code] == occ.length)
+            occ = occurrences[code] = Arrays.copyOf(occ, 2 * occ.length);
+        occ[occurrenceSize[code]++] = clause;
+    }
+
+    private void setMarks(int[] c) {
+        stamp++;
+        for (int literal : c)
+            mark[code(literal)] = stamp;
+    }
+
+    private boolean isMarked(int literal) {
+        return mark[code(literal)] == stamp;
+    }
+
+    private boolean allMarked(int[] d) {
+        for (int literal : d)
+            if (!isMarked(literal))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return whether d holds at least count marked literals, not
+     *         counting the literal skip
+     */
+    private boolean containsMarked(int[] d, int count, int skip) {
+        int found = 0;
+        for (int literal : d)
+            if (literal != skip && isMarked(literal))
+                found++;
+        return found >= count;
+    }
+
+    /**
+     * @return the clause without its k-th literal
+     */
+    private static int[] without(int[] c, int k) {
+        int[] result = new int[c.length - 1];
+        System.arraycopy(c, 0, result, 0, k);
+        System.arraycopy(c, k + 1, result, k, c.length - k - 1);
+        return result;
+    }
+
+    private int litValue(int literal) {
+        int v = value[Math.abs(literal)];
+        return literal > 0 ? v : -v;
+    }
+
+    private void ensureVars(int n) {
+        if (n < value.length)
+            return;
+        int size = Math.max(2 * value.length, n + 1);
+        value = Arrays.copyOf(value, size);
+        kept = Arrays.copyOf(kept, size);
+        eliminated = Arrays.copyOf(eliminated, size);
+        touched = Arrays.copyOf(touched, size);
+        occurrences = Arrays.copyOf(occurrences, 2 * size);
+        occurrenceSize = Arrays.copyOf(occurrenceSize, 2 * size);
+        mark = Arrays.copyOf(mark, 2 * size);
+    }
+
+    private static int code(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+}
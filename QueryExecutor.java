@@ -0,0 +1,181 @@
+/**
+ * QueryExecutor.java - evaluates many literal queries against one
+ * knowledge base in parallel.
+ *
+ * SATSolver is not thread-safe, so each worker gets its own copy of the
+ * solver, made in the calling thread.  Copies share the frozen base
+ * clauses and start from the caller's propagation state, and each has its
+ * own backend session (for zchaff, its own temporary CNF file).  The
+ * literals are split into one slice per worker; each worker computes the
+ * backbone of its slice on a fork-join pool.  Other work, such as what-if
+ * queries, is run the same way as Jobs, which the workers take in turn
+ * until none is left.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class QueryExecutor {
+
+    /**
+     * A piece of work done against a worker's copy of the solver.  A job
+     * may change the copy, e.g. in a push()/pop() scope, but must leave it
+     * holding the same knowledge for the worker's next job.
+     */
+    public interface Job<T> {
+        /**
+         * @param solver: the worker's copy of the solver
+         * @return the result of the job
+         */
+        T run(SATSolver solver);
+    }
+
+    // executors: shared executors by number of threads
+    private static final Map<Integer, QueryExecutor> executors = new HashMap<Integer, QueryExecutor>();
+
+    // pool: the fork-join pool running the workers
+    private ForkJoinPool pool;
+    // threads: the number of workers
+    private int threads;
+
+    /**
+     * @param threads: the number of workers
+     */
+    public QueryExecutor(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Return an executor with the given number of threads shared by all
+     * callers, creating it on first use.
+     *
+     * @param threads: the number of workers
+     * @return the shared executor
+     */
+    public static synchronized QueryExecutor forThreads(int threads) {
+        QueryExecutor executor = executors.get(threads);
+        if (executor == null) {
+            executor = new QueryExecutor(threads);
+            executors.put(threads, executor);
+        }
+        return executor;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Compute SATSolver.computeBackbone(vars) with the work split among
+     * the workers.  The given solver is only read, and only by the calling
+     * thread.
+     *
+     * @param solver: the knowledge base to query
+     * @param vars:   the variables to test
+     * @return an array with the testLiteral result for each variable
+     */
+    public int[] computeBackbone(SATSolver solver, int[] vars) {
+        int workers = Math.min(threads, vars.length);
+        if (workers <= 1)
+            return solver.copy().computeBackbone(vars);
+
+        // Interleave the variables so that each slice gets cells of every
+        // card and place
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+        for (int w = 0; w < workers; w++) {
+            final int[] slice = new int[(vars.length - w + workers - 1) / workers];
+            for (int k = 0; k < slice.length; k++)
+                slice[k] = vars[w + k * workers];
+            final SATSolver worker = solver.copy();
+            tasks.add(new Callable<int[]>() {
+                public int[] call() {
+                    return worker.computeBackbone(slice);
+                }
+            });
+        }
+
+        int[] result = new int[vars.length];
+        List<int[]> slices = invokeAll(tasks);
+        for (int w = 0; w < workers; w++) {
+            int[] slice = slices.get(w);
+            for (int k = 0; k < slice.length; k++)
+                result[w + k * workers] = slice[k];
+        }
+        return result;
+    }
+
+    /**
+     * Run jobs against copies of a solver, one copy per worker.  The given
+     * solver is only read, and only by the calling thread.
+     *
+     * @param solver: the knowledge base the jobs query
+     * @param jobs:   the jobs
+     * @return the result of each job, in the order of the jobs
+     */
+    public <T> List<T> runAll(SATSolver solver, final List<? extends Job<T>> jobs) {
+        final List<T> results = new ArrayList<T>(Collections.<T>nCopies(jobs.size(), null));
+        int workers = Math.min(threads, jobs.size());
+        if (workers <= 1) {
+            SATSolver worker = solver.copy();
+            for (int j = 0; j < jobs.size(); j++)
+                results.set(j, jobs.get(j).run(worker));
+            return results;
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int w = 0; w < workers; w++) {
+            final SATSolver worker = solver.copy();
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int j = next.getAndIncrement(); j < jobs.size(); j = next.getAndIncrement()) {
+                        T result = jobs.get(j).run(worker);
+                        synchronized (results) {
+                            results.set(j, result);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+        synchronized (results) {
+            return results;
+        }
+    }
+
+    /**
+     * Run tasks on the pool and wait for all of them.
+     *
+     * @return the result of each task
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>();
+        List<Future<T>> futures = pool.invokeAll(tasks);
+        try {
+            for (Future<T> future : futures)
+                results.add(future.get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for workers");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new SolverException("A worker failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Stop the workers once the queries in progress are done.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,382 @@
+/**
+ * ReasonerSnapshot.java - the state of a ClueReasoner in a compact,
+ * versioned binary form, to checkpoint a game and resume it later or in
+ * another process (see ClueReasoner.snapshot and ClueReasoner.restore).
+ *
+ * A snapshot holds the variant, the perspective (the player whose hand
+ * was given), the knowledge base version, the clauses of the game, the
+ * clauses the backend learned from them and the deduction cache.  The
+ * general knowledge of the variant is not stored: restoring compiles it
+ * once per process, as constructing a reasoner does.
+ *
+ * A file is built in memory and written with one write; it is read back
+ * through a memory mapping, the clause and cache sections being copied
+ * into arrays in bulk rather than parsed.  Numbers are big-endian, a name
+ * is its number of UTF-8 bytes followed by the bytes, and a list of
+ * clauses is the number of clauses, the number of literals, the length
+ * of each clause and then the literals:
+ *
+ *   magic "CLKB", format version, CRC-32 of the rest of the file
+ *   variant:    number of players and their names; number of categories
+ *               and for each its size and card names; encoding name;
+ *               number of hand sizes (-1 if unknown) and the sizes
+ *   state:      perspective player index, knowledge base version (long)
+ *   clauses:    the clauses of the game
+ *   learned:    the learned clauses
+ *   deductions: number of cells, the value of each, the version each was
+ *               settled at (longs), the version each was open at (longs)
+ *
+ * A file is replaced by writing a temporary file next to it and moving
+ * it over the old one, so a crash leaves either the old snapshot or the
+ * new one, never a mix; a damaged file fails its checksum.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class ReasonerSnapshot {
+
+    // MAGIC: the first bytes of a snapshot file
+    static final byte[] MAGIC = { 'C', 'L', 'K', 'B' };
+    // FORMAT_VERSION: the layout written; files of other versions are
+    // rejected
+    public static final int FORMAT_VERSION = 1;
+    // HEADER: the bytes before the checksummed part
+    private static final int HEADER = 12;
+
+    private final GameVariant variant;
+    private final int playerNum;
+    private final long version;
+    private final int[][] clauses;
+    private final int[][] learnts;
+    private final int[] deductions;
+    private final long[] settledAt;
+    private final long[] openAt;
+
+    /**
+     * Construct a snapshot, taking over the given arrays.
+     *
+     * @param variant:    the players and cards of the game
+     * @param playerNum:  the index of the player whose perspective the
+     *                    reasoner takes
+     * @param version:    the knowledge base version
+     * @param clauses:    the clauses of the game, in the order added
+     * @param learnts:    clauses learned from the general knowledge and
+     *                    the clauses of the game
+     * @param deductions: SATSolver.TRUE, FALSE or UNKNOWN for each cell of
+     *                    the deduction cache
+     * @param settledAt:  the version each settled cell was settled at
+     * @param openAt:     the version each cell was last known open at, or
+     *                    -1
+     */
+    public ReasonerSnapshot(GameVariant variant, int playerNum, long version, int[][] clauses,
+            int[][] learnts, int[] deductions, long[] settledAt, long[] openAt) {
+        if (settledAt.length != deductions.length || openAt.length != deductions.length)
+            throw new IllegalArgumentException("The deduction cache arrays differ in length");
+        this.variant = variant;
+        this.playerNum = playerNum;
+        this.version = version;
+        this.clauses = clauses;
+        this.learnts = learnts;
+        this.deductions = deductions;
+        this.settledAt = settledAt;
+        this.openAt = openAt;
+    }
+
+    public GameVariant getVariant() {
+        return variant;
+    }
+
+    public int getPlayerNum() {
+        return playerNum;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the clauses of the game, in the order added
+     */
+    public int[][] getClauses() {
+        return clauses.clone();
+    }
+
+    /**
+     * @return the learned clauses
+     */
+    public int[][] getLearntClauses() {
+        return learnts.clone();
+    }
+
+    public int getNumCells() {
+        return deductions.length;
+    }
+
+    /**
+     * @param cell: the index of a cell of the deduction cache
+     * @return SATSolver.TRUE or FALSE if the cell was settled, else
+     *         UNKNOWN
+     */
+    public int getDeduction(int cell) {
+        return deductions[cell];
+    }
+
+    public long getSettledAt(int cell) {
+        return settledAt[cell];
+    }
+
+    public long getOpenAt(int cell) {
+        return openAt[cell];
+    }
+
+    /**
+     * Write the snapshot to a file, replacing it atomically if it exists.
+     *
+     * @param file: the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        byte[][] names = names();
+        int size = size();
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC).putInt(FORMAT_VERSION).putInt(0);
+        int n = 0;
+        buffer.putInt(variant.getNumPlayers());
+        for (int p = 0; p < variant.getNumPlayers(); p++)
+            putName(buffer, names[n++]);
+        String[][] categories = variant.getCategories();
+        buffer.putInt(categories.length);
+        for (String[] category : categories) {
+            buffer.putInt(category.length);
+            for (int i = 0; i < category.length; i++)
+                putName(buffer, names[n++]);
+        }
+        putName(buffer, names[n]);
+        int[] handSizes = variant.getHandSizes();
+        if (handSizes == null)
+            buffer.putInt(-1);
+        else {
+            buffer.putInt(handSizes.length);
+            buffer.asIntBuffer().put(handSizes);
+            buffer.position(buffer.position() + 4 * handSizes.length);
+        }
+        buffer.putInt(playerNum).putLong(version);
+        putClauses(buffer, clauses);
+        putClauses(buffer, learnts);
+        buffer.putInt(deductions.length);
+        buffer.asIntBuffer().put(deductions);
+        buffer.position(buffer.position() + 4 * deductions.length);
+        buffer.asLongBuffer().put(settledAt);
+        buffer.position(buffer.position() + 8 * settledAt.length);
+        buffer.asLongBuffer().put(openAt);
+        buffer.position(buffer.position() + 8 * openAt.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER, size - HEADER);
+        buffer.putInt(HEADER - 4, (int) crc.getValue());
+        buffer.flip();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            try {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(false);
+            }
+            finally {
+                channel.close();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Read a snapshot from a file.
+     *
+     * @param file: the file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read, is not a snapshot of
+     *                     this format version or is damaged
+     */
+    public static ReasonerSnapshot read(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(file + " is too large for a snapshot");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return read(buffer);
+            }
+            catch (BufferUnderflowException e) {
+                throw new EOFException(file + " ends inside the snapshot");
+            }
+            catch (RuntimeException e) {
+                throw new IOException(file + " is not a valid snapshot: " + e.getMessage(), e);
+            }
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    private static ReasonerSnapshot read(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IOException("Not a reasoner snapshot");
+        int format = buffer.getInt();
+        if (format != FORMAT_VERSION)
+            throw new IOException("Snapshot format version " + format + ", expected " + FORMAT_VERSION);
+        int checksum = buffer.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum)
+            throw new IOException("Snapshot checksum mismatch");
+
+        String[] players = new String[count(buffer)];
+        for (int p = 0; p < players.length; p++)
+            players[p] = getName(buffer);
+        String[][] categories = new String[count(buffer)][];
+        for (int k = 0; k < categories.length; k++) {
+            categories[k] = new String[count(buffer)];
+            for (int i = 0; i < categories[k].length; i++)
+                categories[k][i] = getName(buffer);
+        }
+        CardinalityEncoder.Encoding encoding = CardinalityEncoder.Encoding.valueOf(getName(buffer));
+        int numHands = buffer.getInt();
+        if (numHands < -1 || numHands > buffer.remaining())
+            throw new IOException("Bad count " + numHands);
+        int[] handSizes = numHands < 0 ? null : getInts(buffer, numHands);
+        GameVariant variant = new GameVariant(players, categories, encoding, handSizes);
+
+        int playerNum = buffer.getInt();
+        long version = buffer.getLong();
+        int[][] clauses = getClauses(buffer);
+        int[][] learnts = getClauses(buffer);
+        int numCells = count(buffer);
+        int[] deductions = getInts(buffer, numCells);
+        long[] settledAt = getLongs(buffer, numCells);
+        long[] openAt = getLongs(buffer, numCells);
+        if (buffer.hasRemaining())
+            throw new IOException("Trailing bytes after the snapshot");
+        return new ReasonerSnapshot(variant, playerNum, version, clauses, learnts, deductions,
+            settledAt, openAt);
+    }
+
+    /**
+     * @return the size of the snapshot file in bytes
+     */
+    public int size() {
+        // The counts of players, categories and hand sizes, the category
+        // sizes, the names and the hand sizes
+        int size = HEADER + 3 * 4 + 4 * variant.getNumCategories();
+        for (byte[] name : names())
+            size += 4 + name.length;
+        size += variant.getHandSizes() == null ? 0 : 4 * variant.getNumPlayers();
+        // The perspective and the version, the clauses and the deductions
+        size += 4 + 8 + sectionSize(clauses) + sectionSize(learnts);
+        return size + 4 + 20 * deductions.length;
+    }
+
+    /**
+     * @return the encoded names of the players, the cards and the
+     *         encoding, in the order written
+     */
+    private byte[][] names() {
+        String[] players = variant.getPlayers();
+        String[] cards = variant.getCards();
+        byte[][] names = new byte[players.length + cards.length + 1][];
+        int n = 0;
+        for (String player : players)
+            names[n++] = player.getBytes(StandardCharsets.UTF_8);
+        for (String card : cards)
+            names[n++] = card.getBytes(StandardCharsets.UTF_8);
+        names[n] = variant.getEncoding().name().getBytes(StandardCharsets.UTF_8);
+        return names;
+    }
+
+    private static int sectionSize(int[][] list) {
+        int size = 8;
+        for (int[] clause : list)
+            size += 4 + 4 * clause.length;
+        return size;
+    }
+
+    private static void putName(ByteBuffer buffer, byte[] name) {
+        buffer.putInt(name.length).put(name);
+    }
+
+    private static String getName(ByteBuffer buffer) throws IOException {
+        byte[] name = new byte[count(buffer)];
+        buffer.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private static void putClauses(ByteBuffer buffer, int[][] list) {
+        int numLiterals = 0;
+        for (int[] clause : list)
+            numLiterals += clause.length;
+        buffer.putInt(list.length).putInt(numLiterals);
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int[] clause : list)
+            ints.put(clause.length);
+        for (int[] clause : list)
+            ints.put(clause);
+        buffer.position(buffer.position() + 4 * (list.length + numLiterals));
+    }
+
+    private static int[][] getClauses(ByteBuffer buffer) throws IOException {
+        int numClauses = count(buffer);
+        int numLiterals = count(buffer);
+        int[] lengths = getInts(buffer, numClauses);
+        int[] literals = getInts(buffer, numLiterals);
+        int[][] list = new int[numClauses][];
+        int start = 0;
+        for (int i = 0; i < numClauses; i++) {
+            if (lengths[i] < 0 || lengths[i] > numLiterals - start)
+                throw new IOException("Bad clause length " + lengths[i]);
+            list[i] = Arrays.copyOfRange(literals, start, start + lengths[i]);
+            start += lengths[i];
+        }
+        if (start != numLiterals)
+            throw new IOException("The clause lengths do not add up to " + numLiterals);
+        return list;
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int n) {
+        int[] ints = new int[n];
+        buffer.asIntBuffer().get(ints);
+        buffer.position(buffer.position() + 4 * n);
+        return ints;
+    }
+
+    private static long[] getLongs(ByteBuffer buffer, int n) {
+        long[] longs = new long[n];
+        buffer.asLongBuffer().get(longs);
+        buffer.position(buffer.position() + 8 * n);
+        return longs;
+    }
+
+    /**
+     * Read a count, checking that it is not negative and does not exceed
+     * what is left of the buffer, so that damage cannot cause huge
+     * allocations.
+     */
+    private static int count(ByteBuffer buffer) throws IOException {
+        int n = buffer.getInt();
+        if (n < 0 || n > buffer.remaining())
+            throw new IOException("Bad count " + n);
+        return n;
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * ReplayEngine.java - replays archives of recorded games and derives the
+ * notepad of each.
+ *
+ * Games stream from a GameLogReader through a bounded queue to a fixed
+ * number of worker threads.  Each worker replays one game at a time on a
+ * fresh ClueReasoner, an overlay on the shared game knowledge that is
+ * cheap to create, so at most one reasoner per worker is alive and memory
+ * stays flat however long the archive.  The notepads go to a Sink; the
+ * calls to it are made one at a time, in the order the games finish.
+ * A game that fails (e.g. contradictory records) is reported to the sink
+ * and the run goes on; a failure to read the log or of the sink, or an
+ * Error in a worker, stops it and is thrown from replay.
+ *
+ *   java ReplayEngine [-threads n] [-out file] [log ...]
+ *
+ * replays the given logs (standard input if none), writes the notepads as
+ * JSON lines (see NotepadRecordWriter) to the file or standard output,
+ * and reports the throughput on standard error.
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class ReplayEngine {
+
+    /**
+     * Where the results of the replayed games go.
+     */
+    public interface Sink {
+        /**
+         * @param game:    a replayed game
+         * @param notepad: its final notepad, as from ClueReasoner.notepad()
+         */
+        void accept(GameRecord game, String[][] notepad) throws IOException;
+
+        /**
+         * @param game:  a game that could not be replayed
+         * @param error: the reason
+         */
+        void failed(GameRecord game, RuntimeException error) throws IOException;
+    }
+
+    // END: queued after the last game, once per worker
+    private static final GameRecord END = new GameRecord(-1, new int[0], 0);
+    // POLL_MILLIS: how long the reader waits on a full queue before it
+    // checks again that the run goes on
+    private static final long POLL_MILLIS = 100;
+
+    // threads: the number of workers
+    private final int threads;
+
+    /**
+     * @param threads: the number of workers
+     */
+    public ReplayEngine(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Replay every game of a log.
+     *
+     * @param reader: the log, read by the calling thread; its names must
+     *                be those of a standard ClueReasoner
+     * @param sink:   where the notepads go
+     * @return the throughput of the run
+     * @throws IOException if the log cannot be read or the sink fails;
+     *                     a RuntimeException or Error of the sink or of a
+     *                     worker is thrown as it is
+     */
+    public ReplayStats replay(GameLogReader reader, final Sink sink) throws IOException {
+        long start = System.nanoTime();
+        final BlockingQueue<GameRecord> queue = new ArrayBlockingQueue<GameRecord>(4 * threads);
+        final AtomicLong games = new AtomicLong();
+        final AtomicLong events = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        // failure: the first failure of the sink or of a worker, which
+        // stops the run
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread[] workers = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Thread(new Runnable() {
+                public void run() {
+                    work(queue, sink, games, events, failed, failure);
+                }
+            }, "replay-" + w);
+            workers[w].setDaemon(true);
+            workers[w].start();
+        }
+
+        boolean stopped = false;
+        try {
+            for (GameRecord game = reader.next(); game != null && failure.get() == null; game = reader.next())
+                if (!put(queue, game, workers)) {
+                    stopped = true;
+                    break;
+                }
+        }
+        finally {
+            // Let the workers finish the queued games and stop
+            for (int w = 0; w < threads && !stopped; w++)
+                stopped = !put(queue, END, workers);
+            for (Thread worker : workers)
+                join(worker);
+        }
+        if (stopped)
+            failure.compareAndSet(null, new IllegalStateException("The replay workers stopped"));
+        Throwable error = failure.get();
+        if (error instanceof IOException)
+            throw (IOException) error;
+        if (error instanceof RuntimeException)
+            throw (RuntimeException) error;
+        if (error instanceof Error)
+            throw (Error) error;
+        if (error != null)
+            throw new IOException(error);
+        return new ReplayStats(games.get(), events.get(), failed.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Replay queued games until the end marker.
+     */
+    private static void work(BlockingQueue<GameRecord> queue, Sink sink, AtomicLong games,
+            AtomicLong events, AtomicLong failed, AtomicReference<Throwable> failure) {
+        String[] players = null;
+        String[] cards = null;
+        while (true) {
+            GameRecord game;
+            try {
+                game = queue.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (game == END)
+                return;
+            if (failure.get() != null)
+                continue;
+            // Anything else thrown, by the sink or as an Error, stops the
+            // run; the worker goes on draining the queue so that the
+            // reader is not left waiting on it
+            try {
+                ClueReasoner reasoner = new ClueReasoner();
+                if (players == null) {
+                    players = reasoner.getPlayers();
+                    cards = reasoner.getCards();
+                }
+                String[][] notepad = null;
+                RuntimeException error = null;
+                try {
+                    game.replay(reasoner, players, cards);
+                    notepad = reasoner.notepad();
+                }
+                catch (RuntimeException e) {
+                    error = e;
+                    failed.incrementAndGet();
+                }
+                games.incrementAndGet();
+                events.addAndGet(game.getNumEvents());
+                synchronized (sink) {
+                    if (error == null)
+                        sink.accept(game, notepad);
+                    else
+                        sink.failed(game, error);
+                }
+            }
+            catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    /**
+     * Queue a game, waiting while the queue is full as long as a worker
+     * is alive to take it.
+     *
+     * @return whether the game was queued
+     */
+    private static boolean put(BlockingQueue<GameRecord> queue, GameRecord game, Thread[] workers) {
+        try {
+            while (!queue.offer(game, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                boolean alive = false;
+                for (Thread worker : workers)
+                    alive |= worker.isAlive();
+                if (!alive)
+                    return false;
+            }
+            return true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while queueing games");
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for workers");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String outName = null;
+        List<String> logs = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-out") && i + 1 < args.length)
+                outName = args[++i];
+            else
+                logs.add(args[i]);
+        }
+
+        OutputStream outStream = outName == null ? System.out : new FileOutputStream(outName);
+        NotepadRecordWriter out = new NotepadRecordWriter(
+            new OutputStreamWriter(outStream, StandardCharsets.UTF_8), new ClueReasoner().getCards());
+        ReplayEngine engine = new ReplayEngine(threads);
+        try {
+            if (logs.isEmpty())
+                System.err.println(engine.replay(new GameLogReader(System.in), out));
+            for (String log : logs) {
+                GameLogReader reader = new GameLogReader(new FileInputStream(log));
+                try {
+                    System.err.println(log + ": " + engine.replay(reader, out));
+                }
+                finally {
+                    reader.close();
+                }
+            }
+        }
+        finally {
+            if (outName == null)
+                out.flush();
+            else
+                out.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * ReplayStats.java - the throughput of a ReplayEngine run.
+ */
+
+public class ReplayStats {
+
+    private final long games;
+    private final long events;
+    private final long failed;
+    private final long nanos;
+
+    /**
+     * @param games:  the number of games replayed, failed ones included
+     * @param events: the number of events replayed
+     * @param failed: the number of games that could not be replayed
+     * @param nanos:  the wall-clock time of the run
+     */
+    public ReplayStats(long games, long events, long failed, long nanos) {
+        this.games = games;
+        this.events = events;
+        this.failed = failed;
+        this.nanos = nanos;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public double getGamesPerSecond() {
+        return nanos == 0 ? 0 : games * 1e9 / nanos;
+    }
+
+    public double getEventsPerSecond() {
+        return nanos == 0 ? 0 : events * 1e9 / nanos;
+    }
+
+    public String toString() {
+        return String.format("%d games (%d events, %d failed) in %.3fs: %.1f games/s, %.0f events/s",
+            games, events, failed, nanos / 1e9, getGamesPerSecond(), getEventsPerSecond());
+    }
+}
@@ -1,5 +1,7 @@
 /**
- * SATSolver.java - a simple Java interface to the zchaff SAT solver.
+ * SATSolver.java - a simple Java interface to a SAT solver.  By default
+ * queries are answered in-process by CDCLSolver; the external zchaff
+ * solver remains available through ZchaffSolver.
  * See http://cs.gettysburg.edu/~tneller/nsf/clue/ for details.
  *
  * @author Todd Neller
@@ -26,90 +28,1265 @@ Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
 
  */
 
-import java.io.*;
+import java.math.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class SATSolver 
 {
     public static final int FALSE = -1;
     public static final int UNKNOWN = 0;
     public static final int TRUE = 1;
+    // Results of asynchronous queries stopped by their deadline, or by a
+    // failure of the backend, before the answer was known
+    public static final int TIMEOUT = 2;
+    public static final int ERROR = -2;
 
-    public ArrayList<int[]> clauses = new ArrayList<int[]>();
+    /**
+     * The ways a testLiteral query can be answered, from cheapest to most
+     * expensive: by the root assignment of unit propagation, by probing the
+     * literal and its negation for a conflict, or by the backend.
+     */
+    public enum QueryPath { PROPAGATION, PROBING, SEARCH }
+
+    // Returned by quickTest when propagation cannot decide a literal
+    private static final int UNDECIDED = Integer.MIN_VALUE;
+    // NO_ASSUMPTIONS: the assumptions of a query under the clauses alone
+    private static final int[] NO_ASSUMPTIONS = new int[0];
+
+    // Retired selector variables tolerated before the backend is reloaded
+    private static final int MAX_SELECTORS = 4096;
+    // Largest number of candidates tested at once by computeBackbone
+    private static final int MAX_CHUNK = 64;
+
+    // clauses: the permanent clauses, without tautologies and subsumed clauses
+    private ClauseArena clauses = new ClauseArena();
     public ArrayList<int[]> queryClauses = new ArrayList<int[]>();
 
+    // backend: the incremental session holding the clauses
+    private SolverBackend backend;
+    // maxVar: the largest variable occurring in the clauses
+    private int maxVar;
+    // decisionVars: the variables the others are functions of, 1..n, or 0
+    // for all
+    private int decisionVars;
+    // selectorFloor: the lowest variable used as a query clause selector
+    // since the backend was last loaded
+    private int selectorFloor = Integer.MAX_VALUE;
+    // nextSelector: the next variable free for use as a selector
+    private int nextSelector;
+    // backendLoaded: whether the backend session holds the clauses
+    private boolean backendLoaded = true;
+    // propagator: unit propagation over the clauses, tried before the backend
+    private UnitPropagator propagator = new UnitPropagator();
+    // propagatorShared: whether the propagator belongs to a frozen base and
+    // must be copied before use
+    private boolean propagatorShared;
+    // preprocessor: the permanent clauses as simplified for the backend
+    private Preprocessor preprocessor = new Preprocessor();
+    // preprocessorShared: as propagatorShared, for the preprocessor
+    private boolean preprocessorShared;
+    // factsSeen: the root literals of the propagator given to the
+    // preprocessor as units
+    private int factsSeen;
+    // producedSeen: the clauses logged by the preprocessor that the backend
+    // has been given
+    private int producedSeen;
+    // removedAtLoad: the preprocessor's count of removed clauses when the
+    // backend was loaded
+    private long removedAtLoad;
+    // buffers[n]: the array clauses of n literals given to addClauses are
+    // copied to, reused from one clause to the next
+    private int[][] buffers = new int[4][];
+    // unit: the array root literals are given to the preprocessor in
+    private int[] unit = new int[1];
+    // frozen: true once this solver serves as the shared base of overlays
+    private boolean frozen;
+    // base: the frozen solver this one is an overlay on, or null
+    private SATSolver base;
+    // consistentAt: the number of clauses when a backend last found a model
+    private int consistentAt = -1;
+    // lastQueryPath: how the last testLiteral query was answered
+    private QueryPath lastQueryPath;
+    // queryCounts: the number of literals answered by each QueryPath
+    private long[] queryCounts = new long[QueryPath.values().length];
+    // backendSolves: the number of backend solves run so far
+    private long backendSolves;
+    // metrics: where solves and query answers are reported
+    private SolverMetrics metrics = SolverMetrics.getDefault();
+    // counter: the model counter, created on first use; its cache of
+    // component counts carries over from one count to the next
+    private ModelCounter counter;
+    // branchOrder: the groups of variables the model counter branches on
+    // first
+    private int[][] branchOrder = new int[0][];
+    // scopes: the scopes opened by push() and not yet popped, innermost last
+    private ArrayList<Scope> scopes = new ArrayList<Scope>();
+    // learnts: clauses learned by an earlier session from the permanent
+    // clauses, loaded into the backend after them
+    private int[][] learnts = new int[0][];
+
+    /**
+     * The state a solver returns to when a scope is popped.  The clauses
+     * added in the scope reach the backend guarded by the scope's
+     * selector variable, which every solve assumes while the scope is open
+     * and which is disabled when it is popped.
+     */
+    private static class Scope {
+        int numClauses;
+        int maxVar;
+        int consistentAt;
+        UnitPropagator propagator;
+        boolean propagatorShared;
+        // selector: the selector guarding the scope's clauses in the
+        // backend, or 0 while the backend is not loaded
+        int selector;
+    }
+
+    /**
+     * Construct a solver answering queries with the in-process CDCLSolver.
+     */
+    public SATSolver() {
+        this(new CDCLSolver());
+    }
+
+    /**
+     * Construct a solver answering queries with the given backend.
+     *
+     * @param backend: the engine deciding satisfiability, e.g. a
+     *                 CDCLSolver or a ZchaffSolver
+     */
+    public SATSolver(SolverBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Construct an overlay on a frozen solver, answering queries with the
+     * in-process CDCLSolver.
+     *
+     * @param base: the frozen solver whose clauses are shared
+     */
+    public SATSolver(SATSolver base) {
+        this(base, new CDCLSolver());
+    }
+
+    /**
+     * Construct an overlay on a frozen solver.  The base clauses and the
+     * base propagation state are shared, not copied: the overlay stores
+     * only the clauses added to it, copies the propagation state the first
+     * time it needs to change it, and loads its backend on the first query
+     * that needs search.  Construction therefore costs next to nothing.
+     *
+     * @param base:    the frozen solver whose clauses are shared
+     * @param backend: the engine deciding satisfiability
+     */
+    public SATSolver(SATSolver base, SolverBackend backend) {
+        if (!base.frozen)
+            throw new IllegalArgumentException("The base solver must be frozen");
+        this.backend = backend;
+        this.backendLoaded = false;
+        this.base = base;
+        this.clauses = new ClauseArena(base.clauses);
+        this.maxVar = base.maxVar;
+        this.decisionVars = base.decisionVars;
+        this.branchOrder = base.branchOrder;
+        this.propagator = base.propagator;
+        this.propagatorShared = true;
+        this.preprocessor = base.preprocessor;
+        this.preprocessorShared = true;
+        this.factsSeen = base.factsSeen;
+        this.consistentAt = base.consistentAt;
+        this.metrics = base.metrics;
+    }
+
+    /**
+     * Make this solver immutable so that it can be shared as the base of
+     * overlays by any number of threads.  Its clauses are preprocessed,
+     * checked for satisfiability and propagated first, so overlays start
+     * from that solved state; its own backend session is then released.
+     *
+     * @return this solver
+     */
+    public SATSolver freeze() {
+        if (!scopes.isEmpty())
+            throw new IllegalStateException("A solver with open scopes cannot be frozen");
+        if (!frozen) {
+            // Reload, so that overlays inherit a fully preprocessed state
+            backendLoaded = false;
+            solve();
+            clauses.freeze();
+            backend.reset();
+            backendLoaded = false;
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Copy this solver, with a new session of the same kind of backend.
+     *
+     * @return the copy
+     */
+    public SATSolver copy() {
+        return copy(backend.newSession());
+    }
+
+    /**
+     * Copy this solver for use by another thread.  The copy shares the
+     * base clauses, if any, and starts from the current propagation state;
+     * the given backend is loaded on the copy's first search.  A frozen
+     * solver is copied as a new overlay on it.  The clauses of open scopes
+     * are permanent clauses of the copy, so copying inside a scope forks
+     * the knowledge base as extended by the scope.
+     *
+     * @param backend: the engine the copy answers queries with
+     * @return the copy
+     */
+    public SATSolver copy(SolverBackend backend) {
+        SATSolver copy;
+        if (frozen) {
+            copy = new SATSolver(this, backend);
+            copy.metrics = metrics;
+            return copy;
+        }
+        int first = 0;
+        if (base != null) {
+            copy = new SATSolver(base, backend);
+            first = base.clauses.size();
+        }
+        else {
+            copy = new SATSolver(backend);
+            copy.backendLoaded = false;
+        }
+        for (int i = first; i < clauses.size(); i++)
+            copy.clauses.add(clauses.get(i));
+        copy.preprocessor = preprocessor;
+        copy.preprocessorShared = true;
+        preprocessorShared = true;
+        copy.factsSeen = factsSeen;
+        if (!scopes.isEmpty())
+            for (int i = scopes.get(0).numClauses; i < clauses.size(); i++)
+                copy.preprocessor().add(clauses.get(i));
+        copy.maxVar = maxVar;
+        copy.decisionVars = decisionVars;
+        copy.learnts = learnts;
+        copy.branchOrder = branchOrder;
+        copy.propagator = propagator;
+        copy.propagatorShared = true;
+        propagatorShared = true;
+        copy.consistentAt = consistentAt;
+        copy.metrics = metrics;
+        return copy;
+    }
+
+    public SolverBackend getBackend() {
+        return backend;
+    }
+
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Report solves and query answers, including those of the backend and
+     * of later copies, to the given metrics.
+     *
+     * @param metrics: the metrics to report to
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+        backend.setMetrics(metrics);
+    }
+
+    /**
+     * Switch to another backend, loading the current clauses into it.
+     *
+     * @param backend: the engine deciding satisfiability
+     */
+    public void setBackend(SolverBackend backend) {
+        checkNotFrozen();
+        this.backend = backend;
+        this.backendLoaded = false;
+        backend.setMetrics(metrics);
+    }
+
+    /**
+     * Add a permanent clause.  Tautologies and clauses subsumed by one
+     * already added are dropped.  Outside scopes, the clause is then
+     * preprocessed (see Preprocessor): the negation of each of its
+     * literals is probed for a conflict, and the clause, the literals
+     * found, and the kept clauses are simplified against each other.  What
+     * that produces is appended to the backend session as a delta; the
+     * session is only rebuilt once most of what it holds has been
+     * simplified away.
+     *
+     * @param clause: the clause, an array of non-zero DIMACS literals
+     */
     public void addClause(int[] clause) {
-        clauses.add((int[]) clause.clone());
+        checkNotFrozen();
+        if (!clauses.add(clause))
+            return;
+        for (int literal: clause)
+            maxVar = Math.max(Math.abs(literal), maxVar);
+        propagator().addClause(clause);
+        if (scopes.isEmpty()) {
+            // Failed literals: a literal whose negation propagates to a
+            // conflict is a root fact, found by the probe
+            for (int literal: clause)
+                if (propagator.value(literal) == UNKNOWN)
+                    propagator.probe(-literal);
+            preprocessor().add(clause);
+            addRootFacts();
+        }
+        else
+            restore(clause);
+        if (maxVar >= selectorFloor)
+            backendLoaded = false;
+        sync();
+        if (backendLoaded && !scopes.isEmpty())
+            backend.addClause(guard(clause, scopes.get(scopes.size() - 1).selector));
+    }
+
+    /**
+     * Add permanent clauses as addClause would, given back to back in one
+     * buffer, each followed by 0 as in DIMACS CNF.  Neither the buffer
+     * nor the arrays the clauses are copied to are kept, so that a caller
+     * reusing its buffer adds clauses without allocating anything the
+     * solver does not keep.
+     *
+     * @param literals: the clauses, each terminated by 0
+     * @param length:   the number of entries of literals used
+     */
+    public void addClauses(int[] literals, int length) {
+        checkNotFrozen();
+        int start = 0;
+        for (int end = 0; end < length; end++) {
+            if (literals[end] != 0)
+                continue;
+            int n = end - start;
+            if (n >= buffers.length)
+                buffers = Arrays.copyOf(buffers, 2 * n);
+            if (buffers[n] == null)
+                buffers[n] = new int[n];
+            System.arraycopy(literals, start, buffers[n], 0, n);
+            addClause(buffers[n]);
+            start = end + 1;
+        }
+        if (start != length)
+            throw new IllegalArgumentException("The last clause is not terminated by 0");
+    }
+
+    /**
+     * Add permanent clauses as addClause would, but without probing their
+     * literals or simplifying them against the clauses already added (see
+     * Preprocessor.keep).  This suits clauses simplified once before, as
+     * when restoring a snapshot: the knowledge is the same, and the
+     * backend is loaded with the clauses much as they were given.  Inside
+     * a scope the clauses are added by addClause.
+     *
+     * @param added: the clauses, arrays of non-zero DIMACS literals
+     */
+    public void addClausesAsIs(int[][] added) {
+        checkNotFrozen();
+        if (!scopes.isEmpty()) {
+            for (int[] clause: added)
+                addClause(clause);
+            return;
+        }
+        for (int[] clause: added) {
+            if (!clauses.add(clause))
+                continue;
+            for (int literal: clause)
+                maxVar = Math.max(Math.abs(literal), maxVar);
+            propagator().addClause(clause);
+            preprocessor().keep(clause);
+        }
+        addRootFacts();
+        if (maxVar >= selectorFloor)
+            backendLoaded = false;
+        sync();
+    }
+
+    /**
+     * Open a scope: the clauses added until the matching pop() are
+     * removed again by it, along with everything learned from them.
+     * Scopes nest.  Opening one costs a few field copies; the propagation
+     * state is copied only if a clause is added in the scope, and the
+     * backend session is kept, so a what-if query inside a scope is as
+     * cheap as any other query.
+     */
+    public void push() {
+        checkNotFrozen();
+        Scope scope = new Scope();
+        scope.numClauses = clauses.size();
+        scope.maxVar = maxVar;
+        scope.consistentAt = consistentAt;
+        scope.propagator = propagator;
+        scope.propagatorShared = propagatorShared;
+        if (nextSelector - maxVar > MAX_SELECTORS)
+            backendLoaded = false;
+        if (backendLoaded)
+            scope.selector = newSelector(0);
+        // Changes made in the scope go to a copy of the propagator
+        propagatorShared = true;
+        scopes.add(scope);
+    }
+
+    /**
+     * Close the innermost scope, removing the clauses added since the
+     * matching push().
+     *
+     * @throws IllegalStateException if no scope is open
+     */
+    public void pop() {
+        if (scopes.isEmpty())
+            throw new IllegalStateException("No scope is open");
+        Scope scope = scopes.remove(scopes.size() - 1);
+        clauses.truncate(scope.numClauses);
+        maxVar = scope.maxVar;
+        consistentAt = scope.consistentAt;
+        propagator = scope.propagator;
+        propagatorShared = scope.propagatorShared;
+        if (backendLoaded)
+            backend.addClause(new int[] {-scope.selector});
+    }
+
+    /**
+     * @return the largest variable occurring in the clauses
+     */
+    public int getMaxVar() {
+        return maxVar;
+    }
+
+    /**
+     * Declare the variables above n functions of variables 1..n that unit
+     * propagation assigns, such as the auxiliary variables of an encoding,
+     * so that the backend need not branch on them (see
+     * SolverBackend.setDecisionVars).  Overlays and copies inherit this.
+     *
+     * @param n: the largest decision variable, or 0 for all variables
+     */
+    public void setDecisionVars(int n) {
+        checkNotFrozen();
+        decisionVars = n;
+        if (backendLoaded)
+            backend.setDecisionVars(n);
+    }
+
+    public int getDecisionVars() {
+        return decisionVars;
+    }
+
+    /**
+     * Report what the backend has learned from the permanent clauses, so
+     * that a later session can start from it (see addLearntClauses).
+     * Clauses that mention selector variables are left out.
+     *
+     * @return the learned clauses, with the literals found to hold at the
+     *         root as unit clauses
+     * @throws IllegalStateException if a scope is open
+     */
+    public int[][] getLearntClauses() {
+        if (!scopes.isEmpty())
+            throw new IllegalStateException("The learned clauses of a solver with open scopes are not permanent");
+        // A backend not loaded may still number selectors like variables
+        // added since, so only the clauses given to this solver are sure
+        if (!backendLoaded)
+            return learnts.clone();
+        int[][] learned = backend.getLearntClauses();
+        int n = 0;
+        for (int[] clause: learned) {
+            boolean permanent = true;
+            for (int literal: clause)
+                permanent &= Math.abs(literal) <= maxVar;
+            if (permanent)
+                learned[n++] = clause;
+        }
+        return Arrays.copyOf(learned, n);
+    }
+
+    /**
+     * Give the backend clauses that follow from the permanent clauses,
+     * such as those getLearntClauses() reported for a solver with the same
+     * clauses.  The backend may treat them as learned and forget them
+     * again; the solver keeps them for every reload.
+     *
+     * @param learned: the clauses, arrays of non-zero DIMACS literals
+     * @throws IllegalStateException if a scope is open
+     */
+    public void addLearntClauses(int[][] learned) {
+        checkNotFrozen();
+        if (!scopes.isEmpty())
+            throw new IllegalStateException("Learned clauses cannot be added in a scope");
+        int n = learnts.length;
+        learnts = Arrays.copyOf(learnts, n + learned.length);
+        for (int[] clause: learned) {
+            learnts[n++] = clause.clone();
+            if (backendLoaded)
+                backend.addLearntClause(clause);
+        }
+    }
+
+    /**
+     * Report the literals decided at the root by propagation: the unit
+     * clauses, what they imply and the negations of literals refuted by
+     * probing.  These only ever grow while no scope is popped, so a caller
+     * can pick up the new ones by passing the number it has seen.
+     *
+     * @param from: the number of literals already seen
+     * @return the literals decided since, as DIMACS literals
+     */
+    public int[] getRootLiterals(int from) {
+        int n = propagator.getNumFacts();
+        int[] literals = new int[Math.max(n - from, 0)];
+        for (int i = 0; i < literals.length; i++)
+            literals[i] = propagator.getFact(from + i);
+        return literals;
+    }
+
+    /**
+     * @return the number of literals decided at the root, as counted by
+     *         getRootLiterals
+     */
+    public int getNumRootLiterals() {
+        return propagator.getNumFacts();
+    }
+
+    /**
+     * @return whether a backend has found the clauses satisfiable since the
+     *         last clause was added, so that a literal decided true at the
+     *         root is known to hold rather than to follow from a
+     *         contradiction
+     */
+    public boolean isKnownConsistent() {
+        return consistentAt == clauses.size();
+    }
+
+    /**
+     * Report one literal decided at the root, without allocating.
+     *
+     * @param i: an index below getNumRootLiterals()
+     * @return the i-th literal decided, as a DIMACS literal
+     */
+    public int getRootLiteral(int i) {
+        return propagator.getFact(i);
+    }
+
+    /**
+     * @return the number of scopes open
+     */
+    public int getScopeDepth() {
+        return scopes.size();
+    }
+
+    /**
+     * @return the permanent clauses
+     */
+    public ClauseArena getClauses() {
+        return clauses;
     }
         
     public void clearClauses() {
+        checkNotFrozen();
+        scopes.clear();
         clauses.clear();
+        maxVar = 0;
+        decisionVars = 0;
+        learnts = new int[0][];
+        branchOrder = new int[0][];
+        consistentAt = -1;
+        propagator = new UnitPropagator();
+        propagatorShared = false;
+        preprocessor = new Preprocessor();
+        preprocessorShared = false;
+        factsSeen = 0;
+        backendLoaded = false;
     }
 
     public void addQueryClause(int[] clause) {
-        queryClauses.add((int[]) clause.clone());
+        queryClauses.add(clause.clone());
     }
         
     public void clearQueryClauses() {
         queryClauses.clear();
     }
 
+    /**
+     * Decide whether the clauses together with the query clauses are
+     * satisfiable.
+     *
+     * @return true if a model exists, false otherwise
+     * @throws SolverException if the backend failed to decide the query
+     */
     public boolean makeQuery() 
     {
-        try {
-            int maxVar = 0;
-            ArrayList<int[]> allClauses = new ArrayList<int[]>(clauses);
-            allClauses.addAll(queryClauses);        
-            for (int[] clause: allClauses)
-                for (int literal: clause)
-                    maxVar = Math.max(Math.abs(literal), maxVar);
-            PrintStream out = new PrintStream(new File("query.cnf"));
-            out.println("c This DIMACS format CNF file was generated by SatSolver.java");
-            out.println("c Do not edit.");
-            out.println("p cnf " + maxVar + " " + allClauses.size());
-            for (int[] clause: allClauses) {
-                for (int literal: clause)
-                    out.print(literal + " ");
-                out.println("0");
+        return solveWith(queryClauses, NO_ASSUMPTIONS);
+    }
+
+    /**
+     * Decide whether the clauses together with some temporary clauses are
+     * satisfiable.  Unit clauses are passed to the backend as assumptions.
+     * Longer clauses are added guarded by a fresh selector variable which
+     * is assumed for this call and disabled afterwards.
+     *
+     * @param extra:   the temporary clauses
+     * @param assumed: DIMACS literals assumed true as well
+     * @return true if a model exists, false otherwise
+     */
+    private boolean solveWith(List<int[]> extra, int[] assumed)
+    {
+        int maxExtra = 0;
+        restore(assumed);
+        for (int literal: assumed)
+            maxExtra = Math.max(Math.abs(literal), maxExtra);
+        for (int[] clause: extra) {
+            restore(clause);
+            for (int literal: clause)
+                maxExtra = Math.max(Math.abs(literal), maxExtra);
+        }
+        sync();
+        if (!backendLoaded || maxExtra >= selectorFloor || nextSelector - maxVar > MAX_SELECTORS)
+            reload(maxExtra);
+        int[] assumptions = Arrays.copyOf(assumed, assumed.length + extra.size());
+        ArrayList<Integer> selectors = new ArrayList<Integer>();
+        for (int i = 0; i < extra.size(); i++) {
+            int[] clause = extra.get(i);
+            if (clause.length == 1)
+                assumptions[assumed.length + i] = clause[0];
+            else {
+                int selector = newSelector(maxExtra);
+                backend.addClause(guard(clause, selector));
+                assumptions[assumed.length + i] = selector;
+                selectors.add(selector);
             }
-            out.close();
-            Process process = Runtime.getRuntime().exec("./zchaff query.cnf");
-            Scanner sc = new Scanner(process.getInputStream());
-            sc.findWithinHorizon("RESULT:", 0);
-            String result = sc.next();
-            sc.close();
-            process.waitFor();
-            return result.equals("SAT");
         }
-        catch (Exception e) {
-            System.out.println(e);
+        try {
+            boolean result = runBackend(assumptions);
+            if (result)
+                consistentAt = clauses.size();
+            return result;
+        }
+        finally {
+            for (int selector: selectors)
+                backend.addClause(new int[] {-selector});
+        }
+    }
+
+    /**
+     * Decide whether the clauses are satisfiable with the given literals
+     * assumed true.  The query clauses are not consulted.
+     *
+     * @param assumptions: DIMACS literals assumed true for this call
+     * @return true if a model exists, false otherwise
+     * @throws SolverException if the backend failed to decide the query
+     */
+    public boolean solve(int... assumptions) {
+        int maxAssumed = 0;
+        for (int literal: assumptions)
+            maxAssumed = Math.max(Math.abs(literal), maxAssumed);
+        restore(assumptions);
+        sync();
+        if (!backendLoaded || maxAssumed >= selectorFloor) {
+            reload(maxAssumed);
+            // The reload may have eliminated an assumed variable
+            restore(assumptions);
+            sync();
         }
-        return false;
+        boolean result = runBackend(assumptions);
+        if (result)
+            consistentAt = clauses.size();
+        return result;
+    }
+
+    /**
+     * Report assumptions of the last unsatisfiable solve that the clauses
+     * refute on their own, as the backend found them (see
+     * SolverBackend.getFailedAssumptions).  Together with selector
+     * variables guarding groups of clauses, this tells which groups an
+     * unsatisfiable solve needed.
+     *
+     * @return a subset of the assumptions of the last solve, which must
+     *         have returned false
+     */
+    public int[] getFailedAssumptions() {
+        int[] failed = backend.getFailedAssumptions();
+        // Leave out the selectors of the open scopes
+        int n = 0;
+        for (int literal: failed)
+            if (Math.abs(literal) < selectorFloor)
+                failed[n++] = literal;
+        return n == failed.length ? failed : Arrays.copyOf(failed, n);
+    }
+
+    /**
+     * Run the backend, reporting the time it took.  The selectors of the
+     * open scopes are assumed along with the given literals.
+     */
+    private boolean runBackend(int[] assumptions) {
+        if (!scopes.isEmpty()) {
+            int n = assumptions.length;
+            assumptions = Arrays.copyOf(assumptions, n + scopes.size());
+            for (Scope scope: scopes)
+                assumptions[n++] = scope.selector;
+        }
+        long start = System.nanoTime();
+        boolean result = backend.solve(assumptions);
+        metrics.recordLatency(SolverMetrics.Operation.SOLVE, System.nanoTime() - start);
+        backendSolves++;
+        return result;
     }
 
+    /**
+     * Test whether a literal is forced true or false by the clauses.
+     * Unit propagation and failed-literal probing are tried first; the
+     * backend is only run when they cannot decide the literal.  The way the
+     * answer was found is reported by getLastQueryPath().
+     *
+     * @param literal: a DIMACS literal
+     * @return TRUE if the literal is forced, FALSE if its negation is
+     *         forced, UNKNOWN otherwise
+     * @throws SolverException if the backend failed to decide the literal
+     */
     public int testLiteral(int literal) {
+        return testLiteral(literal, NO_ASSUMPTIONS);
+    }
+
+    /**
+     * Test whether a literal is forced by the clauses together with the
+     * given assumptions, as testLiteral(literal) does for the clauses
+     * alone.  The assumptions are passed to the backend rather than added
+     * as clauses, so nothing is copied or reloaded for them; propagation
+     * and probing only see the clauses, and what the assumptions force is
+     * not kept.
+     *
+     * @param literal:     a DIMACS literal
+     * @param assumptions: DIMACS literals assumed true for this query
+     * @return TRUE if the literal is forced, FALSE if its negation is
+     *         forced or the assumptions contradict the clauses, UNKNOWN
+     *         otherwise
+     * @throws SolverException if the backend failed to decide the literal
+     */
+    public int testLiteral(int literal, int[] assumptions) {
+        long solvesBefore = backendSolves;
+        int result = quickTest(literal, assumptions, false);
+        if (result == UNDECIDED)
+            result = search(literal, assumptions);
+        metrics.recordTestLiteral((int) (backendSolves - solvesBefore));
+        return result;
+    }
+
+    /**
+     * Decide a literal propagation left open by solving with it and with
+     * its negation.
+     */
+    private int search(int literal, int[] assumptions) {
+        int[] assumed = Arrays.copyOf(assumptions, assumptions.length + 1);
         int result = UNKNOWN;
-        clearQueryClauses();   
-        int[] clauseT = {literal};
-        addQueryClause(clauseT);
-        if (!makeQuery())
+        assumed[assumptions.length] = literal;
+        if (!solve(assumed))
             result = FALSE;
         else {
-            clearQueryClauses();
-            int[] clauseF = {-literal};
-            addQueryClause(clauseF);
-            if (!makeQuery())
+            assumed[assumptions.length] = -literal;
+            if (!solve(assumed))
                 result = TRUE;
         }
-        clearQueryClauses();
+        // A literal decided by search from the clauses alone is a fact the
+        // propagator can reuse
+        if (result != UNKNOWN && assumptions.length == 0)
+            propagator().addClause(new int[] {result == TRUE ? literal : -literal});
+        answered(QueryPath.SEARCH);
+        return result;
+    }
+
+    /**
+     * @return how the last testLiteral query was answered, or null if
+     *         there has been none
+     */
+    public QueryPath getLastQueryPath() {
+        return lastQueryPath;
+    }
+
+    /**
+     * @param path: a QueryPath
+     * @return the number of literals answered by that path so far,
+     *         counting those decided inside computeBackbone
+     */
+    public long getQueryCount(QueryPath path) {
+        return queryCounts[path.ordinal()];
+    }
+
+    /**
+     * Try to decide a literal by propagation alone.  Refutations found at
+     * the root hold under any assumptions; a literal true at the root is
+     * only TRUE once the clauses are known satisfiable with them.
+     *
+     * @param literal:     a DIMACS literal
+     * @param assumptions: DIMACS literals assumed true for this query
+     * @param consistent:  whether the clauses are known satisfiable with
+     *                     the assumptions
+     * @return TRUE or FALSE as for testLiteral, or UNDECIDED
+     */
+    private int quickTest(int literal, int[] assumptions, boolean consistent) {
+        if (assumptions.length == 0)
+            consistent = consistentAt == clauses.size();
+        if (propagator.isInconsistent()) {
+            answered(QueryPath.PROPAGATION);
+            return FALSE;
+        }
+        // A refuted literal is FALSE outright, but reporting TRUE means
+        // knowing the negation is refuted while the literal itself is not,
+        // which needs the clauses to be satisfiable
+        int value = propagator.value(literal);
+        if (value == FALSE) {
+            answered(QueryPath.PROPAGATION);
+            return FALSE;
+        }
+        if (value == TRUE && consistent) {
+            answered(QueryPath.PROPAGATION);
+            return TRUE;
+        }
+        if (value == UNKNOWN && propagator().probe(literal)) {
+            answered(QueryPath.PROBING);
+            return FALSE;
+        }
+        if (!consistent && !solve(assumptions)) {
+            answered(QueryPath.SEARCH);
+            return FALSE;
+        }
+        if (value == TRUE) {
+            answered(QueryPath.PROPAGATION);
+            return TRUE;
+        }
+        if (propagator().probe(-literal)) {
+            answered(QueryPath.PROBING);
+            return TRUE;
+        }
+        return UNDECIDED;
+    }
+
+    private void answered(QueryPath path) {
+        lastQueryPath = path;
+        queryCounts[path.ordinal()]++;
+        metrics.recordAnswers(path, 1);
+    }
+
+    /**
+     * Find which of the given variables are forced by the clauses, in one
+     * backbone computation instead of two satisfiability tests per
+     * variable.  Every model found along the way rules out the candidate
+     * literals it falsifies, so a variable seen both true and false is
+     * never tested.  The remaining candidates are tested in chunks: a
+     * chunk is refuted by solving with the clause "not all of these
+     * literals hold", and the chunk grows after each refuted chunk and
+     * shrinks after each model.  Variables decided by propagation or
+     * probing never reach the backend.
+     *
+     * @param vars: the variables to test
+     * @return an array with the testLiteral result for each variable
+     * @throws SolverException if the backend failed
+     */
+    public int[] computeBackbone(int[] vars) {
+        int[] result = new int[vars.length];
+        computeBackbone(vars, result);
         return result;
-    }       
+    }
+
+    /**
+     * Compute the backbone like computeBackbone(vars), writing the result
+     * of each variable as soon as it is known.  The entries of variables
+     * not decided yet are left as they are, so that a caller can tell
+     * which variables an interrupted computation had decided.
+     *
+     * @param vars:   the variables to test
+     * @param result: receives the testLiteral result for each variable
+     * @throws SolverException if the backend failed
+     */
+    public void computeBackbone(int[] vars, int[] result) {
+        computeBackbone(vars, result, NO_ASSUMPTIONS);
+    }
+
+    /**
+     * Find which of the given variables are forced by the clauses together
+     * with the given assumptions, as computeBackbone(vars, result) does for
+     * the clauses alone.  The assumptions are passed to the backend with
+     * each solve rather than added as clauses, as for testLiteral(literal,
+     * assumptions).
+     *
+     * @param vars:        the variables to test
+     * @param result:      receives the testLiteral result for each variable
+     * @param assumptions: DIMACS literals assumed true
+     * @throws SolverException if the backend failed
+     */
+    public void computeBackbone(int[] vars, int[] result, int[] assumptions) {
+        // Under assumptions, one solve up front tells every variable true
+        // at the root that it is forced
+        boolean consistent = false;
+        if (assumptions.length > 0) {
+            restore(vars);
+            if (!solve(assumptions)) {
+                Arrays.fill(result, FALSE);
+                return;
+            }
+            consistent = true;
+        }
+        int[] undecided = new int[vars.length];
+        int numUndecided = 0;
+        for (int i = 0; i < vars.length; i++) {
+            int value = quickTest(vars[i], assumptions, consistent);
+            if (value == UNDECIDED)
+                undecided[numUndecided++] = i;
+            else
+                result[i] = value;
+        }
+        if (numUndecided == 0)
+            return;
+        // The models must cover the variables
+        restore(vars);
+        if (!consistent && !solve()) {
+            // As with testLiteral, everything follows from an inconsistent
+            // knowledge base, and FALSE is reported first
+            Arrays.fill(result, FALSE);
+            return;
+        }
+        int[] model = backend.getModel();
+        if (model == null) {
+            for (int k = 0; k < numUndecided; k++)
+                result[undecided[k]] = testLiteral(vars[undecided[k]], assumptions);
+            return;
+        }
+
+        // Candidate backbone literals, in the polarity of the first model
+        int[] candidates = new int[numUndecided];
+        int[] index = new int[numUndecided];
+        int numCandidates = 0;
+        for (int k = 0; k < numUndecided; k++) {
+            int i = undecided[k];
+            candidates[numCandidates] = modelValue(model, vars[i]) == TRUE ? vars[i] : -vars[i];
+            index[numCandidates++] = i;
+        }
+        queryCounts[QueryPath.SEARCH.ordinal()] += numUndecided;
+        metrics.recordAnswers(QueryPath.SEARCH, numUndecided);
+
+        int chunk = 1;
+        ArrayList<int[]> extra = new ArrayList<int[]>();
+        while (numCandidates > 0) {
+            int size = Math.min(chunk, numCandidates);
+            int[] refutation = new int[size];
+            for (int k = 0; k < size; k++)
+                refutation[k] = -candidates[numCandidates - 1 - k];
+            extra.clear();
+            extra.add(refutation);
+            if (!solveWith(extra, assumptions)) {
+                // All literals of the chunk are forced
+                for (int k = 0; k < size; k++) {
+                    numCandidates--;
+                    result[index[numCandidates]] = candidates[numCandidates] > 0 ? TRUE : FALSE;
+                    if (assumptions.length == 0)
+                        propagator().addClause(new int[] {candidates[numCandidates]});
+                }
+                chunk = Math.min(2 * chunk, MAX_CHUNK);
+            }
+            else {
+                // Drop every candidate the new model falsifies
+                model = backend.getModel();
+                int kept = 0;
+                for (int k = 0; k < numCandidates; k++) {
+                    int value = modelValue(model, candidates[k]);
+                    if (value == UNKNOWN || value == (candidates[k] > 0 ? TRUE : FALSE)) {
+                        candidates[kept] = candidates[k];
+                        index[kept++] = index[k];
+                    }
+                    else
+                        result[index[k]] = UNKNOWN;
+                }
+                if (kept == numCandidates) {
+                    // The model does not cover the chunk; test it directly
+                    for (int k = 0; k < size; k++) {
+                        numCandidates--;
+                        result[index[numCandidates]] = testLiteral(Math.abs(candidates[numCandidates]),
+                            assumptions);
+                    }
+                    kept = numCandidates;
+                }
+                numCandidates = kept;
+                chunk = Math.max(chunk / 2, 1);
+            }
+        }
+    }
+
+    /**
+     * Run testLiteral(literal) on another thread, holding the lock of this
+     * solver.  See SolverTask.
+     *
+     * @param literal: a DIMACS literal
+     * @param timeout: the time allowed, or 0 for no deadline
+     * @param unit:    the unit of timeout
+     * @return a future of the testLiteral result, or of TIMEOUT or ERROR
+     */
+    public SolverTask<Integer> testLiteralAsync(final int literal, long timeout, TimeUnit unit) {
+        return SolverTask.submit(this, this, new SolverTask.Body<Integer>() {
+            public Integer run() {
+                return testLiteral(literal);
+            }
+
+            public Integer stopped(int code) {
+                return code;
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * Run computeBackbone(vars) on another thread, holding the lock of
+     * this solver.  If the computation is stopped, the variables it had
+     * decided keep their result and the others get TIMEOUT or ERROR.
+     *
+     * @param vars:    the variables to test
+     * @param timeout: the time allowed, or 0 for no deadline
+     * @param unit:    the unit of timeout
+     * @return a future of the results
+     */
+    public SolverTask<int[]> computeBackboneAsync(final int[] vars, long timeout, TimeUnit unit) {
+        final int[] result = new int[vars.length];
+        Arrays.fill(result, UNDECIDED);
+        return SolverTask.submit(this, this, new SolverTask.Body<int[]>() {
+            public int[] run() {
+                computeBackbone(vars, result);
+                return result;
+            }
+
+            public int[] stopped(int code) {
+                for (int i = 0; i < result.length; i++)
+                    if (result[i] == UNDECIDED)
+                        result[i] = code;
+                return result;
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * Stop the backend's solve in progress, from any thread.  The
+     * interrupted operation throws SolverInterruptedException.
+     */
+    public void interrupt() {
+        backend.interrupt();
+    }
+
+    /**
+     * Discard an interrupt() that has not stopped a solve yet.
+     */
+    public void clearInterrupt() {
+        backend.clearInterrupt();
+    }
+
+    /**
+     * Count the models of the clauses over the variables 1..n, where n is
+     * the largest variable occurring in them.  Query clauses are not
+     * consulted.
+     *
+     * @return the number of models
+     */
+    public BigInteger countModels() {
+        return counter().count(clauses, maxVar);
+    }
+
+    /**
+     * Find for each of the given variables the fraction of the models of
+     * the clauses in which it is true, i.e. its probability when all
+     * models are equally likely.  Query clauses are not consulted.
+     *
+     * @param vars: the variables
+     * @return the marginal of each variable, or NaN for all of them if the
+     *         clauses are unsatisfiable
+     */
+    public double[] marginals(int[] vars) {
+        int numVars = maxVar;
+        for (int v : vars)
+            numVars = Math.max(numVars, v);
+        return counter().marginals(clauses, numVars, vars);
+    }
+
+    /**
+     * Have countModels and marginals branch on the given groups of
+     * variables first, in the given order (see
+     * ModelCounter.setBranchOrder).  Overlays and copies inherit this.
+     *
+     * @param groups: groups of distinct variables, or an empty array for
+     *                none
+     */
+    public void setBranchOrder(int[][] groups) {
+        checkNotFrozen();
+        branchOrder = new int[groups.length][];
+        for (int k = 0; k < groups.length; k++)
+            branchOrder[k] = groups[k].clone();
+        if (counter != null)
+            counter.setBranchOrder(branchOrder);
+    }
+
+    private ModelCounter counter() {
+        if (counter == null) {
+            counter = new ModelCounter();
+            counter.setBranchOrder(branchOrder);
+        }
+        return counter;
+    }
+
+    /**
+     * @return the value of the literal's variable in the model, or UNKNOWN
+     *         if the model does not cover it
+     */
+    private static int modelValue(int[] model, int literal) {
+        int var = Math.abs(literal);
+        return var < model.length ? model[var] : UNKNOWN;
+    }
+
+    /**
+     * @return the propagator, copied from the base first if it is shared
+     */
+    private UnitPropagator propagator() {
+        checkNotFrozen();
+        if (propagatorShared) {
+            propagator = propagator.copy();
+            propagatorShared = false;
+        }
+        return propagator;
+    }
+
+    /**
+     * @return the preprocessor, copied from the base first if it is shared
+     */
+    private Preprocessor preprocessor() {
+        checkNotFrozen();
+        if (preprocessorShared) {
+            preprocessor = preprocessor.copy();
+            preprocessorShared = false;
+        }
+        return preprocessor;
+    }
+
+    /**
+     * Restore the variables of the given literals the preprocessor
+     * eliminated, which are about to be used.
+     */
+    private void restore(int[] literals) {
+        if (!preprocessor.hasEliminated())
+            return;
+        for (int literal: literals)
+            if (preprocessor.isEliminated(Math.abs(literal))) {
+                preprocessor().restore(literals);
+                return;
+            }
+    }
+
+    /**
+     * Give the preprocessor the root literals the propagator found since
+     * the last call.  They only follow from the permanent clauses while no
+     * scope is open.
+     */
+    private void addRootFacts() {
+        if (!scopes.isEmpty())
+            return;
+        factsSeen = Math.min(factsSeen, propagator.getNumFacts());
+        while (factsSeen < propagator.getNumFacts()) {
+            unit[0] = propagator.getFact(factsSeen++);
+            preprocessor().add(unit);
+        }
+    }
+
+    /**
+     * Give a loaded backend the clauses the preprocessor produced since,
+     * or have it reloaded if more than half the clauses it holds were
+     * simplified away.
+     */
+    private void sync() {
+        if (!backendLoaded)
+            return;
+        if (preprocessor.getNumRemoved() - removedAtLoad > preprocessor.size() / 2) {
+            backendLoaded = false;
+            return;
+        }
+        for (int n = preprocessor.getNumProduced(); producedSeen < n; producedSeen++)
+            backend.addClause(preprocessor.getProduced(producedSeen));
+    }
+
+    private void checkNotFrozen() {
+        if (frozen)
+            throw new IllegalStateException("The solver is frozen");
+    }
+
+    /**
+     * Load the clauses into a fresh backend session, discarding retired
+     * selector variables.  The permanent clauses are loaded as simplified
+     * by the preprocessor, which first eliminates what variables it can
+     * when no scope is open.  Learned clauses follow from the permanent
+     * clauses, so they stay sound whatever was eliminated.
+     *
+     * @param maxExtra: the largest variable about to be used besides those
+     *                  of the clauses, which the selectors of open scopes
+     *                  must exceed
+     */
+    private void reload(int maxExtra) {
+        backendLoaded = true;
+        backend.reset();
+        backend.setDecisionVars(decisionVars);
+        selectorFloor = Integer.MAX_VALUE;
+        nextSelector = 0;
+        addRootFacts();
+        if (scopes.isEmpty() && preprocessor.hasCandidates())
+            preprocessor().eliminate(decisionVars);
+        for (int[] clause: preprocessor.getClauses())
+            backend.addClause(clause);
+        if (!preprocessorShared)
+            preprocessor.clearProduced();
+        producedSeen = preprocessor.getNumProduced();
+        removedAtLoad = preprocessor.getNumRemoved();
+        for (int[] clause: learnts)
+            backend.addLearntClause(clause);
+        // The clauses of each open scope are guarded by a new selector
+        for (int s = 0; s < scopes.size(); s++) {
+            Scope scope = scopes.get(s);
+            scope.selector = newSelector(maxExtra);
+            int end = s + 1 < scopes.size() ? scopes.get(s + 1).numClauses : clauses.size();
+            for (int i = scope.numClauses; i < end; i++)
+                backend.addClause(guard(clauses.get(i), scope.selector));
+        }
+    }
+
+    /**
+     * Allocate a selector variable above every variable in use.
+     *
+     * @param maxExtra: the largest variable of the temporary clauses
+     * @return the selector
+     */
+    private int newSelector(int maxExtra) {
+        int selector = Math.max(nextSelector, Math.max(maxVar, maxExtra)) + 1;
+        nextSelector = selector;
+        selectorFloor = Math.min(selectorFloor, selector);
+        return selector;
+    }
+
+    /**
+     * @return the clause extended with the negation of the selector, so
+     *         that it only holds while the selector is assumed
+     */
+    private static int[] guard(int[] clause, int selector) {
+        int[] guarded = Arrays.copyOf(clause, clause.length + 1);
+        guarded[clause.length] = -selector;
+        return guarded;
+    }
 
     public static void main(String[] args) 
     {
         // Liar and truth-teller example test code:
         int[][] clauses = {{-1, -2}, {2, 1}, {-2, -3}, {3, 2}, {-3, -1}, {-3, -2}, {1, 2, 3}};
         SATSolver s = new SATSolver();
+        if (args.length > 0 && args[0].equals("zchaff"))
+            s.setBackend(new ZchaffSolver());
+        else if (args.length > 0 && args[0].equals("portfolio"))
+            s.setBackend(new PortfolioSolver());
         for (int i = 0; i < clauses.length; i++)
             s.addClause(clauses[i]);
         System.out.println("Knowledge base is satisfiable: " + s.makeQuery());
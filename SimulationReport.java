@@ -0,0 +1,208 @@
+/**
+ * SimulationReport.java - the results of a GameSimulator run: one summary
+ * per game, in the order of the game numbers, and their aggregates.
+ */
+
+public class SimulationReport {
+
+    /**
+     * The summary of one simulated game.
+     */
+    public static class Game {
+        private final long number;
+        private final int winner;
+        private final int turns;
+        private final long solves;
+        private final long solveNanos;
+        private final long nanos;
+        private final long allocatedBytes;
+        private final GameRecord record;
+
+        /**
+         * @param number:         the game's number in the run
+         * @param winner:         the seat of the player who accused
+         *                        correctly, or -1 if the turn limit was hit
+         * @param turns:          the number of turns played
+         * @param solves:         the backend solves of all seats
+         * @param solveNanos:     the time spent in those solves
+         * @param nanos:          the wall-clock time of the game
+         * @param allocatedBytes: the bytes allocated by the thread playing
+         *                        the game, or -1 if the JVM cannot tell
+         * @param record:         the game as seen by the first seat, or
+         *                        null if not recorded
+         */
+        public Game(long number, int winner, int turns, long solves, long solveNanos, long nanos,
+                long allocatedBytes, GameRecord record) {
+            this.number = number;
+            this.winner = winner;
+            this.turns = turns;
+            this.solves = solves;
+            this.solveNanos = solveNanos;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.record = record;
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        public int getWinner() {
+            return winner;
+        }
+
+        public boolean isFinished() {
+            return winner >= 0;
+        }
+
+        public int getTurns() {
+            return turns;
+        }
+
+        public long getSolves() {
+            return solves;
+        }
+
+        public long getSolveNanos() {
+            return solveNanos;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return the game as seen by the first seat: its hand, every
+         *         suggestion with the card shown only when it suggested,
+         *         and the winning accusation; null if not recorded
+         */
+        public GameRecord getRecord() {
+            return record;
+        }
+
+        public String toString() {
+            return String.format("game %d: winner=%d turns=%d solves=%d solve=%.1fms time=%.1fms alloc=%dKB",
+                number, winner, turns, solves, solveNanos / 1e6, nanos / 1e6, allocatedBytes >> 10);
+        }
+    }
+
+    private final Game[] games;
+    private final int threads;
+    private final long nanos;
+    // gameLatency: the distribution of the wall-clock time of the games
+    private final LatencyHistogram gameLatency = new LatencyHistogram();
+
+    /**
+     * @param games:   the summaries, which the report takes over
+     * @param threads: the parallelism of the run
+     * @param nanos:   the wall-clock time of the run
+     */
+    public SimulationReport(Game[] games, int threads, long nanos) {
+        this.games = games;
+        this.threads = threads;
+        this.nanos = nanos;
+        for (Game game : games)
+            gameLatency.record(game.getNanos());
+    }
+
+    /**
+     * @return the summaries, in the order of the game numbers
+     */
+    public Game[] getGames() {
+        return games.clone();
+    }
+
+    public int getNumGames() {
+        return games.length;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return the number of games stopped by the turn limit
+     */
+    public int getUnfinished() {
+        int unfinished = 0;
+        for (Game game : games)
+            if (!game.isFinished())
+                unfinished++;
+        return unfinished;
+    }
+
+    public double getGamesPerSecond() {
+        return nanos == 0 ? 0 : games.length * 1e9 / nanos;
+    }
+
+    public double getMeanTurns() {
+        long turns = 0;
+        for (Game game : games)
+            turns += game.getTurns();
+        return games.length == 0 ? 0 : (double) turns / games.length;
+    }
+
+    public double getMeanSolves() {
+        long solves = 0;
+        for (Game game : games)
+            solves += game.getSolves();
+        return games.length == 0 ? 0 : (double) solves / games.length;
+    }
+
+    /**
+     * @return the mean time of one backend solve, in nanoseconds
+     */
+    public double getMeanSolveNanos() {
+        long solves = 0;
+        long solveNanos = 0;
+        for (Game game : games) {
+            solves += game.getSolves();
+            solveNanos += game.getSolveNanos();
+        }
+        return solves == 0 ? 0 : (double) solveNanos / solves;
+    }
+
+    /**
+     * @return the mean bytes allocated per game, or -1 if the JVM cannot
+     *         tell
+     */
+    public double getMeanAllocatedBytes() {
+        long bytes = 0;
+        for (Game game : games) {
+            if (game.getAllocatedBytes() < 0)
+                return -1;
+            bytes += game.getAllocatedBytes();
+        }
+        return games.length == 0 ? 0 : (double) bytes / games.length;
+    }
+
+    /**
+     * @param quantile: a quantile between 0 and 1
+     * @return the estimated quantile of the game time, in nanoseconds
+     */
+    public long getGameNanos(double quantile) {
+        return Math.min(LatencyHistogram.quantile(gameLatency.getBuckets(), quantile),
+            gameLatency.getMaxNanos());
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("%d games (%d unfinished) on %d threads in %.3fs: %.1f games/s%n",
+            games.length, getUnfinished(), threads, nanos / 1e9, getGamesPerSecond()));
+        s.append(String.format("per game: turns=%.1f solves=%.1f alloc=%.0fKB%n",
+            getMeanTurns(), getMeanSolves(), getMeanAllocatedBytes() / 1024));
+        s.append(String.format("game time: mean=%.1fms p50<=%.1fms p99<=%.1fms max=%.1fms%n",
+            games.length == 0 ? 0 : gameLatency.getTotalNanos() / 1e6 / games.length,
+            getGameNanos(0.50) / 1e6, getGameNanos(0.99) / 1e6, gameLatency.getMaxNanos() / 1e6));
+        s.append(String.format("solve: mean=%.1fus%n", getMeanSolveNanos() / 1e3));
+        return s.toString();
+    }
+}
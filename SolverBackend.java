@@ -0,0 +1,119 @@
+/**
+ * SolverBackend.java - the interface between SATSolver and the engine
+ * that actually decides satisfiability.  A backend is an incremental
+ * session: clauses are appended as they become known and stay loaded
+ * across queries, and each query is a set of assumption literals that
+ * hold for that call only.
+ *
+ * Three backends are provided: CDCLSolver, a pure-Java conflict-driven
+ * clause-learning engine that runs in-process (the default),
+ * ZchaffSolver, which hands the clauses to an external zchaff binary,
+ * and PortfolioSolver, which races several of those on separate cores.
+ */
+
+public interface SolverBackend {
+
+    /**
+     * Append a clause to the session.  The backend must not keep a
+     * reference to the given array.
+     *
+     * @param clause: the clause, an array of non-zero DIMACS literals
+     */
+    void addClause(int[] clause);
+
+    /**
+     * Decide whether the clauses of the session together with the given
+     * assumption literals are satisfiable.  The assumptions are not
+     * retained after the call.
+     *
+     * @param assumptions: DIMACS literals assumed true for this call
+     * @return true if a model exists, false otherwise
+     * @throws SolverInterruptedException if interrupt() stopped the solve
+     * @throws SolverException if the backend failed to decide the query
+     */
+    boolean solve(int... assumptions);
+
+    /**
+     * Stop the solve in progress as soon as possible; it then throws
+     * SolverInterruptedException.  If no solve is in progress the next one
+     * is stopped instead, unless clearInterrupt() is called first.  This
+     * method may be called from any thread.
+     */
+    void interrupt();
+
+    /**
+     * Discard an interrupt() that has not stopped a solve yet.
+     */
+    void clearInterrupt();
+
+    /**
+     * Report the model found by the last call to solve().  The result is
+     * only meaningful if that call returned true.
+     *
+     * @return an array indexed by variable holding SATSolver.TRUE or
+     *         SATSolver.FALSE, or null if the backend cannot report models
+     */
+    int[] getModel();
+
+    /**
+     * Report assumptions of the last call to solve() that the clauses
+     * refute on their own: solving with just these would be unsatisfiable
+     * too.  The result is only meaningful if that call returned false.
+     *
+     * @return a subset of the assumptions, in a new array; empty if the
+     *         clauses are unsatisfiable without any; a backend that cannot
+     *         tell reports all of them
+     */
+    int[] getFailedAssumptions();
+
+    /**
+     * Declare that only variables 1..n need to be decided: the others are
+     * functions of those, such as the auxiliary variables of an encoding,
+     * that unit propagation assigns once variables 1..n are.  An engine
+     * may use this to keep its search to variables 1..n; others ignore it.
+     *
+     * @param n: the largest decision variable, or 0 for all variables
+     */
+    void setDecisionVars(int n);
+
+    /**
+     * Report what the session has learned: the learned clauses it still
+     * keeps and, as unit clauses, the literals it has found to hold
+     * whatever the assumptions.  All of them follow from the clauses
+     * added to the session.
+     *
+     * @return the learned clauses, none if the backend does not learn
+     */
+    int[][] getLearntClauses();
+
+    /**
+     * Append a clause known to follow from the clauses of the session,
+     * such as one learned by an earlier session.  An engine may treat it
+     * as learned and forget it again.
+     *
+     * @param clause: the clause, an array of non-zero DIMACS literals
+     */
+    void addLearntClause(int[] clause);
+
+    /**
+     * Remove all clauses, returning the session to its initial state.
+     */
+    void reset();
+
+    /**
+     * Create a new, empty session of the same kind of backend, configured
+     * like this one, that can be used concurrently with it.
+     *
+     * @return the new session
+     */
+    SolverBackend newSession();
+
+    /**
+     * Report the statistics of later solves (search effort, process and
+     * file costs, failures) to the given metrics.  Sessions created by
+     * newSession() report to the same metrics.
+     *
+     * @param metrics: the metrics to report to
+     */
+    void setMetrics(SolverMetrics metrics);
+}
@@ -0,0 +1,19 @@
+/**
+ * SolverException.java - thrown when a backend cannot decide a query, for
+ * example because an external solver could not be run or produced no
+ * result.  Such a failure says nothing about satisfiability, so it is
+ * never reported as a false (unsatisfiable) answer.
+ */
+
+public class SolverException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SolverException(String message) {
+        super(message);
+    }
+
+    public SolverException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * SolverInterruptedException.java - thrown by a solve stopped by
+ * SolverBackend.interrupt(), e.g. because its deadline passed or its
+ * query was cancelled.  The backend is left ready for further queries.
+ */
+
+public class SolverInterruptedException extends SolverException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SolverInterruptedException() {
+        super("The solve was interrupted");
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * SolverMetrics.java - counters and latency distributions of the work done
+ * by SATSolvers, their backends and ClueReasoners.
+ *
+ * Every solver, backend and reasoner reports to the shared default
+ * metrics unless given its own, so the default instance sums up the whole
+ * process; a game can be given a SolverMetrics of its own to see what that
+ * game alone costs.  Recording is thread-safe and cheap (a few atomic
+ * additions), so it is always on.  The values are read through snapshot(),
+ * or over JMX once the metrics are registered.  Starting the platform MBean
+ * server takes a noticeable fraction of a second, so the default metrics
+ * are only registered, as cluedo:type=SolverMetrics,name=default, when the
+ * system property cluedo.jmx is true.
+ */
+
+import java.lang.management.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+public class SolverMetrics implements SolverMetricsMXBean {
+
+    /**
+     * The operations whose latency is recorded.  SOLVE is one backend
+     * satisfiability check; the others are ClueReasoner methods.
+     */
+    public enum Operation { HAND, SUGGEST, ACCUSE, QUERY, NOTEPAD, PRINT_NOTEPAD, RECOMMEND, EXPLAIN, SOLVE }
+
+    // defaultMetrics: the metrics reported to when none are given
+    private static SolverMetrics defaultMetrics;
+
+    private final LongAdder testLiterals = new LongAdder();
+    private final LongAdder testLiteralSolves = new LongAdder();
+    private final LongAdder[] answers = newAdders(SATSolver.QueryPath.values().length);
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder decisions = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder propagations = new LongAdder();
+    private final LongAdder processSpawns = new LongAdder();
+    private final LongAdder processSpawnNanos = new LongAdder();
+    private final LongAdder cnfWrites = new LongAdder();
+    private final LongAdder cnfWriteNanos = new LongAdder();
+    private final LongAdder cnfBytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+
+    public SolverMetrics() {
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Return the metrics shared by everything not given metrics of its
+     * own, creating them on first use.  They are registered with the
+     * platform MBean server if the system property cluedo.jmx is true.
+     *
+     * @return the default metrics
+     */
+    public static synchronized SolverMetrics getDefault() {
+        if (defaultMetrics == null) {
+            defaultMetrics = new SolverMetrics();
+            if (Boolean.getBoolean("cluedo.jmx")) {
+                try {
+                    defaultMetrics.register("default");
+                }
+                catch (JMException e) {
+                    // The metrics are still available from snapshot()
+                    System.err.println("Cannot register solver metrics: " + e);
+                }
+            }
+        }
+        return defaultMetrics;
+    }
+
+    /**
+     * Register these metrics with the platform MBean server, replacing any
+     * metrics already registered under the same name.
+     *
+     * @param name: the name, as in cluedo:type=SolverMetrics,name=<name>
+     * @return the object name the metrics were registered under
+     */
+    public ObjectName register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("cluedo:type=SolverMetrics,name=" + ObjectName.quote(name));
+        if (server.isRegistered(objectName))
+            server.unregisterMBean(objectName);
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * @param operation: the kind of operation
+     * @param nanos:     the time it took, in nanoseconds
+     */
+    public void recordLatency(Operation operation, long nanos) {
+        latencies[operation.ordinal()].record(nanos);
+    }
+
+    /**
+     * Record a testLiteral call.
+     *
+     * @param solves: the number of backend solves it needed
+     */
+    public void recordTestLiteral(int solves) {
+        testLiterals.increment();
+        testLiteralSolves.add(solves);
+    }
+
+    /**
+     * @param path:  the way literals were answered
+     * @param count: the number of literals
+     */
+    public void recordAnswers(SATSolver.QueryPath path, long count) {
+        answers[path.ordinal()].add(count);
+    }
+
+    /**
+     * Record the work of one CDCL search.
+     */
+    public void recordSearch(long decisions, long conflicts, long propagations) {
+        searches.increment();
+        this.decisions.add(decisions);
+        this.conflicts.add(conflicts);
+        this.propagations.add(propagations);
+    }
+
+    /**
+     * @param nanos: the time taken to start an external solver process
+     */
+    public void recordProcessSpawn(long nanos) {
+        processSpawns.increment();
+        processSpawnNanos.add(nanos);
+    }
+
+    /**
+     * @param bytes: the size of the CNF text written
+     * @param nanos: the time taken to write it
+     */
+    public void recordCnfWrite(long bytes, long nanos) {
+        cnfWrites.increment();
+        cnfBytes.add(bytes);
+        cnfWriteNanos.add(nanos);
+    }
+
+    /**
+     * Record a solve that failed.
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Record an asynchronous operation stopped by its deadline.
+     */
+    public void recordTimeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * @param hits:   the number of deduction cache lookups answered
+     * @param misses: the number of lookups that had to go to the solver
+     */
+    public void recordCacheLookups(long hits, long misses) {
+        cacheHits.add(hits);
+        cacheMisses.add(misses);
+    }
+
+    /**
+     * @return the current values of the metrics
+     */
+    public MetricsSnapshot snapshot() {
+        long[] answerCounts = new long[answers.length];
+        for (int i = 0; i < answers.length; i++)
+            answerCounts[i] = answers[i].sum();
+        Operation[] operations = Operation.values();
+        MetricsSnapshot.Latency[] latencySnapshots = new MetricsSnapshot.Latency[operations.length];
+        for (int i = 0; i < operations.length; i++)
+            latencySnapshots[i] = new MetricsSnapshot.Latency(operations[i].name(), latencies[i]);
+        return new MetricsSnapshot(latencies[Operation.SOLVE.ordinal()].getCount(),
+            testLiterals.sum(), testLiteralSolves.sum(), answerCounts,
+            searches.sum(), decisions.sum(), conflicts.sum(), propagations.sum(),
+            processSpawns.sum(), processSpawnNanos.sum(), cnfWrites.sum(), cnfWriteNanos.sum(),
+            cnfBytes.sum(), errors.sum(), timeouts.sum(), cacheHits.sum(), cacheMisses.sum(), latencySnapshots);
+    }
+
+    public MetricsSnapshot getSnapshot() {
+        return snapshot();
+    }
+
+    public void reset() {
+        testLiterals.reset();
+        testLiteralSolves.reset();
+        for (LongAdder adder : answers)
+            adder.reset();
+        searches.reset();
+        decisions.reset();
+        conflicts.reset();
+        propagations.reset();
+        processSpawns.reset();
+        processSpawnNanos.reset();
+        cnfWrites.reset();
+        cnfWriteNanos.reset();
+        cnfBytes.reset();
+        errors.reset();
+        timeouts.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        for (LatencyHistogram histogram : latencies)
+            histogram.reset();
+    }
+
+    private static LongAdder[] newAdders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+}
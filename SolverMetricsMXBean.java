@@ -0,0 +1,18 @@
+/**
+ * SolverMetricsMXBean.java - the JMX management interface of
+ * SolverMetrics.  JMX clients such as jconsole see the snapshot as
+ * composite data, with one entry per counter and per latency distribution.
+ */
+
+public interface SolverMetricsMXBean {
+
+    /**
+     * @return the current values of the metrics
+     */
+    MetricsSnapshot getSnapshot();
+
+    /**
+     * Set all counters and latency distributions back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,194 @@
+/**
+ * SolverTask.java - an operation on a SATSolver run asynchronously, with
+ * an optional deadline.
+ *
+ * The task runs on a shared pool of daemon threads while holding a lock
+ * (the solver itself, or the ClueReasoner owning it), so it never runs
+ * concurrently with other users of the solver who take the same lock.
+ * When the deadline passes or the task is cancelled, the solver is
+ * interrupted if the task is running; the search then stops at its next
+ * decision or conflict, and an external solver process is killed.  A task
+ * that times out or fails completes normally with the result its Body
+ * makes for SATSolver.TIMEOUT or SATSolver.ERROR, so callers never mistake
+ * a stopped query for an answer.  A cancelled task completes with a
+ * CancellationException, as any CompletableFuture.
+ */
+
+import java.util.concurrent.*;
+
+public class SolverTask<T> extends CompletableFuture<T> {
+
+    /**
+     * The work of a task.
+     */
+    public interface Body<T> {
+        /**
+         * Do the work, holding the task's lock.
+         *
+         * @return the result of the task
+         */
+        T run();
+
+        /**
+         * Make the result of a task that did not finish its work.
+         *
+         * @param code: SATSolver.TIMEOUT or SATSolver.ERROR
+         * @return the result of the task
+         */
+        T stopped(int code);
+    }
+
+    // workers: the threads running tasks
+    private static final ExecutorService workers = Executors.newCachedThreadPool(daemonThreads("solver-task"));
+    // timer: the thread enforcing deadlines
+    private static final ScheduledExecutorService timer =
+        Executors.newSingleThreadScheduledExecutor(daemonThreads("solver-deadline"));
+
+    // solver: the solver interrupted to stop the task
+    private final SATSolver solver;
+    // lock: held while the body runs
+    private final Object lock;
+    private final Body<T> body;
+    // running: whether the body is running; interrupts are only sent then
+    private boolean running;
+    // expired: whether the deadline passed before the body started
+    private boolean expired;
+    // deadline: the pending deadline, or null
+    private ScheduledFuture<?> deadline;
+    // error: the failure that made the task complete with ERROR, or null
+    private volatile Throwable error;
+
+    private SolverTask(SATSolver solver, Object lock, Body<T> body) {
+        this.solver = solver;
+        this.lock = lock;
+        this.body = body;
+    }
+
+    /**
+     * Start a task.
+     *
+     * @param solver:  the solver the body uses
+     * @param lock:    the lock held while the body runs
+     * @param body:    the work to do
+     * @param timeout: the time allowed from now, or 0 for no deadline
+     * @param unit:    the unit of timeout
+     * @return the task
+     */
+    public static <T> SolverTask<T> submit(SATSolver solver, Object lock, Body<T> body,
+            long timeout, TimeUnit unit) {
+        final SolverTask<T> task = new SolverTask<T>(solver, lock, body);
+        if (timeout > 0) {
+            ScheduledFuture<?> scheduled = timer.schedule(new Runnable() {
+                public void run() {
+                    task.timeOut();
+                }
+            }, timeout, unit);
+            synchronized (task) {
+                task.deadline = scheduled;
+                if (task.isDone())
+                    scheduled.cancel(false);
+            }
+        }
+        workers.execute(new Runnable() {
+            public void run() {
+                task.execute();
+            }
+        });
+        return task;
+    }
+
+    /**
+     * @return the failure that made the task complete with
+     *         SATSolver.ERROR, or null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Cancel the task, stopping its search if it is running.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled)
+            stop();
+        return cancelled;
+    }
+
+    private void execute() {
+        // The result is completed outside the locks, since completing runs
+        // the callers' dependent actions
+        T result;
+        synchronized (lock) {
+            synchronized (this) {
+                if (isDone() || expired)
+                    return;
+                running = true;
+            }
+            solver.clearInterrupt();
+            try {
+                result = body.run();
+            }
+            catch (SolverInterruptedException e) {
+                // Timed out, or cancelled, in which case the task is
+                // already done
+                result = body.stopped(SATSolver.TIMEOUT);
+            }
+            catch (RuntimeException e) {
+                error = e;
+                solver.getMetrics().recordError();
+                result = body.stopped(SATSolver.ERROR);
+            }
+            finally {
+                synchronized (this) {
+                    running = false;
+                    // No interrupt may reach the solver after this point
+                    solver.clearInterrupt();
+                    if (deadline != null)
+                        deadline.cancel(false);
+                }
+            }
+        }
+        complete(result);
+    }
+
+    /**
+     * Stop a running task, or complete a task that has not started.
+     */
+    private void timeOut() {
+        synchronized (this) {
+            if (isDone())
+                return;
+            solver.getMetrics().recordTimeout();
+            if (running) {
+                solver.interrupt();
+                return;
+            }
+            expired = true;
+        }
+        complete(body.stopped(SATSolver.TIMEOUT));
+    }
+
+    /**
+     * Interrupt the solver if the body is running.
+     */
+    private synchronized void stop() {
+        if (running)
+            solver.interrupt();
+    }
+
+    /**
+     * @param name: the name of the threads
+     * @return a factory of daemon threads, which do not keep the JVM
+     *         running
+     */
+    static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Suggestion.java - a suggestion a player could make, rated by the
+ * information it is expected to give about the case file.
+ *
+ * The information is measured in bits of case-file uncertainty: for each
+ * category, log2 of the number of its cards that may still be in the case
+ * file.  Finding the solution removes all of it.  In a GameVariant with
+ * further categories a suggestion also names one card of each of those.
+ */
+
+public class Suggestion {
+
+    // cards: the suggested suspect, weapon, room and further cards
+    private final String[] cards;
+    // expectedGain: the expected reduction in case-file uncertainty, in bits
+    private final double expectedGain;
+
+    /**
+     * @param suspect:      the suggested suspect
+     * @param weapon:       the suggested weapon
+     * @param room:         the suggested room
+     * @param expectedGain: the expected reduction in case-file uncertainty
+     */
+    public Suggestion(String suspect, String weapon, String room, double expectedGain) {
+        this(new String[] { suspect, weapon, room }, expectedGain);
+    }
+
+    /**
+     * @param cards:        the suggested cards, one of each category of
+     *                      the variant, in category order
+     * @param expectedGain: the expected reduction in case-file uncertainty
+     */
+    public Suggestion(String[] cards, double expectedGain) {
+        this.cards = cards.clone();
+        this.expectedGain = expectedGain;
+    }
+
+    public String getSuspect() {
+        return cards[0];
+    }
+
+    public String getWeapon() {
+        return cards[1];
+    }
+
+    public String getRoom() {
+        return cards[2];
+    }
+
+    /**
+     * @return the suggested cards, in category order
+     */
+    public String[] getCards() {
+        return cards.clone();
+    }
+
+    /**
+     * @return the expected reduction in case-file uncertainty, in bits
+     */
+    public double getExpectedGain() {
+        return expectedGain;
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (String card : cards)
+            s.append(card).append(' ');
+        return s.append(String.format("%.3f bits", expectedGain)).toString();
+    }
+}
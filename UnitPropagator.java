@@ -0,0 +1,319 @@
+/**
+ * UnitPropagator.java - unit propagation over the permanent clauses of a
+ * SATSolver, used to answer queries without running a backend.
+ *
+ * Binary clauses (a v b) are kept as an implication graph (-a -> b and
+ * -b -> a); longer clauses use two watched literals.  The literals
+ * implied by the clauses alone are kept assigned at the root, so checking
+ * whether a literal is already decided is a lookup.  A literal that leads
+ * to a conflict when assumed (a failed literal) is refuted; its negation
+ * is then added to the root assignment.
+ *
+ * Literals are coded as in CDCLSolver: 2v for v and 2v+1 for -v.
+ */
+
+import java.util.*;
+
+public class UnitPropagator {
+
+    private static final byte UNDEF = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = -1;
+
+    private int numVars;
+    // inconsistent: true once the clauses are known to be unsatisfiable
+    private boolean inconsistent;
+
+    // implications[lit]: the literals implied by lit through binary clauses
+    private int[][] implications = new int[2][];
+    private int[] implicationSize = new int[2];
+
+    // Clauses of three or more literals; the first two are watched
+    private ArrayList<int[]> clauses = new ArrayList<int[]>();
+    // watches[lit]: indexes of the clauses watching lit
+    private int[][] watches = new int[2][];
+    private int[] watchSize = new int[2];
+
+    private byte[] assigns = new byte[1];
+    private int[] trail = new int[1];
+    private int trailSize;
+    private int qhead;
+    // scratch: the buffer a clause is simplified in before it is stored
+    private int[] scratch = new int[8];
+
+    /**
+     * @return an independent copy of this propagator, clauses and root
+     *         assignment included
+     */
+    public UnitPropagator copy() {
+        UnitPropagator copy = new UnitPropagator();
+        copy.numVars = numVars;
+        copy.inconsistent = inconsistent;
+        copy.implications = new int[implications.length][];
+        for (int lit = 0; lit < implications.length; lit++)
+            if (implications[lit] != null)
+                copy.implications[lit] = implications[lit].clone();
+        copy.implicationSize = implicationSize.clone();
+        for (int[] clause : clauses)
+            copy.clauses.add(clause.clone());
+        copy.watches = new int[watches.length][];
+        for (int lit = 0; lit < watches.length; lit++)
+            if (watches[lit] != null)
+                copy.watches[lit] = watches[lit].clone();
+        copy.watchSize = watchSize.clone();
+        copy.assigns = assigns.clone();
+        copy.trail = trail.clone();
+        copy.trailSize = trailSize;
+        copy.qhead = qhead;
+        return copy;
+    }
+
+    /**
+     * Forget all clauses.
+     */
+    public void reset() {
+        numVars = 0;
+        inconsistent = false;
+        implications = new int[2][];
+        implicationSize = new int[2];
+        clauses.clear();
+        watches = new int[2][];
+        watchSize = new int[2];
+        assigns = new byte[1];
+        trail = new int[1];
+        trailSize = 0;
+        qhead = 0;
+    }
+
+    /**
+     * Add a clause and propagate its consequences at the root.
+     *
+     * @param clause: the clause, an array of non-zero DIMACS literals
+     */
+    public void addClause(int[] clause) {
+        if (inconsistent)
+            return;
+        int maxVar = 0;
+        for (int literal : clause)
+            maxVar = Math.max(maxVar, Math.abs(literal));
+        ensureVars(maxVar);
+
+        // Root assignments are permanent, so false literals can be dropped
+        // and satisfied clauses ignored
+        if (scratch.length < clause.length)
+            scratch = new int[2 * clause.length];
+        int[] lits = scratch;
+        int n = 0;
+        for (int literal : clause) {
+            int lit = toLit(literal);
+            if (litValue(lit) == TRUE)
+                return;
+            if (litValue(lit) == FALSE)
+                continue;
+            boolean duplicate = false;
+            for (int k = 0; k < n; k++) {
+                if (lits[k] == lit)
+                    duplicate = true;
+                else if (lits[k] == (lit ^ 1))
+                    return;
+            }
+            if (!duplicate)
+                lits[n++] = lit;
+        }
+
+        if (n == 0)
+            inconsistent = true;
+        else if (n == 1)
+            fix(lits[0]);
+        else if (n == 2) {
+            imply(lits[0] ^ 1, lits[1]);
+            imply(lits[1] ^ 1, lits[0]);
+        }
+        else {
+            int index = clauses.size();
+            clauses.add(Arrays.copyOf(lits, n));
+            watch(lits[0], index);
+            watch(lits[1], index);
+        }
+    }
+
+    /**
+     * @return true once the clauses are known to be unsatisfiable
+     */
+    public boolean isInconsistent() {
+        return inconsistent;
+    }
+
+    /**
+     * @param literal: a DIMACS literal
+     * @return SATSolver.TRUE or SATSolver.FALSE if propagation of the
+     *         clauses decides the literal, SATSolver.UNKNOWN otherwise
+     */
+    public int value(int literal) {
+        if (Math.abs(literal) > numVars)
+            return SATSolver.UNKNOWN;
+        return litValue(toLit(literal));
+    }
+
+    /**
+     * @return the number of literals assigned at the root
+     */
+    public int getNumFacts() {
+        return trailSize;
+    }
+
+    /**
+     * @param i: the index of a root literal, below getNumFacts(); literals
+     *           keep their index as more are assigned
+     * @return the literal, as a DIMACS literal
+     */
+    public int getFact(int i) {
+        int lit = trail[i];
+        return (lit & 1) == 0 ? lit >> 1 : -(lit >> 1);
+    }
+
+    /**
+     * Assume a literal and propagate.  If that leads to a conflict the
+     * literal is refuted and its negation becomes a root fact.
+     *
+     * @param literal: a DIMACS literal
+     * @return true if the literal was refuted
+     */
+    public boolean probe(int literal) {
+        if (inconsistent)
+            return true;
+        ensureVars(Math.abs(literal));
+        int lit = toLit(literal);
+        if (litValue(lit) != UNDEF)
+            return litValue(lit) == FALSE;
+        int mark = trailSize;
+        assign(lit);
+        boolean conflict = !propagate();
+        while (trailSize > mark)
+            assigns[trail[--trailSize] >> 1] = UNDEF;
+        qhead = mark;
+        if (conflict)
+            fix(lit ^ 1);
+        return conflict;
+    }
+
+    /**
+     * Make a literal a root fact and propagate it.
+     */
+    private void fix(int lit) {
+        if (litValue(lit) == FALSE)
+            inconsistent = true;
+        else if (litValue(lit) == UNDEF) {
+            assign(lit);
+            if (!propagate())
+                inconsistent = true;
+        }
+    }
+
+    /**
+     * Propagate the assignments on the trail.
+     *
+     * @return false on conflict
+     */
+    private boolean propagate() {
+        while (qhead < trailSize) {
+            int p = trail[qhead++];
+            // Binary implications
+            int[] imp = implications[p];
+            for (int i = 0; i < implicationSize[p]; i++) {
+                int q = imp[i];
+                if (litValue(q) == FALSE)
+                    return false;
+                if (litValue(q) == UNDEF)
+                    assign(q);
+            }
+            // Watched clauses of the falsified literal
+            int falseLit = p ^ 1;
+            int[] ws = watches[falseLit];
+            int n = watchSize[falseLit];
+            int i = 0;
+            int j = 0;
+            while (i < n) {
+                int index = ws[i++];
+                int[] lits = clauses.get(index);
+                if (lits[0] == falseLit) {
+                    lits[0] = lits[1];
+                    lits[1] = falseLit;
+                }
+                if (litValue(lits[0]) == TRUE) {
+                    ws[j++] = index;
+                    continue;
+                }
+                boolean found = false;
+                for (int k = 2; k < lits.length; k++) {
+                    if (litValue(lits[k]) != FALSE) {
+                        lits[1] = lits[k];
+                        lits[k] = falseLit;
+                        watch(lits[1], index);
+                        found = true;
+                        break;
+                    }
+                }
+                if (found)
+                    continue;
+                ws[j++] = index;
+                if (litValue(lits[0]) == FALSE) {
+                    while (i < n)
+                        ws[j++] = ws[i++];
+                    watchSize[falseLit] = j;
+                    return false;
+                }
+                assign(lits[0]);
+            }
+            watchSize[falseLit] = j;
+        }
+        return true;
+    }
+
+    private void ensureVars(int n) {
+        if (n <= numVars)
+            return;
+        assigns = Arrays.copyOf(assigns, n + 1);
+        trail = Arrays.copyOf(trail, n + 1);
+        implications = Arrays.copyOf(implications, 2 * n + 2);
+        implicationSize = Arrays.copyOf(implicationSize, 2 * n + 2);
+        watches = Arrays.copyOf(watches, 2 * n + 2);
+        watchSize = Arrays.copyOf(watchSize, 2 * n + 2);
+        numVars = n;
+    }
+
+    private void assign(int lit) {
+        assigns[lit >> 1] = (lit & 1) == 0 ? TRUE : FALSE;
+        trail[trailSize++] = lit;
+    }
+
+    private void imply(int from, int to) {
+        int[] imp = implications[from];
+        if (imp == null)
+            imp = implications[from] = new int[4];
+        else if (implicationSize[from] == imp.length)
+            imp = implications[from] = Arrays.copyOf(imp, 2 * imp.length);
+        imp[implicationSize[from]++] = to;
+        // A new implication from a root fact takes effect immediately
+        if (litValue(from) == TRUE)
+            fix(to);
+    }
+
+    private void watch(int lit, int index) {
+        int[] ws = watches[lit];
+        if (ws == null)
+            ws = watches[lit] = new int[4];
+        else if (watchSize[lit] == ws.length)
+            ws = watches[lit] = Arrays.copyOf(ws, 2 * ws.length);
+        ws[watchSize[lit]++] = index;
+    }
+
+    private byte litValue(int lit) {
+        byte v = assigns[lit >> 1];
+        return (lit & 1) == 0 ? v : (byte) -v;
+    }
+
+    private static int toLit(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+}
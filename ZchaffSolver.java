@@ -0,0 +1,430 @@
+/**
+ * ZchaffSolver.java - a SolverBackend that runs the external zchaff SAT
+ * solver.  zchaff has no incremental interface, so every query is a run
+ * of zchaff on the session's clauses with the assumptions added as unit
+ * clauses.  See http://cs.gettysburg.edu/~tneller/nsf/clue/ for details.
+ *
+ * The DIMACS text of the clauses is encoded to bytes once, as clauses are
+ * added; a query only encodes the header line and the assumptions.  The
+ * text is either streamed to zchaff's standard input (read by zchaff as
+ * /dev/stdin) or written to the session's CNF file with a single gathering
+ * write.  zchaff's output is read into a byte buffer and scanned directly
+ * for the model and the RESULT line; its standard error is discarded so
+ * that a chatty zchaff cannot block on a full pipe.
+ *
+ * interrupt() kills the zchaff process of the solve in progress.  A run
+ * that cannot be completed throws SolverException rather than reporting
+ * the query unsatisfiable.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class ZchaffSolver implements SolverBackend {
+
+    private static final byte[] COMMENT =
+        ("c This DIMACS format CNF file was generated by SatSolver.java\n"
+         + "c Do not edit.\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SATISFIABLE = "Instance Satisfiable".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESULT = "RESULT:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SAT = "SAT".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * A growable buffer of ASCII text.
+     */
+    private static final class Text {
+        byte[] bytes;
+        int length;
+
+        Text(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void append(char c) {
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+            bytes[length++] = (byte) c;
+        }
+
+        void append(int value) {
+            if (length + 11 > bytes.length)
+                bytes = Arrays.copyOf(bytes, 2 * bytes.length + 11);
+            long v = value;
+            if (v < 0) {
+                bytes[length++] = '-';
+                v = -v;
+            }
+            int digits = 1;
+            for (long w = v; w >= 10; w /= 10)
+                digits++;
+            for (int k = length + digits - 1; k >= length; k--) {
+                bytes[k] = (byte) ('0' + v % 10);
+                v /= 10;
+            }
+            length += digits;
+        }
+
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(bytes, 0, length);
+        }
+    }
+
+    // executable: the command used to run zchaff
+    private String executable;
+    // cnfFile: the DIMACS CNF file handed to zchaff, or null to stream the
+    // CNF to zchaff's standard input
+    private String cnfFile;
+    // clauses: the DIMACS text of the session's clauses
+    private Text clauses = new Text(4096);
+    // numClauses: the number of clauses of the session
+    private int numClauses;
+    // maxVar: the largest variable occurring in the clauses
+    private int maxVar;
+    // query: scratch text for the header and the assumptions of a query
+    private Text query = new Text(256);
+    // output: scratch buffer for zchaff's output
+    private byte[] output = new byte[8192];
+    // model: the model printed by the last satisfiable run, if any
+    private int[] model;
+    // assumptions: those of the last query
+    private int[] assumptions = new int[0];
+    // metrics: where process and CNF costs are reported
+    private SolverMetrics metrics = SolverMetrics.getDefault();
+    // interrupted: set by interrupt() to stop the current or next solve
+    private volatile boolean interrupted;
+    // process: the zchaff process of the solve in progress, or null
+    private volatile Process process;
+
+    /**
+     * Construct a backend streaming the CNF to the standard input of
+     * ./zchaff in the working directory.  No file is shared, so any number
+     * of backends can run at once.
+     */
+    public ZchaffSolver() {
+        this("./zchaff", null);
+    }
+
+    /**
+     * Construct a backend streaming the CNF to the standard input of the
+     * given zchaff executable, without a file.
+     *
+     * @param executable: the command used to run zchaff
+     */
+    public ZchaffSolver(String executable) {
+        this(executable, null);
+    }
+
+    /**
+     * @param executable: the command used to run zchaff
+     * @param cnfFile:    the DIMACS CNF file handed to zchaff, or null to
+     *                    stream the CNF to zchaff's standard input
+     */
+    public ZchaffSolver(String executable, String cnfFile) {
+        this.executable = executable;
+        this.cnfFile = cnfFile;
+    }
+
+    public void addClause(int[] clause) {
+        for (int literal: clause) {
+            clauses.append(literal);
+            clauses.append(' ');
+            maxVar = Math.max(Math.abs(literal), maxVar);
+        }
+        clauses.append('0');
+        clauses.append('\n');
+        numClauses++;
+    }
+
+    public void reset() {
+        clauses.length = 0;
+        numClauses = 0;
+        maxVar = 0;
+        model = null;
+        assumptions = new int[0];
+    }
+
+    /**
+     * zchaff decides every variable; the hint is ignored.
+     */
+    public void setDecisionVars(int n) {
+    }
+
+    public int[][] getLearntClauses() {
+        return new int[0][];
+    }
+
+    /**
+     * zchaff runs afresh on every query, so a learned clause is of no
+     * use to it and is dropped.
+     */
+    public void addLearntClause(int[] clause) {
+    }
+
+    public int[] getModel() {
+        return model;
+    }
+
+    /**
+     * zchaff reports no core: all the assumptions of the last query are
+     * reported.
+     */
+    public int[] getFailedAssumptions() {
+        return assumptions.clone();
+    }
+
+    /**
+     * Create a session running the same executable in the same way.  A
+     * session writing a CNF file gets a temporary file of its own, so that
+     * sessions can run concurrently.
+     */
+    public SolverBackend newSession() {
+        ZchaffSolver session;
+        if (cnfFile == null)
+            session = new ZchaffSolver(executable, null);
+        else {
+            try {
+                File file = File.createTempFile("query", ".cnf");
+                file.deleteOnExit();
+                session = new ZchaffSolver(executable, file.getPath());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        session.metrics = metrics;
+        return session;
+    }
+
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the command used to run zchaff, e.g. zchaff(./zchaff)
+     */
+    public String toString() {
+        return "zchaff(" + executable + ")";
+    }
+
+    /**
+     * Stop the solve in progress by killing its zchaff process.
+     */
+    public void interrupt() {
+        interrupted = true;
+        Process running = process;
+        if (running != null)
+            kill(running);
+    }
+
+    public void clearInterrupt() {
+        interrupted = false;
+    }
+
+    public boolean solve(int... assumptions) {
+        checkInterrupted();
+        this.assumptions = assumptions.clone();
+        int numVars = maxVar;
+        for (int literal: assumptions)
+            numVars = Math.max(Math.abs(literal), numVars);
+
+        // Only the header and the assumptions are encoded per query
+        query.length = 0;
+        for (char c: "p cnf ".toCharArray())
+            query.append(c);
+        query.append(numVars);
+        query.append(' ');
+        query.append(numClauses + assumptions.length);
+        query.append('\n');
+        int headerLength = query.length;
+        for (int literal: assumptions) {
+            query.append(literal);
+            query.append(' ');
+            query.append('0');
+            query.append('\n');
+        }
+        ByteBuffer[] cnf = {
+            ByteBuffer.wrap(COMMENT),
+            ByteBuffer.wrap(query.bytes, 0, headerLength),
+            clauses.buffer(),
+            ByteBuffer.wrap(query.bytes, headerLength, query.length - headerLength)
+        };
+        long bytes = 0;
+        for (ByteBuffer buffer: cnf)
+            bytes += buffer.remaining();
+
+        try {
+            long start;
+            if (cnfFile == null) {
+                start();
+                start = System.nanoTime();
+                WritableByteChannel in = Channels.newChannel(process.getOutputStream());
+                for (ByteBuffer buffer: cnf)
+                    while (buffer.hasRemaining())
+                        in.write(buffer);
+                in.close();
+                metrics.recordCnfWrite(bytes, System.nanoTime() - start);
+            }
+            else {
+                start = System.nanoTime();
+                try (FileChannel channel = FileChannel.open(Paths.get(cnfFile), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long remaining = bytes;
+                    while (remaining > 0)
+                        remaining -= channel.write(cnf);
+                }
+                metrics.recordCnfWrite(bytes, System.nanoTime() - start);
+                start();
+            }
+
+            int length = readOutput(process.getInputStream());
+            process.waitFor();
+            checkInterrupted();
+            return parseOutput(length, numVars);
+        }
+        catch (IOException e) {
+            // Killing the process breaks its pipes
+            checkInterrupted();
+            metrics.recordError();
+            throw new SolverException("Cannot run " + executable, e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolverInterruptedException();
+        }
+        finally {
+            Process running = process;
+            process = null;
+            if (running != null && running.isAlive())
+                kill(running);
+        }
+    }
+
+    /**
+     * Start zchaff on the CNF file or on its standard input.  If the solve
+     * was interrupted meanwhile the new process is killed right away.
+     */
+    private void start() throws IOException {
+        long start = System.nanoTime();
+        process = new ProcessBuilder(executable, cnfFile == null ? "/dev/stdin" : cnfFile)
+            .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        metrics.recordProcessSpawn(System.nanoTime() - start);
+        if (interrupted)
+            kill(process);
+    }
+
+    /**
+     * Kill a process together with any processes it started (a wrapper
+     * script may run zchaff as a child holding the output pipe open).
+     */
+    private static void kill(Process process) {
+        Object[] descendants = process.descendants().toArray();
+        process.destroyForcibly();
+        for (Object descendant : descendants)
+            ((ProcessHandle) descendant).destroyForcibly();
+    }
+
+    /**
+     * @throws SolverInterruptedException if interrupt() has been called,
+     *         consuming the interrupt
+     */
+    private void checkInterrupted() {
+        if (interrupted) {
+            interrupted = false;
+            throw new SolverInterruptedException();
+        }
+    }
+
+    /**
+     * Read a process's output into the output buffer.
+     *
+     * @return the number of bytes read
+     */
+    private int readOutput(InputStream in) throws IOException {
+        int length = 0;
+        int n;
+        while ((n = in.read(output, length, output.length - length)) > 0) {
+            length += n;
+            if (length == output.length)
+                output = Arrays.copyOf(output, 2 * output.length);
+        }
+        in.close();
+        return length;
+    }
+
+    /**
+     * Scan zchaff's output for the model, which follows "Instance
+     * Satisfiable" as a line of literals, and for the word following
+     * "RESULT:".
+     *
+     * @param length:  the number of bytes of output
+     * @param numVars: the number of variables of the query
+     * @return whether zchaff reported SAT
+     */
+    private boolean parseOutput(int length, int numVars) {
+        model = null;
+        int pos = indexOf(SATISFIABLE, 0, length);
+        if (pos >= 0) {
+            int[] found = new int[numVars + 1];
+            pos += SATISFIABLE.length;
+            while (true) {
+                while (pos < length && isSpace(output[pos]))
+                    pos++;
+                int start = pos;
+                boolean negative = pos < length && output[pos] == '-';
+                if (negative)
+                    pos++;
+                int var = 0;
+                int digits = 0;
+                while (pos < length && output[pos] >= '0' && output[pos] <= '9') {
+                    var = 10 * var + (output[pos++] - '0');
+                    digits++;
+                }
+                if (digits == 0) {
+                    pos = start;
+                    break;
+                }
+                if (var != 0 && var <= numVars)
+                    found[var] = negative ? SATSolver.FALSE : SATSolver.TRUE;
+            }
+            model = found;
+        }
+        else
+            pos = 0;
+        pos = indexOf(RESULT, pos, length);
+        if (pos < 0) {
+            metrics.recordError();
+            throw new SolverException("No RESULT in the output of " + executable + ": "
+                + new String(output, 0, Math.min(length, 200), StandardCharsets.US_ASCII));
+        }
+        pos += RESULT.length;
+        while (pos < length && isSpace(output[pos]))
+            pos++;
+        boolean sat = indexOf(SAT, pos, Math.min(pos + SAT.length, length)) == pos
+            && (pos + SAT.length == length || isSpace(output[pos + SAT.length]));
+        if (!sat)
+            model = null;
+        return sat;
+    }
+
+    /**
+     * @return the first position of the pattern in output[from..to), or -1
+     */
+    private int indexOf(byte[] pattern, int from, int to) {
+        outer:
+        for (int i = from; i + pattern.length <= to; i++) {
+            for (int k = 0; k < pattern.length; k++)
+                if (output[i + k] != pattern[k])
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * BenchmarkFactory.java - adapts ClueReasoner and SATSolver to the
+ * interfaces used by the JMH benchmarks in package bench, which cannot
+ * refer to classes in the default package directly.
+ */
+
+import bench.*;
+
+public class BenchmarkFactory implements Factory {
+
+    public Reasoner newReasoner(String backend) {
+        final ClueReasoner reasoner = new ClueReasoner(newBackend(backend));
+        return new Reasoner() {
+            public void addInitialClauses() {
+                reasoner.addInitialClauses();
+            }
+
+            public void hand(String player, String[] cards) {
+                reasoner.hand(player, cards);
+            }
+
+            public void suggest(String suggester, String card1, String card2, String card3,
+                    String refuter, String cardShown) {
+                reasoner.suggest(suggester, card1, card2, card3, refuter, cardShown);
+            }
+
+            public void accuse(String accuser, String card1, String card2, String card3,
+                    boolean isCorrect) {
+                reasoner.accuse(accuser, card1, card2, card3, isCorrect);
+            }
+
+            public int query(String player, String card) {
+                return reasoner.query(player, card);
+            }
+
+            public String[][] notepad() {
+                return reasoner.notepad();
+            }
+
+            public double[][] probabilities() {
+                return reasoner.probabilities();
+            }
+        };
+    }
+
+    public Solver newSolver(String backend) {
+        final SATSolver solver = new SATSolver(newBackend(backend));
+        return new Solver() {
+            public void addClause(int[] clause) {
+                solver.addClause(clause);
+            }
+
+            public boolean makeQuery() {
+                return solver.makeQuery();
+            }
+
+            public int testLiteral(int literal) {
+                return solver.testLiteral(literal);
+            }
+        };
+    }
+
+    /**
+     * @param name: one of Factory.BACKENDS
+     * @return a new session of the named backend
+     */
+    private static SolverBackend newBackend(String name) {
+        String zchaff = System.getProperty("zchaff", "./zchaff");
+        if (name.equals("cdcl"))
+            return new CDCLSolver();
+        if (name.equals("zchaff"))
+            return new ZchaffSolver(zchaff, "query.cnf").newSession();
+        if (name.equals("zchaff-stdin"))
+            return new ZchaffSolver(zchaff);
+        if (name.equals("portfolio"))
+            return new PortfolioSolver();
+        throw new IllegalArgumentException("Unknown backend: " + name);
+    }
+}
@@ -0,0 +1,130 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmarks of the reasoner and the solver, each run against every
+ * solver backend:
+ *
+ *   mvn -B -Pjmh package
+ *   java -jar target/benchmarks.jar ClueBenchmarks
+ *
+ * Use -p backend=cdcl to restrict the run to one backend.  The zchaff
+ * backends need a zchaff executable that runs on the host, given with
+ * -jvmArgs -Dzchaff=/path/to/zchaff; without one their runs fail and
+ * JMH moves on to the next.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClueBenchmarks {
+
+    // The liar and truth-teller example of SATSolver.main
+    static final int[][] LIAR_CLAUSES = {
+        { -1, -2 }, { 2, 1 }, { -2, -3 }, { 3, 2 }, { -3, -1 }, { -3, -2 }, { 1, 2, 3 }
+    };
+
+    @State(Scope.Benchmark)
+    public static class Backend {
+        @Param({ "cdcl", "zchaff", "zchaff-stdin", "portfolio" })
+        public String backend;
+
+        Factory factory;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            factory = Factory.load();
+        }
+    }
+
+    /**
+     * A reasoner that has seen the hand and the first suggestions of the
+     * example game, rebuilt before every invocation so that no answer is
+     * cached from the previous one.
+     */
+    @State(Scope.Thread)
+    public static class MidGame {
+        @Param({ "0", "13", "27" })
+        public int suggestions;
+
+        Reasoner reasoner;
+
+        @Setup(Level.Invocation)
+        public void setUp(Backend backend) {
+            reasoner = backend.factory.newReasoner(backend.backend);
+            ExampleGame.replay(reasoner, suggestions);
+        }
+    }
+
+    /**
+     * A solver loaded with the liar and truth-teller clauses.
+     */
+    @State(Scope.Thread)
+    public static class Liar {
+        Solver solver;
+
+        @Setup(Level.Trial)
+        public void setUp(Backend backend) {
+            solver = newLiarSolver(backend);
+        }
+    }
+
+    static Solver newLiarSolver(Backend backend) {
+        Solver solver = backend.factory.newSolver(backend.backend);
+        for (int[] clause : LIAR_CLAUSES)
+            solver.addClause(clause);
+        return solver;
+    }
+
+    @Benchmark
+    public Reasoner construct(Backend backend) {
+        return backend.factory.newReasoner(backend.backend);
+    }
+
+    @Benchmark
+    public Reasoner constructAndAddInitialClauses(Backend backend) {
+        Reasoner reasoner = backend.factory.newReasoner(backend.backend);
+        reasoner.addInitialClauses();
+        return reasoner;
+    }
+
+    @Benchmark
+    public Reasoner replayExampleGame(Backend backend) {
+        Reasoner reasoner = backend.factory.newReasoner(backend.backend);
+        ExampleGame.replay(reasoner, ExampleGame.SUGGESTIONS.length);
+        return reasoner;
+    }
+
+    @Benchmark
+    public int query(MidGame game) {
+        return game.reasoner.query("cf", "pi");
+    }
+
+    @Benchmark
+    public String[][] notepad(MidGame game) {
+        return game.reasoner.notepad();
+    }
+
+    /**
+     * The first count of the game, which with the hand sizes of the
+     * variant keeps the cards held so far by each player apart.
+     */
+    @Benchmark
+    public double[][] probabilities(MidGame game) {
+        return game.reasoner.probabilities();
+    }
+
+    @Benchmark
+    public int liarTestLiteral(Liar liar) {
+        return liar.solver.testLiteral(3);
+    }
+
+    @Benchmark
+    public int liarTestLiteralCold(Backend backend) {
+        return newLiarSolver(backend).testLiteral(3);
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+/**
+ * The example game of ClueReasoner.main: Miss Scarlet's hand and the 27
+ * suggestions that follow, ending in the correct accusation.
+ */
+public final class ExampleGame {
+
+    public static final String PLAYER = "sc";
+    public static final String[] HAND = { "wh", "li", "st" };
+
+    // suggester, card1, card2, card3, refuter, cardShown
+    public static final String[][] SUGGESTIONS = {
+        { "sc", "sc", "ro", "lo", "mu", "sc" },
+        { "mu", "pe", "pi", "di", "pe", null },
+        { "wh", "mu", "re", "ba", "pe", null },
+        { "gr", "wh", "kn", "ba", "pl", null },
+        { "pe", "gr", "ca", "di", "wh", null },
+        { "pl", "wh", "wr", "st", "sc", "wh" },
+        { "sc", "pl", "ro", "co", "mu", "pl" },
+        { "mu", "pe", "ro", "ba", "wh", null },
+        { "wh", "mu", "ca", "st", "gr", null },
+        { "gr", "pe", "kn", "di", "pe", null },
+        { "pe", "mu", "pi", "di", "pl", null },
+        { "pl", "gr", "kn", "co", "wh", null },
+        { "sc", "pe", "kn", "lo", "mu", "lo" },
+        { "mu", "pe", "kn", "di", "wh", null },
+        { "wh", "pe", "wr", "ha", "gr", null },
+        { "gr", "wh", "pi", "co", "pl", null },
+        { "pe", "sc", "pi", "ha", "mu", null },
+        { "pl", "pe", "pi", "ba", null, null },
+        { "sc", "wh", "pi", "ha", "pe", "ha" },
+        { "wh", "pe", "pi", "ha", "pe", null },
+        { "pe", "pe", "pi", "ha", null, null },
+        { "sc", "gr", "pi", "st", "wh", "gr" },
+        { "mu", "pe", "pi", "ba", "pl", null },
+        { "wh", "pe", "pi", "st", "sc", "st" },
+        { "gr", "wh", "pi", "st", "sc", "wh" },
+        { "pe", "wh", "pi", "st", "sc", "wh" },
+        { "pl", "pe", "pi", "ki", "gr", null },
+    };
+
+    private ExampleGame() {
+    }
+
+    /**
+     * Deal the hand and replay the first suggestions of the game.
+     *
+     * @param reasoner:       the reasoner to replay the game on
+     * @param numSuggestions: the number of suggestions to replay
+     */
+    public static void replay(Reasoner reasoner, int numSuggestions) {
+        reasoner.hand(PLAYER, HAND);
+        for (int i = 0; i < numSuggestions; i++) {
+            String[] s = SUGGESTIONS[i];
+            reasoner.suggest(s[0], s[1], s[2], s[3], s[4], s[5]);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package bench;
+
+/**
+ * Creates reasoners and solvers for the benchmarks.  The implementation,
+ * BenchmarkFactory, lives in the default package next to the classes it
+ * adapts and is looked up by name.
+ */
+public interface Factory {
+
+    /**
+     * The backend names accepted by the factory: the in-process CDCL
+     * engine, zchaff on a CNF file of its own, zchaff reading the CNF
+     * from its standard input, and the default PortfolioSolver racing
+     * configurations of the CDCL engine.  The zchaff executable is taken
+     * from the system property "zchaff", by default ./zchaff.
+     */
+    String[] BACKENDS = { "cdcl", "zchaff", "zchaff-stdin", "portfolio" };
+
+    /**
+     * @param backend: one of BACKENDS
+     * @return a new reasoner with the general knowledge about the game
+     */
+    Reasoner newReasoner(String backend);
+
+    /**
+     * @param backend: one of BACKENDS
+     * @return a new solver without clauses
+     */
+    Solver newSolver(String backend);
+
+    /**
+     * @return the factory implementation
+     */
+    static Factory load() {
+        try {
+            return (Factory) Class.forName("BenchmarkFactory").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkFactory not found", e);
+        }
+    }
+}
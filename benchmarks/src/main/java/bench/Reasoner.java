@@ -0,0 +1,25 @@
+package bench;
+
+/**
+ * The operations of a ClueReasoner exercised by the benchmarks.  The
+ * reasoner lives in the default package, which code in a package cannot
+ * refer to, so the benchmarks use it through this interface.
+ */
+public interface Reasoner {
+
+    void addInitialClauses();
+
+    void hand(String player, String[] cards);
+
+    void suggest(String suggester, String card1, String card2, String card3,
+            String refuter, String cardShown);
+
+    void accuse(String accuser, String card1, String card2, String card3,
+            boolean isCorrect);
+
+    int query(String player, String card);
+
+    String[][] notepad();
+
+    double[][] probabilities();
+}
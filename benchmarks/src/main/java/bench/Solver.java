@@ -0,0 +1,13 @@
+package bench;
+
+/**
+ * The operations of a SATSolver exercised by the benchmarks.
+ */
+public interface Solver {
+
+    void addClause(int[] clause);
+
+    boolean makeQuery();
+
+    int testLiteral(int literal);
+}
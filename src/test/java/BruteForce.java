@@ -0,0 +1,103 @@
+/**
+ * BruteForce.java - reference answers for the solver tests, found by
+ * enumerating every assignment of a few variables.
+ */
+
+import java.util.*;
+
+public class BruteForce {
+
+    /**
+     * @param clauses:    DIMACS clauses over variables 1..numVars
+     * @param numVars:    the number of variables, at most 20 or so
+     * @param assumptions: literals every assignment counted must satisfy
+     * @return the number of assignments of variables 1..numVars
+     *         satisfying the clauses and the assumptions
+     */
+    public static long countModels(int[][] clauses, int numVars, int... assumptions) {
+        long count = 0;
+        for (long bits = 0; bits < 1L << numVars; bits++)
+            if (satisfies(clauses, bits) && satisfies(assumptions, bits))
+                count++;
+        return count;
+    }
+
+    /**
+     * @return whether some assignment satisfies the clauses and the
+     *         assumptions
+     */
+    public static boolean isSatisfiable(int[][] clauses, int numVars, int... assumptions) {
+        for (long bits = 0; bits < 1L << numVars; bits++)
+            if (satisfies(clauses, bits) && satisfies(assumptions, bits))
+                return true;
+        return false;
+    }
+
+    /**
+     * @param model: an array indexed by variable holding SATSolver.TRUE or
+     *               SATSolver.FALSE, as SolverBackend.getModel reports
+     * @return whether the model satisfies every clause
+     */
+    public static boolean isModel(int[][] clauses, int[] model) {
+        for (int[] clause : clauses) {
+            boolean satisfied = false;
+            for (int literal : clause)
+                if (model[Math.abs(literal)] == (literal > 0 ? SATSolver.TRUE : SATSolver.FALSE))
+                    satisfied = true;
+            if (!satisfied)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return random clauses of the given width over variables 1..numVars,
+     *         without repeated variables within a clause
+     */
+    public static int[][] randomClauses(Random random, int numVars, int numClauses, int width) {
+        int[][] clauses = new int[numClauses][];
+        for (int i = 0; i < numClauses; i++) {
+            int[] vars = new int[numVars];
+            for (int v = 0; v < numVars; v++)
+                vars[v] = v + 1;
+            clauses[i] = new int[Math.min(width, numVars)];
+            for (int k = 0; k < clauses[i].length; k++) {
+                int j = k + random.nextInt(numVars - k);
+                int t = vars[k];
+                vars[k] = vars[j];
+                vars[j] = t;
+                clauses[i][k] = random.nextBoolean() ? vars[k] : -vars[k];
+            }
+        }
+        return clauses;
+    }
+
+    private static boolean satisfies(int[][] clauses, long bits) {
+        for (int[] clause : clauses)
+            if (!satisfiesOne(clause, bits))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return whether all the literals hold
+     */
+    private static boolean satisfies(int[] literals, long bits) {
+        for (int literal : literals)
+            if (!holds(literal, bits))
+                return false;
+        return true;
+    }
+
+    private static boolean satisfiesOne(int[] clause, long bits) {
+        for (int literal : clause)
+            if (holds(literal, bits))
+                return true;
+        return false;
+    }
+
+    private static boolean holds(int literal, long bits) {
+        boolean value = (bits >> (Math.abs(literal) - 1) & 1) != 0;
+        return literal > 0 ? value : !value;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * CDCLSolverTest.java - the CDCL engine against brute-force enumeration
+ * on small random formulas.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+public class CDCLSolverTest {
+
+    @Test
+    public void agreesWithEnumerationOnRandomFormulas() {
+        Random random = new Random(1);
+        for (int round = 0; round < 300; round++) {
+            int numVars = 3 + random.nextInt(10);
+            int[][] clauses = BruteForce.randomClauses(random, numVars,
+                numVars * 3 + random.nextInt(numVars * 2), 3);
+            CDCLSolver solver = new CDCLSolver();
+            for (int[] clause : clauses)
+                solver.addClause(clause);
+            boolean expected = BruteForce.isSatisfiable(clauses, numVars);
+            assertEquals(expected, solver.solve(), "round " + round);
+            if (expected)
+                assertTrue(BruteForce.isModel(clauses, solver.getModel()), "round " + round);
+        }
+    }
+
+    @Test
+    public void findsTheUnitsAndEmptyClauseOfTrivialFormulas() {
+        CDCLSolver solver = new CDCLSolver();
+        solver.addClause(new int[] { 1 });
+        solver.addClause(new int[] { -1, 2 });
+        assertTrue(solver.solve());
+        assertEquals(SATSolver.TRUE, solver.getModel()[2]);
+        solver.addClause(new int[] { -2 });
+        assertFalse(solver.solve());
+        assertFalse(solver.solve());
+        solver.reset();
+        assertTrue(solver.solve());
+    }
+
+    @Test
+    public void clausesAddedBetweenSolvesAreKept() {
+        Random random = new Random(2);
+        for (int round = 0; round < 50; round++) {
+            int numVars = 8;
+            int[][] clauses = BruteForce.randomClauses(random, numVars, 40, 3);
+            CDCLSolver solver = new CDCLSolver();
+            for (int i = 0; i < clauses.length; i++) {
+                solver.addClause(clauses[i]);
+                int[][] prefix = Arrays.copyOf(clauses, i + 1);
+                assertEquals(BruteForce.isSatisfiable(prefix, numVars), solver.solve(),
+                    "round " + round + " clause " + i);
+            }
+        }
+    }
+
+    @Test
+    public void learnedClausesCarryOverToANewSession() {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            int numVars = 10;
+            int[][] clauses = BruteForce.randomClauses(random, numVars, 42, 3);
+            CDCLSolver solver = new CDCLSolver();
+            for (int[] clause : clauses)
+                solver.addClause(clause);
+            boolean expected = solver.solve();
+            SolverBackend session = solver.newSession();
+            for (int[] clause : clauses)
+                session.addClause(clause);
+            for (int[] clause : solver.getLearntClauses())
+                session.addLearntClause(clause);
+            assertEquals(expected, session.solve(), "round " + round);
+        }
+    }
+
+    @Test
+    public void agreesWithEnumerationUnderAssumptions() {
+        Random random = new Random(4);
+        for (int round = 0; round < 100; round++) {
+            int numVars = 10;
+            int[][] clauses = BruteForce.randomClauses(random, numVars, 30, 3);
+            CDCLSolver solver = new CDCLSolver();
+            for (int[] clause : clauses)
+                solver.addClause(clause);
+            for (int query = 0; query < 10; query++) {
+                int[] assumptions = BruteForce.randomClauses(random, numVars, 1,
+                    1 + random.nextInt(4))[0];
+                boolean expected = BruteForce.isSatisfiable(clauses, numVars, assumptions);
+                assertEquals(expected, solver.solve(assumptions), "round " + round);
+                if (expected)
+                    continue;
+                // The failed assumptions alone must already be refuted
+                int[] failed = solver.getFailedAssumptions();
+                assertFalse(BruteForce.isSatisfiable(clauses, numVars, failed), "round " + round);
+                for (int literal : failed) {
+                    boolean assumed = false;
+                    for (int a : assumptions)
+                        assumed |= a == literal;
+                    assertTrue(assumed, "round " + round);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void repeatedAndImpliedAssumptionsTakeNoVariables() {
+        CDCLSolver solver = new CDCLSolver();
+        solver.addClause(new int[] { 1, 2 });
+        solver.addClause(new int[] { -1, 2 });
+        assertTrue(solver.solve(1, 1, 1, 2, 2, 2));
+        assertTrue(solver.solve(2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1));
+        assertFalse(solver.solve(1, 1, 2, 2, -2));
+        Set<Integer> failed = new HashSet<Integer>();
+        for (int literal : solver.getFailedAssumptions())
+            failed.add(literal);
+        assertTrue(failed.contains(-2));
+        assertTrue(Arrays.asList(1, 2, -2).containsAll(failed));
+
+        SATSolver sat = new SATSolver();
+        sat.addClause(new int[] { 1, 2 });
+        sat.addClause(new int[] { -1, 2 });
+        assertTrue(sat.solve(1, 1, 1, 2, 2, 2));
+        assertFalse(sat.solve(1, 1, 1, -2, -2, -2));
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * CardinalityEncoderTest.java - the encodings checked assignment by
+ * assignment, and for leaving model counts unchanged.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+public class CardinalityEncoderTest {
+
+    @Test
+    public void atMostOneAllowsTheRightAssignments() {
+        Random random = new Random(7);
+        for (CardinalityEncoder.Encoding encoding : CardinalityEncoder.Encoding.values())
+            for (int n = 1; n <= 8; n++) {
+                int[] literals = randomLiterals(random, n);
+                List<int[]> clauses = new ArrayList<int[]>();
+                CardinalityEncoder encoder = new CardinalityEncoder(sink(clauses), n);
+                encoder.atMostOne(literals, encoding);
+                assertEncodes(clauses, encoder.getMaxVar(), literals, 0, 1, encoding + " n=" + n);
+            }
+    }
+
+    @Test
+    public void exactlyOneAllowsTheRightAssignments() {
+        Random random = new Random(8);
+        for (CardinalityEncoder.Encoding encoding : CardinalityEncoder.Encoding.values())
+            for (int n = 1; n <= 8; n++) {
+                int[] literals = randomLiterals(random, n);
+                List<int[]> clauses = new ArrayList<int[]>();
+                CardinalityEncoder encoder = new CardinalityEncoder(sink(clauses), n);
+                encoder.exactlyOne(literals, encoding);
+                assertEncodes(clauses, encoder.getMaxVar(), literals, 1, 1, encoding + " n=" + n);
+            }
+    }
+
+    @Test
+    public void sequentialCounterAllowsTheRightAssignments() {
+        Random random = new Random(9);
+        for (int n = 1; n <= 8; n++)
+            for (int k = 0; k <= n; k++) {
+                int[] literals = randomLiterals(random, n);
+                List<int[]> clauses = new ArrayList<int[]>();
+                CardinalityEncoder encoder = new CardinalityEncoder(sink(clauses), n);
+                encoder.exactly(literals, k);
+                assertEncodes(clauses, encoder.getMaxVar(), literals, k, k, "n=" + n + " k=" + k);
+            }
+    }
+
+    @Test
+    public void sequentialCounterRejectsImpossibleCounts() {
+        CardinalityEncoder encoder = new CardinalityEncoder(sink(new ArrayList<int[]>()), 3);
+        for (int k : new int[] { -1, 4 }) {
+            try {
+                encoder.exactly(new int[] { 1, 2, 3 }, k);
+                fail("k=" + k);
+            }
+            catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+    /**
+     * @return the literals of variables 1..n with random signs
+     */
+    private static int[] randomLiterals(Random random, int n) {
+        int[] literals = new int[n];
+        for (int v = 1; v <= n; v++)
+            literals[v - 1] = random.nextBoolean() ? v : -v;
+        return literals;
+    }
+
+    private static CardinalityEncoder.ClauseSink sink(final List<int[]> clauses) {
+        return new CardinalityEncoder.ClauseSink() {
+            public void addClause(int[] clause) {
+                clauses.add(clause);
+            }
+        };
+    }
+
+    /**
+     * Check that the clauses allow exactly the assignments of the literals'
+     * variables making between min and max of the literals true, and that
+     * each of those has a single model: the auxiliary variables are
+     * functions of the original ones.
+     */
+    private static void assertEncodes(List<int[]> clauses, int maxVar, int[] literals, int min, int max,
+            String message) {
+        int n = literals.length;
+        CDCLSolver solver = new CDCLSolver();
+        ClauseArena arena = new ClauseArena();
+        for (int[] clause : clauses) {
+            solver.addClause(clause);
+            arena.add(clause);
+        }
+        solver.ensureVars(maxVar);
+        long allowed = 0;
+        for (int bits = 0; bits < 1 << n; bits++) {
+            int[] assignment = new int[n];
+            int numTrue = 0;
+            for (int v = 1; v <= n; v++) {
+                assignment[v - 1] = (bits >> (v - 1) & 1) != 0 ? v : -v;
+                for (int literal : literals)
+                    if (literal == assignment[v - 1])
+                        numTrue++;
+            }
+            boolean expected = numTrue >= min && numTrue <= max;
+            if (expected)
+                allowed++;
+            assertEquals(expected, solver.solve(assignment), message + " " + Arrays.toString(assignment));
+        }
+        assertEquals(BigInteger.valueOf(allowed), new ModelCounter().count(arena, maxVar), message);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * ClauseArenaTest.java - the clauses an arena stores after tautological,
+ * duplicate and subsumed insertions, and after truncation.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class ClauseArenaTest {
+
+    @Test
+    public void storesNormalizedClausesThatAreNotImplied() {
+        ClauseArena arena = new ClauseArena();
+        assertTrue(arena.add(new int[] { 3, -1, 3 }));
+        assertArrayEquals(new int[] { -1, 3 }, arena.get(0));
+
+        assertFalse(arena.add(new int[] { 2, 1, -2 }));
+        assertEquals(1, arena.getTautologies());
+        assertFalse(arena.add(new int[] { 3, -1 }));
+        assertFalse(arena.add(new int[] { 2, 3, -1 }));
+        assertEquals(2, arena.getSubsumed());
+
+        // A clause subsuming one stored is stored too
+        assertTrue(arena.add(new int[] { 3 }));
+        assertTrue(arena.add(new int[] { 4, -2 }));
+        assertEquals(3, arena.size());
+        assertArrayEquals(new int[] { 3 }, arena.get(1));
+        assertArrayEquals(new int[] { -2, 4 }, arena.get(2));
+        assertEquals(5, arena.numLiterals());
+        assertEquals(2, arena.length(0));
+        assertEquals(4, arena.literal(2, 1));
+
+        assertEquals(2, arena.occurrenceCount(3));
+        assertEquals(0, arena.occurrence(3, 0));
+        assertEquals(1, arena.occurrence(3, 1));
+        assertEquals(0, arena.occurrenceCount(-3));
+        assertEquals(0, arena.occurrenceCount(7));
+    }
+
+    @Test
+    public void truncateRemovesTheLastClausesAndTheirOccurrences() {
+        ClauseArena arena = new ClauseArena();
+        arena.add(new int[] { 1, 2 });
+        arena.add(new int[] { -1, 3 });
+        // As SATSolver.push and pop do
+        int size = arena.size();
+        arena.add(new int[] { 2, -3 });
+        arena.add(new int[] { 4 });
+        arena.truncate(size);
+
+        assertEquals(2, arena.size());
+        assertEquals(4, arena.numLiterals());
+        assertArrayEquals(new int[] { -1, 3 }, arena.get(1));
+        assertEquals(1, arena.occurrenceCount(2));
+        assertEquals(0, arena.occurrenceCount(-3));
+        assertEquals(0, arena.occurrenceCount(4));
+        // A removed clause no longer subsumes what is added next
+        assertTrue(arena.add(new int[] { 4, 5 }));
+        assertArrayEquals(new int[] { 4, 5 }, arena.get(2));
+        assertEquals(2, arena.occurrence(4, 0));
+
+        try {
+            arena.truncate(4);
+            fail("Truncated to more clauses than stored");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void anOverlayStoresOnlyItsOwnClauses() {
+        ClauseArena base = new ClauseArena();
+        base.add(new int[] { 1, 2 });
+        base.freeze();
+        ClauseArena overlay = new ClauseArena(base);
+        assertFalse(overlay.add(new int[] { 1, 2, 3 }));
+        assertTrue(overlay.add(new int[] { -1, 3 }));
+        assertEquals(2, overlay.size());
+        assertArrayEquals(new int[] { 1, 2 }, overlay.get(0));
+        assertArrayEquals(new int[] { -1, 3 }, overlay.get(1));
+        assertEquals(2, overlay.numOwnLiterals());
+        assertEquals(1, overlay.occurrence(-1, 0));
+
+        try {
+            overlay.truncate(0);
+            fail("Truncated into the base");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            base.add(new int[] { 4 });
+            fail("Added to a frozen arena");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * ClueReasonerTest.java - the reasoner's answers on small games against
+ * every deal consistent with the events.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+public class ClueReasonerTest {
+
+    @Test
+    public void recommendsSuggestionsOnlyInARoom() {
+        ClueReasoner reasoner = new ClueReasoner(GameVariant.generate(3, 2, 2, 3));
+        reasoner.hand("p1", new String[] { "s1", "w1" });
+        assertThrows(IllegalArgumentException.class, () -> reasoner.recommendSuggestion("p1", "s2", 1));
+        assertThrows(IllegalArgumentException.class, () -> reasoner.recommendSuggestion("p1", "r4", 1));
+        assertThrows(IllegalArgumentException.class, () -> reasoner.recommendSuggestion("p9", "r2", 1));
+        Suggestion[] ranking = reasoner.recommendSuggestion("p1", "r2", 1);
+        assertEquals(4, ranking.length);
+        for (Suggestion suggestion : ranking)
+            assertEquals("r2", suggestion.getRoom());
+        assertEquals(12, reasoner.recommendSuggestion("p1", null, 1).length);
+    }
+
+    @Test
+    public void eventsReportPropagatedCellsWithoutSearching() {
+        GameVariant variant = GameVariant.generate(3, 2, 2, 3);
+        Random random = new Random(11);
+        for (int game = 0; game < 10; game++) {
+            final int[] solves = new int[1];
+            ClueReasoner reasoner = new ClueReasoner(variant, new CDCLSolver() {
+                public boolean solve(int... assumptions) {
+                    solves[0]++;
+                    return super.solve(assumptions);
+                }
+            });
+            final Map<String, Integer> reported = new HashMap<String, Integer>();
+            reasoner.addDeductionListener(new ClueReasoner.DeductionListener() {
+                public void onDeduction(String player, String card, int value) {
+                    assertNull(reported.put(player + " " + card, value));
+                }
+            });
+            Deals deals = new Deals(variant);
+            int[] deal = deals.random(random);
+            int[] hand = Deals.cardsOf(deal, 0);
+            deals.hand(0, hand);
+            reasoner.hand(0, hand);
+            for (int turn = 0; turn < 4; turn++)
+                deals.suggestRandomly(random, deal, reasoner);
+            assertEquals(0, solves[0], "game " + game);
+            assertFalse(reported.isEmpty(), "game " + game);
+
+            // A query finds the knowledge base satisfiable, settling the
+            // cells propagated true too
+            reasoner.query(0, hand[0]);
+            boolean[] held = new boolean[variant.getNumCards()];
+            for (int card : hand)
+                held[card] = true;
+            String[] players = variant.getPlayers();
+            String[] cards = variant.getCards();
+            for (int p = 0; p <= players.length; p++)
+                for (int c = 0; c < cards.length; c++) {
+                    String place = p < players.length ? players[p] : GameVariant.CASE_FILE;
+                    Integer value = reported.get(place + " " + cards[c]);
+                    if (value != null)
+                        assertEquals(deals.status(p, c), (int) value, "game " + game);
+                    else if (p == 0 && held[c])
+                        fail("game " + game + ": " + cards[c] + " in the hand was not reported");
+                }
+        }
+    }
+
+    @Test
+    public void explanationsForceTheCellAndAreMinimal() {
+        GameVariant variant = GameVariant.generate(3, 2, 2, 3);
+        String[] players = variant.getPlayers();
+        String[] cards = variant.getCards();
+        Random random = new Random(5);
+        for (int game = 0; game < 5; game++) {
+            ClueReasoner reasoner = new ClueReasoner(variant);
+            Deals deals = new Deals(variant);
+            int[] deal = deals.random(random);
+            int[] hand = Deals.cardsOf(deal, 0);
+            deals.hand(0, hand);
+            reasoner.hand(0, hand);
+            for (int turn = 0; turn < 4; turn++)
+                deals.suggestRandomly(random, deal, reasoner);
+            for (int p = 0; p <= players.length; p++)
+                for (int c = 0; c < cards.length; c++) {
+                    int value = reasoner.query(p, c);
+                    String[] lines = reasoner.explain(p, c);
+                    if (value == SATSolver.UNKNOWN) {
+                        assertNull(lines);
+                        continue;
+                    }
+                    String cell = "game " + game + " cell " + p + " " + cards[c];
+                    assertEquals(value, replay(variant, lines).query(p, c), cell);
+                    for (int k = 0; k < lines.length; k++) {
+                        List<String> fewer = new ArrayList<String>(Arrays.asList(lines));
+                        fewer.remove(k);
+                        assertEquals(SATSolver.UNKNOWN,
+                                replay(variant, fewer.toArray(new String[0])).query(p, c), cell);
+                    }
+                }
+        }
+    }
+
+    @Test
+    public void parallelNotepadsAgreeWithTheSequentialOneAndLeaveTheOwnerAlone() {
+        GameVariant variant = GameVariant.generate(3, 2, 2, 3);
+        for (int game = 0; game < 4; game++)
+            for (int threads : new int[] { 1, 2, 4 }) {
+                String label = "game " + game + " threads " + threads;
+                final int[] solves = new int[1];
+                ClueReasoner owner = playRandomly(variant, game, new CDCLSolver() {
+                    public boolean solve(int... assumptions) {
+                        solves[0]++;
+                        return super.solve(assumptions);
+                    }
+                });
+                ReasonerSnapshot before = owner.snapshot();
+                int solvesBefore = solves[0];
+
+                String[][] parallel = owner.notepadParallel(threads);
+                assertArrayEquals(playRandomly(variant, game, new CDCLSolver()).notepad(), parallel, label);
+                // The workers query copies on sessions of their own
+                assertEquals(solvesBefore, solves[0], label);
+                ReasonerSnapshot after = owner.snapshot();
+                assertArrayEquals(before.getClauses(), after.getClauses(), label);
+                assertArrayEquals(before.getLearntClauses(), after.getLearntClauses(), label);
+                assertArrayEquals(parallel, owner.notepad(), label);
+            }
+    }
+
+    /**
+     * @return a reasoner on the given backend that has seen the hand of
+     *         player 0 and four random suggestions of a game, the same for
+     *         the same seed
+     */
+    private static ClueReasoner playRandomly(GameVariant variant, long seed, SolverBackend backend) {
+        Random random = new Random(seed);
+        ClueReasoner reasoner = new ClueReasoner(variant, backend);
+        Deals deals = new Deals(variant);
+        int[] deal = deals.random(random);
+        int[] hand = Deals.cardsOf(deal, 0);
+        deals.hand(0, hand);
+        reasoner.hand(0, hand);
+        for (int turn = 0; turn < 4; turn++)
+            deals.suggestRandomly(random, deal, reasoner);
+        return reasoner;
+    }
+
+    @Test
+    public void idsAgreeWithNamesOnTheExampleGame() {
+        ClueReasoner byName = exampleGame(EXAMPLE_SUGGESTIONS.length);
+        ClueReasoner byId = new ClueReasoner();
+        byId.hand(byId.getPlayerId("sc"), cardIds(byId, EXAMPLE_HAND));
+        for (String[] s : EXAMPLE_SUGGESTIONS) {
+            byId.suggest(byId.getPlayerId(s[0]), cardIds(byId, new String[] { s[1], s[2], s[3] }),
+                s[4] == null ? ClueReasoner.NONE : byId.getPlayerId(s[4]),
+                s[5] == null ? ClueReasoner.NONE : byId.getCardId(s[5]));
+        }
+        String[] players = byName.getPlayers();
+        String[] cards = byName.getCards();
+        for (int p = 0; p <= players.length; p++)
+            for (int c = 0; c < cards.length; c++) {
+                String place = p < players.length ? players[p] : GameVariant.CASE_FILE;
+                assertEquals(p, byId.getPlayerId(place));
+                assertEquals(c, byId.getCardId(cards[c]));
+                assertEquals(byName.query(place, cards[c]), byId.query(p, c), place + " " + cards[c]);
+                assertArrayEquals(byName.explain(place, cards[c]), byId.explain(p, c), place + " " + cards[c]);
+            }
+        assertArrayEquals(byName.notepad(), byId.notepad());
+
+        try {
+            byName.query("zz", "pi");
+            fail("Unknown player accepted");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("zz"), e.getMessage());
+        }
+        try {
+            byName.suggest("sc", "pe", "zz", "lo", null, null);
+            fail("Unknown card accepted");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("zz"), e.getMessage());
+        }
+    }
+
+    // The example game of ClueReasoner.main: Miss Scarlet's hand and the
+    // suggestions that follow, each as suggester, card1, card2, card3,
+    // refuter, cardShown
+    static final String[] EXAMPLE_HAND = { "wh", "li", "st" };
+    static final String[][] EXAMPLE_SUGGESTIONS = {
+        { "sc", "sc", "ro", "lo", "mu", "sc" },
+        { "mu", "pe", "pi", "di", "pe", null },
+        { "wh", "mu", "re", "ba", "pe", null },
+        { "gr", "wh", "kn", "ba", "pl", null },
+        { "pe", "gr", "ca", "di", "wh", null },
+        { "pl", "wh", "wr", "st", "sc", "wh" },
+        { "sc", "pl", "ro", "co", "mu", "pl" },
+        { "mu", "pe", "ro", "ba", "wh", null },
+        { "wh", "mu", "ca", "st", "gr", null },
+        { "gr", "pe", "kn", "di", "pe", null },
+        { "pe", "mu", "pi", "di", "pl", null },
+        { "pl", "gr", "kn", "co", "wh", null },
+        { "sc", "pe", "kn", "lo", "mu", "lo" },
+        { "mu", "pe", "kn", "di", "wh", null },
+        { "wh", "pe", "wr", "ha", "gr", null },
+        { "gr", "wh", "pi", "co", "pl", null },
+        { "pe", "sc", "pi", "ha", "mu", null },
+        { "pl", "pe", "pi", "ba", null, null },
+        { "sc", "wh", "pi", "ha", "pe", "ha" },
+        { "wh", "pe", "pi", "ha", "pe", null },
+        { "pe", "pe", "pi", "ha", null, null },
+        { "sc", "gr", "pi", "st", "wh", "gr" },
+        { "mu", "pe", "pi", "ba", "pl", null },
+        { "wh", "pe", "pi", "st", "sc", "st" },
+        { "gr", "wh", "pi", "st", "sc", "wh" },
+        { "pe", "wh", "pi", "st", "sc", "wh" },
+        { "pl", "pe", "pi", "ki", "gr", null }
+    };
+
+    /**
+     * @param numSuggestions: the number of suggestions to note
+     * @return a new reasoner that has seen the hand and the first
+     *         suggestions of the example game
+     */
+    static ClueReasoner exampleGame(int numSuggestions) {
+        ClueReasoner reasoner = new ClueReasoner();
+        reasoner.hand("sc", EXAMPLE_HAND);
+        for (int k = 0; k < numSuggestions; k++) {
+            String[] s = EXAMPLE_SUGGESTIONS[k];
+            reasoner.suggest(s[0], s[1], s[2], s[3], s[4], s[5]);
+        }
+        return reasoner;
+    }
+
+    private static int[] cardIds(ClueReasoner reasoner, String[] names) {
+        int[] ids = new int[names.length];
+        for (int k = 0; k < names.length; k++)
+            ids[k] = reasoner.getCardId(names[k]);
+        return ids;
+    }
+
+    /**
+     * @return a fresh reasoner with the events of the given lines noted,
+     *         in the form explain gives them
+     */
+    private static ClueReasoner replay(GameVariant variant, String[] lines) {
+        ClueReasoner reasoner = new ClueReasoner(variant);
+        for (String line : lines) {
+            String[] f = line.split(" ");
+            if (f[0].equals("hand"))
+                reasoner.hand(f[1], Arrays.copyOfRange(f, 2, f.length));
+            else if (f[0].equals("suggest"))
+                reasoner.suggest(f[1], f[2], f[3], f[4], f[5].equals("-") ? null : f[5],
+                        f[6].equals("-") ? null : f[6]);
+            else
+                reasoner.accuse(f[1], f[2], f[3], f[4], Boolean.parseBoolean(f[5]));
+        }
+        return reasoner;
+    }
+}
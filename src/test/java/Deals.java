@@ -0,0 +1,204 @@
+/**
+ * Deals.java - every deal of a small game variant, narrowed by the events
+ * noted, as the reference a ClueReasoner is checked against.
+ *
+ * A deal gives each card its place, by the ids of ClueReasoner: the
+ * players in turn order, then the case file.  A deal is legal if the case
+ * file holds one card of each category and, when the variant fixes them,
+ * the players hold as many cards as their hand sizes.
+ */
+
+import java.util.*;
+
+public class Deals {
+
+    private final int numPlayers;
+    private final int numCards;
+    // categoryOf[c]: the category of card c
+    private final int[] categoryOf;
+    // deals: the legal deals consistent with the events noted so far
+    private List<int[]> deals = new ArrayList<int[]>();
+
+    /**
+     * @param variant: a variant with few enough cards and players to
+     *                 enumerate every deal
+     */
+    public Deals(GameVariant variant) {
+        numPlayers = variant.getNumPlayers();
+        numCards = variant.getNumCards();
+        categoryOf = new int[numCards];
+        String[][] categories = variant.getCategories();
+        int i = 0;
+        for (int k = 0; k < categories.length; k++)
+            for (int j = 0; j < categories[k].length; j++)
+                categoryOf[i++] = k;
+        enumerate(new int[numCards], 0, variant.getHandSizes(), categories.length);
+    }
+
+    private void enumerate(int[] deal, int card, int[] handSizes, int numCategories) {
+        if (card == numCards) {
+            int[] held = new int[numPlayers + 1];
+            int[] inCaseFile = new int[numCategories];
+            for (int c = 0; c < numCards; c++) {
+                held[deal[c]]++;
+                if (deal[c] == numPlayers)
+                    inCaseFile[categoryOf[c]]++;
+            }
+            for (int k = 0; k < numCategories; k++)
+                if (inCaseFile[k] != 1)
+                    return;
+            if (handSizes != null)
+                for (int p = 0; p < numPlayers; p++)
+                    if (held[p] != handSizes[p])
+                        return;
+            deals.add(deal.clone());
+            return;
+        }
+        for (int place = 0; place <= numPlayers; place++) {
+            deal[card] = place;
+            enumerate(deal, card + 1, handSizes, numCategories);
+        }
+    }
+
+    /**
+     * @return a legal deal chosen at random, to play a game on
+     */
+    public int[] random(Random random) {
+        return deals.get(random.nextInt(deals.size())).clone();
+    }
+
+    /**
+     * @return the cards in the place in the deal
+     */
+    public static int[] cardsOf(int[] deal, int place) {
+        int n = 0;
+        for (int c = 0; c < deal.length; c++)
+            if (deal[c] == place)
+                n++;
+        int[] cards = new int[n];
+        n = 0;
+        for (int c = 0; c < deal.length; c++)
+            if (deal[c] == place)
+                cards[n++] = c;
+        return cards;
+    }
+
+    /**
+     * @return the number of deals consistent with the events noted
+     */
+    public int size() {
+        return deals.size();
+    }
+
+    /**
+     * Keep the deals in which the player holds the cards.
+     */
+    public void hand(int player, int[] cards) {
+        List<int[]> kept = new ArrayList<int[]>();
+        for (int[] deal : deals) {
+            boolean holds = true;
+            for (int card : cards)
+                holds &= deal[card] == player;
+            if (holds)
+                kept.add(deal);
+        }
+        deals = kept;
+    }
+
+    /**
+     * Keep the deals consistent with a suggestion, as ClueReasoner.suggest
+     * notes it.
+     *
+     * @param refuter:   the refuting player, or ClueReasoner.NONE
+     * @param cardShown: the card shown, or ClueReasoner.NONE
+     */
+    public void suggest(int suggester, int[] suggested, int refuter, int cardShown) {
+        List<int[]> kept = new ArrayList<int[]>();
+        for (int[] deal : deals)
+            if (refutation(deal, suggester, suggested) == refuter
+                && (cardShown == ClueReasoner.NONE || deal[cardShown] == refuter))
+                kept.add(deal);
+        deals = kept;
+    }
+
+    /**
+     * Keep the deals consistent with an accusation.
+     */
+    public void accuse(int[] accused, boolean isCorrect) {
+        List<int[]> kept = new ArrayList<int[]>();
+        for (int[] deal : deals) {
+            boolean correct = true;
+            for (int card : accused)
+                correct &= deal[card] == numPlayers;
+            if (correct == isCorrect)
+                kept.add(deal);
+        }
+        deals = kept;
+    }
+
+    /**
+     * @return the first player after the suggester holding a suggested
+     *         card in the deal, or ClueReasoner.NONE
+     */
+    public int refutation(int[] deal, int suggester, int[] suggested) {
+        for (int i = 1; i < numPlayers; i++) {
+            int p = (suggester + i) % numPlayers;
+            for (int card : suggested)
+                if (deal[card] == p)
+                    return p;
+        }
+        return ClueReasoner.NONE;
+    }
+
+    /**
+     * @return the fraction of the deals consistent with the events in
+     *         which the card is in the place, or NaN if there are none
+     */
+    public double probability(int place, int card) {
+        int count = 0;
+        for (int[] deal : deals)
+            if (deal[card] == place)
+                count++;
+        return deals.isEmpty() ? Double.NaN : (double) count / deals.size();
+    }
+
+    /**
+     * @return SATSolver.TRUE or SATSolver.FALSE if the card is in the place
+     *         in all or none of the deals consistent with the events,
+     *         SATSolver.UNKNOWN otherwise
+     */
+    public int status(int place, int card) {
+        double probability = probability(place, card);
+        return probability == 1 ? SATSolver.TRUE : probability == 0 ? SATSolver.FALSE : SATSolver.UNKNOWN;
+    }
+
+    /**
+     * Make a suggestion in a game on the given deal: the suggester names a
+     * random card of each category, and is shown a card by the first
+     * player able to refute it.  The suggestion is noted here and by the
+     * reasoner; the card shown is left out half the time, as when another
+     * player looks on.
+     *
+     * @param deal:     the actual deal
+     * @param reasoner: the reasoner noting the suggestion too
+     */
+    public void suggestRandomly(Random random, int[] deal, ClueReasoner reasoner) {
+        int suggester = random.nextInt(numPlayers);
+        int numCategories = categoryOf[numCards - 1] + 1;
+        int[] suggested = new int[numCategories];
+        for (int k = 0; k < numCategories; k++) {
+            do
+                suggested[k] = random.nextInt(numCards);
+            while (categoryOf[suggested[k]] != k);
+        }
+        int refuter = refutation(deal, suggester, suggested);
+        int cardShown = ClueReasoner.NONE;
+        if (refuter != ClueReasoner.NONE && random.nextBoolean()) {
+            do
+                cardShown = suggested[random.nextInt(numCategories)];
+            while (deal[cardShown] != refuter);
+        }
+        suggest(suggester, suggested, refuter, cardShown);
+        reasoner.suggest(suggester, suggested, refuter, cardShown);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * GameLogReaderTest.java - logs written by GameLogWriter must read back
+ * as the games written, and malformed logs must be reported by line.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import org.junit.jupiter.api.Test;
+
+public class GameLogReaderTest {
+
+    @Test
+    public void textLogsReadBackAsWritten() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    public void binaryLogsReadBackAsWritten() throws IOException {
+        roundTrip(true);
+    }
+
+    @Test
+    public void malformedLinesAreReportedByNumber() throws IOException {
+        String log = "# a comment\n"
+            + "game 1\n"
+            + "hand sc wh li st\n"
+            + "suggest sc sc zz lo mu sc\n"
+            + "end\n";
+        GameLogReader reader = new GameLogReader(
+            new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8)));
+        assertFalse(reader.isBinary());
+        try {
+            reader.next();
+            fail("read a game with an unknown card");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Line 4: "), e.getMessage());
+            assertTrue(e.getMessage().contains("zz"), e.getMessage());
+        }
+    }
+
+    private static void roundTrip(boolean binary) throws IOException {
+        GameSimulator simulator = new GameSimulator(1, 3);
+        simulator.setRecording(true);
+        SimulationReport report = simulator.simulate(3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameLogWriter writer = new GameLogWriter(bytes, binary);
+        for (SimulationReport.Game game : report.getGames())
+            writer.write(game.getRecord());
+        writer.close();
+
+        GameLogReader reader = new GameLogReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(binary, reader.isBinary());
+        for (SimulationReport.Game game : report.getGames()) {
+            GameRecord written = game.getRecord();
+            GameRecord read = reader.next();
+            assertNotNull(read);
+            assertEquals(written.getId(), read.getId());
+            assertEquals(written.getNumEvents(), read.getNumEvents());
+            assertArrayEquals(written.getEvents(), read.getEvents());
+        }
+        assertNull(reader.next());
+        reader.close();
+    }
+}
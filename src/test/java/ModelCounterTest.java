@@ -0,0 +1,106 @@
+/**
+ * ModelCounterTest.java - model counts and marginals against enumeration,
+ * both on random formulas and as the probabilities of small games.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+public class ModelCounterTest {
+
+    @Test
+    public void countsAndMarginalsAgreeWithEnumeration() {
+        Random random = new Random(5);
+        ModelCounter counter = new ModelCounter();
+        for (int round = 0; round < 200; round++) {
+            int numVars = 2 + random.nextInt(12);
+            int[][] clauses = BruteForce.randomClauses(random, numVars,
+                random.nextInt(numVars * 4), 1 + random.nextInt(3));
+            ClauseArena arena = new ClauseArena();
+            for (int[] clause : clauses)
+                arena.add(clause);
+            long expected = BruteForce.countModels(clauses, numVars);
+            // The cache is kept from round to round, as across suggestions
+            assertEquals(BigInteger.valueOf(expected), counter.count(arena, numVars), "round " + round);
+
+            int[] vars = new int[numVars];
+            for (int v = 1; v <= numVars; v++)
+                vars[v - 1] = v;
+            double[] marginals = counter.marginals(arena, numVars, vars);
+            for (int v = 1; v <= numVars; v++) {
+                if (expected == 0)
+                    assertTrue(Double.isNaN(marginals[v - 1]), "round " + round);
+                else
+                    assertEquals((double) BruteForce.countModels(clauses, numVars, v) / expected,
+                        marginals[v - 1], 1e-9, "round " + round + " var " + v);
+            }
+        }
+    }
+
+    @Test
+    public void cacheFollowsClausesAddedAndRemoved() {
+        Random random = new Random(7);
+        ModelCounter counter = new ModelCounter();
+        int numVars = 14;
+        int[][] base = BruteForce.randomClauses(random, numVars, 30, 3);
+        ClauseArena arena = new ClauseArena();
+        List<int[]> clauses = new ArrayList<int[]>();
+        for (int[] clause : base)
+            if (arena.add(clause))
+                clauses.add(clause);
+        int numBase = clauses.size();
+        for (int round = 0; round < 100; round++) {
+            // A few clauses are added last, or the last ones removed, as
+            // by SATSolver.push and pop
+            if (clauses.size() > numBase && random.nextBoolean()) {
+                int size = numBase + random.nextInt(clauses.size() - numBase);
+                arena.truncate(size);
+                clauses.subList(size, clauses.size()).clear();
+            }
+            else
+                for (int[] clause : BruteForce.randomClauses(random, numVars, 1 + random.nextInt(3), 2))
+                    if (arena.add(clause))
+                        clauses.add(clause);
+            int[][] current = clauses.toArray(new int[clauses.size()][]);
+            assertEquals(BigInteger.valueOf(BruteForce.countModels(current, numVars)),
+                counter.count(arena, numVars), "round " + round);
+        }
+    }
+
+    @Test
+    public void probabilitiesAgreeWithEnumeratedDeals() {
+        GameVariant[] variants = {
+            GameVariant.generate(3, 2, 2, 2),
+            GameVariant.generate(2, 2, 3, 3),
+            GameVariant.generate(3, 2, 2, 3).withHandSizes(null),
+            GameVariant.generate(4, 2, 2, 3).withEncoding(CardinalityEncoder.Encoding.COMMANDER)
+        };
+        Random random = new Random(6);
+        for (GameVariant variant : variants) {
+            for (int game = 0; game < 5; game++) {
+                Deals deals = new Deals(variant);
+                ClueReasoner reasoner = new ClueReasoner(variant);
+                int[] deal = deals.random(random);
+                int[] hand = Deals.cardsOf(deal, 0);
+                deals.hand(0, hand);
+                reasoner.hand(0, hand);
+                assertProbabilities(deals, reasoner, variant);
+                for (int turn = 0; turn < 4; turn++) {
+                    deals.suggestRandomly(random, deal, reasoner);
+                    assertProbabilities(deals, reasoner, variant);
+                }
+            }
+        }
+    }
+
+    private static void assertProbabilities(Deals deals, ClueReasoner reasoner, GameVariant variant) {
+        double[][] probabilities = reasoner.probabilities();
+        for (int c = 0; c < variant.getNumCards(); c++)
+            for (int p = 0; p <= variant.getNumPlayers(); p++)
+                assertEquals(deals.probability(p, c), probabilities[c][p], 1e-9,
+                    variant + " card " + c + " place " + p);
+    }
+}
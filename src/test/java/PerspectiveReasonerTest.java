@@ -0,0 +1,78 @@
+/**
+ * PerspectiveReasonerTest.java - what each player deduces, against the
+ * deals consistent with what that player has seen.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+public class PerspectiveReasonerTest {
+
+    @Test
+    public void eachViewerDeducesWhatItsDealsAgreeOn() {
+        GameVariant variant = GameVariant.generate(3, 2, 2, 3);
+        String[] players = variant.getPlayers();
+        String[] cards = variant.getCards();
+        int numPlayers = players.length;
+        Random random = new Random(12);
+        for (int game = 0; game < 8; game++) {
+            PerspectiveReasoner reasoner = new PerspectiveReasoner(variant);
+            // views[s]: the deals player s cannot rule out, the observer's last
+            Deals[] views = new Deals[numPlayers + 1];
+            for (int s = 0; s <= numPlayers; s++)
+                views[s] = new Deals(variant);
+            int[] deal = views[0].random(random);
+            for (int s = 0; s < numPlayers; s++) {
+                int[] hand = Deals.cardsOf(deal, s);
+                views[s].hand(s, hand);
+                reasoner.hand(players[s], names(cards, hand));
+            }
+            for (int turn = 0; turn < 5; turn++) {
+                int suggester = random.nextInt(numPlayers);
+                int[] suggested = { random.nextInt(2), 2 + random.nextInt(2), 4 + random.nextInt(3) };
+                int refuter = views[0].refutation(deal, suggester, suggested);
+                int cardShown = ClueReasoner.NONE;
+                if (refuter != ClueReasoner.NONE)
+                    for (int card : suggested)
+                        if (deal[card] == refuter)
+                            cardShown = card;
+                for (int s = 0; s <= numPlayers; s++)
+                    views[s].suggest(suggester, suggested, refuter, s == suggester ? cardShown : ClueReasoner.NONE);
+                reasoner.suggest(players[suggester], names(cards, suggested),
+                    refuter == ClueReasoner.NONE ? null : players[refuter],
+                    cardShown == ClueReasoner.NONE ? null : cards[cardShown]);
+
+                // Query some cells of each viewer, then compare whole notepads
+                for (int s = 0; s <= numPlayers; s++) {
+                    String viewer = s < numPlayers ? players[s] : null;
+                    int p = random.nextInt(numPlayers + 1);
+                    int c = random.nextInt(cards.length);
+                    assertEquals(views[s].status(p, c), reasoner.query(viewer,
+                        p < numPlayers ? players[p] : GameVariant.CASE_FILE, cards[c]),
+                        "game " + game + " viewer " + viewer);
+                }
+                for (int s = 0; s <= numPlayers; s++) {
+                    String viewer = s < numPlayers ? players[s] : null;
+                    String[][] notepad = reasoner.notepad(viewer);
+                    for (int c = 0; c < cards.length; c++)
+                        for (int p = 0; p <= numPlayers; p++)
+                            assertEquals(mark(views[s].status(p, c)), notepad[c][p],
+                                "game " + game + " viewer " + viewer + " place " + p + " card " + c);
+                }
+            }
+        }
+    }
+
+    private static String mark(int status) {
+        return status == SATSolver.TRUE ? "Y" : status == SATSolver.FALSE ? "n" : "-";
+    }
+
+    private static String[] names(String[] cards, int[] ids) {
+        String[] names = new String[ids.length];
+        for (int k = 0; k < ids.length; k++)
+            names[k] = cards[ids[k]];
+        return names;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * PortfolioSolverTest.java - races answer as their members would, even
+ * with a member that cannot run.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+public class PortfolioSolverTest {
+
+    @Test
+    public void defaultPortfolioRacesTheInProcessEngineOnly() {
+        assertFalse(new PortfolioSolver().toString().contains("zchaff"));
+    }
+
+    @Test
+    public void failingMembersDoNotChangeTheAnswers() {
+        Random random = new Random(18);
+        PortfolioSolver portfolio = new PortfolioSolver(new CDCLSolver(),
+            new ZchaffSolver("/nonexistent/zchaff"), new CDCLSolver(30, 0.85, false));
+        // Race every member from the start
+        portfolio.setHeadStart(0, TimeUnit.MILLISECONDS);
+        for (int round = 0; round < 20; round++) {
+            int numVars = 10;
+            int[][] clauses = BruteForce.randomClauses(random, numVars, 40 + random.nextInt(5), 3);
+            SolverBackend session = portfolio.newSession();
+            for (int[] clause : clauses)
+                session.addClause(clause);
+            boolean expected = BruteForce.isSatisfiable(clauses, numVars);
+            assertEquals(expected, session.solve(), "round " + round);
+            if (expected)
+                assertTrue(BruteForce.isModel(clauses, session.getModel()), "round " + round);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * PreprocessorTest.java - the simplified clauses against the clauses
+ * given, by enumeration: they must have the same models, on the variables
+ * left when some are eliminated.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+public class PreprocessorTest {
+
+    @Test
+    public void simplifiedClausesAreEquivalent() {
+        Random random = new Random(14);
+        for (int round = 0; round < 200; round++) {
+            int numVars = 4 + random.nextInt(6);
+            int[][] clauses = randomMix(random, numVars);
+            Preprocessor preprocessor = new Preprocessor();
+            for (int[] clause : clauses)
+                preprocessor.add(clause);
+            assertEquivalent(clauses, preprocessor, numVars, range(numVars), "round " + round);
+        }
+    }
+
+    @Test
+    public void clausesKeptAsTheyAreAreEquivalent() {
+        Random random = new Random(15);
+        for (int round = 0; round < 200; round++) {
+            int numVars = 4 + random.nextInt(6);
+            int[][] clauses = randomMix(random, numVars);
+            Preprocessor preprocessor = new Preprocessor();
+            for (int i = 0; i < clauses.length; i++) {
+                if (i < clauses.length / 2)
+                    preprocessor.add(clauses[i]);
+                else
+                    preprocessor.keep(clauses[i]);
+            }
+            assertEquivalent(clauses, preprocessor, numVars, range(numVars), "round " + round);
+        }
+    }
+
+    @Test
+    public void eliminationKeepsTheModelsOfTheOtherVariables() {
+        Random random = new Random(16);
+        for (int round = 0; round < 200; round++) {
+            int numVars = 6 + random.nextInt(4);
+            int decisionVars = 1 + random.nextInt(numVars - 1);
+            int[][] clauses = randomMix(random, numVars);
+            Preprocessor preprocessor = new Preprocessor();
+            for (int[] clause : clauses)
+                preprocessor.add(clause);
+            preprocessor.eliminate(decisionVars);
+            assertEquivalent(clauses, preprocessor, numVars, range(decisionVars), "round " + round);
+
+            // Using an eliminated variable again restores its clauses
+            int v = decisionVars + 1 + random.nextInt(numVars - decisionVars);
+            preprocessor.restore(new int[] { v });
+            assertFalse(preprocessor.isEliminated(v));
+            int[] shown = Arrays.copyOf(range(decisionVars), decisionVars + 1);
+            shown[decisionVars] = v;
+            assertEquivalent(clauses, preprocessor, numVars, shown, "round " + round + " restoring " + v);
+        }
+    }
+
+    @Test
+    public void restoredSolversAnswerAsSimplifiedOnes() {
+        Random random = new Random(17);
+        for (int round = 0; round < 50; round++) {
+            int numVars = 10;
+            int[][] clauses = randomMix(random, numVars);
+            SATSolver simplified = new SATSolver();
+            for (int[] clause : clauses)
+                simplified.addClause(clause);
+            SATSolver kept = new SATSolver();
+            kept.addClausesAsIs(clauses);
+            int[] vars = new int[numVars];
+            for (int v = 1; v <= numVars; v++)
+                vars[v - 1] = v;
+            assertArrayEquals(simplified.computeBackbone(vars), kept.computeBackbone(vars), "round " + round);
+            assertEquals(simplified.countModels(), kept.countModels(), "round " + round);
+        }
+    }
+
+    /**
+     * @return random clauses of one to four literals, mostly binary and
+     *         ternary, so that subsumption and strengthening apply
+     */
+    private static int[][] randomMix(Random random, int numVars) {
+        int[][] clauses = new int[numVars * 2 + random.nextInt(numVars * 2)][];
+        for (int i = 0; i < clauses.length; i++) {
+            int width = random.nextInt(10) == 0 ? 1 : 2 + random.nextInt(3);
+            clauses[i] = BruteForce.randomClauses(random, numVars, 1, width)[0];
+        }
+        return clauses;
+    }
+
+    /**
+     * @return the variables 1..n
+     */
+    private static int[] range(int n) {
+        int[] vars = new int[n];
+        for (int v = 1; v <= n; v++)
+            vars[v - 1] = v;
+        return vars;
+    }
+
+    /**
+     * Check that each assignment of the shown variables extends to a model
+     * of the given clauses exactly when it extends to one of the clauses
+     * the preprocessor holds.
+     */
+    private static void assertEquivalent(int[][] clauses, Preprocessor preprocessor, int numVars, int[] shown,
+            String message) {
+        int[][] simplified = preprocessor.getClauses().toArray(new int[0][]);
+        for (int[] clause : simplified)
+            for (int literal : clause)
+                assertTrue(Math.abs(literal) <= numVars, message);
+        for (int bits = 0; bits < 1 << shown.length; bits++) {
+            int[] assignment = new int[shown.length];
+            for (int k = 0; k < shown.length; k++)
+                assignment[k] = (bits >> k & 1) != 0 ? shown[k] : -shown[k];
+            assertEquals(BruteForce.isSatisfiable(clauses, numVars, assignment),
+                BruteForce.isSatisfiable(simplified, numVars, assignment), message + " " + Arrays.toString(assignment));
+        }
+    }
+}
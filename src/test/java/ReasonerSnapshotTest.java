@@ -0,0 +1,71 @@
+/**
+ * ReasonerSnapshotTest.java - snapshots written to a file and restored
+ * must answer as the reasoner they were taken of, then and as the game
+ * goes on.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ReasonerSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void restoredReasonersAnswerAsTheOriginal() throws IOException {
+        GameVariant variant = GameVariant.generate(3, 2, 2, 3);
+        Random random = new Random(10);
+        for (int game = 0; game < 10; game++) {
+            Deals deals = new Deals(variant);
+            ClueReasoner reasoner = new ClueReasoner(variant);
+            int[] deal = deals.random(random);
+            int[] hand = Deals.cardsOf(deal, 1);
+            deals.hand(1, hand);
+            reasoner.hand(1, hand);
+            for (int turn = 0; turn < 3; turn++)
+                deals.suggestRandomly(random, deal, reasoner);
+            // Settle some cells before the snapshot, leave others to search
+            reasoner.query(variant.getNumPlayers(), random.nextInt(variant.getNumCards()));
+
+            Path file = directory.resolve("game" + game + ".snapshot");
+            reasoner.snapshot().write(file);
+            ReasonerSnapshot snapshot = ReasonerSnapshot.read(file);
+            assertEquals(variant, snapshot.getVariant());
+            ClueReasoner restored = ClueReasoner.restore(snapshot);
+            assertArrayEquals(reasoner.notepad(), restored.notepad(), "game " + game);
+            assertCells(deals, restored, variant, "game " + game);
+
+            // The restored reasoner goes on with the game
+            for (int turn = 0; turn < 3; turn++)
+                deals.suggestRandomly(random, deal, restored);
+            assertCells(deals, restored, variant, "game " + game + " after restoring");
+        }
+    }
+
+    @Test
+    public void damagedSnapshotsAreRejected() throws IOException {
+        Path file = directory.resolve("bad.snapshot");
+        new ClueReasoner(GameVariant.generate(2, 2, 2, 2)).snapshot().write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(file, bytes);
+        try {
+            ReasonerSnapshot.read(file);
+            fail("A corrupt snapshot was read");
+        }
+        catch (IOException e) {
+        }
+    }
+
+    private static void assertCells(Deals deals, ClueReasoner reasoner, GameVariant variant, String message) {
+        for (int p = 0; p <= variant.getNumPlayers(); p++)
+            for (int c = 0; c < variant.getNumCards(); c++)
+                assertEquals(deals.status(p, c), reasoner.query(p, c), message + " place " + p + " card " + c);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * ReplayEngineTest.java - replays must give each game's notepad, and a
+ * failing sink must stop the run rather than leave it waiting.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+public class ReplayEngineTest {
+
+    // GAMES: the number of games of the log, more than the queue holds
+    private static final int GAMES = 40;
+
+    @Test
+    public void everyGameIsReplayedToItsNotepad() throws IOException {
+        final GameRecord[] games = games();
+        final String[] players = new ClueReasoner().getPlayers();
+        final String[] cards = new ClueReasoner().getCards();
+        final Set<Long> seen = new HashSet<Long>();
+        ReplayStats stats = new ReplayEngine(4).replay(reader(games), new ReplayEngine.Sink() {
+            public void accept(GameRecord game, String[][] notepad) {
+                assertTrue(seen.add(game.getId()));
+                ClueReasoner reasoner = new ClueReasoner();
+                games[(int) game.getId()].replay(reasoner, players, cards);
+                assertArrayEquals(reasoner.notepad(), notepad);
+            }
+
+            public void failed(GameRecord game, RuntimeException error) {
+                fail("game " + game.getId() + ": " + error);
+            }
+        });
+        assertEquals(GAMES, seen.size());
+        assertEquals(GAMES, stats.getGames());
+        assertEquals(0, stats.getFailed());
+    }
+
+    @Test
+    @Timeout(60)
+    public void aSinkThrowingARuntimeExceptionStopsTheRun() throws IOException {
+        final IllegalStateException thrown = new IllegalStateException("sink");
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            new ReplayEngine(1).replay(reader(games()), new ReplayEngine.Sink() {
+                public void accept(GameRecord game, String[][] notepad) {
+                    calls.incrementAndGet();
+                    throw thrown;
+                }
+
+                public void failed(GameRecord game, RuntimeException error) {
+                    calls.incrementAndGet();
+                    throw thrown;
+                }
+            });
+            fail("the sink's exception was lost");
+        }
+        catch (IllegalStateException e) {
+            assertSame(thrown, e);
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @Timeout(60)
+    public void aSinkThrowingAnErrorStopsTheRun() throws IOException {
+        final Error thrown = new Error("sink");
+        try {
+            new ReplayEngine(2).replay(reader(games()), new ReplayEngine.Sink() {
+                public void accept(GameRecord game, String[][] notepad) {
+                    throw thrown;
+                }
+
+                public void failed(GameRecord game, RuntimeException error) {
+                    throw thrown;
+                }
+            });
+            fail("the sink's error was lost");
+        }
+        catch (Error e) {
+            assertSame(thrown, e);
+        }
+    }
+
+    /**
+     * @return GAMES recorded games, numbered from 0, repeating the
+     *         simulated games of a few deals
+     */
+    private static GameRecord[] games() {
+        GameSimulator simulator = new GameSimulator(1, 5);
+        simulator.setRecording(true);
+        SimulationReport report = simulator.simulate(4);
+        GameRecord[] games = new GameRecord[GAMES];
+        for (int i = 0; i < GAMES; i++) {
+            GameRecord game = report.getGames()[i % 4].getRecord();
+            games[i] = new GameRecord(i, game.getEvents(), game.getNumEvents());
+        }
+        return games;
+    }
+
+    private static GameLogReader reader(GameRecord[] games) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameLogWriter writer = new GameLogWriter(bytes, true);
+        for (GameRecord game : games)
+            writer.write(game);
+        writer.close();
+        return new GameLogReader(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * SATSolverTest.java - the queries of SATSolver against enumeration on
+ * small random formulas.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+public class SATSolverTest {
+
+    @Test
+    public void queriesReportHowTheyWereAnswered() {
+        SATSolver solver = new SATSolver();
+        // 1 and 2 are facts; 3 fails, as it implies 4 and 5 which
+        // exclude each other; 7 is forced as -7 fails likewise; 10 is free
+        int[][] clauses = {
+            { 1 }, { -1, 2 }, { -3, 4 }, { -3, 5 }, { -4, -5 }, { 7, 8 }, { 7, 9 }, { -8, -9 }, { 10, 11 }
+        };
+        for (int[] clause : clauses)
+            solver.addClause(clause);
+
+        assertEquals(SATSolver.TRUE, solver.testLiteral(2));
+        assertEquals(SATSolver.QueryPath.PROPAGATION, solver.getLastQueryPath());
+        assertEquals(SATSolver.FALSE, solver.testLiteral(-1));
+        assertEquals(SATSolver.QueryPath.PROPAGATION, solver.getLastQueryPath());
+        assertEquals(SATSolver.FALSE, solver.testLiteral(3));
+        assertEquals(SATSolver.QueryPath.PROBING, solver.getLastQueryPath());
+        assertEquals(SATSolver.TRUE, solver.testLiteral(7));
+        assertEquals(SATSolver.QueryPath.PROBING, solver.getLastQueryPath());
+        // What probing refuted is a fact from then on
+        assertEquals(SATSolver.TRUE, solver.testLiteral(-3));
+        assertEquals(SATSolver.QueryPath.PROPAGATION, solver.getLastQueryPath());
+        assertEquals(SATSolver.UNKNOWN, solver.testLiteral(10));
+        assertEquals(SATSolver.QueryPath.SEARCH, solver.getLastQueryPath());
+
+        assertEquals(3, solver.getQueryCount(SATSolver.QueryPath.PROPAGATION));
+        assertEquals(2, solver.getQueryCount(SATSolver.QueryPath.PROBING));
+        assertEquals(1, solver.getQueryCount(SATSolver.QueryPath.SEARCH));
+    }
+
+    @Test
+    public void queriesUnderAssumptionsAgreeWithEnumeration() {
+        Random random = new Random(13);
+        for (int round = 0; round < 60; round++) {
+            int numVars = 9;
+            int[][] clauses = BruteForce.randomClauses(random, numVars, 25 + random.nextInt(10), 3);
+            SATSolver solver = new SATSolver();
+            for (int[] clause : clauses)
+                solver.addClause(clause);
+            int[] vars = new int[numVars];
+            for (int v = 1; v <= numVars; v++)
+                vars[v - 1] = v;
+            for (int query = 0; query < 5; query++) {
+                int[] assumptions = BruteForce.randomClauses(random, numVars, 1, random.nextInt(4))[0];
+                int[] backbone = new int[numVars];
+                solver.computeBackbone(vars, backbone, assumptions);
+                for (int v = 1; v <= numVars; v++) {
+                    int expected = expected(clauses, numVars, v, assumptions);
+                    assertEquals(expected, solver.testLiteral(v, assumptions), "round " + round + " var " + v);
+                    assertEquals(expected, backbone[v - 1], "round " + round + " var " + v);
+                }
+            }
+            // Nothing derived under the assumptions is kept
+            int[] backbone = solver.computeBackbone(vars);
+            for (int v = 1; v <= numVars; v++) {
+                int expected = expected(clauses, numVars, v, new int[0]);
+                assertEquals(expected, solver.testLiteral(v), "round " + round + " var " + v);
+                assertEquals(expected, backbone[v - 1], "round " + round + " var " + v);
+            }
+        }
+    }
+
+    /**
+     * @return the testLiteral result of a variable, by enumeration
+     */
+    private static int expected(int[][] clauses, int numVars, int v, int[] assumptions) {
+        int[] with = Arrays.copyOf(assumptions, assumptions.length + 1);
+        with[assumptions.length] = v;
+        if (!BruteForce.isSatisfiable(clauses, numVars, with))
+            return SATSolver.FALSE;
+        with[assumptions.length] = -v;
+        return BruteForce.isSatisfiable(clauses, numVars, with) ? SATSolver.UNKNOWN : SATSolver.TRUE;
+    }
+}
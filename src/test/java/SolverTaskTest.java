@@ -0,0 +1,78 @@
+/**
+ * SolverTaskTest.java - asynchronous queries and notepads stopped by their
+ * deadline, failing or cancelled, and the reasoner after them.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+public class SolverTaskTest {
+
+    @Test
+    public void aNotepadPastItsDeadlineReadsUnknownAndLeavesTheReasonerIntact() throws Exception {
+        ClueReasoner reasoner = ClueReasonerTest.exampleGame(ClueReasonerTest.EXAMPLE_SUGGESTIONS.length);
+        SolverTask<String[][]> task;
+        // Holding the reasoner's lock keeps the task from starting until
+        // its deadline has passed
+        synchronized (reasoner) {
+            task = reasoner.notepadAsync(1, TimeUnit.MICROSECONDS);
+            Thread.sleep(50);
+        }
+        String[][] stopped = task.get(10, TimeUnit.SECONDS);
+        for (String[] row : stopped)
+            for (String cell : row)
+                assertEquals("?", cell);
+        assertNull(task.getError());
+        assertArrayEquals(ClueReasonerTest.exampleGame(ClueReasonerTest.EXAMPLE_SUGGESTIONS.length).notepad(), reasoner.notepad());
+    }
+
+    @Test
+    public void aQueryOfAnUnknownNameFailsWithItsError() throws Exception {
+        ClueReasoner reasoner = ClueReasonerTest.exampleGame(ClueReasonerTest.EXAMPLE_SUGGESTIONS.length);
+        SolverTask<Integer> task = reasoner.queryAsync("zz", "pi");
+        assertEquals(SATSolver.ERROR, (int) task.get(10, TimeUnit.SECONDS));
+        assertTrue(task.getError() instanceof IllegalArgumentException, String.valueOf(task.getError()));
+        assertTrue(task.getError().getMessage().contains("zz"), task.getError().getMessage());
+        assertEquals(SATSolver.TRUE, (int) reasoner.queryAsync("cf", "pi").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void aCancelledNotepadLeavesTheSolverUsable() throws Exception {
+        String[][] expected = ClueReasonerTest.exampleGame(3).notepad();
+        for (int delay = 0; delay < 10; delay++) {
+            ClueReasoner reasoner = ClueReasonerTest.exampleGame(3);
+            SolverTask<String[][]> task;
+            boolean cancelled;
+            if (delay == 0) {
+                // Cancelled for sure before it starts
+                synchronized (reasoner) {
+                    task = reasoner.notepadAsync();
+                    cancelled = task.cancel(true);
+                }
+                assertTrue(cancelled);
+            }
+            else {
+                // Cancelled while it runs, or too late
+                task = reasoner.notepadAsync();
+                Thread.sleep(delay);
+                cancelled = task.cancel(true);
+            }
+            if (cancelled) {
+                try {
+                    task.get(10, TimeUnit.SECONDS);
+                    fail("A cancelled task completed");
+                }
+                catch (CancellationException e) {
+                    // expected
+                }
+            }
+            else
+                assertArrayEquals(expected, task.get(10, TimeUnit.SECONDS), "delay " + delay);
+            // The lock is taken once the body, if it started, is done
+            assertArrayEquals(expected, reasoner.notepad(), "delay " + delay);
+            assertEquals(SATSolver.UNKNOWN, reasoner.query("cf", "pi"), "delay " + delay);
+        }
+    }
+}
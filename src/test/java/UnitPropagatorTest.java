@@ -0,0 +1,58 @@
+/**
+ * UnitPropagatorTest.java - root facts, failed literals and copies of the
+ * propagator on small formulas whose consequences are known.
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class UnitPropagatorTest {
+
+    @Test
+    public void propagatesUnitsThroughBinaryAndLongerClauses() {
+        UnitPropagator propagator = new UnitPropagator();
+        propagator.addClause(new int[] { -2, 3, 4 });
+        propagator.addClause(new int[] { -2, -3 });
+        propagator.addClause(new int[] { -1, 2 });
+        assertEquals(0, propagator.getNumFacts());
+        propagator.addClause(new int[] { 1 });
+
+        assertEquals(SATSolver.TRUE, propagator.value(1));
+        assertEquals(SATSolver.TRUE, propagator.value(2));
+        assertEquals(SATSolver.FALSE, propagator.value(3));
+        assertEquals(SATSolver.TRUE, propagator.value(4));
+        assertEquals(SATSolver.FALSE, propagator.value(-4));
+        assertEquals(SATSolver.UNKNOWN, propagator.value(5));
+        assertEquals(SATSolver.UNKNOWN, propagator.value(9));
+        assertEquals(4, propagator.getNumFacts());
+        assertEquals(1, propagator.getFact(0));
+        assertFalse(propagator.isInconsistent());
+
+        propagator.addClause(new int[] { -4 });
+        assertTrue(propagator.isInconsistent());
+    }
+
+    @Test
+    public void aFailedLiteralIsRefutedAndItsNegationKept() {
+        UnitPropagator propagator = new UnitPropagator();
+        propagator.addClause(new int[] { -1, 2 });
+        propagator.addClause(new int[] { -1, 3 });
+        propagator.addClause(new int[] { -2, -3, -4 });
+        propagator.addClause(new int[] { -2, -3, 4 });
+
+        // Probing a literal that propagates without conflict changes nothing
+        assertFalse(propagator.probe(-1));
+        assertFalse(propagator.probe(2));
+        assertEquals(0, propagator.getNumFacts());
+
+        UnitPropagator copy = propagator.copy();
+        assertTrue(propagator.probe(1));
+        assertEquals(SATSolver.FALSE, propagator.value(1));
+        assertTrue(propagator.probe(1));
+        assertFalse(propagator.isInconsistent());
+        // The copy was taken before the probe
+        assertEquals(SATSolver.UNKNOWN, copy.value(1));
+        assertTrue(copy.probe(1));
+    }
+}